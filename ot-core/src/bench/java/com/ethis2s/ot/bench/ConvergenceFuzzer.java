@@ -0,0 +1,340 @@
+package com.ethis2s.ot.bench;
+
+import com.ethis2s.model.Operation;
+import com.ethis2s.model.TextOperation;
+import com.ethis2s.ot.UnconfirmedOperationQueue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * 여러 사이트가 동시에 편집하는 상황을 무작위로 만들어 모든 문서가 같은 결과로 수렴하는지 검사합니다.
+ *
+ * <p>각 사이트는 OTManager 와 같은 방식으로 {@link UnconfirmedOperationQueue} 를 사용하고,
+ * 서버는 사이트별로 "아직 그 사이트가 보지 못한 연산" 목록을 두고 도착한 연산을 변환하는 참조 모델입니다.
+ * 네트워크는 방향별 FIFO 이며, 어느 메시지를 언제 배달할지는 시드에 따라 무작위로 정해집니다.
+ *
+ * <p>실행: {@code mvn -Pbench compile exec:java -Dexec.args="<runs> <sites> <steps> <seed>"}
+ * 수렴에 실패하면 재현용 시드와 각 사이트의 문서를 출력하고 종료 코드 1 로 끝납니다.
+ *
+ * <p>pipelineWindow 가 1 인 기본 경로(stop-and-wait)도 함께 검사합니다. 이때 클라이언트는 rebase 후 전송 중이던 연산을
+ * 같은 uniqId 로 다시 보내므로, 참조 서버는 이미 적용한 uniqId 를 버리고 기준 버전을 그대로 본 버전으로 해석합니다.
+ */
+public final class ConvergenceFuzzer {
+
+    private static final int[] WINDOWS = {1, 2, 4, 8};
+    private static final String ALPHABET = "abcde\n";
+
+    public static void main(String[] args) {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int sites = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int steps = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        long baseSeed = args.length > 3 ? Long.parseLong(args[3]) : System.nanoTime();
+
+        long start = System.nanoTime();
+        long totalOps = 0;
+        for (int run = 0; run < runs; run++) {
+            long seed = baseSeed + run;
+            int window = WINDOWS[run % WINDOWS.length];
+            Simulation simulation = new Simulation(new Random(seed), sites, window);
+            String failure;
+            try {
+                failure = simulation.run(steps);
+            } catch (RuntimeException e) {
+                failure = e.toString();
+            }
+            if (failure != null) {
+                System.err.println("[ConvergenceFuzzer] Divergence (seed=" + seed + ", sites=" + sites
+                        + ", steps=" + steps + ", window=" + window + "): " + failure);
+                simulation.dump();
+                System.exit(1);
+            }
+            totalOps += simulation.server.version;
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("[ConvergenceFuzzer] " + runs + " runs converged (baseSeed=" + baseSeed
+                + ", " + totalOps + " server ops, " + elapsedMs + " ms)");
+    }
+
+    /** 서버가 사이트로 내려보내는 브로드캐스트 (OTManager.handleBroadcast 의 인자와 같다). */
+    private static final class Broadcast {
+        final long version;
+        final String uniqId;
+        final int requesterSite;
+        final Operation op;
+
+        Broadcast(long version, String uniqId, int requesterSite, Operation op) {
+            this.version = version;
+            this.uniqId = uniqId;
+            this.requesterSite = requesterSite;
+            this.op = op;
+        }
+    }
+
+    private static final class Simulation {
+        final Random random;
+        final Server server;
+        final List<Site> sites = new ArrayList<>();
+
+        Simulation(Random random, int siteCount, int window) {
+            this.random = random;
+            String initial = randomText(random, random.nextInt(20));
+            this.server = new Server(initial, siteCount, window);
+            for (int i = 0; i < siteCount; i++) {
+                sites.add(new Site(i, initial, window));
+            }
+        }
+
+        String run(int steps) {
+            for (int step = 0; step < steps; step++) {
+                Site site = sites.get(random.nextInt(sites.size()));
+                int action = random.nextInt(10);
+                if (action < 4) {
+                    site.localEdit(random);
+                } else if (action < 7) {
+                    deliverUpstream(site);
+                } else {
+                    site.deliverOne();
+                }
+            }
+            // 더 이상 오갈 메시지가 없을 때까지 모두 배달한다.
+            boolean progressed = true;
+            while (progressed) {
+                progressed = false;
+                for (Site site : sites) {
+                    while (!site.outbox.isEmpty()) {
+                        deliverUpstream(site);
+                        progressed = true;
+                    }
+                }
+                for (Site site : sites) {
+                    while (!site.inbox.isEmpty()) {
+                        site.deliverOne();
+                        progressed = true;
+                    }
+                }
+            }
+            for (Site site : sites) {
+                if (!site.queue.isEmpty()) {
+                    return "site " + site.id + " still has " + site.queue.size() + " unconfirmed ops";
+                }
+                if (!site.document.equals(server.document)) {
+                    return "site " + site.id + " diverged from server";
+                }
+                if (site.localVersion != server.version) {
+                    return "site " + site.id + " version " + site.localVersion + " != server " + server.version;
+                }
+            }
+            return null;
+        }
+
+        void deliverUpstream(Site site) {
+            Operation op = site.outbox.poll();
+            if (op == null) return;
+            Broadcast broadcast = server.receive(site.id, op);
+            if (broadcast == null) return;
+            for (Site target : sites) {
+                target.inbox.add(broadcast);
+            }
+        }
+
+        void dump() {
+            System.err.println("  server v" + server.version + ": " + quote(server.document));
+            for (Site site : sites) {
+                System.err.println("  site " + site.id + " v" + site.localVersion + ": " + quote(site.document)
+                        + " (unconfirmed=" + site.queue.size() + ")");
+            }
+        }
+    }
+
+    /**
+     * 참조 서버. 사이트마다 그 사이트가 아직 보지 못한 다른 사이트의 연산을 들고 있다가,
+     * 그 사이트의 연산이 도착하면 서로를 변환한다. 클라이언트의 rebase 와 대칭이다.
+     */
+    private static final class Server {
+        String document;
+        long version = 0;
+        final List<Integer> historySites = new ArrayList<>();
+        final List<List<Operation>> unseen = new ArrayList<>();
+        final Set<String> appliedUniqIds = new HashSet<>();
+        final int window;
+
+        Server(String document, int siteCount, int window) {
+            this.document = document;
+            this.window = window;
+            for (int i = 0; i < siteCount; i++) {
+                unseen.add(new ArrayList<>());
+            }
+        }
+
+        Broadcast receive(int siteId, Operation op) {
+            if (!appliedUniqIds.add(op.getUniqId())) {
+                return null; // 같은 연산의 재전송
+            }
+            // stop-and-wait 에서는 전송 중인 자기 연산이 없을 때만 보내므로 기준 버전이 곧 본 버전이다.
+            long seenVersion = (window == 1)
+                    ? Math.min(op.getVersion(), version)
+                    : resolveSeenVersion(siteId, op.getVersion());
+            List<Operation> pending = unseen.get(siteId);
+            pending.removeIf(other -> other.getVersion() <= seenVersion);
+
+            TextOperation incoming = op.getTextOperation();
+            for (int i = 0; i < pending.size(); i++) {
+                Operation other = pending.get(i);
+                boolean incomingFirst = op.getUniqId().compareTo(other.getUniqId()) < 0;
+                TextOperation.Pair pair = TextOperation.transform(incoming, other.getTextOperation(), incomingFirst);
+                incoming = pair.first;
+                pending.set(i, new Operation(pair.second, -1, other.getVersion(), other.getUniqId()));
+            }
+
+            document = incoming.apply(document);
+            version++;
+            historySites.add(siteId);
+            Operation applied = new Operation(incoming, -1, version, op.getUniqId());
+            for (int i = 0; i < unseen.size(); i++) {
+                if (i != siteId) unseen.get(i).add(applied);
+            }
+            return new Broadcast(version, op.getUniqId(), siteId, wire(applied));
+        }
+
+        /**
+         * 클라이언트는 "확정된 버전 + 전송 중인 자기 연산 수" 를 기준 버전으로 보낸다.
+         * 전송 중이던 자기 연산들은 이미 이 서버에 도착해 있으므로(FIFO),
+         * V + (V 이후의 자기 연산 수) == 기준 버전 을 만족하는 V 가 클라이언트가 실제로 본 버전이다.
+         */
+        long resolveSeenVersion(int siteId, long claimedVersion) {
+            long seen = Math.min(claimedVersion, version);
+            int ownAfter = 0;
+            for (long v = version; v > seen; v--) {
+                if (historySites.get((int) v - 1) == siteId) ownAfter++;
+            }
+            while (seen > 0 && seen + ownAfter > claimedVersion) {
+                if (historySites.get((int) seen - 1) == siteId) ownAfter++;
+                seen--;
+            }
+            if (seen + ownAfter != claimedVersion) {
+                throw new IllegalStateException("site " + siteId + " claimed version " + claimedVersion
+                        + " which does not match the server history");
+            }
+            return seen;
+        }
+    }
+
+    /** OTManager 의 브로드캐스트/전송 흐름을 UI 없이 그대로 흉내 내는 사이트. */
+    private static final class Site {
+        final int id;
+        final String userId;
+        final UnconfirmedOperationQueue queue;
+        final Deque<Operation> outbox = new ArrayDeque<>();
+        final Deque<Broadcast> inbox = new ArrayDeque<>();
+        String document;
+        long localVersion = 0;
+        long uniqIdCounter = 0;
+
+        Site(int id, String document, int window) {
+            this.id = id;
+            this.userId = "site" + id;
+            this.document = document;
+            this.queue = new UnconfirmedOperationQueue(window);
+        }
+
+        void localEdit(Random random) {
+            TextOperation edit = randomOperation(random, document);
+            if (edit.isNoop()) return;
+            document = edit.apply(document);
+            Operation op = new Operation(edit, -1, -1, null);
+            if (!queue.composeIntoTail(op)) {
+                op.setUniqId(userId + "-" + (uniqIdCounter++));
+                queue.add(op, localVersion);
+            }
+            flush();
+        }
+
+        void deliverOne() {
+            Broadcast broadcast = inbox.poll();
+            if (broadcast == null || broadcast.version <= localVersion) return;
+
+            Operation pendingOp = queue.peek();
+            if (pendingOp != null && pendingOp.isSentToServer() && broadcast.requesterSite == id) {
+                if (queue.acknowledge(broadcast.uniqId)) {
+                    localVersion = broadcast.version;
+                    flush();
+                }
+            } else {
+                Operation transformed = queue.rebase(broadcast.op, broadcast.version);
+                if (transformed != null) {
+                    document = transformed.getTextOperation().apply(document);
+                }
+                localVersion = broadcast.version;
+                flush();
+            }
+        }
+
+        void flush() {
+            Operation op;
+            while ((op = queue.pollSendable(localVersion)) != null) {
+                outbox.add(wire(op));
+            }
+        }
+    }
+
+    /**
+     * 연산을 실제 패킷과 같은 형태로 복사한다.
+     * 단일 삭제는 길이만 전송되므로 받는 쪽에서는 삭제된 텍스트를 알 수 없다.
+     */
+    private static Operation wire(Operation op) {
+        Operation copy;
+        switch (op.getType()) {
+            case INSERT:
+                copy = new Operation(Operation.Type.INSERT, op.getPosition(), op.getText(), op.getCursorPosition(), op.getVersion(), op.getUniqId());
+                break;
+            case DELETE:
+                copy = new Operation(Operation.Type.DELETE, op.getPosition(), "", op.getLength(), op.getCursorPosition(), op.getVersion(), op.getUniqId());
+                break;
+            default:
+                copy = new Operation(TextOperation.fromJson(op.getTextOperation().toJson()), op.getCursorPosition(), op.getVersion(), op.getUniqId());
+                break;
+        }
+        return copy;
+    }
+
+    static TextOperation randomOperation(Random random, String document) {
+        TextOperation op = new TextOperation();
+        int index = 0;
+        int components = 1 + random.nextInt(3);
+        for (int i = 0; i < components; i++) {
+            int skip = random.nextInt(document.length() - index + 1);
+            op.retain(skip);
+            index += skip;
+            if (random.nextBoolean() || index == document.length()) {
+                op.insert(randomText(random, 1 + random.nextInt(4)));
+            }
+            if (index < document.length() && random.nextInt(3) == 0) {
+                int length = 1 + random.nextInt(Math.min(4, document.length() - index));
+                op.delete(document.substring(index, index + length));
+                index += length;
+            }
+        }
+        return op;
+    }
+
+    static String randomText(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return sb.toString();
+    }
+
+    private static String quote(String text) {
+        return "\"" + text.replace("\n", "\\n") + "\"";
+    }
+
+    private ConvergenceFuzzer() {
+    }
+}
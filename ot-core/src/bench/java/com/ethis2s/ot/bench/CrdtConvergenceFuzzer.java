@@ -0,0 +1,115 @@
+package com.ethis2s.ot.bench;
+
+import com.ethis2s.crdt.CrdtUpdate;
+import com.ethis2s.crdt.RgaDocument;
+import com.ethis2s.model.TextOperation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * {@link RgaDocument} 의 수렴성을 무작위로 검사합니다.
+ *
+ * <p>서버 순서를 가정하지 않도록 각 변경 묶음은 사이트마다 임의의 순서로, 일부는 중복해서 배달합니다.
+ * 모든 배달이 끝나면 모든 사이트의 문서가 같아야 하고, applyRemote 가 돌려준 편집을 차례로 적용한
+ * "에디터 문서" 도 CRDT 문서와 같아야 합니다. 마지막으로 상태 인코딩을 왕복한 문서도 비교합니다.
+ *
+ * <p>실행: {@code mvn -Pbench compile exec:java -Dbench.main=com.ethis2s.ot.bench.CrdtConvergenceFuzzer -Dexec.args="<runs> <sites> <steps> <seed>"}
+ */
+public final class CrdtConvergenceFuzzer {
+
+    public static void main(String[] args) {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int siteCount = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int steps = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        long baseSeed = args.length > 3 ? Long.parseLong(args[3]) : System.nanoTime();
+
+        long start = System.nanoTime();
+        for (int run = 0; run < runs; run++) {
+            long seed = baseSeed + run;
+            String failure;
+            try {
+                failure = runOnce(new Random(seed), siteCount, steps);
+            } catch (RuntimeException e) {
+                failure = e.toString();
+            }
+            if (failure != null) {
+                System.err.println("[CrdtConvergenceFuzzer] Divergence (seed=" + seed + ", sites=" + siteCount
+                        + ", steps=" + steps + "): " + failure);
+                System.exit(1);
+            }
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("[CrdtConvergenceFuzzer] " + runs + " runs converged (baseSeed=" + baseSeed + ", " + elapsedMs + " ms)");
+    }
+
+    private static final class Site {
+        final RgaDocument document;
+        String editor; // applyRemote 가 돌려준 편집을 적용한 결과 (CodeArea 역할)
+        final List<byte[]> inbox = new ArrayList<>();
+
+        Site(long siteId, String initial) {
+            this.document = new RgaDocument(siteId, initial);
+            this.editor = initial;
+        }
+    }
+
+    private static String runOnce(Random random, int siteCount, int steps) {
+        String initial = ConvergenceFuzzer.randomText(random, random.nextInt(20));
+        List<Site> sites = new ArrayList<>();
+        for (int i = 0; i < siteCount; i++) {
+            sites.add(new Site(1 + random.nextInt(3) * 1_000_000_007L + i, initial));
+        }
+
+        for (int step = 0; step < steps; step++) {
+            Site site = sites.get(random.nextInt(siteCount));
+            if (random.nextInt(10) < 4) {
+                TextOperation edit = ConvergenceFuzzer.randomOperation(random, site.editor);
+                if (edit.isNoop()) continue;
+                site.editor = edit.apply(site.editor);
+                byte[] encoded = site.document.applyLocal(edit).encode();
+                for (Site other : sites) {
+                    if (other == site) continue;
+                    other.inbox.add(encoded);
+                    if (random.nextInt(10) == 0) other.inbox.add(encoded); // 중복 배달
+                }
+            } else if (!site.inbox.isEmpty()) {
+                deliver(site, site.inbox.remove(random.nextInt(site.inbox.size())));
+            }
+        }
+        for (Site site : sites) {
+            while (!site.inbox.isEmpty()) {
+                deliver(site, site.inbox.remove(random.nextInt(site.inbox.size())));
+            }
+        }
+
+        String expected = sites.get(0).document.getText();
+        for (int i = 0; i < siteCount; i++) {
+            Site site = sites.get(i);
+            if (site.document.getPendingCount() != 0) {
+                return "site " + i + " still has " + site.document.getPendingCount() + " pending entries";
+            }
+            if (!site.document.getText().equals(expected)) {
+                return "site " + i + " diverged";
+            }
+            if (!site.editor.equals(expected)) {
+                return "site " + i + " editor edits do not match the document";
+            }
+            RgaDocument restored = RgaDocument.fromState(site.document.getSiteId() + 1, site.document.encodeState());
+            if (!restored.getText().equals(expected)) {
+                return "site " + i + " state round trip changed the document";
+            }
+        }
+        return null;
+    }
+
+    private static void deliver(Site site, byte[] encoded) {
+        for (TextOperation.Edit edit : site.document.applyRemote(CrdtUpdate.decode(encoded))) {
+            site.editor = site.editor.substring(0, edit.start) + edit.text + site.editor.substring(edit.end);
+        }
+    }
+
+    private CrdtConvergenceFuzzer() {
+    }
+}
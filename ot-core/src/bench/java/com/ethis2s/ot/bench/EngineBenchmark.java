@@ -0,0 +1,141 @@
+package com.ethis2s.ot.bench;
+
+import com.ethis2s.crdt.CrdtUpdate;
+import com.ethis2s.crdt.RgaDocument;
+import com.ethis2s.model.Operation;
+import com.ethis2s.model.TextOperation;
+import com.ethis2s.ot.UnconfirmedOperationQueue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 동시 편집이 많은 파일에서 OT 와 CRDT 엔진의 클라이언트 측 병합 비용을 비교합니다.
+ *
+ * <p>sites 명이 같은 문서에서 각자 opsPerSite 개의 편집을 동시에 한 상황에서, 한 사이트가
+ * 나머지 사이트의 편집을 모두 받아 반영하는 데 걸리는 시간을 잽니다.
+ * <ul>
+ *   <li>otMerge : 확정되지 않은 로컬 연산 opsPerSite 개가 큐에 있는 상태에서, 서버가 순서를 매긴 원격 연산들을 rebase</li>
+ *   <li>crdtMerge : 로컬 편집을 이미 반영한 RgaDocument 에 다른 사이트들의 변경 묶음을 적용 (서버 순서 불필요)</li>
+ * </ul>
+ * OT 쪽은 여기에 더해 서버 변환과 연산마다의 왕복 지연이 필요하다는 점을 감안해서 봐야 합니다.
+ * 실행: {@code mvn -Pbench package && java -jar target/benchmarks.jar EngineBenchmark}
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EngineBenchmark {
+
+    private static final int DOCUMENT_LENGTH = 2000;
+
+    @State(Scope.Thread)
+    public static class MergeState {
+        @Param({"2", "8", "32"})
+        int sites;
+
+        @Param({"16"})
+        int opsPerSite;
+
+        String base;
+        // OT: 로컬 연산과, 서버가 순서를 매겨 내려보낸 원격 연산들
+        List<TextOperation> localOps;
+        List<Operation> serverOps;
+        // CRDT: 로컬 편집 목록과, 다른 사이트들이 만든 인코딩된 변경 묶음
+        List<byte[]> remoteUpdates;
+
+        UnconfirmedOperationQueue queue;
+        RgaDocument document;
+
+        @Setup(Level.Trial)
+        public void generate() {
+            Random random = new Random(7);
+            base = ConvergenceFuzzer.randomText(random, DOCUMENT_LENGTH);
+
+            localOps = randomSequence(random, base, opsPerSite);
+
+            serverOps = new ArrayList<>();
+            String serverDocument = base;
+            for (int i = 0; i < (sites - 1) * opsPerSite; i++) {
+                TextOperation op = ConvergenceFuzzer.randomOperation(random, serverDocument);
+                serverDocument = op.apply(serverDocument);
+                serverOps.add(new Operation(op, -1, i + 1, "remote-" + i));
+            }
+
+            remoteUpdates = new ArrayList<>();
+            for (int site = 1; site < sites; site++) {
+                RgaDocument remote = new RgaDocument(1000 + site, base);
+                for (TextOperation op : randomSequence(random, base, opsPerSite)) {
+                    remoteUpdates.add(remote.applyLocal(op).encode());
+                }
+            }
+        }
+
+        @Setup(Level.Invocation)
+        public void reset() {
+            queue = new UnconfirmedOperationQueue(8);
+            for (int i = 0; i < localOps.size(); i++) {
+                queue.add(new Operation(localOps.get(i), -1, 0, "local-" + i), 0);
+            }
+            while (queue.pollSendable(0) != null) {
+                // 윈도우만큼 전송 상태로 만든다.
+            }
+
+            document = new RgaDocument(1, base);
+            for (TextOperation op : localOps) {
+                document.applyLocal(op);
+            }
+        }
+    }
+
+    private static List<TextOperation> randomSequence(Random random, String base, int count) {
+        List<TextOperation> ops = new ArrayList<>();
+        String text = base;
+        for (int i = 0; i < count; i++) {
+            TextOperation op = ConvergenceFuzzer.randomOperation(random, text);
+            text = op.apply(text);
+            ops.add(op);
+        }
+        return ops;
+    }
+
+    @Benchmark
+    public int otMerge(MergeState state) {
+        int applied = 0;
+        long version = 0;
+        for (Operation serverOp : state.serverOps) {
+            if (state.queue.rebase(serverOp, ++version) != null) applied++;
+        }
+        return applied;
+    }
+
+    @Benchmark
+    public int crdtMerge(MergeState state) {
+        int edits = 0;
+        for (byte[] update : state.remoteUpdates) {
+            edits += state.document.applyRemote(CrdtUpdate.decode(update)).size();
+        }
+        return edits;
+    }
+
+    @Benchmark
+    public byte[] crdtEncodeState(MergeState state) {
+        return state.document.encodeState();
+    }
+}
@@ -0,0 +1,295 @@
+package com.ethis2s.ot.bench;
+
+import com.ethis2s.model.FileTreeDelta;
+import com.ethis2s.model.FileTreeIndex;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * {@link FileTreeIndex#withChanges} 로 델타를 반영한 스냅샷이 같은 트리로 처음부터 만든 스냅샷과 같은지 무작위로 검사합니다.
+ *
+ * <p>참조 트리에 같은 변경을 적용하면서(맞지 않는 변경은 건너뜀) 묶음마다 다음을 비교합니다.
+ * <ul>
+ *   <li>노드 수와 폴더별 자식 이름, 폴더 여부, 자식 순서 (추가/이동한 노드는 폴더 끝에 붙음)</li>
+ *   <li>검색 결과의 경로 집합: 1~2 글자 접두사, 3 글자 이상 포함, '/' 가 있으면 전체 경로 포함</li>
+ * </ul>
+ * 묶음을 여러 번 쌓아 올리므로 얹어 둔 트라이그램 목록, 목록 합치기, 번호 다시 매기기 경로를 모두 거칩니다.
+ *
+ * <p>실행: {@code mvn -Pbench compile exec:java -Dbench.main=com.ethis2s.ot.bench.FileTreeIndexCheck -Dexec.args="<runs> <batches> <seed>"}
+ * 다르면 재현용 시드와 마지막 델타를 출력하고 종료 코드 1 로 끝납니다.
+ */
+public final class FileTreeIndexCheck {
+
+    private static final String NAME_ALPHABET = "abcAB._";
+    private static final String[] QUERIES = {"a", "b", "ab", "A.", "abc", "ab.", "bca", "a/b", "/a", "b._", "ca/"};
+
+    public static void main(String[] args) {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int batches = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+        long baseSeed = args.length > 2 ? Long.parseLong(args[2]) : System.nanoTime();
+
+        long start = System.nanoTime();
+        long totalChanges = 0;
+        for (int run = 0; run < runs; run++) {
+            long seed = baseSeed + run;
+            Random random = new Random(seed);
+            Node root = randomTree(random);
+            JSONObject delta = null;
+            String failure;
+            try {
+                FileTreeIndex index = FileTreeIndex.fromJson(root.toJson());
+                failure = compare(index, root);
+                for (int batch = 0; batch < batches && failure == null; batch++) {
+                    delta = randomDelta(random, root, batch);
+                    List<FileTreeDelta.Change> changes = FileTreeDelta.fromJson(delta).getChanges();
+                    for (FileTreeDelta.Change change : changes) {
+                        root.apply(change);
+                    }
+                    index = index.withChanges(changes);
+                    totalChanges += changes.size();
+                    failure = compare(index, root);
+                }
+            } catch (RuntimeException e) {
+                failure = e.toString();
+            }
+            if (failure != null) {
+                System.err.println("[FileTreeIndexCheck] Mismatch (seed=" + seed + ", batches=" + batches + "): " + failure);
+                if (delta != null) System.err.println("  last delta: " + delta);
+                System.exit(1);
+            }
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("[FileTreeIndexCheck] " + runs + " runs matched (baseSeed=" + baseSeed + ", "
+                + totalChanges + " changes, " + elapsedMs + " ms)");
+    }
+
+    private static String compare(FileTreeIndex index, Node root) {
+        FileTreeIndex rebuilt = FileTreeIndex.fromJson(root.toJson());
+        if (index.size() != root.count() || rebuilt.size() != root.count()) {
+            return "size " + index.size() + " (rebuilt " + rebuilt.size() + ") != " + root.count();
+        }
+        String structure = compareStructure(index, 0, root);
+        if (structure != null) return structure;
+        for (String query : QUERIES) {
+            TreeSet<String> expected = new TreeSet<>();
+            root.collectMatches(query.toLowerCase(Locale.ROOT), expected);
+            TreeSet<String> actual = paths(index, index.search(query, Integer.MAX_VALUE));
+            if (!actual.equals(expected) || !paths(rebuilt, rebuilt.search(query, Integer.MAX_VALUE)).equals(expected)) {
+                return "search \"" + query + "\" returned " + actual + ", expected " + expected;
+            }
+            if (index.search(query, 2).length != Math.min(2, expected.size())) {
+                return "search \"" + query + "\" ignored the limit";
+            }
+        }
+        return null;
+    }
+
+    private static String compareStructure(FileTreeIndex index, int node, Node expected) {
+        if (index.isFolder(node) != expected.folder) {
+            return index.pathOf(node) + " folder=" + index.isFolder(node) + ", expected " + expected.folder;
+        }
+        if (index.childCount(node) != expected.children.size()) {
+            return index.pathOf(node) + " has " + index.childCount(node) + " children, expected " + expected.children.size();
+        }
+        for (int i = 0; i < expected.children.size(); i++) {
+            int child = index.childAt(node, i);
+            Node expectedChild = expected.children.get(i);
+            if (!expectedChild.name.equals(index.nameOf(child)) || index.parentOf(child) != node
+                    || !expectedChild.path().equals(index.pathOf(child))) {
+                return "child " + i + " of \"" + index.pathOf(node) + "\" is " + index.pathOf(child)
+                        + ", expected " + expectedChild.path();
+            }
+            String failure = compareStructure(index, child, expectedChild);
+            if (failure != null) return failure;
+        }
+        return null;
+    }
+
+    private static TreeSet<String> paths(FileTreeIndex index, int[] nodes) {
+        TreeSet<String> paths = new TreeSet<>();
+        for (int node : nodes) {
+            paths.add(index.pathOf(node));
+        }
+        return paths;
+    }
+
+    // --- 무작위 입력 ---
+
+    private static Node randomTree(Random random) {
+        Node root = new Node("project", true, null);
+        List<Node> folders = new ArrayList<>(List.of(root));
+        int size = random.nextInt(random.nextInt(4) == 0 ? 600 : 60);
+        for (int i = 0; i < size; i++) {
+            Node parent = folders.get(random.nextInt(folders.size()));
+            String name = randomName(random);
+            if (parent.child(name) != null) continue;
+            Node node = new Node(name, random.nextInt(3) == 0, parent);
+            parent.children.add(node);
+            if (node.folder) folders.add(node);
+        }
+        return root;
+    }
+
+    /** 대부분은 맞는 변경이고, 일부는 없는 경로나 겹치는 이름처럼 건너뛰어야 하는 변경이다. */
+    private static JSONObject randomDelta(Random random, Node root, int batch) {
+        List<Node> nodes = new ArrayList<>();
+        root.collect(nodes);
+        JSONArray changes = new JSONArray();
+        int count = 1 + random.nextInt(random.nextInt(10) == 0 ? 40 : 5);
+        for (int i = 0; i < count; i++) {
+            Node node = nodes.get(random.nextInt(nodes.size()));
+            String path = (node == root || random.nextInt(10) == 0)
+                    ? node.path() + "/" + randomName(random) // 없는 경로
+                    : node.path();
+            if (path.startsWith("/")) path = path.substring(1);
+            JSONObject change = new JSONObject();
+            switch (random.nextInt(4)) {
+                case 0 -> change.put("op", "add").put("path", path + "/" + randomName(random))
+                        .put("type", random.nextBoolean() ? "folder" : "file");
+                case 1 -> change.put("op", "remove").put("path", path);
+                case 2 -> change.put("op", "rename").put("path", path).put("new_name", randomName(random));
+                default -> {
+                    Node target = nodes.get(random.nextInt(nodes.size()));
+                    change.put("op", "move").put("path", path).put("new_parent", target.path());
+                }
+            }
+            changes.put(change);
+        }
+        return new JSONObject().put("project_id", "p").put("from_version", batch).put("version", batch + 1)
+                .put("changes", changes);
+    }
+
+    private static String randomName(Random random) {
+        int length = 1 + random.nextInt(8);
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(NAME_ALPHABET.charAt(random.nextInt(NAME_ALPHABET.length())));
+        }
+        return sb.toString();
+    }
+
+    /** 참조 트리. FileTreeIndex 의 델타 규칙을 노드 객체로 그대로 옮겼다. */
+    private static final class Node {
+        String name;
+        final boolean folder;
+        Node parent;
+        final List<Node> children = new ArrayList<>();
+
+        Node(String name, boolean folder, Node parent) {
+            this.name = name;
+            this.folder = folder;
+            this.parent = parent;
+        }
+
+        void apply(FileTreeDelta.Change change) {
+            String path = change.getPath();
+            int slash = path.lastIndexOf('/');
+            Node parent = find(slash < 0 ? "" : path.substring(0, slash));
+            String name = path.substring(slash + 1);
+            Node node = (parent != null) ? parent.child(name) : null;
+            switch (change.getOp()) {
+                case ADD -> {
+                    if (parent != null && parent.folder && node == null) {
+                        parent.children.add(new Node(name, "folder".equals(change.getType()), parent));
+                    }
+                }
+                case REMOVE -> {
+                    if (node != null) parent.children.remove(node);
+                }
+                case RENAME -> {
+                    if (node != null && parent.child(change.getNewName()) == null) node.name = change.getNewName();
+                }
+                case MOVE -> {
+                    Node target = find(change.getNewParent());
+                    if (node == null || target == null || !target.folder || target.child(name) != null) return;
+                    for (Node p = target; p != null; p = p.parent) {
+                        if (p == node) return;
+                    }
+                    parent.children.remove(node);
+                    target.children.add(node);
+                    node.parent = target;
+                }
+            }
+        }
+
+        Node find(String path) {
+            Node current = this;
+            if (path.isEmpty()) return current;
+            for (String part : path.split("/")) {
+                current = current.child(part);
+                if (current == null) return null;
+            }
+            return current;
+        }
+
+        Node child(String name) {
+            for (Node child : children) {
+                if (child.name.equals(name)) return child;
+            }
+            return null;
+        }
+
+        String path() {
+            if (parent == null) return "";
+            String parentPath = parent.path();
+            return parentPath.isEmpty() ? name : parentPath + "/" + name;
+        }
+
+        int count() {
+            int count = 1;
+            for (Node child : children) {
+                count += child.count();
+            }
+            return count;
+        }
+
+        void collect(List<Node> nodes) {
+            nodes.add(this);
+            for (Node child : children) {
+                child.collect(nodes);
+            }
+        }
+
+        // FileTreeIndex.search 의 설명대로 루트를 뺀 모든 노드를 직접 확인한다.
+        void collectMatches(String q, TreeSet<String> matches) {
+            for (Node child : children) {
+                String lowerName = child.name.toLowerCase(Locale.ROOT);
+                String lowerPath = child.path().toLowerCase(Locale.ROOT);
+                boolean matched;
+                if (q.indexOf('/') < 0) {
+                    matched = (q.length() < 3) ? lowerName.startsWith(q) : lowerName.contains(q);
+                } else {
+                    String trimmed = q.endsWith("/") ? q.substring(0, q.length() - 1) : q;
+                    String segment = trimmed.substring(trimmed.lastIndexOf('/') + 1);
+                    boolean segmentMatched = !segment.isEmpty()
+                            && ((segment.length() < 3) ? lowerName.startsWith(segment) : lowerName.contains(segment));
+                    matched = segmentMatched && lowerPath.contains(q);
+                }
+                if (matched) matches.add(child.path());
+                child.collectMatches(q, matches);
+            }
+        }
+
+        JSONObject toJson() {
+            JSONObject json = new JSONObject().put("name", name);
+            if (folder) {
+                JSONArray array = new JSONArray();
+                for (Node child : children) {
+                    array.put(child.toJson());
+                }
+                json.put("children", array);
+            }
+            return json;
+        }
+    }
+
+    private FileTreeIndexCheck() {
+    }
+}
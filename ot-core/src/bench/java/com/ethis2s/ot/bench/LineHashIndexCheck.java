@@ -0,0 +1,109 @@
+package com.ethis2s.ot.bench;
+
+import com.ethis2s.ot.LineHashIndex;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * {@link LineHashIndex} 의 점진 갱신이 문서 전체로 다시 계산한 체크섬과 같은지 무작위로 검사합니다.
+ *
+ * <p>각 편집은 HybridManager 와 같이 편집 위치의 줄 번호와 지운/넣은 줄바꿈 수로 applyChange 를 부르고,
+ * 매 편집 뒤 줄 수, 문서 다이제스트, 블록 다이제스트를 두 가지와 비교합니다.
+ * <ul>
+ *   <li>같은 문서로 {@link LineHashIndex#reset} 한 색인</li>
+ *   <li>클래스 문서의 규칙을 그대로 옮긴 참조 계산 (서버가 계산하는 값)</li>
+ * </ul>
+ *
+ * <p>실행: {@code mvn -Pbench compile exec:java -Dbench.main=com.ethis2s.ot.bench.LineHashIndexCheck -Dexec.args="<runs> <steps> <seed>"}
+ * 다르면 재현용 시드와 문서를 출력하고 종료 코드 1 로 끝납니다.
+ */
+public final class LineHashIndexCheck {
+
+    private static final int[] LINES_PER_BLOCK = {1, 3, 64};
+
+    public static void main(String[] args) {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int steps = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        long baseSeed = args.length > 2 ? Long.parseLong(args[2]) : System.nanoTime();
+
+        long start = System.nanoTime();
+        for (int run = 0; run < runs; run++) {
+            long seed = baseSeed + run;
+            Random random = new Random(seed);
+            String document = ConvergenceFuzzer.randomText(random, random.nextInt(40));
+            LineHashIndex index = new LineHashIndex();
+            index.reset(document);
+            String failure = compare(index, document);
+            for (int step = 0; step < steps && failure == null; step++) {
+                int position = random.nextInt(document.length() + 1);
+                int removedLength = random.nextInt(Math.min(8, document.length() - position) + 1);
+                String removed = document.substring(position, position + removedLength);
+                String inserted = ConvergenceFuzzer.randomText(random, random.nextInt(8));
+                document = document.substring(0, position) + inserted + document.substring(position + removedLength);
+
+                String[] lines = document.split("\n", -1);
+                index.applyChange(countLineBreaks(document.substring(0, position)), countLineBreaks(removed),
+                        countLineBreaks(inserted), line -> lines[line]);
+                failure = compare(index, document);
+            }
+            if (failure != null) {
+                System.err.println("[LineHashIndexCheck] Mismatch (seed=" + seed + ", steps=" + steps + "): " + failure);
+                System.err.println("  document: \"" + document.replace("\n", "\\n") + "\"");
+                System.exit(1);
+            }
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("[LineHashIndexCheck] " + runs + " runs matched (baseSeed=" + baseSeed + ", " + elapsedMs + " ms)");
+    }
+
+    private static String compare(LineHashIndex index, String document) {
+        LineHashIndex rebuilt = new LineHashIndex();
+        rebuilt.reset(document);
+        String[] lines = document.split("\n", -1);
+        if (index.getLineCount() != lines.length || rebuilt.getLineCount() != lines.length) {
+            return "line count " + index.getLineCount() + " (rebuilt " + rebuilt.getLineCount() + ") != " + lines.length;
+        }
+        long expected = referenceDigest(lines, 0, lines.length);
+        if (index.digest() != expected || rebuilt.digest() != expected) {
+            return "digest " + Long.toHexString(index.digest()) + " (rebuilt " + Long.toHexString(rebuilt.digest())
+                    + ") != " + Long.toHexString(expected);
+        }
+        for (int linesPerBlock : LINES_PER_BLOCK) {
+            long[] blocks = new long[(lines.length + linesPerBlock - 1) / linesPerBlock];
+            for (int i = 0; i < blocks.length; i++) {
+                int from = i * linesPerBlock;
+                blocks[i] = referenceDigest(lines, from, Math.min(lines.length, from + linesPerBlock));
+            }
+            if (!Arrays.equals(index.blockDigests(linesPerBlock), blocks)
+                    || !Arrays.equals(rebuilt.blockDigests(linesPerBlock), blocks)) {
+                return "block digests differ (linesPerBlock=" + linesPerBlock + ")";
+            }
+        }
+        return null;
+    }
+
+    // LineHashIndex 클래스 문서의 규칙: 줄마다 64비트 FNV-1a, 그 줄 해시들을 다시 FNV-1a 방식으로 접는다.
+    private static long referenceDigest(String[] lines, int from, int to) {
+        long digest = LineHashIndex.FNV_OFFSET;
+        for (int i = from; i < to; i++) {
+            long hash = LineHashIndex.FNV_OFFSET;
+            for (int j = 0; j < lines[i].length(); j++) {
+                hash = (hash ^ lines[i].charAt(j)) * LineHashIndex.FNV_PRIME;
+            }
+            digest = (digest ^ hash) * LineHashIndex.FNV_PRIME;
+        }
+        return digest;
+    }
+
+    private static int countLineBreaks(String text) {
+        int count = 0;
+        for (int i = text.indexOf('\n'); i >= 0; i = text.indexOf('\n', i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    private LineHashIndexCheck() {
+    }
+}
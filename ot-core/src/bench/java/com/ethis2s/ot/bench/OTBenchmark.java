@@ -0,0 +1,114 @@
+package com.ethis2s.ot.bench;
+
+import com.ethis2s.model.Operation;
+import com.ethis2s.model.TextOperation;
+import com.ethis2s.ot.OperationTransformer;
+import com.ethis2s.ot.UnconfirmedOperationQueue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OT 코어 JMH 벤치마크.
+ * <ul>
+ *   <li>transform / operationTransform : 초당 변환 횟수 (무작위 복합 연산 쌍)</li>
+ *   <li>rebase : 확정되지 않은 연산 큐 길이(queueDepth)에 따른 원격 연산 1개 재배치 비용</li>
+ * </ul>
+ * 실행: {@code mvn -Pbench package && java -jar target/benchmarks.jar OTBenchmark}
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class OTBenchmark {
+
+    private static final int PAIRS = 1024;
+
+    @State(Scope.Thread)
+    public static class TransformState {
+        TextOperation[] left = new TextOperation[PAIRS];
+        TextOperation[] right = new TextOperation[PAIRS];
+        Operation[] leftOps = new Operation[PAIRS];
+        Operation[] rightOps = new Operation[PAIRS];
+        int index;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            Random random = new Random(42);
+            for (int i = 0; i < PAIRS; i++) {
+                String document = ConvergenceFuzzer.randomText(random, 200 + random.nextInt(800));
+                left[i] = ConvergenceFuzzer.randomOperation(random, document);
+                right[i] = ConvergenceFuzzer.randomOperation(random, document);
+                leftOps[i] = new Operation(left[i], 0, 0, "a-" + i);
+                rightOps[i] = new Operation(right[i], 0, 0, "b-" + i);
+            }
+        }
+
+        int next() {
+            index = (index + 1) & (PAIRS - 1);
+            return index;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class RebaseState {
+        @Param({"1", "16", "128", "1024"})
+        int queueDepth;
+
+        UnconfirmedOperationQueue queue;
+        Operation serverOp;
+        long version;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            // 문서 끝에서 한 글자씩 입력해 쌓인 로컬 연산들. 절반은 전송 중(in-flight), 나머지는 미전송.
+            queue = new UnconfirmedOperationQueue(Math.max(1, queueDepth / 2));
+            int documentLength = 1000;
+            for (int i = 0; i < queueDepth; i++) {
+                Operation op = new Operation(new TextOperation().retain(documentLength + i).insert("x"), documentLength + i + 1, 0, "me-" + i);
+                queue.add(op, 0);
+            }
+            while (queue.pollSendable(0) != null) {
+                // 윈도우가 찰 때까지 전송 상태로 만든다.
+            }
+            // 원격 사용자가 문서 중간에 입력한 연산
+            serverOp = new Operation(new TextOperation().retain(documentLength / 2).insert("y"), documentLength / 2 + 1, 1, "other-0");
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public TextOperation.Pair transform(TransformState state) {
+        int i = state.next();
+        return TextOperation.transform(state.left[i], state.right[i], true);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Operation operationTransform(TransformState state) {
+        int i = state.next();
+        return OperationTransformer.transform(state.leftOps[i], state.rightOps[i]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Operation rebase(RebaseState state) {
+        // rebase 후에도 큐 길이는 그대로이므로 같은 큐에 반복 적용해도 비용이 유지된다.
+        return state.queue.rebase(state.serverOp, ++state.version);
+    }
+}
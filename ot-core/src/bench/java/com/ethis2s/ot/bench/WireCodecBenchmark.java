@@ -0,0 +1,143 @@
+package com.ethis2s.ot.bench;
+
+import com.ethis2s.model.TextOperation;
+import com.ethis2s.wire.CursorMessage;
+import com.ethis2s.wire.EditMessage;
+import com.ethis2s.wire.WireCodec;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 편집/커서 패킷 페이로드를 만드는(보내기) / 읽는(받기) 비용을 기존 JSON 경로와 바이너리 코덱으로 비교합니다.
+ *
+ * <p>JSON 쪽은 클라이언트가 하던 그대로 org.json 객체를 만들어 문자열 → UTF-8 로 바꾸고, 받을 때는 new String → new JSONObject 로 읽습니다.
+ * 바이너리 쪽은 연결이 이어지는 동안의 정상 상태(문자열이 이미 intern 된 상태)를 잽니다.
+ * 할당량은 {@code -prof gc} 로 함께 보는 것을 권장합니다.
+ * 실행: {@code mvn -Pbench package && java -jar target/benchmarks.jar WireCodecBenchmark -prof gc}
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class WireCodecBenchmark {
+
+    private static final String REQUESTER = "9f3c2a7e-user";
+    private static final String PROJECT_ID = "b61d0f44-8a1e-4c55-9d2b-3f7a1c0e9b12";
+    private static final String OWNER = "owner#1234";
+    private static final String PATH = "src/main/java/com/example/service/OrderService.java";
+
+    EditMessage insert;
+    EditMessage compound;
+    CursorMessage cursor;
+
+    WireCodec.Encoder encoder;
+    WireCodec.Decoder decoder;
+
+    byte[] insertJson;
+    byte[] compoundJson;
+    byte[] cursorJson;
+    byte[] insertBinary;
+    byte[] compoundBinary;
+    byte[] cursorBinary;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        insert = EditMessage.insert(REQUESTER, PROJECT_ID, OWNER, PATH, 18234, "e", 18235, 4821, "nick#1234-311");
+        compound = EditMessage.compound(REQUESTER, PROJECT_ID, OWNER, PATH,
+            new TextOperation().retain(1200).delete(5, null).insert("count").retain(340).delete(5, null).insert("count"),
+            1210, 4822, "nick#1234-312");
+        cursor = new CursorMessage(REQUESTER, PROJECT_ID, OWNER, PATH, 18235);
+
+        encoder = new WireCodec.Encoder();
+        decoder = new WireCodec.Decoder();
+        // 첫 메시지가 문자열들을 정의한다. 이후 메시지는 ID 만 담는다.
+        decoder.decodeEdit(encoder.encodeEdit(insert));
+
+        insertJson = insert.toJson().toString().getBytes(StandardCharsets.UTF_8);
+        compoundJson = compound.toJson().toString().getBytes(StandardCharsets.UTF_8);
+        cursorJson = cursor.toJson().toString().getBytes(StandardCharsets.UTF_8);
+        insertBinary = encoder.encodeEdit(insert);
+        compoundBinary = encoder.encodeEdit(compound);
+        cursorBinary = encoder.encodeCursor(cursor);
+    }
+
+    // --- 보내기 ---
+
+    @Benchmark
+    public byte[] insertEncodeJson() {
+        return insert.toJson().toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] insertEncodeBinary() {
+        return encoder.encodeEdit(insert);
+    }
+
+    @Benchmark
+    public byte[] compoundEncodeJson() {
+        return compound.toJson().toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] compoundEncodeBinary() {
+        return encoder.encodeEdit(compound);
+    }
+
+    @Benchmark
+    public byte[] cursorEncodeJson() {
+        return cursor.toJson().toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] cursorEncodeBinary() {
+        return encoder.encodeCursor(cursor);
+    }
+
+    // --- 받기 ---
+
+    @Benchmark
+    public EditMessage insertDecodeJson() {
+        return EditMessage.fromJson(new JSONObject(new String(insertJson, StandardCharsets.UTF_8)));
+    }
+
+    @Benchmark
+    public EditMessage insertDecodeBinary() {
+        return decoder.decodeEdit(insertBinary);
+    }
+
+    @Benchmark
+    public EditMessage compoundDecodeJson() {
+        return EditMessage.fromJson(new JSONObject(new String(compoundJson, StandardCharsets.UTF_8)));
+    }
+
+    @Benchmark
+    public EditMessage compoundDecodeBinary() {
+        return decoder.decodeEdit(compoundBinary);
+    }
+
+    @Benchmark
+    public CursorMessage cursorDecodeJson() {
+        return CursorMessage.fromJson(new JSONObject(new String(cursorJson, StandardCharsets.UTF_8)));
+    }
+
+    @Benchmark
+    public CursorMessage cursorDecodeBinary() {
+        return decoder.decodeCursor(cursorBinary);
+    }
+}
@@ -0,0 +1,134 @@
+package com.ethis2s.crdt;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link RgaDocument} 사이에 주고받는 변경 묶음입니다. 삽입과 삭제 항목의 나열이며,
+ * 같은 묶음을 여러 번 받거나 다른 사이트의 묶음과 순서가 바뀌어 도착해도 결과는 같습니다.
+ *
+ * <p>바이너리 형식 (모든 정수는 {@link Varint}):
+ * <pre>
+ *   update  := VERSION entryCount entry*
+ *   insert  := 1 site seq lamport originSite (originSeq + 1) text    (originSeq + 1 == 0 이면 문서 맨 앞)
+ *   delete  := 2 site seq length
+ * </pre>
+ */
+public final class CrdtUpdate {
+
+    private static final int VERSION = 1;
+    private static final int TAG_INSERT = 1;
+    private static final int TAG_DELETE = 2;
+
+    /** 문자 범위 [seq, seq + text.length()) 를 origin 문자 바로 뒤에 삽입합니다. 각 문자의 lamport 는 1씩 증가합니다. */
+    public static final class Insert {
+        public final long site;
+        public final long seq;
+        public final long lamport;
+        public final long originSite;
+        public final long originSeq; // 0 보다 작으면 문서 맨 앞
+        public final String text;
+
+        public Insert(long site, long seq, long lamport, long originSite, long originSeq, String text) {
+            this.site = site;
+            this.seq = seq;
+            this.lamport = lamport;
+            this.originSite = originSite;
+            this.originSeq = originSeq;
+            this.text = text;
+        }
+    }
+
+    /** site 가 삽입한 문자 범위 [seq, seq + length) 를 삭제(tombstone)합니다. */
+    public static final class Delete {
+        public final long site;
+        public final long seq;
+        public final int length;
+
+        public Delete(long site, long seq, int length) {
+            this.site = site;
+            this.seq = seq;
+            this.length = length;
+        }
+    }
+
+    // Insert 또는 Delete
+    private final List<Object> entries = new ArrayList<>();
+
+    public CrdtUpdate add(Insert insert) {
+        entries.add(insert);
+        return this;
+    }
+
+    public CrdtUpdate add(Delete delete) {
+        entries.add(delete);
+        return this;
+    }
+
+    public CrdtUpdate addAll(CrdtUpdate other) {
+        entries.addAll(other.entries);
+        return this;
+    }
+
+    public List<Object> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public byte[] encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Varint.writeLong(out, VERSION);
+        Varint.writeLong(out, entries.size());
+        for (Object entry : entries) {
+            if (entry instanceof Insert) {
+                Insert insert = (Insert) entry;
+                Varint.writeLong(out, TAG_INSERT);
+                Varint.writeLong(out, insert.site);
+                Varint.writeLong(out, insert.seq);
+                Varint.writeLong(out, insert.lamport);
+                Varint.writeLong(out, insert.originSite);
+                Varint.writeLong(out, insert.originSeq + 1);
+                Varint.writeString(out, insert.text);
+            } else {
+                Delete delete = (Delete) entry;
+                Varint.writeLong(out, TAG_DELETE);
+                Varint.writeLong(out, delete.site);
+                Varint.writeLong(out, delete.seq);
+                Varint.writeLong(out, delete.length);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    public static CrdtUpdate decode(byte[] bytes) {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        int version = Varint.readInt(in);
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported CRDT update version: " + version);
+        }
+        CrdtUpdate update = new CrdtUpdate();
+        int count = Varint.readInt(in);
+        for (int i = 0; i < count; i++) {
+            int tag = Varint.readInt(in);
+            if (tag == TAG_INSERT) {
+                long site = Varint.readLong(in);
+                long seq = Varint.readLong(in);
+                long lamport = Varint.readLong(in);
+                long originSite = Varint.readLong(in);
+                long originSeq = Varint.readLong(in) - 1;
+                update.add(new Insert(site, seq, lamport, originSite, originSeq, Varint.readString(in)));
+            } else if (tag == TAG_DELETE) {
+                update.add(new Delete(Varint.readLong(in), Varint.readLong(in), Varint.readInt(in)));
+            } else {
+                throw new IllegalArgumentException("Unknown CRDT entry tag: " + tag);
+            }
+        }
+        return update;
+    }
+}
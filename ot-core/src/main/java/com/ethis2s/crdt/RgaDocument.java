@@ -0,0 +1,397 @@
+package com.ethis2s.crdt;
+
+import com.ethis2s.model.TextOperation;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * RGA(Replicated Growable Array) 방식의 텍스트 시퀀스 CRDT 입니다.
+ *
+ * <p>모든 문자는 (site, seq) 로 식별되고, 삽입 당시 바로 왼쪽 문자(origin)와 Lamport 시각을 가집니다.
+ * 원격 삽입은 origin 바로 뒤에서 시작해 자신보다 시각이 큰(더 나중에 같은 자리에 들어간) 문자들을 건너뛴 위치에 들어가며,
+ * 삭제는 문자를 지우지 않고 tombstone 으로 표시합니다. 따라서 같은 변경 묶음들을 어떤 순서로 받아도
+ * (각 삽입의 origin 이 먼저 도착하기만 하면) 모든 사이트의 문서가 같아지고, 로컬 편집은 서버 왕복 없이 바로 확정됩니다.
+ * origin 이나 삭제 대상이 아직 도착하지 않은 항목은 보류했다가 도착하면 적용합니다.
+ *
+ * <p>연속으로 입력한 문자들은 하나의 항목(run)으로 묶어 보관하고, 중간에 다른 삽입/삭제가 들어오면 그 지점에서 나눕니다.
+ * 문서 상태는 {@link #encodeState()} 로 압축된 바이너리로 내보내고 {@link #fromState} 로 복원할 수 있습니다.
+ *
+ * <p>스레드 안전하지 않으므로 한 스레드(클라이언트에서는 FX 스레드)에서만 사용해야 합니다.
+ */
+public final class RgaDocument {
+
+    /** 처음 불러온 파일 내용을 삽입한 것으로 간주하는 사이트. 모든 사이트가 같은 초기 항목을 만들도록 고정한다. */
+    public static final long GENESIS_SITE = 0;
+
+    private static final int STATE_VERSION = 1;
+
+    private static final class Item {
+        final long site;
+        final long seq;
+        final long lamport;
+        final long originSite;
+        final long originSeq; // 0 보다 작으면 문서 맨 앞
+        int length;
+        String text; // null 이면 삭제됨 (tombstone)
+
+        Item(long site, long seq, long lamport, long originSite, long originSeq, int length, String text) {
+            this.site = site;
+            this.seq = seq;
+            this.lamport = lamport;
+            this.originSite = originSite;
+            this.originSeq = originSeq;
+            this.length = length;
+            this.text = text;
+        }
+
+        boolean isDeleted() {
+            return text == null;
+        }
+    }
+
+    private final long siteId;
+    private long nextSeq = 0;
+    private long lamport = 0;
+    private int visibleLength = 0;
+
+    // 문서 순서대로의 항목 목록 (tombstone 포함)
+    private final List<Item> items = new ArrayList<>();
+    // site → (run 시작 seq → 항목). 문자 (site, seq) 가 속한 항목을 floorEntry 로 찾는다.
+    private final Map<Long, TreeMap<Long, Item>> itemsById = new HashMap<>();
+    // origin 이나 삭제 대상이 아직 없어 보류된 항목
+    private final List<Object> pending = new ArrayList<>();
+
+    /**
+     * @param siteId 이 사이트의 고유 ID (세션마다 달라야 하며 {@link #GENESIS_SITE} 는 사용할 수 없다)
+     * @param initialText 모든 사이트가 같은 내용으로 시작하는 초기 문서
+     */
+    public RgaDocument(long siteId, String initialText) {
+        if (siteId == GENESIS_SITE) {
+            throw new IllegalArgumentException("siteId " + GENESIS_SITE + " is reserved for the initial document");
+        }
+        this.siteId = siteId;
+        if (!initialText.isEmpty()) {
+            addItem(items.size(), new Item(GENESIS_SITE, 0, 0, GENESIS_SITE, -1, initialText.length(), initialText));
+            visibleLength = initialText.length();
+        }
+    }
+
+    public long getSiteId() {
+        return siteId;
+    }
+
+    public int length() {
+        return visibleLength;
+    }
+
+    /** tombstone 을 포함한 내부 항목(run) 수 */
+    public int getItemCount() {
+        return items.size();
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public String getText() {
+        StringBuilder sb = new StringBuilder(visibleLength);
+        for (Item item : items) {
+            if (!item.isDeleted()) sb.append(item.text);
+        }
+        return sb.toString();
+    }
+
+    // --- 로컬 편집 (문서에 바로 반영하고, 다른 사이트로 보낼 변경을 반환) ---
+
+    public CrdtUpdate localInsert(int position, String text) {
+        CrdtUpdate update = new CrdtUpdate();
+        if (text.isEmpty()) return update;
+        long originSite = GENESIS_SITE;
+        long originSeq = -1;
+        if (position > 0) {
+            int remaining = position - 1;
+            for (Item item : items) {
+                if (item.isDeleted()) continue;
+                if (remaining < item.length) {
+                    originSite = item.site;
+                    originSeq = item.seq + remaining;
+                    break;
+                }
+                remaining -= item.length;
+            }
+        }
+        CrdtUpdate.Insert insert = new CrdtUpdate.Insert(siteId, nextSeq, lamport + 1, originSite, originSeq, text);
+        nextSeq += text.length();
+        integrate(insert, null);
+        return update.add(insert);
+    }
+
+    public CrdtUpdate localDelete(int position, int length) {
+        CrdtUpdate update = new CrdtUpdate();
+        int visible = 0;
+        int end = position + length;
+        for (Item item : items) {
+            if (visible >= end) break;
+            if (item.isDeleted()) continue;
+            int from = Math.max(position, visible);
+            int to = Math.min(end, visible + item.length);
+            if (from < to) {
+                update.add(new CrdtUpdate.Delete(item.site, item.seq + (from - visible), to - from));
+            }
+            visible += item.length;
+        }
+        for (Object entry : update.getEntries()) {
+            delete((CrdtUpdate.Delete) entry, null);
+        }
+        return update;
+    }
+
+    /** 에디터에서 일어난 편집(원본 좌표 기준)을 뒤에서부터 반영합니다. */
+    public CrdtUpdate applyLocal(TextOperation op) {
+        CrdtUpdate update = new CrdtUpdate();
+        List<TextOperation.Edit> edits = op.toEdits();
+        for (int i = edits.size() - 1; i >= 0; i--) {
+            TextOperation.Edit edit = edits.get(i);
+            if (edit.end > edit.start) update.addAll(localDelete(edit.start, edit.end - edit.start));
+            if (!edit.text.isEmpty()) update.addAll(localInsert(edit.start, edit.text));
+        }
+        return update;
+    }
+
+    // --- 원격 변경 ---
+
+    /**
+     * 다른 사이트의 변경을 반영합니다.
+     * @return 화면 문서에 순서대로 적용해야 하는 편집 목록 (각 편집의 좌표는 앞 편집이 적용된 문서 기준)
+     */
+    public List<TextOperation.Edit> applyRemote(CrdtUpdate update) {
+        List<TextOperation.Edit> edits = new ArrayList<>();
+        for (Object entry : update.getEntries()) {
+            if (canApply(entry)) {
+                apply(entry, edits);
+            } else {
+                pending.add(entry);
+            }
+        }
+        // 보류 중이던 항목 중 이제 적용할 수 있는 것이 없을 때까지 반복한다.
+        boolean progressed = !pending.isEmpty();
+        while (progressed) {
+            progressed = false;
+            for (int i = 0; i < pending.size(); i++) {
+                if (canApply(pending.get(i))) {
+                    apply(pending.remove(i--), edits);
+                    progressed = true;
+                }
+            }
+        }
+        return edits;
+    }
+
+    private boolean canApply(Object entry) {
+        if (entry instanceof CrdtUpdate.Insert) {
+            CrdtUpdate.Insert insert = (CrdtUpdate.Insert) entry;
+            return insert.originSeq < 0 || find(insert.originSite, insert.originSeq) != null;
+        }
+        CrdtUpdate.Delete delete = (CrdtUpdate.Delete) entry;
+        long seq = delete.seq;
+        long end = delete.seq + delete.length;
+        while (seq < end) {
+            Item item = find(delete.site, seq);
+            if (item == null) return false;
+            seq = item.seq + item.length;
+        }
+        return true;
+    }
+
+    private void apply(Object entry, List<TextOperation.Edit> edits) {
+        if (entry instanceof CrdtUpdate.Insert) {
+            integrate((CrdtUpdate.Insert) entry, edits);
+        } else {
+            delete((CrdtUpdate.Delete) entry, edits);
+        }
+    }
+
+    private void integrate(CrdtUpdate.Insert insert, List<TextOperation.Edit> edits) {
+        if (find(insert.site, insert.seq) != null) {
+            return; // 이미 반영된 삽입 (중복 수신)
+        }
+        int start = 0;
+        if (insert.originSeq >= 0) {
+            Item origin = find(insert.originSite, insert.originSeq);
+            int offset = (int) (insert.originSeq - origin.seq);
+            if (offset < origin.length - 1) {
+                split(origin, offset + 1);
+            }
+            start = items.indexOf(origin) + 1;
+        }
+        // 같은 origin 뒤에 동시에 삽입된 문자들 중 시각이 큰 쪽(과 그 뒤에 이어진 문자들)을 건너뛴다.
+        int index = start;
+        while (index < items.size() && isLaterThan(items.get(index), insert)) {
+            index++;
+        }
+
+        int length = insert.text.length();
+        lamport = Math.max(lamport, insert.lamport + length - 1);
+        if (edits != null) {
+            int position = visibleOffsetOf(index);
+            edits.add(new TextOperation.Edit(position, position, insert.text));
+        }
+        visibleLength += length;
+
+        // 같은 사이트가 이어서 입력한 문자면 앞 항목을 늘린다. (run 유지)
+        if (index == start && index > 0) {
+            Item previous = items.get(index - 1);
+            if (!previous.isDeleted() && previous.site == insert.site
+                    && previous.seq + previous.length == insert.seq
+                    && previous.lamport + previous.length == insert.lamport
+                    && insert.originSite == previous.site && insert.originSeq == insert.seq - 1) {
+                previous.text = previous.text + insert.text;
+                previous.length += length;
+                return;
+            }
+        }
+        addItem(index, new Item(insert.site, insert.seq, insert.lamport, insert.originSite, insert.originSeq, length, insert.text));
+    }
+
+    private void delete(CrdtUpdate.Delete delete, List<TextOperation.Edit> edits) {
+        long seq = delete.seq;
+        long end = delete.seq + delete.length;
+        while (seq < end) {
+            Item item = find(delete.site, seq);
+            int offset = (int) (seq - item.seq);
+            if (offset > 0) {
+                item = split(item, offset);
+            }
+            int take = (int) Math.min(item.length, end - seq);
+            if (take < item.length) {
+                split(item, take);
+            }
+            if (!item.isDeleted()) {
+                if (edits != null) {
+                    int position = visibleOffsetOf(items.indexOf(item));
+                    edits.add(new TextOperation.Edit(position, position + take, ""));
+                }
+                item.text = null;
+                visibleLength -= take;
+            }
+            seq += take;
+        }
+    }
+
+    // 시각(lamport, site)이 더 큰 항목이 origin 에 더 가깝게 놓인다.
+    private static boolean isLaterThan(Item item, CrdtUpdate.Insert insert) {
+        if (item.lamport != insert.lamport) return item.lamport > insert.lamport;
+        return item.site > insert.site;
+    }
+
+    private Item find(long site, long seq) {
+        TreeMap<Long, Item> runs = itemsById.get(site);
+        if (runs == null) return null;
+        Map.Entry<Long, Item> entry = runs.floorEntry(seq);
+        if (entry == null) return null;
+        Item item = entry.getValue();
+        return seq < item.seq + item.length ? item : null;
+    }
+
+    // item 을 offset 에서 둘로 나누고 오른쪽 항목을 반환한다. 오른쪽 첫 문자의 origin 은 왼쪽 마지막 문자다.
+    private Item split(Item item, int offset) {
+        Item right = new Item(item.site, item.seq + offset, item.lamport + offset, item.site, item.seq + offset - 1,
+            item.length - offset, item.isDeleted() ? null : item.text.substring(offset));
+        item.length = offset;
+        if (!item.isDeleted()) item.text = item.text.substring(0, offset);
+        addItem(items.indexOf(item) + 1, right);
+        return right;
+    }
+
+    private void addItem(int index, Item item) {
+        items.add(index, item);
+        itemsById.computeIfAbsent(item.site, k -> new TreeMap<>()).put(item.seq, item);
+        // 로컬 삽입이 이미 있는 모든 문자보다 나중 시각을 갖도록 한다. (run 의 문자 시각은 lamport 부터 1씩 증가)
+        lamport = Math.max(lamport, item.lamport + item.length - 1);
+        if (item.site == siteId) {
+            nextSeq = Math.max(nextSeq, item.seq + item.length);
+        }
+    }
+
+    private int visibleOffsetOf(int index) {
+        int offset = 0;
+        for (int i = 0; i < index; i++) {
+            Item item = items.get(i);
+            if (!item.isDeleted()) offset += item.length;
+        }
+        return offset;
+    }
+
+    // --- 상태 인코딩 ---
+
+    /**
+     * 문서 전체 상태(tombstone 포함)를 바이너리로 인코딩합니다. 삭제된 항목은 길이만 기록합니다.
+     * <pre>
+     *   state := VERSION siteCount site* lamport itemCount item*
+     *   item  := siteIndex seq lamport originSiteIndex (originSeq + 1) (length &lt;&lt; 1 | deleted) text?
+     * </pre>
+     */
+    public byte[] encodeState() {
+        Map<Long, Integer> siteIndex = new LinkedHashMap<>();
+        for (Item item : items) {
+            siteIndex.putIfAbsent(item.site, siteIndex.size());
+            siteIndex.putIfAbsent(item.originSite, siteIndex.size());
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Varint.writeLong(out, STATE_VERSION);
+        Varint.writeLong(out, siteIndex.size());
+        for (long site : siteIndex.keySet()) {
+            Varint.writeLong(out, site);
+        }
+        Varint.writeLong(out, lamport);
+        Varint.writeLong(out, items.size());
+        for (Item item : items) {
+            Varint.writeLong(out, siteIndex.get(item.site));
+            Varint.writeLong(out, item.seq);
+            Varint.writeLong(out, item.lamport);
+            Varint.writeLong(out, siteIndex.get(item.originSite));
+            Varint.writeLong(out, item.originSeq + 1);
+            Varint.writeLong(out, ((long) item.length << 1) | (item.isDeleted() ? 1 : 0));
+            if (!item.isDeleted()) {
+                Varint.writeString(out, item.text);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /** {@link #encodeState()} 로 만든 상태에서 문서를 복원합니다. 이후 로컬 편집은 siteId 로 기록됩니다. */
+    public static RgaDocument fromState(long siteId, byte[] state) {
+        ByteBuffer in = ByteBuffer.wrap(state);
+        int version = Varint.readInt(in);
+        if (version != STATE_VERSION) {
+            throw new IllegalArgumentException("Unsupported CRDT state version: " + version);
+        }
+        long[] sites = new long[Varint.readInt(in)];
+        for (int i = 0; i < sites.length; i++) {
+            sites[i] = Varint.readLong(in);
+        }
+        RgaDocument document = new RgaDocument(siteId, "");
+        document.lamport = Varint.readLong(in);
+        int count = Varint.readInt(in);
+        for (int i = 0; i < count; i++) {
+            long site = sites[Varint.readInt(in)];
+            long seq = Varint.readLong(in);
+            long itemLamport = Varint.readLong(in);
+            long originSite = sites[Varint.readInt(in)];
+            long originSeq = Varint.readLong(in) - 1;
+            long lengthAndFlag = Varint.readLong(in);
+            int length = (int) (lengthAndFlag >>> 1);
+            String text = (lengthAndFlag & 1) == 0 ? Varint.readString(in) : null;
+            document.addItem(document.items.size(), new Item(site, seq, itemLamport, originSite, originSeq, length, text));
+            if (text != null) document.visibleLength += length;
+        }
+        return document;
+    }
+}
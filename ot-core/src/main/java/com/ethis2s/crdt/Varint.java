@@ -0,0 +1,54 @@
+package com.ethis2s.crdt;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * CRDT 바이너리 인코딩에서 쓰는 가변 길이 정수(LEB128) / 문자열 입출력 도우미입니다.
+ * 작은 수(대부분의 seq, 길이, 사이트 인덱스)는 1~2 바이트로 기록됩니다.
+ */
+final class Varint {
+
+    private Varint() {
+    }
+
+    static void writeLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long readLong(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+            shift += 7;
+            if (shift > 63) throw new IllegalArgumentException("Malformed varint");
+        }
+    }
+
+    static int readInt(ByteBuffer in) {
+        long value = readLong(in);
+        if (value < 0 || value > Integer.MAX_VALUE) throw new IllegalArgumentException("Varint out of int range: " + value);
+        return (int) value;
+    }
+
+    static void writeString(ByteArrayOutputStream out, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        writeLong(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    static String readString(ByteBuffer in) {
+        int length = readInt(in);
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
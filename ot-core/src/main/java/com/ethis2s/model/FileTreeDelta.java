@@ -0,0 +1,73 @@
+package com.ethis2s.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * UF_FILETREE_DELTA 한 건. 프로젝트 파일 트리의 from_version 에서 version 으로 가는 변경 목록입니다.
+ * 경로는 프로젝트 루트 기준 '/' 구분 상대 경로입니다.
+ */
+public final class FileTreeDelta {
+
+    public enum Op { ADD, REMOVE, RENAME, MOVE }
+
+    /** 변경 하나. ADD 는 type("file"/"folder"), RENAME 은 newName, MOVE 는 newParent(루트면 "")를 씁니다. */
+    public static final class Change {
+        private final Op op;
+        private final String path;
+        private final String type;
+        private final String newName;
+        private final String newParent;
+
+        Change(Op op, String path, String type, String newName, String newParent) {
+            this.op = op;
+            this.path = path;
+            this.type = type;
+            this.newName = newName;
+            this.newParent = newParent;
+        }
+
+        public Op getOp() { return op; }
+        public String getPath() { return path; }
+        public String getType() { return type; }
+        public String getNewName() { return newName; }
+        public String getNewParent() { return newParent; }
+    }
+
+    private final String projectId;
+    private final long fromVersion;
+    private final long version;
+    private final List<Change> changes;
+
+    public FileTreeDelta(String projectId, long fromVersion, long version, List<Change> changes) {
+        this.projectId = projectId;
+        this.fromVersion = fromVersion;
+        this.version = version;
+        this.changes = Collections.unmodifiableList(changes);
+    }
+
+    public String getProjectId() { return projectId; }
+    public long getFromVersion() { return fromVersion; }
+    public long getVersion() { return version; }
+    public List<Change> getChanges() { return changes; }
+
+    /** {"project_id", "from_version", "version", "changes": [{"op": "add"|"remove"|"rename"|"move", "path", ...}]} */
+    public static FileTreeDelta fromJson(JSONObject json) {
+        JSONArray array = json.getJSONArray("changes");
+        List<Change> changes = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject change = array.getJSONObject(i);
+            Op op = Op.valueOf(change.getString("op").toUpperCase(Locale.ROOT));
+            changes.add(new Change(op, change.getString("path"),
+                change.optString("type", "file"),
+                change.optString("new_name", null),
+                change.optString("new_parent", "")));
+        }
+        return new FileTreeDelta(json.getString("project_id"), json.getLong("from_version"), json.getLong("version"), changes);
+    }
+}
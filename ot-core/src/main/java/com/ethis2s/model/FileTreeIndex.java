@@ -0,0 +1,608 @@
+package com.ethis2s.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * 프로젝트 파일 트리 한 벌을 배열로 담은 불변 스냅샷입니다. 파일 트리 뷰는 펼친 폴더의 자식만 이 스냅샷에서 꺼내 TreeItem 으로 만듭니다.
+ *
+ * <p>노드 번호는 처음 만들 때 너비 우선 순서이고 루트가 0 입니다. 한 폴더의 자식 번호는 children 배열의 연속 구간
+ * (firstChild, childCount) 에 들어 있습니다. 노드마다 객체를 만들지 않으므로 10만 개 파일도 배열 몇 개와 이름 문자열이 전부입니다.
+ *
+ * <p>델타({@link #withChanges})는 번호를 바꾸지 않습니다. 추가한 노드는 끝 번호를 받고, 지운 노드는 자리만 남으며,
+ * 자식이 바뀐 폴더는 children 끝에 새 구간을 씁니다. 이렇게 버려진 자리가 살아 있는 노드보다 많아지면 처음부터 다시 번호를 매깁니다.
+ *
+ * <p>이름 검색용으로 두 가지 색인을 둡니다.
+ * <ul>
+ * <li>접두사: 소문자 이름순으로 정렬한 노드 번호. 1~2 글자 검색은 이름이 그 글자로 시작하는 노드를 찾습니다.</li>
+ * <li>트라이그램: 소문자 이름의 세 글자 조각 → 그 조각을 가진 노드 번호(오름차순). 3 글자 이상 검색은 모든 조각의 목록을 교집합한 뒤
+ *     이름에 검색어가 실제로 들어 있는지 확인합니다. 델타로 바뀐 조각의 목록은 공유하는 원래 표 위에 따로 얹어 둡니다.</li>
+ * </ul>
+ * '/' 가 들어간 검색어는 마지막 경로 조각으로 후보를 찾고 전체 경로로 확인합니다. 만든 뒤에는 바뀌지 않으므로 여러 스레드에서 읽어도 됩니다.
+ */
+public final class FileTreeIndex {
+
+    private static final int[] NONE = new int[0];
+
+    // 번호를 매긴 노드 수(지운 노드 자리 포함)와 살아 있는 노드 수(루트 포함)
+    private final int count;
+    private final int live;
+    private final String[] names; // 지운 노드는 null
+    private final String[] lowerNames;
+    private final int[] parents;
+    private final int[] firstChild;
+    private final int[] childCount;
+    private final int[] children;
+    private final int childEnd; // children 에서 쓰고 있는 길이 (버려진 구간 포함)
+    private final BitSet folders;
+    private final int[] byName;
+    // 처음 만들 때의 트라이그램 표와, 그 뒤 델타로 바뀐 조각의 목록 (빈 배열이면 그 조각을 가진 노드가 없음)
+    private final Map<Long, int[]> trigrams;
+    private final Map<Long, int[]> trigramChanges;
+
+    private FileTreeIndex(Builder builder) {
+        this.count = builder.size;
+        this.live = builder.size;
+        this.names = Arrays.copyOf(builder.names, count);
+        this.parents = Arrays.copyOf(builder.parents, count);
+        this.firstChild = Arrays.copyOf(builder.firstChild, count);
+        this.childCount = Arrays.copyOf(builder.childCount, count);
+        this.children = builder.children.toArray();
+        this.childEnd = children.length;
+        this.folders = builder.folders;
+        this.lowerNames = new String[count];
+        for (int i = 0; i < count; i++) {
+            lowerNames[i] = names[i].toLowerCase(Locale.ROOT); // 이미 소문자면 같은 인스턴스
+        }
+        this.byName = sortByName();
+        this.trigrams = buildTrigrams();
+        this.trigramChanges = Map.of();
+    }
+
+    private FileTreeIndex(Editor editor, int[] byName, Map<Long, int[]> trigrams, Map<Long, int[]> trigramChanges) {
+        this.count = editor.count;
+        this.live = editor.live;
+        this.names = editor.names;
+        this.lowerNames = editor.lowerNames;
+        this.parents = editor.parents;
+        this.firstChild = editor.firstChild;
+        this.childCount = editor.childCount;
+        this.children = editor.children;
+        this.childEnd = editor.childEnd;
+        this.folders = editor.folders;
+        this.byName = byName;
+        this.trigrams = trigrams;
+        this.trigramChanges = trigramChanges;
+    }
+
+    /** UF_FILETREE_LIST_RESPONSE 의 목록 객체 ({"name", "children": [...]}, "children" 가 있으면 폴더) */
+    public static FileTreeIndex fromJson(JSONObject root) {
+        return build(root, node -> node.getString("name"), node -> node.has("children"), node -> {
+            JSONArray children = node.getJSONArray("children");
+            List<JSONObject> list = new ArrayList<>(children.length());
+            for (int i = 0; i < children.length(); i++) {
+                list.add(children.getJSONObject(i));
+            }
+            return list;
+        });
+    }
+
+    /**
+     * 파일 트리 델타를 반영한 새 스냅샷. 맞지 않는 변경(없는 부모에 추가 등)은 건너뜁니다.
+     * 바뀐 폴더의 자식 구간과 바뀐 이름의 검색 색인만 고치지만, 배열을 복사하므로 FX 스레드에서 부르지 않습니다.
+     */
+    public FileTreeIndex withChanges(List<FileTreeDelta.Change> changes) {
+        Editor editor = new Editor(this);
+        for (FileTreeDelta.Change change : changes) {
+            editor.apply(change);
+        }
+        return editor.finish();
+    }
+
+    /** 살아 있는 노드 수 (루트 포함) */
+    public int size() {
+        return live;
+    }
+
+    public String nameOf(int node) {
+        return names[node];
+    }
+
+    public boolean isFolder(int node) {
+        return node == 0 || folders.get(node);
+    }
+
+    public int childCount(int node) {
+        return childCount[node];
+    }
+
+    /** node 의 i 번째 자식 번호 */
+    public int childAt(int node, int i) {
+        return children[firstChild[node] + i];
+    }
+    public int parentOf(int node) {
+        return parents[node];
+    }
+
+    /** 루트 기준 '/' 구분 경로. 루트는 "" */
+    public String pathOf(int node) {
+        if (node == 0) return "";
+        StringBuilder path = new StringBuilder(names[node]);
+        for (int p = parents[node]; p != 0; p = parents[p]) {
+            path.insert(0, '/').insert(0, names[p]);
+        }
+        return path.toString();
+    }
+
+    /**
+     * 대소문자를 가리지 않고 검색어에 맞는 노드(루트 제외)를 번호 순서(대체로 얕은 것부터, 델타로 추가한 노드는 뒤)로 최대 limit 개 돌려줍니다.
+     * 1~2 글자는 이름 접두사, 3 글자 이상은 이름에 포함, '/' 가 있으면 전체 경로에 포함으로 찾습니다.
+     */
+    public int[] search(String query, int limit) {
+        String q = query.trim().toLowerCase(Locale.ROOT);
+        if (q.isEmpty() || limit <= 0) return NONE;
+        if (q.indexOf('/') < 0) return searchName(q, limit);
+
+        String segment = lastSegment(q);
+        if (segment.isEmpty()) return NONE;
+        int[] candidates = searchName(segment, Integer.MAX_VALUE);
+        int[] result = new int[Math.min(limit, candidates.length)];
+        int count = 0;
+        // 후보는 많아도 부모 폴더는 적으므로 폴더 경로를 한 번씩만 만든다.
+        Map<Integer, String> folderPaths = new HashMap<>();
+        for (int node : candidates) {
+            if (count == result.length) break;
+            String parentPath = lowerPathOf(parents[node], folderPaths);
+            String path = parentPath.isEmpty() ? lowerNames[node] : parentPath + "/" + lowerNames[node];
+            if (path.contains(q)) result[count++] = node;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private String lowerPathOf(int node, Map<Integer, String> cache) {
+        if (node == 0) return "";
+        String cached = cache.get(node);
+        if (cached != null) return cached;
+        String parentPath = lowerPathOf(parents[node], cache);
+        String path = parentPath.isEmpty() ? lowerNames[node] : parentPath + "/" + lowerNames[node];
+        cache.put(node, path);
+        return path;
+    }
+
+    private int[] searchName(String q, int limit) {
+        return (q.length() < 3) ? searchPrefix(q, limit) : searchTrigrams(q, limit);
+    }
+
+    private int[] searchPrefix(String q, int limit) {
+        int low = 0;
+        int high = byName.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (lowerNames[byName[mid]].compareTo(q) < 0) low = mid + 1;
+            else high = mid;
+        }
+        int end = low;
+        while (end < byName.length && lowerNames[byName[end]].startsWith(q)) {
+            end++;
+        }
+        int[] result = Arrays.copyOfRange(byName, low, end);
+        Arrays.sort(result);
+        return (result.length > limit) ? Arrays.copyOf(result, limit) : result;
+    }
+
+    private int[] searchTrigrams(String q, int limit) {
+        int[][] lists = new int[q.length() - 2][];
+        for (int i = 0; i < lists.length; i++) {
+            int[] postings = postings(trigram(q, i));
+            if (postings == null || postings.length == 0) return NONE;
+            lists[i] = postings;
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.length, b.length));
+        int[] result = new int[Math.min(limit, lists[0].length)];
+        int count = 0;
+        outer:
+        for (int node : lists[0]) {
+            if (count == result.length) break;
+            for (int i = 1; i < lists.length; i++) {
+                if (Arrays.binarySearch(lists[i], node) < 0) continue outer;
+            }
+            if (lowerNames[node].contains(q)) result[count++] = node;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private int[] postings(long key) {
+        int[] changed = trigramChanges.get(key);
+        return (changed != null) ? changed : trigrams.get(key);
+    }
+
+    private static String lastSegment(String q) {
+        String trimmed = q.endsWith("/") ? q.substring(0, q.length() - 1) : q;
+        return trimmed.substring(trimmed.lastIndexOf('/') + 1);
+    }
+
+    private static long trigram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    // 이름이 같으면 번호 순서. 델타에서 바뀐 노드를 같은 순서로 끼워 넣을 수 있게 한다.
+    private static int compareByName(String[] lowerNames, int a, int b) {
+        int byName = lowerNames[a].compareTo(lowerNames[b]);
+        return (byName != 0) ? byName : Integer.compare(a, b);
+    }
+
+    private int[] sortByName() {
+        Integer[] order = new Integer[count - 1];
+        for (int i = 1; i < count; i++) {
+            order[i - 1] = i;
+        }
+        Arrays.sort(order, (a, b) -> compareByName(lowerNames, a, b));
+        int[] sorted = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sorted[i] = order[i];
+        }
+        return sorted;
+    }
+
+    // 노드를 번호 순서로 넣으므로 각 목록은 저절로 오름차순이다.
+    private Map<Long, int[]> buildTrigrams() {
+        Map<Long, IntList> building = new HashMap<>();
+        for (int node = 1; node < count; node++) {
+            addTrigrams(building, lowerNames[node], node);
+        }
+        Map<Long, int[]> result = new HashMap<>(building.size() * 4 / 3 + 1);
+        building.forEach((key, list) -> result.put(key, list.toArray()));
+        return result;
+    }
+
+    private static void addTrigrams(Map<Long, IntList> lists, String lowerName, int node) {
+        for (int i = 0; i + 3 <= lowerName.length(); i++) {
+            lists.computeIfAbsent(trigram(lowerName, i), k -> new IntList()).addOnce(node);
+        }
+    }
+
+    // --- 만들기 ---
+
+    /** 너비 우선으로 번호를 매겨 한 폴더의 자식 번호가 연속이 되게 한다. */
+    private static <T> FileTreeIndex build(T root, Function<T, String> name, Function<T, Boolean> folder,
+                                           Function<T, List<T>> children) {
+        Builder builder = new Builder();
+        ArrayDeque<T> queue = new ArrayDeque<>();
+        builder.add(name.apply(root), -1, true);
+        queue.add(root);
+        for (int node = 0; !queue.isEmpty(); node++) {
+            T current = queue.poll();
+            builder.firstChild[node] = builder.children.size;
+            if (!folder.apply(current)) continue;
+            List<T> list = children.apply(current);
+            builder.childCount[node] = list.size();
+            for (T child : list) {
+                builder.children.add(builder.size);
+                builder.add(name.apply(child), node, folder.apply(child));
+                queue.add(child);
+            }
+        }
+        return new FileTreeIndex(builder);
+    }
+
+    private static final class Builder {
+        String[] names = new String[1024];
+        int[] parents = new int[1024];
+        int[] firstChild = new int[1024];
+        int[] childCount = new int[1024];
+        final IntList children = new IntList();
+        final BitSet folders = new BitSet();
+        int size;
+
+        void add(String name, int parent, boolean folder) {
+            if (size == names.length) {
+                int capacity = size * 2;
+                names = Arrays.copyOf(names, capacity);
+                parents = Arrays.copyOf(parents, capacity);
+                firstChild = Arrays.copyOf(firstChild, capacity);
+                childCount = Arrays.copyOf(childCount, capacity);
+            }
+            names[size] = name;
+            parents[size] = parent;
+            if (folder) folders.set(size);
+            size++;
+        }
+    }
+
+    private static final class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        // 한 이름에 같은 조각이 여러 번 나와도 한 번만 넣는다.
+        void addOnce(int value) {
+            if (size > 0 && values[size - 1] == value) return;
+            add(value);
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    // --- 델타 반영 ---
+
+    /**
+     * 스냅샷의 배열을 복사해 델타를 반영하는 작업 공간. 노드 번호는 바꾸지 않고,
+     * 이름이 바뀌거나 지워진 노드와 새 노드만 모아 두었다가 끝에서 검색 색인을 고친다.
+     */
+    private static final class Editor {
+        final FileTreeIndex base;
+        int count;
+        int live;
+        String[] names;
+        String[] lowerNames;
+        int[] parents;
+        int[] firstChild;
+        int[] childCount;
+        int[] children;
+        int childEnd;
+        final BitSet folders;
+        // base 에 있던 노드 중 이름이 바뀌었거나 지워진 노드. 색인에서 base 의 이름을 뺀다.
+        final BitSet renamed = new BitSet();
+
+        Editor(FileTreeIndex base) {
+            this.base = base;
+            this.count = base.count;
+            this.live = base.live;
+            this.names = base.names.clone();
+            this.lowerNames = base.lowerNames.clone();
+            this.parents = base.parents.clone();
+            this.firstChild = base.firstChild.clone();
+            this.childCount = base.childCount.clone();
+            this.children = base.children.clone();
+            this.childEnd = base.childEnd;
+            this.folders = (BitSet) base.folders.clone();
+        }
+
+        void apply(FileTreeDelta.Change change) {
+            String path = change.getPath();
+            int slash = path.lastIndexOf('/');
+            int parent = find(slash < 0 ? "" : path.substring(0, slash));
+            String name = path.substring(slash + 1);
+            int node = (parent >= 0) ? child(parent, name) : -1;
+            switch (change.getOp()) {
+                case ADD -> {
+                    if (parent >= 0 && isFolder(parent) && node < 0) {
+                        addChild(parent, add(name, parent, "folder".equals(change.getType())));
+                    }
+                }
+                case REMOVE -> {
+                    if (node >= 0) {
+                        removeChild(parent, node);
+                        removeSubtree(node);
+                    }
+                }
+                case RENAME -> {
+                    if (node >= 0 && child(parent, change.getNewName()) < 0) rename(node, change.getNewName());
+                }
+                case MOVE -> {
+                    int target = find(change.getNewParent());
+                    if (node < 0 || target < 0 || !isFolder(target) || child(target, name) >= 0) return;
+                    for (int p = target; p > 0; p = parents[p]) {
+                        if (p == node) return; // 자기 하위 폴더로는 옮길 수 없다.
+                    }
+                    removeChild(parent, node);
+                    addChild(target, node);
+                    parents[node] = target;
+                }
+            }
+        }
+
+        boolean isFolder(int node) {
+            return node == 0 || folders.get(node);
+        }
+
+        /** 경로("" 는 루트)의 노드 번호. 없으면 -1 */
+        int find(String path) {
+            if (path.isEmpty()) return 0;
+            int current = 0;
+            for (String part : path.split("/")) {
+                current = child(current, part);
+                if (current < 0) return -1;
+            }
+            return current;
+        }
+
+        int child(int parent, String name) {
+            int first = firstChild[parent];
+            for (int i = 0; i < childCount[parent]; i++) {
+                int c = children[first + i];
+                if (names[c].equals(name)) return c;
+            }
+            return -1;
+        }
+
+        int add(String name, int parent, boolean folder) {
+            if (count == names.length) {
+                int capacity = Math.max(16, count * 3 / 2);
+                names = Arrays.copyOf(names, capacity);
+                lowerNames = Arrays.copyOf(lowerNames, capacity);
+                parents = Arrays.copyOf(parents, capacity);
+                firstChild = Arrays.copyOf(firstChild, capacity);
+                childCount = Arrays.copyOf(childCount, capacity);
+            }
+            int node = count++;
+            names[node] = name;
+            lowerNames[node] = name.toLowerCase(Locale.ROOT);
+            parents[node] = parent;
+            firstChild[node] = childEnd;
+            childCount[node] = 0;
+            if (folder) folders.set(node);
+            live++;
+            return node;
+        }
+
+        void rename(int node, String name) {
+            if (node < base.count) renamed.set(node);
+            names[node] = name;
+            lowerNames[node] = name.toLowerCase(Locale.ROOT);
+        }
+
+        // 자식 구간을 children 끝에 새로 쓴다. (원래 구간은 버려진 자리가 됨)
+        void addChild(int parent, int node) {
+            int n = childCount[parent];
+            ensureChildCapacity(n + 1);
+            System.arraycopy(children, firstChild[parent], children, childEnd, n);
+            children[childEnd + n] = node;
+            firstChild[parent] = childEnd;
+            childCount[parent] = n + 1;
+            childEnd += n + 1;
+        }
+
+        // 구간 안에서 뒤쪽을 당겨 쓴다. 마지막 칸이 버려진 자리가 된다.
+        void removeChild(int parent, int node) {
+            int first = firstChild[parent];
+            int n = childCount[parent];
+            for (int i = 0; i < n; i++) {
+                if (children[first + i] == node) {
+                    System.arraycopy(children, first + i + 1, children, first + i, n - i - 1);
+                    childCount[parent] = n - 1;
+                    return;
+                }
+            }
+        }
+
+        void removeSubtree(int node) {
+            IntList stack = new IntList();
+            stack.add(node);
+            while (stack.size > 0) {
+                int current = stack.values[--stack.size];
+                for (int i = 0; i < childCount[current]; i++) {
+                    stack.add(children[firstChild[current] + i]);
+                }
+                if (current < base.count) renamed.set(current);
+                names[current] = null;
+                lowerNames[current] = null;
+                childCount[current] = 0;
+                folders.clear(current);
+                live--;
+            }
+        }
+
+        void ensureChildCapacity(int extra) {
+            if (childEnd + extra > children.length) {
+                children = Arrays.copyOf(children, Math.max(childEnd + extra, children.length * 3 / 2 + 16));
+            }
+        }
+
+        FileTreeIndex finish() {
+            // 지운 노드 자리와 버려진 자식 구간이 살아 있는 노드보다 많으면 번호를 다시 매긴다.
+            int garbage = (count - live) + (childEnd - (live - 1));
+            if (garbage > live) {
+                return build(0, node -> names[node], this::isFolder, node -> {
+                    List<Integer> list = new ArrayList<>(childCount[node]);
+                    for (int i = 0; i < childCount[node]; i++) {
+                        list.add(children[firstChild[node] + i]);
+                    }
+                    return list;
+                });
+            }
+
+            // 이름 색인에 새로 넣을 노드: 이름이 바뀐 노드와 새 노드 (번호 오름차순)
+            IntList changed = new IntList();
+            for (int node = renamed.nextSetBit(0); node >= 0; node = renamed.nextSetBit(node + 1)) {
+                if (names[node] != null) changed.add(node);
+            }
+            for (int node = base.count; node < count; node++) {
+                if (names[node] != null) changed.add(node);
+            }
+            if (renamed.isEmpty() && changed.size == 0) {
+                return new FileTreeIndex(this, base.byName, base.trigrams, base.trigramChanges);
+            }
+            int[] byName = updateByName(changed);
+            Map<Long, int[]> trigramChanges = updateTrigrams(changed);
+            if (trigramChanges.size() <= base.trigrams.size() / 8 + 64) {
+                return new FileTreeIndex(this, byName, base.trigrams, trigramChanges);
+            }
+            // 얹어 둔 목록이 많아지면 원래 표에 합쳐 새 표를 만든다.
+            Map<Long, int[]> trigrams = new HashMap<>(base.trigrams);
+            trigramChanges.forEach((key, postings) -> {
+                if (postings.length == 0) trigrams.remove(key);
+                else trigrams.put(key, postings);
+            });
+            return new FileTreeIndex(this, byName, trigrams, Map.of());
+        }
+
+        // base 의 이름순 목록에서 바뀐 노드를 빼고, 바뀐 노드를 정렬해 병합한다.
+        int[] updateByName(IntList changed) {
+            Integer[] sortedChanged = new Integer[changed.size];
+            for (int i = 0; i < changed.size; i++) {
+                sortedChanged[i] = changed.values[i];
+            }
+            Arrays.sort(sortedChanged, (a, b) -> compareByName(lowerNames, a, b));
+            int[] result = new int[base.byName.length - renamed.cardinality() + changed.size];
+            int n = 0;
+            int j = 0;
+            for (int node : base.byName) {
+                if (renamed.get(node)) continue;
+                while (j < sortedChanged.length && compareByName(lowerNames, sortedChanged[j], node) < 0) {
+                    result[n++] = sortedChanged[j++];
+                }
+                result[n++] = node;
+            }
+            while (j < sortedChanged.length) {
+                result[n++] = sortedChanged[j++];
+            }
+            return result;
+        }
+
+        // base 에 얹혀 있던 목록에 이번에 바뀐 조각의 목록을 더한다. (base 의 이름을 빼고 새 이름을 넣음)
+        Map<Long, int[]> updateTrigrams(IntList changed) {
+            Map<Long, IntList> removed = new HashMap<>();
+            for (int node = renamed.nextSetBit(0); node >= 0; node = renamed.nextSetBit(node + 1)) {
+                addTrigrams(removed, base.lowerNames[node], node);
+            }
+            Map<Long, IntList> added = new HashMap<>();
+            for (int i = 0; i < changed.size; i++) {
+                addTrigrams(added, lowerNames[changed.values[i]], changed.values[i]);
+            }
+            Map<Long, int[]> result = new HashMap<>(base.trigramChanges);
+            Set<Long> keys = new HashSet<>(removed.keySet());
+            keys.addAll(added.keySet());
+            for (Long key : keys) {
+                int[] postings = base.postings(key);
+                result.put(key, merge(postings == null ? NONE : postings, removed.get(key), added.get(key)));
+            }
+            return result;
+        }
+
+        // 오름차순 목록 postings 에서 removed 를 빼고 added 를 병합한다. (둘 다 오름차순, 없으면 null)
+        static int[] merge(int[] postings, IntList removed, IntList added) {
+            int addCount = (added == null) ? 0 : added.size;
+            int[] result = new int[postings.length + addCount];
+            int n = 0;
+            int r = 0;
+            int a = 0;
+            for (int node : postings) {
+                while (removed != null && r < removed.size && removed.values[r] < node) r++;
+                if (removed != null && r < removed.size && removed.values[r] == node) continue;
+                while (a < addCount && added.values[a] < node) result[n++] = added.values[a++];
+                result[n++] = node;
+            }
+            while (a < addCount) result[n++] = added.values[a++];
+            return (n == result.length) ? result : Arrays.copyOf(result, n);
+        }
+    }
+}
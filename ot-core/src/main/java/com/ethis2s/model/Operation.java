@@ -1,15 +1,20 @@
 package com.ethis2s.model;
 
+import java.util.List;
+
+import org.json.JSONArray;
 import org.json.JSONObject;
 
 /**
  * 실시간 동시 편집에서 클라이언트로부터 수신되는 편집 연산을 나타내는 클래스입니다.
- * 현재는 간단한 텍스트 삽입/삭제 연산을 가정합니다.
+ * 편집 내용은 {@link TextOperation} 으로 보관하며, 단일 삽입/삭제는 기존 INSERT/DELETE 타입으로,
+ * 치환처럼 여러 컴포넌트로 이루어진 편집은 COMPOUND 타입으로 구분합니다.
  */
 public class Operation {
     public enum Type {
         INSERT,
-        DELETE
+        DELETE,
+        COMPOUND
     }
 
     private final Type type;
@@ -17,6 +22,7 @@ public class Operation {
     private final String text; // 삽입 또는 삭제된 텍스트
     private final int length; // 연산에 의해 변경된 텍스트의 길이
     private final int cursorPosition; // 연산 후의 커서 위치
+    private final TextOperation textOperation;
     private long version;
     private String uniqId;
 
@@ -34,6 +40,7 @@ public class Operation {
         this.text = text;
         this.length = text.length();
         this.cursorPosition = cursorPosition;
+        this.textOperation = new TextOperation().retain(position).insert(text);
         this.version = version;
         this.uniqId = uniqId;
         this.sentToServer = false; // Initially not sent
@@ -49,6 +56,44 @@ public class Operation {
         this.text = text; // 삭제된 텍스트 저장
         this.length = length;
         this.cursorPosition = cursorPosition;
+        this.textOperation = new TextOperation().retain(position).delete(length, text);
+        this.version = version;
+        this.uniqId = uniqId;
+        this.sentToServer = false; // Initially not sent
+    }
+
+    // 임의의 TextOperation 용 생성자. 단일 삽입/삭제로 표현되면 INSERT/DELETE 타입이 된다.
+    public Operation(TextOperation textOperation, int cursorPosition, long version, String uniqId) {
+        List<TextOperation.Component> components = textOperation.getComponents();
+        int leadingRetain = 0;
+        int first = 0;
+        if (!components.isEmpty() && components.get(0).getKind() == TextOperation.Kind.RETAIN) {
+            leadingRetain = components.get(0).getLength();
+            first = 1;
+        }
+        TextOperation.Component edit = (components.size() - first == 1) ? components.get(first) : null;
+
+        if (textOperation.isNoop()) {
+            // 아무 변화가 없는 연산은 길이 0 의 DELETE 로 취급한다.
+            this.type = Type.DELETE;
+            this.text = "";
+            this.length = 0;
+        } else if (edit != null && edit.getKind() == TextOperation.Kind.INSERT) {
+            this.type = Type.INSERT;
+            this.text = edit.getText();
+            this.length = edit.getLength();
+        } else if (edit != null && edit.getKind() == TextOperation.Kind.DELETE) {
+            this.type = Type.DELETE;
+            this.text = (edit.getText() != null) ? edit.getText() : "";
+            this.length = edit.getLength();
+        } else {
+            this.type = Type.COMPOUND;
+            this.text = null;
+            this.length = 0;
+        }
+        this.position = leadingRetain;
+        this.cursorPosition = cursorPosition;
+        this.textOperation = textOperation;
         this.version = version;
         this.uniqId = uniqId;
         this.sentToServer = false; // Initially not sent
@@ -62,9 +107,11 @@ public class Operation {
         if (this.type == Type.INSERT) {
             // INSERT의 반대는 DELETE
             return new Operation(Type.DELETE, this.position, this.text, this.text.length(), -1, -1L, null);
-        } else {
+        } else if (this.type == Type.DELETE) {
             // DELETE의 반대는 INSERT
             return new Operation(Type.INSERT, this.position, this.text, -1, -1L, null);
+        } else {
+            return new Operation(this.textOperation.invert(), -1, -1L, null);
         }
     }
 
@@ -88,6 +135,14 @@ public class Operation {
         return cursorPosition;
     }
 
+    public TextOperation getTextOperation() {
+        return textOperation;
+    }
+
+    public boolean isNoop() {
+        return textOperation.isNoop();
+    }
+
     public long getVersion() {
         return version;
     }
@@ -122,12 +177,15 @@ public class Operation {
 
     public static Operation fromJson(JSONObject json) {
         Type type = Type.valueOf(json.getString("type"));
-        int position = json.getInt("position");
+        int position = json.optInt("position", 0);
         long version = json.getLong("version");
         String uniqId = json.optString("uniqId", null);
         int cursorPosition = json.optInt("cursorPosition", -1);
 
-        if (type == Type.INSERT) {
+        if (type == Type.COMPOUND) {
+            JSONArray components = json.getJSONArray("ops");
+            return new Operation(TextOperation.fromJson(components), cursorPosition, version, uniqId);
+        } else if (type == Type.INSERT) {
             String text = json.getString("text");
             return new Operation(type, position, text, cursorPosition, version, uniqId);
         } else { // DELETE
@@ -139,7 +197,9 @@ public class Operation {
 
     @Override
     public String toString() {
-        if (type == Type.INSERT) {
+        if (type == Type.COMPOUND) {
+            return "Operation{type=COMPOUND, ops=" + textOperation + ", cursorPosition=" + cursorPosition + ", version=" + version + "}";
+        } else if (type == Type.INSERT) {
             return "Operation{type=INSERT, position=" + position + ", text='" + text + "', cursorPosition=" + cursorPosition + ", version=" + version + "}";
         } else {
             return "Operation{type=DELETE, position=" + position + ", length=" + length + ", text='" + text + "', cursorPosition=" + cursorPosition + ", version=" + version + "}";
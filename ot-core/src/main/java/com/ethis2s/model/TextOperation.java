@@ -0,0 +1,489 @@
+package com.ethis2s.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * retain / insert / delete 컴포넌트의 나열로 표현되는 텍스트 편집 연산입니다.
+ * 하나의 연산으로 문서 여러 곳의 삽입과 삭제(치환 포함)를 함께 표현할 수 있으며,
+ * 마지막 컴포넌트 이후의 나머지 문서는 암묵적으로 retain 된 것으로 간주합니다.
+ *
+ * <p>삭제 컴포넌트는 Undo(역연산)를 위해 삭제된 텍스트를 함께 보관합니다.
+ * 서버에서 길이만 전달된 삭제는 텍스트가 null 이며, 이런 연산은 역연산을 만들 수 없습니다.
+ */
+public final class TextOperation {
+
+    public enum Kind {
+        RETAIN,
+        INSERT,
+        DELETE
+    }
+
+    /** 연산을 구성하는 불변 컴포넌트입니다. */
+    public static final class Component {
+        private final Kind kind;
+        private final int length;
+        private final String text; // INSERT: 삽입 텍스트, DELETE: 삭제된 텍스트(모르면 null), RETAIN: null
+
+        private Component(Kind kind, int length, String text) {
+            this.kind = kind;
+            this.length = length;
+            this.text = text;
+        }
+
+        public Kind getKind() { return kind; }
+        public int getLength() { return length; }
+        public String getText() { return text; }
+
+        private Component slice(int from, int to) {
+            String sliced = (text == null) ? null : text.substring(from, to);
+            return new Component(kind, to - from, sliced);
+        }
+    }
+
+    /** 원본 문서 좌표 [start, end) 를 text 로 바꾸는 하나의 연속된 편집입니다. */
+    public static final class Edit {
+        public final int start;
+        public final int end;
+        public final String text;
+
+        public Edit(int start, int end, String text) {
+            this.start = start;
+            this.end = end;
+            this.text = text;
+        }
+    }
+
+    /** transform 결과 쌍. a' 는 b 이후에, b' 는 a 이후에 적용됩니다. */
+    public static final class Pair {
+        public final TextOperation first;
+        public final TextOperation second;
+
+        Pair(TextOperation first, TextOperation second) {
+            this.first = first;
+            this.second = second;
+        }
+    }
+
+    private final List<Component> components = new ArrayList<>();
+
+    // --- Builder ---
+
+    public TextOperation retain(int n) {
+        if (n <= 0) return this;
+        Component last = last();
+        if (last != null && last.kind == Kind.RETAIN) {
+            components.set(components.size() - 1, new Component(Kind.RETAIN, last.length + n, null));
+        } else {
+            components.add(new Component(Kind.RETAIN, n, null));
+        }
+        return this;
+    }
+
+    public TextOperation insert(String text) {
+        if (text == null || text.isEmpty()) return this;
+        int size = components.size();
+        Component last = last();
+        if (last != null && last.kind == Kind.INSERT) {
+            components.set(size - 1, new Component(Kind.INSERT, last.length + text.length(), last.text + text));
+        } else if (last != null && last.kind == Kind.DELETE) {
+            // 같은 위치의 삽입과 삭제는 항상 "삽입 → 삭제" 순서로 정규화한다.
+            Component beforeDelete = size >= 2 ? components.get(size - 2) : null;
+            if (beforeDelete != null && beforeDelete.kind == Kind.INSERT) {
+                components.set(size - 2, new Component(Kind.INSERT, beforeDelete.length + text.length(), beforeDelete.text + text));
+            } else {
+                components.add(size - 1, new Component(Kind.INSERT, text.length(), text));
+            }
+        } else {
+            components.add(new Component(Kind.INSERT, text.length(), text));
+        }
+        return this;
+    }
+
+    public TextOperation delete(String text) {
+        if (text == null) return this;
+        return delete(text.length(), text);
+    }
+
+    /**
+     * @param length 삭제할 길이
+     * @param text 삭제되는 텍스트. 모르는 경우 null (길이가 맞지 않아도 null 로 취급)
+     */
+    public TextOperation delete(int length, String text) {
+        if (length <= 0) return this;
+        if (text != null && text.length() != length) text = null;
+        Component last = last();
+        if (last != null && last.kind == Kind.DELETE) {
+            String merged = (last.text != null && text != null) ? last.text + text : null;
+            components.set(components.size() - 1, new Component(Kind.DELETE, last.length + length, merged));
+        } else {
+            components.add(new Component(Kind.DELETE, length, text));
+        }
+        return this;
+    }
+
+    private Component last() {
+        return components.isEmpty() ? null : components.get(components.size() - 1);
+    }
+
+    private TextOperation add(Component c) {
+        switch (c.kind) {
+            case RETAIN: return retain(c.length);
+            case INSERT: return insert(c.text);
+            default: return delete(c.length, c.text);
+        }
+    }
+
+    private TextOperation trimTrailingRetain() {
+        Component last = last();
+        if (last != null && last.kind == Kind.RETAIN) {
+            components.remove(components.size() - 1);
+        }
+        return this;
+    }
+
+    // --- Queries ---
+
+    public List<Component> getComponents() {
+        return Collections.unmodifiableList(components);
+    }
+
+    /** 문서에 아무 변화도 주지 않는 연산인지 여부 */
+    public boolean isNoop() {
+        for (Component c : components) {
+            if (c.kind != Kind.RETAIN) return false;
+        }
+        return true;
+    }
+
+    /** 삭제된 텍스트를 모두 알고 있어 {@link #invert()} 할 수 있는지 여부 */
+    public boolean isInvertible() {
+        for (Component c : components) {
+            if (c.kind == Kind.DELETE && c.text == null) return false;
+        }
+        return true;
+    }
+
+    /** 연산이 적용되기 위해 문서가 가져야 하는 최소 길이 */
+    public int getBaseLength() {
+        int length = 0;
+        for (Component c : components) {
+            if (c.kind != Kind.INSERT) length += c.length;
+        }
+        return length;
+    }
+
+    /**
+     * 원본 문서 좌표 기준의 연속된 편집 목록을 반환합니다.
+     * 뒤에서부터 적용하면 앞쪽 편집의 좌표가 밀리지 않습니다.
+     */
+    public List<Edit> toEdits() {
+        List<Edit> edits = new ArrayList<>();
+        int base = 0;
+        int editStart = -1;
+        int editEnd = 0;
+        StringBuilder inserted = new StringBuilder();
+        for (Component c : components) {
+            if (c.kind == Kind.RETAIN) {
+                if (editStart >= 0) {
+                    edits.add(new Edit(editStart, editEnd, inserted.toString()));
+                    editStart = -1;
+                    inserted.setLength(0);
+                }
+                base += c.length;
+                continue;
+            }
+            if (editStart < 0) {
+                editStart = base;
+                editEnd = base;
+            }
+            if (c.kind == Kind.INSERT) {
+                inserted.append(c.text);
+            } else {
+                base += c.length;
+                editEnd = base;
+            }
+        }
+        if (editStart >= 0) {
+            edits.add(new Edit(editStart, editEnd, inserted.toString()));
+        }
+        return edits;
+    }
+
+    /** 문자열에 이 연산을 적용한 결과를 반환합니다. */
+    public String apply(String document) {
+        if (document.length() < getBaseLength()) {
+            throw new IllegalArgumentException("Operation base length " + getBaseLength() + " exceeds document length " + document.length());
+        }
+        StringBuilder result = new StringBuilder(document.length());
+        int index = 0;
+        for (Component c : components) {
+            switch (c.kind) {
+                case RETAIN:
+                    result.append(document, index, index + c.length);
+                    index += c.length;
+                    break;
+                case INSERT:
+                    result.append(c.text);
+                    break;
+                case DELETE:
+                    index += c.length;
+                    break;
+            }
+        }
+        result.append(document, index, document.length());
+        return result.toString();
+    }
+
+    /**
+     * 이 연산이 적용된 후의 위치를 계산합니다.
+     * @param insertBeforePosition true 이면 같은 위치의 삽입이 위치를 뒤로 민다.
+     */
+    public int transformPosition(int position, boolean insertBeforePosition) {
+        int base = 0;
+        int newPosition = position;
+        for (Component c : components) {
+            if (base > position) break;
+            switch (c.kind) {
+                case RETAIN:
+                    base += c.length;
+                    break;
+                case INSERT:
+                    if (base < position || (base == position && insertBeforePosition)) {
+                        newPosition += c.length;
+                    }
+                    break;
+                case DELETE:
+                    if (base < position) {
+                        newPosition -= Math.min(c.length, position - base);
+                    }
+                    base += c.length;
+                    break;
+            }
+        }
+        return newPosition;
+    }
+
+    // --- Algebra ---
+
+    /**
+     * 이 연산의 역연산을 반환합니다. 적용 후 문서에 역연산을 적용하면 원래 문서가 됩니다.
+     * @throws IllegalStateException 삭제된 텍스트를 모르는 컴포넌트가 있는 경우
+     */
+    public TextOperation invert() {
+        TextOperation inverse = new TextOperation();
+        for (Component c : components) {
+            switch (c.kind) {
+                case RETAIN:
+                    inverse.retain(c.length);
+                    break;
+                case INSERT:
+                    inverse.delete(c.text);
+                    break;
+                case DELETE:
+                    if (c.text == null) {
+                        throw new IllegalStateException("Cannot invert a delete whose text is unknown.");
+                    }
+                    inverse.insert(c.text);
+                    break;
+            }
+        }
+        return inverse;
+    }
+
+    /**
+     * this 다음에 next 를 적용한 것과 같은 하나의 연산을 만듭니다.
+     */
+    public TextOperation compose(TextOperation next) {
+        TextOperation result = new TextOperation();
+        Cursor a = new Cursor(this.components);
+        Cursor b = new Cursor(next.components);
+
+        while (a.hasNext() || b.hasNext()) {
+            if (a.kind() == Kind.DELETE) {
+                result.add(a.take(a.remaining()));
+                continue;
+            }
+            if (b.kind() == Kind.INSERT) {
+                result.add(b.take(b.remaining()));
+                continue;
+            }
+            if (!a.hasNext()) { // this 가 끝났으면 나머지는 암묵적 retain
+                result.add(b.take(b.remaining()));
+                continue;
+            }
+            if (!b.hasNext()) {
+                result.add(a.take(a.remaining()));
+                continue;
+            }
+
+            int n = Math.min(a.remaining(), b.remaining());
+            Component left = a.take(n);
+            Component right = b.take(n);
+            if (left.kind == Kind.RETAIN) {
+                // RETAIN 뒤에 RETAIN 또는 DELETE
+                result.add(right);
+            } else if (right.kind == Kind.RETAIN) {
+                // 삽입한 텍스트를 그대로 유지
+                result.add(left);
+            }
+            // INSERT 뒤에 DELETE: 삽입한 텍스트를 다시 지웠으므로 둘 다 사라진다.
+        }
+        return result.trimTrailingRetain();
+    }
+
+    /**
+     * 같은 문서에 동시에 만들어진 두 연산 a, b 를 변환합니다.
+     * 결과 (a', b') 는 apply(apply(doc, a), b') == apply(apply(doc, b), a') 를 만족합니다.
+     * @param aFirst 같은 위치에 동시에 삽입한 경우 a 의 텍스트를 앞에 둘지 여부
+     */
+    public static Pair transform(TextOperation a, TextOperation b, boolean aFirst) {
+        TextOperation aPrime = new TextOperation();
+        TextOperation bPrime = new TextOperation();
+        Cursor ca = new Cursor(a.components);
+        Cursor cb = new Cursor(b.components);
+
+        while (ca.hasNext() || cb.hasNext()) {
+            boolean aInsert = ca.kind() == Kind.INSERT;
+            boolean bInsert = cb.kind() == Kind.INSERT;
+            if (aInsert && (aFirst || !bInsert)) {
+                Component c = ca.take(ca.remaining());
+                aPrime.add(c);
+                bPrime.retain(c.length);
+                continue;
+            }
+            if (bInsert) {
+                Component c = cb.take(cb.remaining());
+                aPrime.retain(c.length);
+                bPrime.add(c);
+                continue;
+            }
+
+            // 한쪽이 끝났으면 나머지는 암묵적 retain 과 짝지어진다.
+            int n;
+            if (!ca.hasNext()) n = cb.remaining();
+            else if (!cb.hasNext()) n = ca.remaining();
+            else n = Math.min(ca.remaining(), cb.remaining());
+            Component left = ca.take(n);
+            Component right = cb.take(n);
+
+            if (left.kind == Kind.RETAIN && right.kind == Kind.RETAIN) {
+                aPrime.retain(n);
+                bPrime.retain(n);
+            } else if (left.kind == Kind.DELETE && right.kind == Kind.RETAIN) {
+                aPrime.add(left);
+            } else if (left.kind == Kind.RETAIN && right.kind == Kind.DELETE) {
+                bPrime.add(right);
+            }
+            // 양쪽이 같은 텍스트를 지웠으면 어느 쪽에도 남지 않는다.
+        }
+        return new Pair(aPrime.trimTrailingRetain(), bPrime.trimTrailingRetain());
+    }
+
+    /**
+     * 컴포넌트 목록을 길이 단위로 잘라 읽는 커서입니다.
+     * 목록이 끝나면 길이 제한이 없는 RETAIN 을 돌려줍니다.
+     */
+    private static final class Cursor {
+        private final List<Component> components;
+        private int index = 0;
+        private int offset = 0;
+
+        Cursor(List<Component> components) {
+            this.components = components;
+        }
+
+        boolean hasNext() {
+            return index < components.size();
+        }
+
+        Kind kind() {
+            return hasNext() ? components.get(index).kind : Kind.RETAIN;
+        }
+
+        int remaining() {
+            return hasNext() ? components.get(index).length - offset : Integer.MAX_VALUE;
+        }
+
+        Component take(int n) {
+            if (!hasNext()) {
+                return new Component(Kind.RETAIN, n, null);
+            }
+            Component current = components.get(index);
+            Component part = (offset == 0 && n == current.length) ? current : current.slice(offset, offset + n);
+            offset += n;
+            if (offset >= current.length) {
+                index++;
+                offset = 0;
+            }
+            return part;
+        }
+    }
+
+    // --- Serialization ---
+
+    /**
+     * [retain: 양수, insert: 문자열, delete: 음수] 형식의 JSON 배열로 변환합니다.
+     * 삭제된 텍스트는 서버가 알고 있으므로 길이만 전송합니다.
+     */
+    public JSONArray toJson() {
+        return toJson(false);
+    }
+
+    /**
+     * @param withDeletedText true 이면 텍스트를 아는 삭제는 {"d": "삭제된 텍스트"} 형식으로 씁니다.
+     *                        나중에 역연산이 필요한 곳(예: 오프라인 편집 저널)에 남길 때 사용합니다.
+     */
+    public JSONArray toJson(boolean withDeletedText) {
+        JSONArray array = new JSONArray();
+        for (Component c : components) {
+            switch (c.kind) {
+                case RETAIN: array.put(c.length); break;
+                case INSERT: array.put(c.text); break;
+                case DELETE:
+                    if (withDeletedText && c.text != null) array.put(new JSONObject().put("d", c.text));
+                    else array.put(-c.length);
+                    break;
+            }
+        }
+        return array;
+    }
+
+    public static TextOperation fromJson(JSONArray array) {
+        TextOperation op = new TextOperation();
+        for (int i = 0; i < array.length(); i++) {
+            Object value = array.get(i);
+            if (value instanceof String) {
+                op.insert((String) value);
+            } else if (value instanceof JSONObject) {
+                // {"d": "삭제된 텍스트"} 형식으로 텍스트까지 보내는 경우
+                String deleted = ((JSONObject) value).getString("d");
+                op.delete(deleted);
+            } else {
+                int n = array.getInt(i);
+                if (n > 0) op.retain(n);
+                else op.delete(-n, null);
+            }
+        }
+        return op.trimTrailingRetain();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("TextOperation[");
+        for (int i = 0; i < components.size(); i++) {
+            Component c = components.get(i);
+            if (i > 0) sb.append(", ");
+            switch (c.kind) {
+                case RETAIN: sb.append("retain(").append(c.length).append(')'); break;
+                case INSERT: sb.append("insert('").append(c.text).append("')"); break;
+                case DELETE: sb.append("delete(").append(c.length).append(')'); break;
+            }
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,113 @@
+package com.ethis2s.ot;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * 문서의 줄 단위 해시를 편집마다 점진적으로 갱신하여, 서버와 내용이 같은지 빠르게 비교하기 위한 체크섬입니다.
+ *
+ * <p>편집이 일어나면 바뀐 줄의 해시만 다시 계산하므로 편집 비용은 바뀐 줄 수에 비례합니다.
+ * 문서 전체 다이제스트와 블록 다이제스트는 줄 해시(long) 배열을 한 번 훑어 계산합니다.
+ *
+ * <p>서버도 같은 값을 계산할 수 있도록 규칙은 다음과 같습니다.
+ * <ul>
+ *   <li>줄: '\n' 으로 나눈 각 줄의 내용 ('\n' 제외). 빈 문서는 빈 줄 하나.</li>
+ *   <li>줄 해시: 줄의 UTF-16 코드 유닛 c 마다 {@code h = (h ^ c) * FNV_PRIME}, 초기값 FNV_OFFSET (64비트 FNV-1a)</li>
+ *   <li>다이제스트: 줄 해시 l 마다 {@code d = (d ^ l) * FNV_PRIME}, 초기값 FNV_OFFSET.
+ *       블록 다이제스트는 linesPerBlock 줄씩 묶어 같은 방식으로 계산합니다.</li>
+ * </ul>
+ * 스레드 안전하지 않으므로 문서를 변경하는 스레드(FX 스레드)에서만 사용해야 합니다.
+ */
+public class LineHashIndex {
+
+    public static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    public static final long FNV_PRIME = 0x100000001b3L;
+
+    private long[] lineHashes = new long[64];
+    private int lineCount;
+
+    public LineHashIndex() {
+        lineHashes[0] = hashLine("");
+        lineCount = 1;
+    }
+
+    /**
+     * 편집 결과를 반영합니다.
+     * 편집 전 문서의 [firstLine, firstLine + removedLineBreaks] 줄들이
+     * 편집 후 문서의 [firstLine, firstLine + insertedLineBreaks] 줄들로 바뀐 것으로 처리합니다.
+     * @param lineText 편집 후 문서의 줄 내용을 돌려주는 함수 ('\n' 제외)
+     */
+    public void applyChange(int firstLine, int removedLineBreaks, int insertedLineBreaks, IntFunction<String> lineText) {
+        int delta = insertedLineBreaks - removedLineBreaks;
+        if (delta != 0) {
+            int tailStart = firstLine + removedLineBreaks + 1;
+            int newCount = lineCount + delta;
+            if (newCount > lineHashes.length) {
+                lineHashes = Arrays.copyOf(lineHashes, Math.max(newCount, lineHashes.length * 2));
+            }
+            System.arraycopy(lineHashes, tailStart, lineHashes, tailStart + delta, lineCount - tailStart);
+            lineCount = newCount;
+        }
+        for (int line = firstLine; line <= firstLine + insertedLineBreaks; line++) {
+            lineHashes[line] = hashLine(lineText.apply(line));
+        }
+    }
+
+    /** 문서 전체로 줄 해시를 다시 만듭니다. (파일을 새로 불러왔을 때 등) */
+    public void reset(String document) {
+        lineCount = 0;
+        int start = 0;
+        while (true) {
+            int end = document.indexOf('\n', start);
+            if (lineCount == lineHashes.length) {
+                lineHashes = Arrays.copyOf(lineHashes, lineHashes.length * 2);
+            }
+            if (end < 0) {
+                lineHashes[lineCount++] = hashLine(document, start, document.length());
+                break;
+            }
+            lineHashes[lineCount++] = hashLine(document, start, end);
+            start = end + 1;
+        }
+    }
+
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /** 문서 전체 다이제스트 */
+    public long digest() {
+        return fold(0, lineCount);
+    }
+
+    /** linesPerBlock 줄씩 묶은 블록 다이제스트 목록. 서버는 처음으로 달라지는 블록부터 내용을 보내줍니다. */
+    public long[] blockDigests(int linesPerBlock) {
+        int blocks = (lineCount + linesPerBlock - 1) / linesPerBlock;
+        long[] digests = new long[blocks];
+        for (int i = 0; i < blocks; i++) {
+            int from = i * linesPerBlock;
+            digests[i] = fold(from, Math.min(lineCount, from + linesPerBlock));
+        }
+        return digests;
+    }
+
+    private long fold(int from, int to) {
+        long digest = FNV_OFFSET;
+        for (int i = from; i < to; i++) {
+            digest = (digest ^ lineHashes[i]) * FNV_PRIME;
+        }
+        return digest;
+    }
+
+    public static long hashLine(String line) {
+        return hashLine(line, 0, line.length());
+    }
+
+    private static long hashLine(String text, int from, int to) {
+        long hash = FNV_OFFSET;
+        for (int i = from; i < to; i++) {
+            hash = (hash ^ text.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,378 @@
+package com.ethis2s.ot;
+
+import com.ethis2s.model.Operation;
+import com.ethis2s.model.TextOperation;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 서버 확정(ACK)을 받지 못한 로컬 연산을 파일 단위로 디스크에 남기는 추가 전용(append-only) 저널입니다.
+ *
+ * <p>{@link UnconfirmedOperationQueue} 에 일어난 일을 그대로 한 줄짜리 JSON 레코드로 기록합니다.
+ * <ul>
+ *   <li>{@code base}   : 저널이 시작되는 확정 버전</li>
+ *   <li>{@code op}     : 로컬 연산 추가. 마지막 연산과 uniqId 가 같으면 그 연산에 합성된 것이다.
+ *                        복구 후 되돌릴 수 있어야 하므로 삭제는 {"d": "삭제된 텍스트"} 형식으로 텍스트까지 남긴다.</li>
+ *   <li>{@code ack}    : uniqId 까지 확정됨, 확정 버전이 version 이 된다.</li>
+ *   <li>{@code remote} : 다른 사용자의 연산으로 큐가 rebase 됨</li>
+ * </ul>
+ * 같은 순서로 다시 적용하면({@link #recover}) 프로그램이 종료되기 직전의 큐와 기준 버전을 얻을 수 있습니다.
+ * 큐가 비면 파일을 지우고, 레코드가 많이 쌓이면 현재 큐 내용으로 다시 씁니다.
+ *
+ * <p>기록은 호출한 스레드에서 직렬화한 뒤 공용 쓰기 스레드가 FileChannel 로 순서대로 씁니다.
+ * 운영체제가 죽거나 전원이 꺼져도 기록이 남도록 쓴 뒤 {@code force(false)} 로 디스크에 내립니다. 레코드마다 내리면
+ * 입력마다 fsync 가 일어나므로, 쓰기 스레드에 이 저널의 기록이 더 남아 있으면 미루고 마지막 기록 뒤에 한 번만 내립니다.
+ * 그래서 연속 입력 중에는 아직 내리지 않은 몇 개의 기록을 잃을 수 있지만, 키 입력 속도로는 거의 매 기록이 곧바로 내려갑니다.
+ * 기록 도중 종료되어 마지막 줄이 잘린 경우 복구할 때 그 줄은 무시합니다.
+ */
+public class OperationJournal {
+
+    private static final int COMPACT_THRESHOLD = 1000;
+
+    // 모든 저널이 공유하는 쓰기 스레드. 파일 I/O 가 FX 스레드를 막지 않도록 한다.
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "operation-journal-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path path;
+    private int recordCount = 0;
+    private boolean started = false;
+    // 쓰기 스레드에 넣었지만 아직 쓰지 않은 레코드 수. 0 이 되면 디스크에 내린다.
+    private final AtomicInteger queuedAppends = new AtomicInteger();
+
+    // 쓰기 스레드에서만 사용
+    private FileChannel channel;
+
+    public OperationJournal(Path directory, String key) {
+        this.path = directory.resolve(fileNameFor(key));
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /** 큐가 비어 있는 상태에서 첫 로컬 연산이 추가되기 전에 호출합니다. */
+    public void begin(long baseVersion) {
+        started = true;
+        recordCount = 0;
+        JSONObject record = new JSONObject().put("t", "base").put("version", baseVersion);
+        submit(() -> {
+            closeChannel();
+            Files.deleteIfExists(path);
+            appendLine(record);
+        });
+        recordCount++;
+    }
+
+    public boolean isStarted() {
+        return started;
+    }
+
+    public void appendLocal(Operation op) {
+        append(new JSONObject().put("t", "op")
+            .put("uniqId", op.getUniqId())
+            .put("cursorPosition", op.getCursorPosition())
+            .put("ops", op.getTextOperation().toJson(true)));
+    }
+
+    public void appendAck(String uniqId, long version) {
+        append(new JSONObject().put("t", "ack").put("uniqId", uniqId).put("version", version));
+    }
+
+    public void appendRemote(Operation serverOp, long version) {
+        append(new JSONObject().put("t", "remote")
+            .put("uniqId", serverOp.getUniqId() == null ? JSONObject.NULL : serverOp.getUniqId())
+            .put("version", version)
+            .put("ops", serverOp.getTextOperation().toJson()));
+    }
+
+    /** 레코드가 너무 많이 쌓였으면 현재 큐 내용만으로 저널을 다시 씁니다. */
+    public void compactIfNeeded(long baseVersion, Iterable<Operation> queue) {
+        if (started && recordCount >= COMPACT_THRESHOLD) {
+            rewrite(baseVersion, queue);
+        }
+    }
+
+    /**
+     * 현재 큐 내용만으로 저널을 다시 씁니다. catch-up 이나 저널 복구처럼 큐가 한꺼번에 바뀐 뒤에 호출합니다.
+     * 큐가 비어 있으면 저널을 지웁니다.
+     */
+    public void rewrite(long baseVersion, Iterable<Operation> queue) {
+        List<JSONObject> records = new ArrayList<>();
+        records.add(new JSONObject().put("t", "base").put("version", baseVersion));
+        for (Operation op : queue) {
+            records.add(new JSONObject().put("t", "op")
+                .put("uniqId", op.getUniqId())
+                .put("cursorPosition", op.getCursorPosition())
+                .put("ops", op.getTextOperation().toJson(true)));
+        }
+        if (records.size() == 1) {
+            started = true; // clear() 가 파일을 지우도록
+            clear();
+            return;
+        }
+        started = true;
+        recordCount = records.size();
+        submit(() -> {
+            closeChannel();
+            // 임시 파일에 쓴 뒤 바꿔치기하여, 도중에 종료되어도 이전 저널이나 새 저널 중 하나는 온전히 남는다.
+            Files.createDirectories(path.getParent());
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            StringBuilder sb = new StringBuilder();
+            for (JSONObject record : records) {
+                sb.append(record).append('\n');
+            }
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer bytes = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+                while (bytes.hasRemaining()) {
+                    out.write(bytes);
+                }
+                out.force(false); // 바꿔치기 전에 내려야 새 저널이 빈 파일로 남지 않는다.
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        });
+    }
+
+    /** 모든 로컬 연산이 확정되었으므로 저널을 지웁니다. */
+    public void clear() {
+        if (!started) return;
+        started = false;
+        recordCount = 0;
+        submit(() -> {
+            closeChannel();
+            Files.deleteIfExists(path);
+        });
+    }
+
+    /** 파일은 그대로 두고 채널만 닫습니다. (탭을 닫아도 확정되지 않은 연산은 남겨 둔다) */
+    public void close() {
+        submit(this::closeChannel);
+    }
+
+    private void append(JSONObject record) {
+        if (!started) return;
+        recordCount++;
+        queuedAppends.incrementAndGet();
+        submit(() -> {
+            try {
+                appendLine(record);
+            } finally {
+                if (queuedAppends.decrementAndGet() == 0 && channel != null) {
+                    channel.force(false);
+                }
+            }
+        });
+    }
+
+    private interface IoTask {
+        void run() throws IOException;
+    }
+
+    private void submit(IoTask task) {
+        WRITER.execute(() -> {
+            try {
+                task.run();
+            } catch (IOException e) {
+                System.err.println("[OperationJournal] Failed to write " + path + ": " + e.getMessage());
+            }
+        });
+    }
+
+    private void appendLine(JSONObject record) throws IOException {
+        if (channel == null) {
+            Files.createDirectories(path.getParent());
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        ByteBuffer bytes = ByteBuffer.wrap((record + "\n").getBytes(StandardCharsets.UTF_8));
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * 디스크에 남아 있는 저널을 다시 적용해 확정되지 않은 연산 목록을 복구합니다.
+     * 쓰기 스레드에 남은 작업이 있으면 그 뒤에 읽도록 같은 스레드에서 읽는다. 호출한 스레드는 기다리지 않는다.
+     * @return 쓰기 스레드에서 완료되는 결과. 복구할 연산이 없거나 읽지 못했으면 null 로 완료된다.
+     */
+    public CompletableFuture<Recovered> recover() {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                closeChannel();
+                if (!Files.exists(path)) return null;
+                Recovered recovered = null;
+                for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                    JSONObject record;
+                    try {
+                        record = new JSONObject(line);
+                    } catch (JSONException e) {
+                        break; // 기록 도중 잘린 마지막 줄
+                    }
+                    String type = record.getString("t");
+                    if ("base".equals(type)) {
+                        recovered = new Recovered(record.getLong("version"));
+                    } else if (recovered != null && !recovered.apply(type, record)) {
+                        // 삭제된 텍스트가 없는 연산은 catch-up 때 되돌릴 수 없어 문서를 망가뜨리므로 저널 전체를 버린다.
+                        System.err.println("[OperationJournal] Discarding " + path + ": journaled op "
+                            + record.optString("uniqId") + " cannot be inverted.");
+                        Files.deleteIfExists(path);
+                        return null;
+                    }
+                }
+                return (recovered == null || recovered.isEmpty()) ? null : recovered;
+            } catch (IOException | RuntimeException e) {
+                System.err.println("[OperationJournal] Failed to read " + path + ": " + e.getMessage());
+                return null;
+            }
+        }, WRITER);
+    }
+
+    /**
+     * 저널에서 복구한 확정되지 않은 연산들과 그 기준 버전.
+     * 서버 연산으로 rebase 할 때 완전히 흡수된 연산도 빈 연산으로 자리를 지켜두어,
+     * 이후 그 uniqId 의 ACK 가 오면 앞선 연산까지 함께 확정할 수 있게 한다.
+     */
+    public static final class Recovered {
+        private long baseVersion;
+        private final List<Operation> operations = new ArrayList<>();
+
+        Recovered(long baseVersion) {
+            this.baseVersion = baseVersion;
+        }
+
+        public long getBaseVersion() {
+            return baseVersion;
+        }
+
+        public List<Operation> getOperations() {
+            return operations;
+        }
+
+        public boolean isEmpty() {
+            return operations.stream().allMatch(Operation::isNoop);
+        }
+
+        /** 복구된 연산을 모두 합성한 하나의 연산 (기준 버전 문서에 적용) */
+        public TextOperation composed() {
+            TextOperation script = new TextOperation();
+            for (Operation op : operations) {
+                script = script.compose(op.getTextOperation());
+            }
+            return script;
+        }
+
+        /**
+         * 기준 버전 다음의 서버 연산을 반영합니다. 내 연산(uniqId 일치)이면 그 연산까지 확정하고,
+         * 다른 사용자의 연산이면 남은 연산들을 그 이후 시점으로 옮깁니다.
+         */
+        public void applyServerOperation(Operation serverOp, long version) {
+            if (!acknowledge(serverOp.getUniqId(), version)) {
+                rebase(serverOp, version);
+            }
+        }
+
+        /** @return 레코드를 적용할 수 없으면(되돌릴 수 없는 로컬 연산) false */
+        private boolean apply(String type, JSONObject record) {
+            switch (type) {
+                case "op": {
+                    TextOperation textOperation = TextOperation.fromJson(record.getJSONArray("ops"));
+                    if (!textOperation.isInvertible()) {
+                        return false;
+                    }
+                    Operation op = new Operation(textOperation,
+                        record.optInt("cursorPosition", -1), baseVersion, record.getString("uniqId"));
+                    int last = operations.size() - 1;
+                    if (last >= 0 && op.getUniqId().equals(operations.get(last).getUniqId())) {
+                        Operation composed = OperationTransformer.compose(operations.get(last), op);
+                        if (composed.isNoop()) {
+                            operations.remove(last);
+                        } else {
+                            operations.set(last, composed);
+                        }
+                    } else {
+                        operations.add(op);
+                    }
+                    break;
+                }
+                case "ack":
+                    acknowledge(record.getString("uniqId"), record.getLong("version"));
+                    break;
+                case "remote": {
+                    Operation serverOp = new Operation(TextOperation.fromJson(record.getJSONArray("ops")),
+                        -1, record.getLong("version"), record.optString("uniqId", null));
+                    rebase(serverOp, record.getLong("version"));
+                    break;
+                }
+                default:
+                    break;
+            }
+            return true;
+        }
+
+        private boolean acknowledge(String uniqId, long version) {
+            if (uniqId == null) return false;
+            for (int i = 0; i < operations.size(); i++) {
+                if (uniqId.equals(operations.get(i).getUniqId())) {
+                    operations.subList(0, i + 1).clear();
+                    baseVersion = version;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void rebase(Operation serverOp, long version) {
+            TextOperation serverText = serverOp.getTextOperation();
+            for (int i = 0; i < operations.size(); i++) {
+                Operation myOp = operations.get(i);
+                TextOperation.Pair pair = TextOperation.transform(myOp.getTextOperation(), serverText,
+                    OperationTransformer.comesFirst(myOp, serverOp));
+                int myCursor = OperationTransformer.transformCursor(myOp.getCursorPosition(), serverText);
+                serverText = pair.second;
+                operations.set(i, new Operation(pair.first, myCursor, version, myOp.getUniqId()));
+            }
+            baseVersion = version;
+        }
+    }
+
+    /** 저널 파일 이름. 사용자/프로젝트/경로를 조합한 키를 그대로 쓰면 경로 문자가 섞이므로 해시를 사용한다. */
+    public static String fileNameFor(String key) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                hex.append(String.format("%02x", hash[i]));
+            }
+            return hex + ".journal";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
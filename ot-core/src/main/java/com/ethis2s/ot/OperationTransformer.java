@@ -0,0 +1,101 @@
+package com.ethis2s.ot;
+
+import com.ethis2s.model.Operation;
+import com.ethis2s.model.TextOperation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link Operation} 단위의 OT 연산 모음입니다.
+ * 실제 변환/합성은 {@link TextOperation} 이 수행하고, 여기서는 커서 위치와 uniqId/버전 같은
+ * 연산 메타데이터를 함께 맞춰 줍니다. UI 스레드나 네트워크 상태에 의존하지 않습니다.
+ */
+public final class OperationTransformer {
+
+    private OperationTransformer() {
+    }
+
+    /**
+     * myOp 를 otherOp 이후 시점으로 변환합니다.
+     * @return 변환된 연산. otherOp 에 완전히 흡수되어 아무 변화가 없으면 null (예: 같은 범위를 삭제)
+     */
+    public static Operation transform(Operation myOp, Operation otherOp) {
+        TextOperation.Pair pair = TextOperation.transform(myOp.getTextOperation(), otherOp.getTextOperation(), comesFirst(myOp, otherOp));
+        if (pair.first.isNoop()) {
+            return null;
+        }
+        int myCursorPos = transformCursor(myOp.getCursorPosition(), otherOp.getTextOperation());
+        return new Operation(pair.first, myCursorPos, myOp.getVersion(), myOp.getUniqId());
+    }
+
+    /**
+     * 연속으로 적용된 두 연산(first 다음 second)을 하나의 연산으로 합칩니다.
+     * 치환이나 서로 떨어진 편집도 retain/insert/delete 컴포넌트로 표현되므로 항상 합칠 수 있습니다.
+     */
+    public static Operation compose(Operation first, Operation second) {
+        TextOperation composed = first.getTextOperation().compose(second.getTextOperation());
+        return new Operation(composed, second.getCursorPosition(), first.getVersion(), first.getUniqId());
+    }
+
+    /**
+     * 여러 편집이 섞인 연산을 같은 결과를 내는 단순 INSERT/DELETE 연산들로 나눕니다.
+     * 각 연산의 위치는 앞선 연산들이 적용된 문서 기준이므로 순서대로 적용해야 합니다.
+     * 나뉜 연산의 uniqId 는 원래 uniqId 뒤에 ".순번" 을 붙이고, 마지막 연산만 원래 커서 위치를 가진다.
+     */
+    public static List<Operation> split(Operation op) {
+        List<TextOperation.Component> components = op.getTextOperation().getComponents();
+        int lastEdit = components.size() - 1;
+        while (lastEdit >= 0 && components.get(lastEdit).getKind() == TextOperation.Kind.RETAIN) {
+            lastEdit--;
+        }
+        List<Operation> parts = new ArrayList<>();
+        int position = 0;
+        for (int i = 0; i <= lastEdit; i++) {
+            TextOperation.Component c = components.get(i);
+            String uniqId = op.getUniqId() == null ? null : op.getUniqId() + "." + parts.size();
+            switch (c.getKind()) {
+                case RETAIN:
+                    position += c.getLength();
+                    break;
+                case INSERT: {
+                    int cursor = (i == lastEdit) ? op.getCursorPosition() : position + c.getLength();
+                    parts.add(new Operation(Operation.Type.INSERT, position, c.getText(), cursor, op.getVersion(), uniqId));
+                    position += c.getLength();
+                    break;
+                }
+                case DELETE: {
+                    int cursor = (i == lastEdit) ? op.getCursorPosition() : position;
+                    parts.add(new Operation(Operation.Type.DELETE, position, c.getText(), c.getLength(), cursor, op.getVersion(), uniqId));
+                    break;
+                }
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * 문서 위치를 otherOp 적용 이후의 위치로 옮깁니다.
+     * 연산이 발생한 위치보다 앞에 있는 위치는 영향이 없고, 같은 위치의 삽입은 위치를 뒤로 민다.
+     */
+    public static int transformPosition(int position, Operation otherOp) {
+        return otherOp.getTextOperation().transformPosition(position, true);
+    }
+
+    /**
+     * 연산에 실린 커서 위치를 otherOp 이후로 옮깁니다. 커서 정보가 없는 연산(-1)은 그대로 둡니다.
+     */
+    public static int transformCursor(int cursorPosition, TextOperation otherOp) {
+        if (cursorPosition < 0) return cursorPosition;
+        return otherOp.transformPosition(cursorPosition, false);
+    }
+
+    /**
+     * 같은 위치에 동시에 삽입한 경우 uniqId 가 작은 쪽의 텍스트가 앞에 온다.
+     * 양쪽 사이트가 같은 결과를 내도록 변환 방향과 무관하게 같은 규칙을 사용해야 합니다.
+     */
+    public static boolean comesFirst(Operation myOp, Operation otherOp) {
+        return myOp.getUniqId() != null && otherOp.getUniqId() != null
+            && myOp.getUniqId().compareTo(otherOp.getUniqId()) < 0;
+    }
+}
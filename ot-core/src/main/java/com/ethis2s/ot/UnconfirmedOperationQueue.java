@@ -0,0 +1,341 @@
+package com.ethis2s.ot;
+
+import com.ethis2s.model.Operation;
+import com.ethis2s.model.TextOperation;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * 서버 확정(ACK)을 기다리는 로컬 연산 큐입니다.
+ *
+ * <p>큐 앞쪽에는 서버로 전송된(in-flight) 연산이, 뒤쪽에는 아직 전송되지 않은 연산이 모여 있습니다.
+ * 동시에 전송할 수 있는 연산 수는 pipelineWindow 로 제한되며, 1 이면 stop-and-wait 방식과 같습니다.
+ * 다른 사용자의 연산이 도착하면 {@link #rebase} 로 큐 전체를 그 연산 이후 시점으로 옮깁니다.
+ *
+ * <p>배열 기반 링 버퍼로 구현되어 있고, 전송/미전송 경계(inFlightCount)와 마지막 예상 버전을 필드로 관리하므로
+ * 추가, 전송, ACK 처리는 큐 길이와 무관하게 O(1) 입니다 (ACK 시 uniqId 확인은 전송 중인 연산 수만큼).
+ *
+ * <p>스레드 안전하지 않으므로 한 스레드(클라이언트에서는 FX 스레드)에서만 사용해야 합니다.
+ */
+public class UnconfirmedOperationQueue implements Iterable<Operation> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private Operation[] buffer = new Operation[INITIAL_CAPACITY];
+    private int head = 0;
+    private int size = 0;
+
+    private int pipelineWindow;
+    // 큐 앞에서부터 inFlightCount 개가 전송된 연산이다. (전송/미전송 경계)
+    private int inFlightCount = 0;
+    // 큐 마지막 연산의 예상 버전. 큐가 비어 있으면 의미 없음.
+    private long lastExpectedVersion = 0;
+
+    public UnconfirmedOperationQueue(int pipelineWindow) {
+        this.pipelineWindow = Math.max(1, pipelineWindow);
+    }
+
+    /**
+     * 큐의 마지막 연산이 아직 전송되지 않았다면 새 연산을 그 연산에 합성(compose)합니다.
+     * 합성 결과가 아무 변화도 없는 연산(예: 입력 직후 백스페이스)이면 마지막 연산을 큐에서 제거합니다.
+     * @return 합성하여 새 연산을 따로 큐에 넣을 필요가 없으면 true
+     */
+    public boolean composeIntoTail(Operation op) {
+        return composeIntoTail(op, true);
+    }
+
+    /**
+     * @param allowCompound false 이면 합성 결과가 COMPOUND 가 되는 경우 합성하지 않는다. (COMPOUND 를 받지 않는 서버)
+     */
+    public boolean composeIntoTail(Operation op, boolean allowCompound) {
+        if (size == inFlightCount) {
+            return false; // 비어 있거나 마지막 연산이 이미 전송됨
+        }
+        int tailIndex = index(size - 1);
+        Operation tail = buffer[tailIndex];
+        Operation composed = OperationTransformer.compose(tail, op);
+        if (!allowCompound && composed.getType() == Operation.Type.COMPOUND) {
+            return false;
+        }
+        if (composed.isNoop()) {
+            buffer[tailIndex] = null;
+            size--;
+            lastExpectedVersion = tail.getExpectedVersion() - 1;
+        } else {
+            composed.setExpectedVersion(tail.getExpectedVersion());
+            buffer[tailIndex] = composed;
+        }
+        return true;
+    }
+
+    /**
+     * 새 로컬 연산을 미전송 상태로 큐 끝에 추가합니다. uniqId 는 호출하는 쪽에서 미리 지정해야 합니다.
+     */
+    public void add(Operation op, long localVersion) {
+        long lastVersion = (size == 0) ? localVersion : Math.max(localVersion, lastExpectedVersion);
+        op.setVersion(localVersion);
+        op.setExpectedVersion(lastVersion + 1);
+        op.setSentToServer(false);
+        if (size == buffer.length) {
+            grow();
+        }
+        buffer[index(size)] = op;
+        size++;
+        lastExpectedVersion = lastVersion + 1;
+    }
+
+    public boolean isInFlight(String uniqId) {
+        if (uniqId == null) return false;
+        for (int i = 0; i < inFlightCount; i++) {
+            if (uniqId.equals(buffer[index(i)].getUniqId())) return true;
+        }
+        return false;
+    }
+
+    /**
+     * uniqId 에 해당하는 전송 중 연산까지를 확정 처리합니다.
+     * 서버는 받은 순서대로 처리하므로 ACK 도 uniqId 순서대로 온다.
+     * 앞선 연산의 ACK 가 유실되었더라도 이번 ACK 까지의 연산은 모두 확정된 것으로 본다.
+     * @return 전송 중인 연산과 일치하여 확정했으면 true
+     */
+    public boolean acknowledge(String uniqId) {
+        if (!isInFlight(uniqId)) {
+            return false;
+        }
+        Operation confirmedOp;
+        do {
+            confirmedOp = buffer[head];
+            buffer[head] = null;
+            head = index(1);
+            size--;
+            inFlightCount--;
+        } while (!uniqId.equals(confirmedOp.getUniqId()));
+        return true;
+    }
+
+    /**
+     * 전송 상태와 무관하게 큐 전체에서 uniqId 를 찾아 그 연산까지 확정 처리합니다.
+     * stop-and-wait 모드의 rebase 는 전송 중 표시를 지우므로, 재접속 히스토리처럼 전송 여부를 미리 알고 있는
+     * 호출자가 사용합니다. rebase 로 빈 연산이 되어 이미 큐에서 빠진 연산이면 아무것도 하지 않습니다.
+     * @return 큐에 남아 있던 연산과 일치하여 확정했으면 true
+     */
+    public boolean acknowledgeQueued(String uniqId) {
+        if (uniqId == null) return false;
+        int matched = -1;
+        for (int i = 0; i < size; i++) {
+            if (uniqId.equals(buffer[index(i)].getUniqId())) {
+                matched = i;
+                break;
+            }
+        }
+        if (matched < 0) {
+            return false;
+        }
+        for (int i = 0; i <= matched; i++) {
+            buffer[head] = null;
+            head = index(1);
+        }
+        size -= matched + 1;
+        inFlightCount = Math.max(0, inFlightCount - (matched + 1));
+        return true;
+    }
+
+    /**
+     * 아직 확정되지 않은 로컬 연산들을 서버 연산 기준으로 재배치(rebase)합니다.
+     * 파이프라인 모드에서는 이미 전송된 연산을 서버가 직접 변환하므로 다시 보내지 않고,
+     * 로컬 기록만 서버와 같은 결과가 되도록 변환해 둡니다. 큐는 제자리에서 갱신됩니다.
+     * @param baseVersion 서버 연산이 반영된 버전. 남은 연산들의 예상 버전은 이 값 다음부터 다시 매긴다.
+     * @return 모든 로컬 연산 이후 시점으로 변환된 서버 연산. 변환 결과 변화가 없으면 null
+     */
+    public Operation rebase(Operation serverOp, long baseVersion) {
+        boolean keepInFlight = pipelineWindow > 1;
+        TextOperation serverText = serverOp.getTextOperation();
+        int serverCursor = serverOp.getCursorPosition();
+        long expectedVersion = baseVersion;
+        int kept = 0;
+        int keptInFlight = 0;
+        for (int i = 0; i < size; i++) {
+            Operation myOp = buffer[index(i)];
+            boolean wasInFlight = keepInFlight && myOp.isSentToServer();
+            // 내 연산은 서버 연산 이후로, 서버 연산은 내 연산 이후로 한 단계씩 함께 변환한다.
+            TextOperation.Pair pair = TextOperation.transform(myOp.getTextOperation(), serverText,
+                    OperationTransformer.comesFirst(myOp, serverOp));
+            int myCursor = OperationTransformer.transformCursor(myOp.getCursorPosition(), serverText);
+            serverCursor = OperationTransformer.transformCursor(serverCursor, myOp.getTextOperation());
+            serverText = pair.second;
+
+            // 서버 연산에 완전히 흡수된 연산은 버린다. 단, 전송 중인 연산은 ACK 가 도착하므로 빈 연산으로 자리를 지켜둔다.
+            if (!pair.first.isNoop() || wasInFlight) {
+                Operation rebasedOp = new Operation(pair.first, myCursor, myOp.getVersion(), myOp.getUniqId());
+                rebasedOp.setSentToServer(wasInFlight);
+                rebasedOp.setExpectedVersion(++expectedVersion);
+                buffer[index(kept++)] = rebasedOp;
+                if (wasInFlight) keptInFlight++;
+            }
+        }
+        truncate(kept);
+        inFlightCount = keptInFlight;
+        lastExpectedVersion = expectedVersion;
+
+        if (serverText.isNoop()) {
+            return null;
+        }
+        return new Operation(serverText, serverCursor, serverOp.getVersion(), serverOp.getUniqId());
+    }
+
+    /**
+     * 윈도우에 여유가 있으면 다음 미전송 연산을 전송 상태로 바꾸고 반환합니다.
+     * 기준 버전 = 확정된 버전 + 앞서 전송 중인 연산 수 (stop-and-wait 에서는 localVersion 과 같다)
+     * @return 지금 서버로 보내야 하는 연산. 보낼 연산이 없거나 윈도우가 가득 찼으면 null
+     */
+    public Operation pollSendable(long localVersion) {
+        if (inFlightCount >= pipelineWindow || inFlightCount >= size) {
+            return null;
+        }
+        Operation op = buffer[index(inFlightCount)];
+        op.setSentToServer(true);
+        op.setVersion(localVersion + inFlightCount);
+        inFlightCount++;
+        return op;
+    }
+
+    /**
+     * 다음에 보낼 미전송 연산이 COMPOUND 이면 같은 결과를 내는 단순 INSERT/DELETE 연산들로 제자리에서 나눕니다.
+     * COMPOUND 를 받지 않는 서버로 보내기 전에 호출하며, 뒤따르는 연산들의 예상 버전은 나뉜 수만큼 밀린다.
+     * rebase 는 DELETE 를 COMPOUND 로 바꿀 수 있으므로 합성 단계가 아니라 전송 직전에 나눠야 한다.
+     * @return 나눴으면 true
+     */
+    public boolean splitNextSendable() {
+        if (inFlightCount >= size) {
+            return false;
+        }
+        Operation op = buffer[index(inFlightCount)];
+        if (op.getType() != Operation.Type.COMPOUND) {
+            return false;
+        }
+        List<Operation> parts = OperationTransformer.split(op);
+        int extra = parts.size() - 1;
+        while (size + extra > buffer.length) {
+            grow();
+        }
+        for (int i = size - 1; i > inFlightCount; i--) {
+            buffer[index(i + extra)] = buffer[index(i)];
+        }
+        long expectedVersion = op.getExpectedVersion() - 1;
+        for (int i = 0; i < parts.size(); i++) {
+            Operation part = parts.get(i);
+            part.setSentToServer(false);
+            buffer[index(inFlightCount + i)] = part;
+        }
+        size += extra;
+        for (int i = inFlightCount; i < size; i++) {
+            buffer[index(i)].setExpectedVersion(++expectedVersion);
+        }
+        lastExpectedVersion = expectedVersion;
+        return true;
+    }
+
+    /**
+     * 모든 연산을 미전송 상태로 되돌리고 예상 버전을 baseVersion 다음부터 다시 매깁니다.
+     * 재동기화(catch-up) 이후 큐 전체를 다시 보낼 때 사용하며, 변화가 없는 연산은 이때 버린다.
+     */
+    public void resetForResend(long baseVersion) {
+        long expectedVersion = baseVersion;
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            Operation op = buffer[index(i)];
+            if (op.isNoop()) continue;
+            op.setSentToServer(false);
+            op.setExpectedVersion(++expectedVersion);
+            buffer[index(kept++)] = op;
+        }
+        truncate(kept);
+        inFlightCount = 0;
+        lastExpectedVersion = expectedVersion;
+    }
+
+    public Operation peek() {
+        return size == 0 ? null : buffer[head];
+    }
+
+    public Operation peekLast() {
+        return size == 0 ? null : buffer[index(size - 1)];
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getInFlightCount() {
+        return inFlightCount;
+    }
+
+    public int getPipelineWindow() {
+        return pipelineWindow;
+    }
+
+    /**
+     * 동시에 전송할 수 있는 연산 수를 바꿉니다. rebase 가 전송 중 연산을 다루는 방식이 윈도우에 따라 다르므로
+     * 전송 중인 연산이 없을 때만 바꿀 수 있습니다.
+     * @return 바꿨으면 true, 전송 중인 연산이 있어 그대로 두었으면 false
+     */
+    public boolean setPipelineWindow(int pipelineWindow) {
+        if (inFlightCount > 0) {
+            return false;
+        }
+        this.pipelineWindow = Math.max(1, pipelineWindow);
+        return true;
+    }
+
+    public void clear() {
+        truncate(0);
+        head = 0;
+        inFlightCount = 0;
+    }
+
+    @Override
+    public Iterator<Operation> iterator() {
+        return new Iterator<>() {
+            private int cursor = 0;
+
+            @Override
+            public boolean hasNext() {
+                return cursor < size;
+            }
+
+            @Override
+            public Operation next() {
+                if (cursor >= size) throw new NoSuchElementException();
+                return buffer[index(cursor++)];
+            }
+        };
+    }
+
+    // 큐 앞에서부터 offset 번째 연산의 배열 인덱스
+    private int index(int offset) {
+        return (head + offset) & (buffer.length - 1);
+    }
+
+    // 앞의 newSize 개만 남기고 나머지 칸을 비운다 (GC 가 연산을 회수할 수 있도록).
+    private void truncate(int newSize) {
+        for (int i = newSize; i < size; i++) {
+            buffer[index(i)] = null;
+        }
+        size = newSize;
+    }
+
+    private void grow() {
+        Operation[] larger = new Operation[buffer.length << 1];
+        for (int i = 0; i < size; i++) {
+            larger[i] = buffer[index(i)];
+        }
+        buffer = larger;
+        head = 0;
+    }
+}
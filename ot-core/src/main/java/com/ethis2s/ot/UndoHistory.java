@@ -0,0 +1,158 @@
+package com.ethis2s.ot;
+
+import com.ethis2s.model.TextOperation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 동시 편집 환경에서의 로컬 실행 취소/다시 실행 기록입니다.
+ *
+ * <p>각 스택은 역연산의 사슬로 보관합니다. 맨 위 항목은 현재 문서 기준이고, 그 아래 항목은 위 항목을 적용한 뒤의 문서 기준입니다.
+ * 다른 사용자의 편집(또는 서버가 적용한 모든 편집)이 들어오면 {@link #transform} 으로 두 스택을 위에서부터 차례로 변환하므로,
+ * 실행 취소는 항상 현재 문서에 맞는 하나의 연산을 돌려주고 다른 사용자의 편집은 건드리지 않습니다.
+ * 다른 사용자가 이미 지운 내 입력처럼 되돌릴 것이 없어진 항목은 빈 연산이 되어 스택에서 빠집니다.
+ *
+ * <p>연속된 입력(또는 연속된 삭제)은 mergeWindowMillis 안에서 하나의 항목으로 묶이며, 공백이 포함된 입력에서 끊깁니다.
+ *
+ * <p>스레드 안전하지 않으므로 한 스레드(클라이언트에서는 FX 스레드)에서만 사용해야 합니다.
+ */
+public class UndoHistory {
+
+    // 스택의 맨 위는 리스트의 끝이다.
+    private final List<TextOperation> undoStack = new ArrayList<>();
+    private final List<TextOperation> redoStack = new ArrayList<>();
+    private final int capacity;
+    private final long mergeWindowMillis;
+
+    // --- 입력 묶기 상태 ---
+    private boolean canMerge = false;
+    private boolean lastWasInsert;
+    private int mergeCaret;
+    private long lastRecordMillis;
+
+    public UndoHistory(int capacity, long mergeWindowMillis) {
+        this.capacity = Math.max(1, capacity);
+        this.mergeWindowMillis = mergeWindowMillis;
+    }
+
+    /**
+     * 로컬 편집을 기록합니다. op 의 삭제 컴포넌트는 지운 텍스트를 알고 있어야 합니다. (역연산 계산)
+     * 새 편집이 기록되면 다시 실행 기록은 사라집니다.
+     */
+    public void record(TextOperation op, long nowMillis) {
+        if (op.isNoop()) return;
+        redoStack.clear();
+        TextOperation inverse = op.invert();
+
+        List<TextOperation.Edit> edits = op.toEdits();
+        TextOperation.Edit edit = edits.size() == 1 ? edits.get(0) : null;
+        boolean isInsert = edit != null && edit.start == edit.end;
+        boolean isDelete = edit != null && edit.text.isEmpty();
+
+        boolean merge = canMerge && !undoStack.isEmpty() && nowMillis - lastRecordMillis <= mergeWindowMillis;
+        if (isInsert) {
+            merge &= lastWasInsert && edit.start == mergeCaret && !containsWhitespace(edit.text);
+        } else if (isDelete) {
+            // 백스페이스(앞으로 지우기)와 Delete 키(뒤로 지우기) 모두 같은 자리에서 이어지면 묶는다.
+            merge &= !lastWasInsert && (edit.end == mergeCaret || edit.start == mergeCaret);
+        } else {
+            merge = false;
+        }
+
+        if (merge) {
+            int top = undoStack.size() - 1;
+            undoStack.set(top, inverse.compose(undoStack.get(top)));
+        } else {
+            undoStack.add(inverse);
+            if (undoStack.size() > capacity) {
+                undoStack.remove(0); // 가장 오래된 항목은 사슬의 맨 아래이므로 그냥 버려도 된다.
+            }
+        }
+
+        canMerge = isInsert || isDelete;
+        lastWasInsert = isInsert;
+        mergeCaret = isInsert ? edit.start + edit.text.length() : (isDelete ? edit.start : 0);
+        lastRecordMillis = nowMillis;
+    }
+
+    /**
+     * 현재 문서에 다른 곳에서 온 편집이 적용되었음을 알리고, 두 스택을 그 편집 이후 시점으로 옮깁니다.
+     */
+    public void transform(TextOperation remote) {
+        if (remote.isNoop()) return;
+        transformStack(undoStack, remote);
+        transformStack(redoStack, remote);
+        if (canMerge) {
+            mergeCaret = remote.transformPosition(mergeCaret, false);
+        }
+    }
+
+    private static void transformStack(List<TextOperation> stack, TextOperation remote) {
+        TextOperation current = remote;
+        for (int i = stack.size() - 1; i >= 0 && !current.isNoop(); i--) {
+            TextOperation.Pair pair = TextOperation.transform(stack.get(i), current, false);
+            stack.set(i, pair.first);
+            current = pair.second; // 다음(아래) 항목은 이 항목을 적용한 뒤의 문서 기준이다.
+        }
+        stack.removeIf(TextOperation::isNoop);
+    }
+
+    /**
+     * 실행 취소할 연산을 꺼내 돌려줍니다. 호출자는 이 연산을 현재 문서에 적용해야 합니다.
+     * @return 되돌릴 것이 없으면 null
+     */
+    public TextOperation undo() {
+        return move(undoStack, redoStack);
+    }
+
+    /**
+     * 다시 실행할 연산을 꺼내 돌려줍니다. 호출자는 이 연산을 현재 문서에 적용해야 합니다.
+     * @return 다시 실행할 것이 없으면 null
+     */
+    public TextOperation redo() {
+        return move(redoStack, undoStack);
+    }
+
+    private TextOperation move(List<TextOperation> from, List<TextOperation> to) {
+        if (from.isEmpty()) return null;
+        TextOperation op = from.remove(from.size() - 1);
+        to.add(op.invert());
+        canMerge = false;
+        return op;
+    }
+
+    public TextOperation peekUndo() {
+        return undoStack.isEmpty() ? null : undoStack.get(undoStack.size() - 1);
+    }
+
+    public TextOperation peekRedo() {
+        return redoStack.isEmpty() ? null : redoStack.get(redoStack.size() - 1);
+    }
+
+    public int getUndoSize() {
+        return undoStack.size();
+    }
+
+    public int getRedoSize() {
+        return redoStack.size();
+    }
+
+    /** 다음 편집이 이전 항목과 묶이지 않도록 합니다. */
+    public void preventMerge() {
+        canMerge = false;
+    }
+
+    public void clear() {
+        undoStack.clear();
+        redoStack.clear();
+        canMerge = false;
+    }
+
+    private static boolean containsWhitespace(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.isWhitespace(text.charAt(i))) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,51 @@
+package com.ethis2s.wire;
+
+import org.json.JSONObject;
+
+/**
+ * UF_CURSOR_MOVE(요청) / UF_CURSOR_MOVE_BROADCAST(브로드캐스트) 한 건의 내용입니다.
+ * 브로드캐스트에서 requester 는 서버가 채운 "user"(nickname#tag) 이고 project_id / owner 는 null 입니다.
+ */
+public final class CursorMessage {
+
+    private final String requester;
+    private final String projectId;
+    private final String owner;
+    private final String path;
+    private final int cursorPosition;
+
+    public CursorMessage(String requester, String projectId, String owner, String path, int cursorPosition) {
+        this.requester = requester;
+        this.projectId = projectId;
+        this.owner = owner;
+        this.path = path;
+        this.cursorPosition = cursorPosition;
+    }
+
+    public String getRequester() { return requester; }
+    public String getProjectId() { return projectId; }
+    public String getOwner() { return owner; }
+    public String getPath() { return path; }
+    public int getCursorPosition() { return cursorPosition; }
+
+    /** 기존 PTYPE_JSON 요청 형식 */
+    public JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        json.put("requester", requester);
+        json.put("project_id", projectId);
+        json.put("owner", owner);
+        json.put("path", path);
+        json.put("cursorPosition", cursorPosition);
+        return json;
+    }
+
+    /** PTYPE_JSON 브로드캐스트(또는 요청)를 읽습니다. 보낸 사람은 "user", 없으면 "requester" 입니다. */
+    public static CursorMessage fromJson(JSONObject json) {
+        return new CursorMessage(
+            json.optString("user", json.optString("requester", null)),
+            json.optString("project_id", null),
+            json.optString("owner", null),
+            json.getString("path"),
+            json.getInt("cursorPosition"));
+    }
+}
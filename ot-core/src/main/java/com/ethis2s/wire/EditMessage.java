@@ -0,0 +1,139 @@
+package com.ethis2s.wire;
+
+import com.ethis2s.model.Operation;
+import com.ethis2s.model.TextOperation;
+
+import org.json.JSONObject;
+
+/**
+ * UF_FILE_EDIT_OPERATION(요청) / UF_FILE_EDIT_BROADCAST(브로드캐스트) 한 건의 내용입니다.
+ * JSON 과 {@link WireCodec} 바이너리 형식 모두 이 객체로 만들고 읽습니다.
+ *
+ * <p>요청에서 requester 는 보낸 사용자 ID, 브로드캐스트에서는 서버가 채운 "user" 입니다.
+ * 브로드캐스트에는 project_id / owner 가 없으므로 null 입니다.
+ * DELETE 요청의 text 는 보내지 않으며(서버가 알고 있음), 브로드캐스트의 DELETE 는 삭제된 텍스트를 담습니다.
+ */
+public final class EditMessage {
+
+    private final String requester;
+    private final String projectId;
+    private final String owner;
+    private final String path;
+    private final Operation.Type type;
+    private final int position;
+    private final String text;          // INSERT: 삽입 텍스트, DELETE: 삭제된 텍스트(없으면 null)
+    private final int length;           // DELETE 길이
+    private final TextOperation operation; // COMPOUND 전용
+    private final int cursorPosition;
+    private final long version;
+    private final String uniqId;
+
+    private EditMessage(String requester, String projectId, String owner, String path, Operation.Type type,
+                        int position, String text, int length, TextOperation operation,
+                        int cursorPosition, long version, String uniqId) {
+        this.requester = requester;
+        this.projectId = projectId;
+        this.owner = owner;
+        this.path = path;
+        this.type = type;
+        this.position = position;
+        this.text = text;
+        this.length = length;
+        this.operation = operation;
+        this.cursorPosition = cursorPosition;
+        this.version = version;
+        this.uniqId = uniqId;
+    }
+
+    public static EditMessage insert(String requester, String projectId, String owner, String path,
+                                     int position, String text, int cursorPosition, long version, String uniqId) {
+        return new EditMessage(requester, projectId, owner, path, Operation.Type.INSERT,
+            position, text, text.length(), null, cursorPosition, version, uniqId);
+    }
+
+    /** deletedText 는 알면 넣고(브로드캐스트), 모르거나 보낼 필요가 없으면 null 입니다. */
+    public static EditMessage delete(String requester, String projectId, String owner, String path,
+                                     int position, int length, String deletedText, int cursorPosition, long version, String uniqId) {
+        return new EditMessage(requester, projectId, owner, path, Operation.Type.DELETE,
+            position, deletedText, length, null, cursorPosition, version, uniqId);
+    }
+
+    public static EditMessage compound(String requester, String projectId, String owner, String path,
+                                       TextOperation operation, int cursorPosition, long version, String uniqId) {
+        return new EditMessage(requester, projectId, owner, path, Operation.Type.COMPOUND,
+            0, null, 0, operation, cursorPosition, version, uniqId);
+    }
+
+    public String getRequester() { return requester; }
+    public String getProjectId() { return projectId; }
+    public String getOwner() { return owner; }
+    public String getPath() { return path; }
+    public Operation.Type getType() { return type; }
+    public int getPosition() { return position; }
+    public String getText() { return text; }
+    public int getLength() { return length; }
+    public TextOperation getOperation() { return operation; }
+    public int getCursorPosition() { return cursorPosition; }
+    public long getVersion() { return version; }
+    public String getUniqId() { return uniqId; }
+
+    /** 브로드캐스트를 클라이언트 연산으로 바꿉니다. */
+    public Operation toOperation() {
+        switch (type) {
+            case COMPOUND:
+                return new Operation(operation, cursorPosition, version, uniqId);
+            case INSERT:
+                return new Operation(Operation.Type.INSERT, position, text, cursorPosition, version, uniqId);
+            default:
+                return new Operation(Operation.Type.DELETE, position, text == null ? "" : text, length, cursorPosition, version, uniqId);
+        }
+    }
+
+    /** 기존 PTYPE_JSON 요청 형식 */
+    public JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        json.put("requester", requester);
+        json.put("project_id", projectId);
+        json.put("owner", owner);
+        json.put("path", path);
+        json.put("type", type.name());
+        if (type == Operation.Type.COMPOUND) {
+            json.put("ops", operation.toJson());
+        } else {
+            json.put("position", position);
+        }
+        json.put("cursorPosition", cursorPosition);
+        json.put("version", version);
+        json.put("uniqId", uniqId);
+        if (type == Operation.Type.INSERT) {
+            json.put("text", text);
+        } else if (type == Operation.Type.DELETE) {
+            json.put("length", length);
+            if (text != null) json.put("text", text);
+        }
+        return json;
+    }
+
+    /** PTYPE_JSON 브로드캐스트(또는 요청)를 읽습니다. 보낸 사람은 "user", 없으면 "requester" 입니다. */
+    public static EditMessage fromJson(JSONObject json) {
+        String requester = json.optString("user", json.optString("requester", null));
+        String projectId = json.optString("project_id", null);
+        String owner = json.optString("owner", null);
+        String path = json.getString("path");
+        Operation.Type type = Operation.Type.valueOf(json.getString("type"));
+        int cursorPosition = json.optInt("cursorPosition", -1);
+        long version = json.getLong("version");
+        String uniqId = json.optString("uniqId", null);
+        switch (type) {
+            case COMPOUND:
+                return compound(requester, projectId, owner, path, TextOperation.fromJson(json.getJSONArray("ops")),
+                    cursorPosition, version, uniqId);
+            case INSERT:
+                return insert(requester, projectId, owner, path, json.optInt("position", 0), json.optString("text", ""),
+                    cursorPosition, version, uniqId);
+            default:
+                return delete(requester, projectId, owner, path, json.optInt("position", 0), json.optInt("length", 0),
+                    json.optString("text", null), cursorPosition, version, uniqId);
+        }
+    }
+}
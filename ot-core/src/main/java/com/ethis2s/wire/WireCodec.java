@@ -0,0 +1,253 @@
+package com.ethis2s.wire;
+
+import com.ethis2s.model.Operation;
+import com.ethis2s.model.TextOperation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 편집/커서 패킷의 바이너리 형식("bin1")입니다. PTYPE_RAW_BYTES 페이로드로 보내며, 서버와 협상한 연결에서만 사용합니다.
+ *
+ * <p>반복되는 문자열(requester, project_id, owner, path, uniqId 의 접두사)은 연결마다 방향별 표로 intern 합니다.
+ * 처음 보낼 때 ID 와 함께 정의하고, 이후에는 ID 만 보냅니다. 그래서 인코더와 디코더는 연결 하나의 한 방향에만 쓰고,
+ * 패킷은 인코딩한 순서 그대로 전송되어야 하며, 재연결하면 새로 만들어야 합니다.
+ *
+ * <pre>
+ * 문자열 참조 : varint tag
+ *               0 = null, 1 = 인라인(UTF-8 길이 + 바이트, intern 하지 않음),
+ *               2k+2 = ID k 참조, 2k+3 = ID k 정의 (UTF-8 길이 + 바이트가 뒤따름)
+ * uniqId     : byte 0 = null, 1 = 문자열 참조, 2 = "접두사-숫자" (접두사 참조 + varint 숫자)
+ * 편집       : byte flags (0~1 비트: INSERT/DELETE/COMPOUND, 2 비트: text 있음)
+ *              ref requester, ref project_id, ref owner, ref path, uniqId,
+ *              zigzag version, zigzag cursorPosition,
+ *              INSERT   : varint position, UTF-8 text
+ *              DELETE   : varint position, varint length, [UTF-8 text]
+ *              COMPOUND : varint count, 컴포넌트마다 varint (n &lt;&lt; 2 | kind)
+ *                         (retain: n = 길이, insert: n = UTF-8 바이트 수 + 바이트, delete: n = 길이)
+ * 커서       : byte flags(0), ref requester, ref project_id, ref owner, ref path, zigzag cursorPosition
+ * </pre>
+ * 숫자와 텍스트는 JSON 처럼 문자열로 바꾸지 않으며, 디코딩은 페이로드 배열의 슬라이스에서 바로 String 을 만듭니다.
+ */
+public final class WireCodec {
+
+    /** UF_WIRE_CODEC_REQUEST / RESPONSE 에서 쓰는 이름 */
+    public static final String NAME = "bin1";
+    /** 방향마다 intern 할 최대 문자열 수. 넘으면 인라인으로 보낸다. */
+    public static final int MAX_INTERNED = 4096;
+
+    private static final Operation.Type[] TYPES = Operation.Type.values();
+    private static final int TYPE_MASK = 0x03;
+    private static final int FLAG_TEXT = 0x04;
+
+    private static final int UNIQ_NULL = 0;
+    private static final int UNIQ_STRING = 1;
+    private static final int UNIQ_COUNTER = 2;
+
+    private static final int KIND_RETAIN = 0;
+    private static final int KIND_INSERT = 1;
+    private static final int KIND_DELETE = 2;
+
+    private WireCodec() {
+    }
+
+    /** 보내는 쪽. 스레드 안전하지 않으므로 호출자가 인코딩과 전송 순서를 함께 직렬화해야 합니다. */
+    public static final class Encoder {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final WireWriter writer = new WireWriter(256);
+
+        public byte[] encodeEdit(EditMessage message) {
+            writer.reset();
+            Operation.Type type = message.getType();
+            int flags = type.ordinal();
+            if (type != Operation.Type.COMPOUND && message.getText() != null) flags |= FLAG_TEXT;
+            writer.writeByte(flags);
+            writeRef(message.getRequester());
+            writeRef(message.getProjectId());
+            writeRef(message.getOwner());
+            writeRef(message.getPath());
+            writeUniqId(message.getUniqId());
+            writer.writeSignedVarLong(message.getVersion());
+            writer.writeSignedVarLong(message.getCursorPosition());
+            switch (type) {
+                case INSERT:
+                    writer.writeVarLong(message.getPosition());
+                    writer.writeUtf8(message.getText());
+                    break;
+                case DELETE:
+                    writer.writeVarLong(message.getPosition());
+                    writer.writeVarLong(message.getLength());
+                    if ((flags & FLAG_TEXT) != 0) writer.writeUtf8(message.getText());
+                    break;
+                case COMPOUND:
+                    List<TextOperation.Component> components = message.getOperation().getComponents();
+                    writer.writeVarLong(components.size());
+                    for (TextOperation.Component c : components) {
+                        switch (c.getKind()) {
+                            case RETAIN:
+                                writer.writeVarLong((long) c.getLength() << 2 | KIND_RETAIN);
+                                break;
+                            case INSERT:
+                                writer.writeVarLong((long) WireWriter.utf8Length(c.getText()) << 2 | KIND_INSERT);
+                                writer.writeUtf8Bytes(c.getText());
+                                break;
+                            case DELETE:
+                                writer.writeVarLong((long) c.getLength() << 2 | KIND_DELETE);
+                                break;
+                        }
+                    }
+                    break;
+            }
+            return writer.toByteArray();
+        }
+
+        public byte[] encodeCursor(CursorMessage message) {
+            writer.reset();
+            writer.writeByte(0);
+            writeRef(message.getRequester());
+            writeRef(message.getProjectId());
+            writeRef(message.getOwner());
+            writeRef(message.getPath());
+            writer.writeSignedVarLong(message.getCursorPosition());
+            return writer.toByteArray();
+        }
+
+        private void writeRef(String value) {
+            if (value == null) {
+                writer.writeVarLong(0);
+                return;
+            }
+            Integer id = ids.get(value);
+            if (id != null) {
+                writer.writeVarLong(2L * id + 2);
+            } else if (ids.size() < MAX_INTERNED) {
+                int newId = ids.size();
+                ids.put(value, newId);
+                writer.writeVarLong(2L * newId + 3);
+                writer.writeUtf8(value);
+            } else {
+                writer.writeVarLong(1);
+                writer.writeUtf8(value);
+            }
+        }
+
+        private void writeUniqId(String uniqId) {
+            if (uniqId == null) {
+                writer.writeByte(UNIQ_NULL);
+                return;
+            }
+            // OTManager 가 만드는 "nickname#tag-123" 형식이면 접두사는 intern 하고 숫자는 varint 로 보낸다.
+            int dash = uniqId.lastIndexOf('-');
+            long counter = (dash >= 0) ? parseCounter(uniqId, dash + 1) : -1;
+            if (counter >= 0) {
+                writer.writeByte(UNIQ_COUNTER);
+                writeRef(uniqId.substring(0, dash));
+                writer.writeVarLong(counter);
+            } else {
+                writer.writeByte(UNIQ_STRING);
+                writeRef(uniqId);
+            }
+        }
+
+        /** 앞자리 0 없는 10진수(최대 18자리)면 그 값, 아니면 -1 (문자열로 그대로 되돌릴 수 있어야 한다) */
+        private static long parseCounter(String text, int from) {
+            int length = text.length() - from;
+            if (length < 1 || length > 18 || (length > 1 && text.charAt(from) == '0')) return -1;
+            long value = 0;
+            for (int i = from; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c < '0' || c > '9') return -1;
+                value = value * 10 + (c - '0');
+            }
+            return value;
+        }
+    }
+
+    /** 받는 쪽. 한 연결의 수신 스레드에서 패킷이 도착한 순서대로 호출해야 합니다. */
+    public static final class Decoder {
+        private final List<String> table = new ArrayList<>();
+
+        public EditMessage decodeEdit(byte[] payload) {
+            WireReader in = new WireReader(payload, 0, payload.length);
+            int flags = in.readByte();
+            int typeIndex = flags & TYPE_MASK;
+            if (typeIndex >= TYPES.length) throw new IllegalArgumentException("Unknown edit type: " + typeIndex);
+            Operation.Type type = TYPES[typeIndex];
+            String requester = readRef(in);
+            String projectId = readRef(in);
+            String owner = readRef(in);
+            String path = readRef(in);
+            String uniqId = readUniqId(in);
+            long version = in.readSignedVarLong();
+            int cursorPosition = in.readSignedVarInt();
+            switch (type) {
+                case INSERT: {
+                    int position = in.readVarInt();
+                    String text = in.readUtf8();
+                    return EditMessage.insert(requester, projectId, owner, path, position, text, cursorPosition, version, uniqId);
+                }
+                case DELETE: {
+                    int position = in.readVarInt();
+                    int length = in.readVarInt();
+                    String text = (flags & FLAG_TEXT) != 0 ? in.readUtf8() : null;
+                    return EditMessage.delete(requester, projectId, owner, path, position, length, text, cursorPosition, version, uniqId);
+                }
+                default: {
+                    int count = in.readVarInt();
+                    TextOperation operation = new TextOperation();
+                    for (int i = 0; i < count; i++) {
+                        long tag = in.readVarLong();
+                        long n = tag >>> 2;
+                        if (n > Integer.MAX_VALUE) throw new IllegalArgumentException("Component too long: " + n);
+                        switch ((int) (tag & 0x3)) {
+                            case KIND_RETAIN: operation.retain((int) n); break;
+                            case KIND_INSERT: operation.insert(in.readUtf8Bytes((int) n)); break;
+                            case KIND_DELETE: operation.delete((int) n, null); break;
+                            default: throw new IllegalArgumentException("Unknown component kind: " + (tag & 0x3));
+                        }
+                    }
+                    return EditMessage.compound(requester, projectId, owner, path, operation,
+                        cursorPosition, version, uniqId);
+                }
+            }
+        }
+
+        public CursorMessage decodeCursor(byte[] payload) {
+            WireReader in = new WireReader(payload, 0, payload.length);
+            in.readByte(); // flags (예약)
+            String requester = readRef(in);
+            String projectId = readRef(in);
+            String owner = readRef(in);
+            String path = readRef(in);
+            return new CursorMessage(requester, projectId, owner, path, in.readSignedVarInt());
+        }
+
+        private String readRef(WireReader in) {
+            long tag = in.readVarLong();
+            if (tag == 0) return null;
+            if (tag == 1) return in.readUtf8();
+            long id = (tag - 2) >>> 1;
+            if ((tag & 1) == 0) {
+                if (id >= table.size()) throw new IllegalArgumentException("Unknown interned id: " + id);
+                return table.get((int) id);
+            }
+            // 정의는 항상 다음 ID 로 온다.
+            if (id != table.size() || id >= MAX_INTERNED) throw new IllegalArgumentException("Unexpected interned id: " + id);
+            String value = in.readUtf8();
+            table.add(value);
+            return value;
+        }
+
+        private String readUniqId(WireReader in) {
+            int kind = in.readByte();
+            switch (kind) {
+                case UNIQ_NULL: return null;
+                case UNIQ_STRING: return readRef(in);
+                case UNIQ_COUNTER: return readRef(in) + "-" + in.readVarLong();
+                default: throw new IllegalArgumentException("Unknown uniqId kind: " + kind);
+            }
+        }
+    }
+}
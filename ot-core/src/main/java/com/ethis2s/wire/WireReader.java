@@ -0,0 +1,75 @@
+package com.ethis2s.wire;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 수신한 페이로드 배열을 복사하지 않고 앞에서부터 읽습니다. 문자열은 배열의 슬라이스에서 바로 만듭니다.
+ */
+final class WireReader {
+
+    private final byte[] buffer;
+    private int position;
+    private final int limit;
+
+    WireReader(byte[] buffer, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > buffer.length) {
+            throw new IllegalArgumentException("Invalid slice");
+        }
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    boolean hasRemaining() {
+        return position < limit;
+    }
+
+    int readByte() {
+        require(1);
+        return buffer[position++] & 0xFF;
+    }
+
+    long readVarLong() {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+            shift += 7;
+            if (shift > 63) throw new IllegalArgumentException("Malformed varint");
+        }
+    }
+
+    int readVarInt() {
+        long value = readVarLong();
+        if (value < 0 || value > Integer.MAX_VALUE) throw new IllegalArgumentException("Varint out of int range: " + value);
+        return (int) value;
+    }
+
+    long readSignedVarLong() {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    int readSignedVarInt() {
+        long value = readSignedVarLong();
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) throw new IllegalArgumentException("Varint out of int range: " + value);
+        return (int) value;
+    }
+
+    String readUtf8() {
+        return readUtf8Bytes(readVarInt());
+    }
+
+    String readUtf8Bytes(int byteLength) {
+        require(byteLength);
+        String text = new String(buffer, position, byteLength, StandardCharsets.UTF_8);
+        position += byteLength;
+        return text;
+    }
+
+    private void require(int bytes) {
+        if (bytes > limit - position) throw new IllegalArgumentException("Truncated wire message");
+    }
+}
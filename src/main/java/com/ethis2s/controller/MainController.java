@@ -5,13 +5,19 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
@@ -20,13 +26,15 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 
 import com.ethis2s.App;
-import com.ethis2s.model.Operation;
+import com.ethis2s.model.FileTreeDelta;
 import com.ethis2s.model.ProtocolConstants;
 import com.ethis2s.model.UserInfo;
 import com.ethis2s.model.UserProjectsInfo;
 import com.ethis2s.service.ClientSocketManager;
+import com.ethis2s.service.FileContentCache;
 import com.ethis2s.service.ExecutionService;
 import com.ethis2s.util.ConfigManager;
+import com.ethis2s.util.EditorStateManager;
 import com.ethis2s.util.MacosNativeUtil;
 import com.ethis2s.util.VariableResolver;
 import com.ethis2s.util.WindowsNativeUtil;
@@ -45,6 +53,7 @@ import com.ethis2s.view.RunView;
 import com.ethis2s.view.SettingsView;
 import com.ethis2s.view.SharedOptionScreen;
 import com.ethis2s.view.FileExecutionSelectionView.FileExecutionInfo;
+import com.ethis2s.wire.EditMessage;
 
 import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
@@ -70,8 +79,6 @@ import javafx.stage.Screen;
 import javafx.stage.Stage;
 import socketprotocol.ParsedPacket;
 
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 
 import javafx.scene.layout.AnchorPane;
 
@@ -95,12 +102,16 @@ public class MainController implements ClientSocketManager.ClientSocketCallback
     private UserInfo userInfo;
     private String lastLoggedInId;
     private char[] lastLoggedInPassword;
+    // 검증에 실패해 다시 받는 중인 파일 경로 → 재시도 횟수
+    private final Map<String, Integer> contentRetries = new ConcurrentHashMap<>();
+    private static final int MAX_CONTENT_RETRIES = 3;
+    private static final long CONTENT_RETRY_BASE_MILLIS = 500;
     private UserProjectsInfo currentActiveProject;
     
     private final AtomicInteger activeAntlrTasks = new AtomicInteger(0);
     
-    private Map<String, Consumer<JSONArray>> pendingSharedListCallbacks = new HashMap<>();
-    private Map<String, Consumer<Boolean>> pendingAddShareCallbacks = new HashMap<>();
+    // 열려 있는 공유 옵션 탭의 목록 갱신 콜백 (공유 해제 후 다시 불러오기 위함). FX 스레드에서만 사용.
+    private Map<String, Consumer<JSONArray>> openSharedListViews = new HashMap<>();
     private Runnable searchAction;
 
 
@@ -504,10 +515,7 @@ public class MainController implements ClientSocketManager.ClientSocketCallback
         String projectId = userProjectsInfo.getProjectID();
         
         // onClose 콜백은 컨트롤러가 계속 관리합니다. (상태를 소유하므로)
-        Runnable onClose = () -> {
-            pendingSharedListCallbacks.remove(projectId);
-            pendingAddShareCallbacks.remove(projectId);
-        };
+        Runnable onClose = () -> openSharedListViews.remove(projectId);
 
         editorTabView.showSharedOptionView(
             projectId,
@@ -517,19 +525,30 @@ public class MainController implements ClientSocketManager.ClientSocketCallback
                 return sos.createShareOptionView(
                     this, projectController, userProjectsInfo,
                     (pId, dataCallback) -> {
-                        pendingSharedListCallbacks.put(pId, dataCallback);
-                        projectController.sharedListRequest(pId);
+                        openSharedListViews.put(pId, dataCallback);
+                        loadSharedList(pId, dataCallback);
                     },
-                    (pId, name, tag, resultCallback) -> {
-                        pendingAddShareCallbacks.put(pId, resultCallback);
-                        projectController.addShareRequest(pId, name, tag);
-                    }
+                    (pId, name, tag, resultCallback) -> projectController.addShareRequest(pId, name, tag)
+                        .whenComplete((success, error) -> {
+                            if (error != null) System.err.println("Add share request failed: " + error.getMessage());
+                            resultCallback.accept(error == null && success);
+                        })
                 );
             },
             onClose
         );
     }
 
+    private void loadSharedList(String projectId, Consumer<JSONArray> dataCallback) {
+        projectController.sharedListRequest(projectId).whenComplete((sharedList, error) -> Platform.runLater(() -> {
+            if (error == null) {
+                dataCallback.accept(sharedList);
+            } else {
+                mainScreen.getOutputView().appendText("[ERROR] 공유 목록을 불러오지 못했습니다: " + error.getMessage() + "\n");
+            }
+        }));
+    }
+
     public void showSettingsView() {
         // saveCallback은 컨트롤러의 다른 컴포넌트(mainScene, mainScreen)에 영향을 주므로
         // 컨트롤러에 정의하는 것이 맞습니다.
@@ -564,23 +583,6 @@ public class MainController implements ClientSocketManager.ClientSocketCallback
     }
 
 
-    private String calculateSHA256(String text) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] encodedhash = digest.digest(text.getBytes(StandardCharsets.UTF_8));
-            StringBuilder hexString = new StringBuilder(2 * encodedhash.length);
-            for (int i = 0; i < encodedhash.length; i++) {
-                String hex = Integer.toHexString(0xff & encodedhash[i]);
-                if(hex.length() == 1) hexString.append('0');
-                hexString.append(hex);
-            }
-            return hexString.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
-
     @Override
     public void onConnected() {
         Platform.runLater(() -> System.out.println("SocketManager: Connected to server."));
@@ -588,7 +590,15 @@ public class MainController implements ClientSocketManager.ClientSocketCallback
 
     @Override
     public void onDisconnected() {
-        Platform.runLater(() -> mainScreen.showReconnectingStatus(true));
+        // 끊긴 연결로 보낸 요청의 응답은 오지 않는다. 시간 초과를 기다리지 않고 바로 실패시킨다.
+        if (projectController != null) {
+            projectController.failPendingRequests(new IOException("Disconnected from server."));
+        }
+        Platform.runLater(() -> {
+            mainScreen.showReconnectingStatus(true);
+            // 끊긴 동안의 파일 트리 델타는 받지 못한다. 다시 전체 목록을 받을 때까지 변경 후 새로고침으로 돌아간다.
+            mainScreen.invalidateFileTreeVersion();
+        });
     }
 
     @Override
@@ -596,12 +606,71 @@ public class MainController implements ClientSocketManager.ClientSocketCallback
         Platform.runLater(() -> {
             mainScreen.showReconnectingStatus(false);
             mainScreen.showConnectedStatus();
-            if (lastLoggedInId != null && lastLoggedInPassword != null) {
-                performLogin(lastLoggedInId, lastLoggedInPassword);
+            if (userInfo != null && userInfo.getSessionToken() != null) {
+                resumeSession();
+            } else {
+                loginAgain();
             }
         });
     }
 
+    private void loginAgain() {
+        if (lastLoggedInId != null && lastLoggedInPassword != null) {
+            performLogin(lastLoggedInId, lastLoggedInPassword);
+        }
+    }
+
+    /**
+     * 세션 토큰으로 로그인 없이 세션을 이어 갑니다. (FX 스레드)
+     * 열린 OT 탭들의 확정 버전을 한 요청에 담아 보내고, 응답에 담긴 파일별 히스토리를 각 탭의 catch-up 으로 반영합니다.
+     * 탭을 닫거나 파일 내용을 다시 받지 않으며, 확정되지 않은 로컬 연산은 catch-up 이 rebase 해서 다시 보냅니다.
+     * 토큰이 만료되었거나 응답이 없으면 기존처럼 다시 로그인합니다.
+     */
+    private void resumeSession() {
+        EditorStateManager stateManager = editorTabView.getStateManager();
+        Map<String, Long> openFiles = new LinkedHashMap<>();
+        List<String> crdtTabs = new ArrayList<>();
+        for (String tabId : stateManager.getAllOpenFileStates().keySet()) {
+            String path = tabId.substring("file-".length());
+            stateManager.getOTManager(tabId).ifPresent(otManager -> openFiles.put(path, otManager.getLocalVersion()));
+            stateManager.getCrdtManager(tabId).ifPresent(crdtManager -> crdtTabs.add(path));
+        }
+        projectController.sessionResumeRequest(openFiles).whenCompleteAsync((response, error) -> {
+            if (error != null || !response.optBoolean("result", false)) {
+                System.err.println("Session resume failed (" + (error != null ? error.getMessage() : "rejected by server")
+                    + "). Logging in again.");
+                loginAgain();
+                return;
+            }
+            String newToken = response.optString("session_token", null);
+            if (newToken != null && userInfo != null) {
+                userInfo = new UserInfo(userInfo.getId(), userInfo.getNickname(), userInfo.getTag(), newToken);
+                projectController.setUserInfo(userInfo);
+            }
+            Map<String, JSONObject> resumed = new HashMap<>();
+            JSONArray files = response.optJSONArray("files");
+            for (int i = 0; files != null && i < files.length(); i++) {
+                JSONObject file = files.getJSONObject(i);
+                resumed.put(file.getString("path"), file);
+            }
+            for (String path : openFiles.keySet()) {
+                String tabId = "file-" + path;
+                JSONObject file = resumed.get(path);
+                if (file != null && file.optBoolean("resync", false)) {
+                    reSyncFile(tabId); // 서버가 그 버전의 히스토리를 더 이상 갖고 있지 않다.
+                    continue;
+                }
+                // 빠진 연산이 없어도 catch-up 을 거쳐야 끊기는 동안 확정받지 못한 로컬 연산을 다시 보낸다.
+                JSONArray ops = (file != null && file.has("ops")) ? file.getJSONArray("ops") : new JSONArray();
+                stateManager.getOTManager(tabId).ifPresent(otManager -> otManager.handleCatchUp(ops));
+            }
+            // CRDT 문서는 버전 대신 상태를 병합하므로 다시 받아 합친다. (중복 적용해도 결과가 같음)
+            crdtTabs.forEach(projectController::crdtStateRequest);
+            // 파일 트리 델타 구독은 연결마다 새로 하므로 목록을 다시 받는다.
+            mainScreen.refreshCurrentFileTree(projectController);
+        }, Platform::runLater);
+    }
+
     @Override
     public void onPacketReceived(ParsedPacket packet) {}
 
@@ -632,32 +701,84 @@ public class MainController implements ClientSocketManager.ClientSocketCallback
         });
     }
 
+    @Override
+    public void onSessionResumeResponse(long requestId, JSONObject response) {
+        projectController.handleSessionResumeResponse(requestId, response);
+    }
+
     @Override
     public void onProjectListResponse(List<UserProjectsInfo> projectList) {
         projectController.handleProjectListResponse(projectList);
     }
 
     @Override
-    public void onFileListResponse(String projectID, JSONObject fileList) {
-        projectController.handleFileListResponse(fileList);
+    public void onFileListResponse(String projectID, long requestId, JSONObject fileList) {
+        projectController.handleFileListResponse(projectID, requestId, fileList);
     }
 
     @Override
-    public void onFileContentResponse(String path, String content, String hash, long version) {
-        String calculatedHash = calculateSHA256(content);
-        if (calculatedHash.equals(hash)) {
+    public void onFileTreeDelta(FileTreeDelta delta) {
+        projectController.handleFileTreeDelta(delta);
+    }
+
+    @Override
+    public void onFileContentResponse(String path, String content, String hash, long version, boolean verified) {
+        if (verified) {
+            contentRetries.remove(path);
+            mainScreen.getCurrentProjectForFileTree().ifPresent(projectInfo -> projectController.getFileContentCache()
+                .put(projectController.fileCacheKey(projectInfo.getProjectID(), path), content, hash, version));
             Platform.runLater(() -> {
                 editorTabView.openFileInEditor(path, content, version);
             });
         } else {
-            System.err.println("File content hash mismatch for: " + path + ". Retrying...");
             // Find the project info and re-request
             mainScreen.getCurrentProjectForFileTree().ifPresent(projectInfo -> {
-                projectController.fileContentRequest(projectInfo, path);
+                retryFileContent(projectInfo, path, "File content hash mismatch.");
             });
         }
     }
 
+    /**
+     * 검증에 실패한 파일 내용을 캐시 없이 다시 요청합니다. MAX_CONTENT_RETRIES 번까지, 실패할 때마다 대기 시간을 두 배로(지터 포함) 늘리고,
+     * 그래도 안 되면 출력 창에 알리고 멈춥니다. (손상이 계속되는 경우 무한히 다시 받지 않도록)
+     */
+    private void retryFileContent(UserProjectsInfo projectInfo, String path, String reason) {
+        int attempt = contentRetries.merge(path, 1, Integer::sum);
+        if (attempt > MAX_CONTENT_RETRIES) {
+            contentRetries.remove(path);
+            System.err.println(reason + " Giving up on " + path + " after " + MAX_CONTENT_RETRIES + " retries.");
+            Platform.runLater(() -> mainScreen.getOutputView().appendText(
+                "[ERROR] 파일 내용을 검증하지 못했습니다: " + path + " (" + reason + ")\n"));
+            return;
+        }
+        long ceiling = CONTENT_RETRY_BASE_MILLIS << (attempt - 1);
+        long delay = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+        System.err.println(reason + " Retrying " + path + " in " + delay + " ms (" + attempt + "/" + MAX_CONTENT_RETRIES + ").");
+        CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS)
+            .execute(() -> projectController.fileContentRequest(projectInfo, path, false));
+    }
+
+    /**
+     * 캐시에 있는 버전을 알려 준 요청의 응답입니다. 캐시 파일 읽기와 연산 적용, 검증은 디코딩 워커에서 끝나 있습니다.
+     * 결과 내용을 열고 캐시를 갱신하며, 캐시 미스(내용이 없어졌거나 서버 해시와 다름)이면 캐시를 버리고 전체 내용을 다시 요청합니다.
+     */
+    @Override
+    public void onCachedFileContentResponse(String path, JSONObject response, String cachedContent) {
+        Optional<UserProjectsInfo> project = mainScreen.getCurrentProjectForFileTree();
+        if (project.isEmpty()) return;
+        FileContentCache cache = projectController.getFileContentCache();
+        String key = projectController.fileCacheKey(project.get().getProjectID(), path);
+        if (cachedContent == null) {
+            System.err.println("File cache miss for " + path + ". Requesting full content.");
+            cache.invalidate(key);
+            projectController.fileContentRequest(project.get(), path, false);
+            return;
+        }
+        long version = response.getLong("version");
+        cache.put(key, cachedContent, response.getString("hash"), version); // 내용이 같아도 버전은 올라갔을 수 있다.
+        Platform.runLater(() -> editorTabView.openFileInEditor(path, cachedContent, version));
+    }
+
     @Override
     public void onCreateProjectResponse(boolean result) {
         projectController.handleCreateProjectResponse(result);
@@ -669,30 +790,25 @@ public class MainController implements ClientSocketManager.ClientSocketCallback
     }
 
     @Override
-    public void onSharedListResponse(String projectId, JSONArray sharedList) {
-        Consumer<JSONArray> callback = pendingSharedListCallbacks.get(projectId);
-        if (callback != null) {
-            Platform.runLater(() -> callback.accept(sharedList));
-        }
+    public void onSharedListResponse(String projectId, long requestId, JSONArray sharedList) {
+        projectController.handleSharedListResponse(projectId, requestId, sharedList);
     }
 
     @Override
-    public void onAddShareResponse(String projectId, boolean success) {
-        Consumer<Boolean> callback = pendingAddShareCallbacks.get(projectId);
-        if (callback != null) {
-            Platform.runLater(() -> callback.accept(success));
-            pendingAddShareCallbacks.remove(projectId);
-        }
+    public void onAddShareResponse(String projectId, long requestId, boolean success) {
+        projectController.handleAddShareResponse(projectId, requestId, success);
     }
 
     @Override
-    public void onDeleteShareResponse(String projectID, boolean result) {
-        projectController.handleDeleteShareResponse(result);
+    public void onDeleteShareResponse(String projectID, long requestId, boolean result) {
+        projectController.handleDeleteShareResponse(projectID, requestId, result);
         if (result) {
-            Consumer<JSONArray> callback = pendingSharedListCallbacks.get(projectID);
-            if (callback != null) {
-                projectController.sharedListRequest(projectID);
-            }
+            Platform.runLater(() -> {
+                Consumer<JSONArray> callback = openSharedListViews.get(projectID);
+                if (callback != null) {
+                    loadSharedList(projectID, callback);
+                }
+            });
         }
     }
 
@@ -717,21 +833,14 @@ public class MainController implements ClientSocketManager.ClientSocketCallback
         // Line lock feature removed; responses are ignored.
     }
     @Override
-    public void onFileEditBroadcast(String filePath, String type, int position, String text, int length, long newVersion, String uniqId, String requesterId, int cursorPosition) {
-        String tabId = "file-" + filePath;
+    public void onFileEditBroadcast(EditMessage edit) {
+        String tabId = "file-" + edit.getPath();
         
         Runnable updateAction = () -> {
             
             editorTabView.getStateManager().getOTManager(tabId).ifPresent(otManager -> {
-                Operation op;
-                if ("INSERT".equals(type)) {
-                    op = new Operation(Operation.Type.INSERT, position, text, cursorPosition, newVersion, uniqId);
-                } else { // "DELETE"
-                    op = new Operation(Operation.Type.DELETE, position, text, length, cursorPosition, newVersion, uniqId);
-                }
-
                 // Delegate EVERYTHING to the OTManager.
-                otManager.handleBroadcast(newVersion, uniqId, requesterId, op);
+                otManager.handleBroadcast(edit.getVersion(), edit.getUniqId(), edit.getRequester(), edit.toOperation());
             });
         };
         if (editorTabView.getStateManager().isInitializing(tabId)) {
@@ -752,6 +861,39 @@ public class MainController implements ClientSocketManager.ClientSocketCallback
         });
     }
 
+    @Override
+    public void onDocumentChecksumResponse(String filePath, JSONObject response) {
+        String tabId = "file-" + filePath;
+        Platform.runLater(() -> {
+            editorTabView.getStateManager().getOTManager(tabId).ifPresent(otManager -> {
+                // 구간 복구로 해결되지 않는 경우에만 탭을 닫고 전체 내용을 다시 받는다.
+                otManager.handleChecksumResponse(response, () -> reSyncFile(tabId));
+            });
+        });
+    }
+
+    @Override
+    public void onCrdtUpdateBroadcast(String filePath, String requesterId, byte[] update) {
+        String tabId = "file-" + filePath;
+        Runnable updateAction = () -> editorTabView.getStateManager().getCrdtManager(tabId)
+            .ifPresent(crdtManager -> crdtManager.handleRemoteUpdate(requesterId, update));
+        if (editorTabView.getStateManager().isInitializing(tabId)) {
+            editorTabView.getStateManager().queueUpdate(tabId, updateAction);
+        } else {
+            Platform.runLater(updateAction);
+        }
+    }
+
+    @Override
+    public void onCrdtStateResponse(String filePath, JSONObject state) {
+        String tabId = "file-" + filePath;
+        Platform.runLater(() -> {
+            editorTabView.getStateManager().getCrdtManager(tabId).ifPresent(crdtManager -> {
+                crdtManager.handleStateResponse(state);
+            });
+        });
+    }
+
     @Override
     public void onClientErrorResponse(JSONObject errData) {
         int ErrCode=errData.getInt("errorCode");
@@ -788,13 +930,23 @@ public class MainController implements ClientSocketManager.ClientSocketCallback
                 case ProtocolConstants.ERROR_CODE_SYNC_ERROR: {
                     editorTabView.getActiveCodeArea()
                         .flatMap(activeArea -> editorTabView.getStateManager().findTabIdForCodeArea(activeArea))
-                        .ifPresent(this::reSyncFile); // [핵심 수정] 새로운 메소드 호출
+                        .ifPresent(this::recoverFromSyncError);
                     break;
                 }
             }
         });
     }
 
+    /**
+     * 서버가 편집 연산을 거부(SYNC_ERROR)했을 때, 탭을 닫지 않고 체크섬 검증으로 달라진 구간만 복구합니다.
+     * OT 세션이 없거나 서버가 체크섬 검증을 지원하지 않으면(응답이 없으면) 기존처럼 전체 재동기화합니다.
+     */
+    private void recoverFromSyncError(String tabId) {
+        editorTabView.getStateManager().getOTManager(tabId).ifPresentOrElse(
+            otManager -> otManager.recoverFromSyncError(() -> reSyncFile(tabId)),
+            () -> reSyncFile(tabId));
+    }
+
     /**
      * [추가] 지정된 탭 ID에 해당하는 파일을 강제로 다시 동기화하는 메소드.
      * 탭을 닫고 서버에 파일 내용을 다시 요청하여 탭을 새로 엽니다.
@@ -808,7 +960,7 @@ public class MainController implements ClientSocketManager.ClientSocketCallback
         
         editorTabView.closeTab(tabId);
         mainScreen.getCurrentProjectForFileTree().ifPresent(projectInfo -> {
-            projectController.fileContentRequest(projectInfo, filePath);
+            projectController.fileContentRequest(projectInfo, filePath, false);
         });
     }
 
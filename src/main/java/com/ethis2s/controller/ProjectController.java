@@ -2,21 +2,35 @@ package com.ethis2s.controller;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.function.Consumer;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
 
+import com.ethis2s.model.FileTreeDelta;
+import com.ethis2s.model.FileTreeIndex;
 import com.ethis2s.model.ProtocolConstants;
+import com.ethis2s.model.TextOperation;
 import com.ethis2s.model.UserInfo;
 import com.ethis2s.model.UserProjectsInfo;
 import com.ethis2s.service.ClientSocketManager;
+import com.ethis2s.service.FileContentCache;
+import com.ethis2s.service.LinkHealth;
+import com.ethis2s.service.PendingRequests;
+import com.ethis2s.service.RequestScheduler;
+import com.ethis2s.util.ConfigManager;
 import com.ethis2s.view.MainScreen;
+import com.ethis2s.wire.CursorMessage;
+import com.ethis2s.wire.EditMessage;
 
 import javafx.application.Platform;
 
@@ -26,19 +40,70 @@ public class ProjectController {
     private final MainScreen mainScreen;
     private final MainController mainController;
     private UserInfo userInfo;
-    private Consumer<JSONObject> fileListCallback;
 
-    private final BlockingQueue<RequestRecord> requestQueue = new LinkedBlockingQueue<>();
+    private static final int DEFAULT_REQUEST_QUEUE_CAPACITY = 1024;
+    private static final int DEFAULT_REQUEST_TIMEOUT_MILLIS = 10000;
+    private static final int DEFAULT_REQUEST_RETRIES = 2;
+    private static final int DEFAULT_FILE_CACHE_MAX_MB = 256;
+    private static final String FILE_CACHE_DIRECTORY = ".cache/files";
+
+    // 응답이 오는 요청(파일 목록, 공유 목록/추가/삭제)은 request_id 로 응답과 짝짓는다.
+    private final PendingRequests pendingRequests;
+    private final int requestRetries;
+
+    // 편집 > 커서 > 그 외(메타데이터/대용량) 순으로 보낸다. 커서는 파일마다 마지막 위치만 보낸다.
+    private final RequestScheduler<RequestRecord> requestQueue;
     private final Thread requestWorkerThread;
 
+    // 받은 파일 내용의 디스크 캐시. 파일을 다시 열 때 아는 해시/버전을 보내 바뀐 부분만 받는다.
+    private final FileContentCache fileContentCache;
+
+    // 파일 트리 색인을 FX 스레드 밖에서 만든다. 목록과 델타를 받은 순서대로 처리하므로 화면에 반영되는 순서도 그대로다.
+    private final ExecutorService fileTreeIndexer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "file-tree-index");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // 아래는 fileTreeIndexer 에서만 사용. 마지막으로 만든 색인과 그 프로젝트/트리 버전 (-1 이면 델타를 이어 붙일 수 없음)
+    private FileTreeIndex fileTreeIndex;
+    private String fileTreeIndexProjectId;
+    private long fileTreeIndexVersion = -1;
+
+    // 스트림으로 보낸 요청은 뒤에 보낸 메시지에 추월당할 수 있으므로, 다른 요청과 순서가 얽히지 않는 조회만 스트림으로 보낸다.
+    // 체크섬, 파일 추가/삭제처럼 순서가 중요한 요청은 크더라도 보낸 순서대로 한 번에 보낸다.
+    private static final Set<Integer> STREAMABLE_REQUESTS = Set.of(
+        ProtocolConstants.UF_GET_PROJECT_FILE_REQUEST,
+        ProtocolConstants.UF_PROJECT_LIST_REQUEST,
+        ProtocolConstants.UF_SHARED_LIST_REQUEST);
+
     // 내부 클래스로 요청 데이터 구조화
     private static class RequestRecord {
         final JSONObject payload;
         final int userField;
+        // 편집/커서는 전송 직전에 인코딩한다. (바이너리 코덱의 intern 표는 전송 순서대로 갱신되어야 함)
+        final EditMessage edit;
+        final CursorMessage cursor;
+        // 다른 요청과 순서가 상관없는 요청(STREAMABLE_REQUESTS)은 크면 스트림으로 나눠 편집 패킷 사이사이에 보낸다.
+        final boolean bulk;
+
+        RequestRecord(JSONObject payload, int userField, boolean bulk) {
+            this(payload, userField, null, null, bulk);
+        }
+
+        RequestRecord(EditMessage edit) {
+            this(null, ProtocolConstants.UF_FILE_EDIT_OPERATION, edit, null, false);
+        }
+
+        RequestRecord(CursorMessage cursor) {
+            this(null, ProtocolConstants.UF_CURSOR_MOVE, null, cursor, false);
+        }
 
-        RequestRecord(JSONObject payload, int userField) {
+        private RequestRecord(JSONObject payload, int userField, EditMessage edit, CursorMessage cursor, boolean bulk) {
             this.payload = payload;
             this.userField = userField;
+            this.edit = edit;
+            this.cursor = cursor;
+            this.bulk = bulk;
         }
     }
 
@@ -46,14 +111,31 @@ public class ProjectController {
         this.socketManager = socketManager;
         this.mainScreen = mainScreen;
         this.mainController = mainController;
+        this.requestQueue = new RequestScheduler<>(ConfigManager.getInstance().get(
+            "collaboration", "requestQueueCapacity", Integer.class, DEFAULT_REQUEST_QUEUE_CAPACITY));
+        this.pendingRequests = new PendingRequests(ConfigManager.getInstance().get(
+            "collaboration", "requestTimeoutMillis", Integer.class, DEFAULT_REQUEST_TIMEOUT_MILLIS));
+        this.requestRetries = ConfigManager.getInstance().get(
+            "collaboration", "requestRetries", Integer.class, DEFAULT_REQUEST_RETRIES);
+        this.fileContentCache = new FileContentCache(ConfigManager.getBaseDir().resolve(FILE_CACHE_DIRECTORY),
+            ConfigManager.getInstance().get("collaboration", "fileCacheMaxMB", Integer.class, DEFAULT_FILE_CACHE_MAX_MB) * 1024L * 1024L);
+        socketManager.setFileContentCache(fileContentCache);
 
         // 요청을 순차적으로 처리할 워커 스레드 시작
         this.requestWorkerThread = new Thread(() -> {
             try {
                 while (!Thread.currentThread().isInterrupted()) {
-                    RequestRecord request = requestQueue.take(); // 큐에서 요청을 꺼냄 (없으면 대기)
+                    RequestRecord request = requestQueue.take(); // 우선순위가 가장 높은 요청을 꺼냄 (없으면 대기)
                     try {
-                        socketManager.sendJsonPacket(request.payload, request.userField, ProtocolConstants.PTYPE_JSON);
+                        if (request.edit != null) {
+                            socketManager.sendEditMessage(request.edit);
+                        } else if (request.cursor != null) {
+                            socketManager.sendCursorMessage(request.cursor);
+                        } else if (request.bulk) {
+                            socketManager.sendBulkJsonPacket(request.payload, request.userField);
+                        } else {
+                            socketManager.sendJsonPacket(request.payload, request.userField, ProtocolConstants.PTYPE_JSON);
+                        }
                     } catch (Exception ex) {
                         System.err.println("Request failed for userField " + request.userField + ": " + ex.getMessage());
                     }
@@ -75,6 +157,10 @@ public class ProjectController {
         return (userInfo != null) ? Optional.of(userInfo.getId()) : Optional.empty();
     }
 
+    public Optional<String> getCurrentProjectId() {
+        return mainController.getCurrentActiveProject().map(UserProjectsInfo::getProjectID);
+    }
+
     public Optional<String> getCurrentUserNicknameAndTag() {
         if (userInfo != null) {
             return Optional.of(userInfo.getNickname() + "#" + userInfo.getTag());
@@ -142,67 +228,182 @@ public class ProjectController {
         sendRequest(payload, ProtocolConstants.UF_PROJECT_LIST_REQUEST);
     }
 
-    public void fileListRequest(UserProjectsInfo userProjectsInfo) {
-        if (userInfo == null) return;
+    /** 파일 목록을 받아 파일 트리에 표시합니다. 받은 목록으로 완료되는 future 를 돌려줍니다. */
+    public CompletableFuture<JSONObject> fileListRequest(UserProjectsInfo userProjectsInfo) {
+        CompletableFuture<JSONObject> future = fetchFileList(userProjectsInfo);
+        future.whenComplete((fileList, error) -> {
+            if (error == null) {
+                showFileTree(userProjectsInfo.getProjectID(), fileList);
+            } else {
+                Platform.runLater(() -> mainScreen.getOutputView().appendText("[ERROR] 파일 목록을 불러오지 못했습니다: " + error.getMessage() + "\n"));
+            }
+        });
+        return future;
+    }
+
+    /** 받은 목록으로 색인을 만든 뒤 파일 트리를 바꿉니다. 트리 항목은 폴더를 펼칠 때 색인에서 만듭니다. */
+    private void showFileTree(String projectId, JSONObject fileList) {
+        if (!fileList.has("name") || !fileList.has("children")) return;
+        fileTreeIndexer.execute(() -> {
+            FileTreeIndex index = FileTreeIndex.fromJson(fileList);
+            long version = fileList.optLong("tree_version", -1);
+            fileTreeIndex = index;
+            fileTreeIndexProjectId = projectId;
+            fileTreeIndexVersion = version;
+            Platform.runLater(() -> mainScreen.updateFileTree(index, version));
+        });
+    }
+
+    /** 파일 트리는 건드리지 않고 파일 목록만 받아옵니다. future 는 수신 스레드에서 완료됩니다. */
+    public CompletableFuture<JSONObject> fetchFileList(UserProjectsInfo userProjectsInfo) {
+        if (userInfo == null) return notLoggedIn();
         JSONObject payload = new JSONObject();
         payload.put("requester", userInfo.getId());
         payload.put("project_id", userProjectsInfo.getProjectID());
         payload.put("owner", userProjectsInfo.getOwner());
-        sendRequest(payload, ProtocolConstants.UF_FILETREE_LIST_REQUEST);
+        // 델타를 지원하는 서버는 이 프로젝트의 이후 변경을 UF_FILETREE_DELTA 로 보낸다. 지원하지 않으면 무시한다.
+        payload.put("tree_delta", true);
+        return call(payload, ProtocolConstants.UF_FILETREE_LIST_REQUEST, ProtocolConstants.UF_FILETREE_LIST_RESPONSE,
+            userProjectsInfo.getProjectID(), requestRetries);
     }
 
-    public void fileListRequest(UserProjectsInfo userProjectsInfo, Consumer<JSONObject> callback) {
-        this.fileListCallback = callback;
-        fileListRequest(userProjectsInfo);
+    public void fileContentRequest(UserProjectsInfo userProjectsInfo, String path) {
+        fileContentRequest(userProjectsInfo, path, true);
     }
 
-    public void fileContentRequest(UserProjectsInfo userProjectsInfo, String path) {
+    /**
+     * 파일 내용을 요청합니다. useCache 이고 캐시에 이 파일이 있으면 "known_hash" / "known_version" 을 함께 보내며,
+     * 서버는 전체 내용 대신 "not_modified" 또는 그 버전 이후의 연산("ops")만 돌려줄 수 있습니다.
+     * 캐시가 손상되었거나 서버 내용과 맞지 않아 다시 받을 때는 useCache 를 false 로 부릅니다.
+     */
+    public void fileContentRequest(UserProjectsInfo userProjectsInfo, String path, boolean useCache) {
         if (userInfo == null) return;
         JSONObject payload = new JSONObject();
         payload.put("requester", userInfo.getId());
         payload.put("project_id", userProjectsInfo.getProjectID());
         payload.put("owner", userProjectsInfo.getOwner());
         payload.put("path", path);
+        if (useCache) {
+            fileContentCache.lookup(fileCacheKey(userProjectsInfo.getProjectID(), path)).ifPresent(cached -> {
+                payload.put("known_hash", cached.getHash());
+                payload.put("known_version", cached.getVersion());
+            });
+        }
         sendRequest(payload, ProtocolConstants.UF_FILE_CONTENT_REQUEST);
     }
 
+    public FileContentCache getFileContentCache() {
+        return fileContentCache;
+    }
+
+    public String fileCacheKey(String projectId, String path) {
+        return FileContentCache.keyFor(userInfo != null ? userInfo.getId() : "", projectId, path);
+    }
+
     public void fileEditOperationRequest(String filePath, String type, int position, String text, int length, int cursorPosition, long version, String uniqId) {
         if (userInfo == null || socketManager == null) return;
         mainController.getCurrentActiveProject().ifPresent(projectInfo -> {
+            EditMessage edit;
+            if ("INSERT".equals(type)) {
+                edit = EditMessage.insert(userInfo.getId(), projectInfo.getProjectID(), projectInfo.getOwner(), filePath,
+                    position, text, cursorPosition, version, uniqId);
+            } else {
+                // 삭제된 텍스트는 서버가 알고 있으므로 길이만 보낸다.
+                edit = EditMessage.delete(userInfo.getId(), projectInfo.getProjectID(), projectInfo.getOwner(), filePath,
+                    position, length, null, cursorPosition, version, uniqId);
+            }
+            enqueue(RequestScheduler.Lane.EDIT, new RequestRecord(edit));
+        });
+    }
+
+    /**
+     * 여러 위치를 한 번에 바꾸는 복합 연산(retain/insert/delete 컴포넌트 목록)을 전송합니다.
+     * JSON 으로는 TextOperation.toJson() 형식의 ops 로 보내며, 서버는 type 이 COMPOUND 인 요청을 그대로 브로드캐스트합니다.
+     */
+    public void fileEditOperationRequest(String filePath, TextOperation operation, int cursorPosition, long version, String uniqId) {
+        if (userInfo == null || socketManager == null) return;
+        mainController.getCurrentActiveProject().ifPresent(projectInfo -> {
+            enqueue(RequestScheduler.Lane.EDIT, new RequestRecord(EditMessage.compound(userInfo.getId(), projectInfo.getProjectID(),
+                projectInfo.getOwner(), filePath, operation, cursorPosition, version, uniqId)));
+        });
+    }
+
+    /**
+     * 확정된 버전의 문서 체크섬(LineHashIndex 다이제스트)을 보내 서버 문서와 같은지 검증을 요청합니다.
+     * 다이제스트는 부호 없는 16진수 문자열이며, blocks 는 linesPerBlock 줄 단위 블록 다이제스트 목록입니다.
+     * 서버는 일치 여부와 함께, 불일치하면 처음 달라지는 블록부터의 내용을 UF_DOCUMENT_CHECKSUM_RESPONSE 로 돌려줍니다.
+     */
+    public void documentChecksumRequest(String filePath, long version, int lineCount, long digest, int linesPerBlock, long[] blockDigests) {
+        if (userInfo == null || socketManager == null) return;
+        mainController.getCurrentActiveProject().ifPresent(projectInfo -> {
+            JSONArray blocks = new JSONArray();
+            for (long blockDigest : blockDigests) {
+                blocks.put(Long.toUnsignedString(blockDigest, 16));
+            }
             JSONObject payload = new JSONObject();
             payload.put("requester", userInfo.getId());
             payload.put("project_id", projectInfo.getProjectID());
             payload.put("owner", projectInfo.getOwner());
             payload.put("path", filePath);
-            payload.put("type", type);
-            payload.put("position", position);
-            payload.put("cursorPosition", cursorPosition);
             payload.put("version", version);
-            payload.put("uniqId", uniqId);
+            payload.put("lineCount", lineCount);
+            payload.put("digest", Long.toUnsignedString(digest, 16));
+            payload.put("linesPerBlock", linesPerBlock);
+            payload.put("blocks", blocks);
+            sendRequest(payload, ProtocolConstants.UF_DOCUMENT_CHECKSUM_REQUEST);
+        });
+    }
 
-            if ("INSERT".equals(type)) {
-                payload.put("text", text);
-            } else if ("DELETE".equals(type)) {
-                payload.put("length", length);
-            }
-            sendRequest(payload, ProtocolConstants.UF_FILE_EDIT_OPERATION);
+    /**
+     * fromVersion 이후의 편집 히스토리를 요청합니다. 서버는 기존 catch-up 과 같은 UF_HISTORY 패킷으로 응답합니다.
+     * (저널에 남은 이전 세션의 연산을 현재 버전까지 rebase 할 때 사용)
+     */
+    public void fileHistoryRequest(String filePath, long fromVersion) {
+        if (userInfo == null || socketManager == null) return;
+        mainController.getCurrentActiveProject().ifPresent(projectInfo -> {
+            JSONObject payload = new JSONObject();
+            payload.put("requester", userInfo.getId());
+            payload.put("project_id", projectInfo.getProjectID());
+            payload.put("owner", projectInfo.getOwner());
+            payload.put("path", filePath);
+            payload.put("fromVersion", fromVersion);
+            sendRequest(payload, ProtocolConstants.UF_HISTORY_REQUEST);
         });
     }
 
-    public void lineLockRequest(String filePath, int line) {
-        if (userInfo == null) return;
+    /**
+     * 로컬 CRDT 변경 묶음을 전송합니다. 서버는 순서를 매기거나 변환하지 않고 기록한 뒤 다른 참여자에게 중계합니다.
+     * snapshot 이 true 이면 update 는 문서 전체 상태이며, 서버는 이전 변경 묶음 기록을 이것으로 대체할 수 있습니다.
+     * (바이너리 코덱이 생기기 전까지는 base64 로 JSON 에 담아 보냅니다)
+     */
+    public void crdtUpdateRequest(String filePath, byte[] update, boolean snapshot) {
+        if (userInfo == null || socketManager == null) return;
         mainController.getCurrentActiveProject().ifPresent(projectInfo -> {
             JSONObject payload = new JSONObject();
             payload.put("requester", userInfo.getId());
             payload.put("project_id", projectInfo.getProjectID());
             payload.put("owner", projectInfo.getOwner());
             payload.put("path", filePath);
-            payload.put("lineNumber", line);
-            sendRequest(payload, ProtocolConstants.UF_LINE_LOCK_REQUEST);
+            payload.put("snapshot", snapshot);
+            payload.put("update", Base64.getEncoder().encodeToString(update));
+            sendRequest(payload, ProtocolConstants.UF_CRDT_UPDATE);
         });
     }
 
-    public void cursorMoveRequest(String filePath, int cursorPosition) {
+    /** CRDT 문서의 마지막 스냅샷과 그 이후의 변경 묶음들을 요청합니다. 응답은 UF_CRDT_STATE_RESPONSE 입니다. */
+    public void crdtStateRequest(String filePath) {
+        if (userInfo == null || socketManager == null) return;
+        mainController.getCurrentActiveProject().ifPresent(projectInfo -> {
+            JSONObject payload = new JSONObject();
+            payload.put("requester", userInfo.getId());
+            payload.put("project_id", projectInfo.getProjectID());
+            payload.put("owner", projectInfo.getOwner());
+            payload.put("path", filePath);
+            sendRequest(payload, ProtocolConstants.UF_CRDT_STATE_REQUEST);
+        });
+    }
+
+    public void lineLockRequest(String filePath, int line) {
         if (userInfo == null) return;
         mainController.getCurrentActiveProject().ifPresent(projectInfo -> {
             JSONObject payload = new JSONObject();
@@ -210,8 +411,17 @@ public class ProjectController {
             payload.put("project_id", projectInfo.getProjectID());
             payload.put("owner", projectInfo.getOwner());
             payload.put("path", filePath);
-            payload.put("cursorPosition", cursorPosition);
-            sendRequest(payload, ProtocolConstants.UF_CURSOR_MOVE);
+            payload.put("lineNumber", line);
+            sendRequest(payload, ProtocolConstants.UF_LINE_LOCK_REQUEST);
+        });
+    }
+
+    public void cursorMoveRequest(String filePath, int cursorPosition) {
+        if (userInfo == null) return;
+        mainController.getCurrentActiveProject().ifPresent(projectInfo -> {
+            // 아직 보내지 않은 같은 파일의 커서 위치는 새 위치로 대체된다.
+            requestQueue.putLatest(filePath, new RequestRecord(new CursorMessage(userInfo.getId(), projectInfo.getProjectID(),
+                projectInfo.getOwner(), filePath, cursorPosition)));
         });
     }
 
@@ -237,32 +447,59 @@ public class ProjectController {
         sendRequest(payload, ProtocolConstants.UF_DELETE_PROJECT_REQUEST);
     }
     
-    public void sharedListRequest(String projectId) {
-        if (userInfo == null) return;
+    /** 프로젝트를 공유받은 사용자 목록({nickname, tag} 배열)으로 완료됩니다. */
+    public CompletableFuture<JSONArray> sharedListRequest(String projectId) {
+        if (userInfo == null) return notLoggedIn();
         JSONObject payload = new JSONObject();
         payload.put("requester", userInfo.getId());
         payload.put("project_id", projectId);
-        sendRequest(payload, ProtocolConstants.UF_SHARED_LIST_REQUEST);
+        return call(payload, ProtocolConstants.UF_SHARED_LIST_REQUEST, ProtocolConstants.UF_SHARED_LIST_RESPONSE,
+            projectId, requestRetries);
+    }
+
+    /**
+     * 재연결 뒤 다시 로그인하지 않고 세션을 이어 갑니다. openFiles 는 열린 탭의 파일 경로 → 확정 버전(OTManager 의 localVersion)이며,
+     * 서버는 한 번의 응답에 파일마다 그 버전 이후의 히스토리를 담아 줍니다. 토큰이 만료되었으면 응답의 result 가 false 입니다.
+     * 같은 토큰과 버전으로 다시 보내도 결과가 같으므로 재시도합니다.
+     */
+    public CompletableFuture<JSONObject> sessionResumeRequest(Map<String, Long> openFiles) {
+        if (userInfo == null || userInfo.getSessionToken() == null) return notLoggedIn();
+        JSONArray files = new JSONArray();
+        openFiles.forEach((path, version) -> files.put(new JSONObject().put("path", path).put("version", version)));
+        JSONObject payload = new JSONObject();
+        payload.put("requester", userInfo.getId());
+        payload.put("session_token", userInfo.getSessionToken());
+        mainController.getCurrentActiveProject().ifPresent(projectInfo -> {
+            payload.put("project_id", projectInfo.getProjectID());
+            payload.put("owner", projectInfo.getOwner());
+        });
+        payload.put("files", files);
+        return call(payload, ProtocolConstants.UF_SESSION_RESUME_REQUEST, ProtocolConstants.UF_SESSION_RESUME_RESPONSE,
+            userInfo.getId(), requestRetries);
     }
 
-    public void addShareRequest(String projectId, String nickname, String tag) {
-        if (userInfo == null) return;
+    /** 공유 추가 결과로 완료됩니다. 다시 보내면 결과가 달라질 수 있으므로 재시도하지 않습니다. */
+    public CompletableFuture<Boolean> addShareRequest(String projectId, String nickname, String tag) {
+        if (userInfo == null) return notLoggedIn();
         JSONObject payload = new JSONObject();
         payload.put("project_id", projectId);
         payload.put("requester", userInfo.getId());
         payload.put("target_name", nickname);
         payload.put("target_tag", tag);
-        sendRequest(payload, ProtocolConstants.UF_ADD_SHARE_REQUEST);
+        return call(payload, ProtocolConstants.UF_ADD_SHARE_REQUEST, ProtocolConstants.UF_ADD_SHARE_RESPONSE,
+            projectId, 0);
     }
 
-    public void shareDeleteRequest(String projectId, String targetName, String targetTag) {
-        if (userInfo == null) return;
+    /** 공유 해제 결과로 완료됩니다. 재시도하지 않습니다. */
+    public CompletableFuture<Boolean> shareDeleteRequest(String projectId, String targetName, String targetTag) {
+        if (userInfo == null) return notLoggedIn();
         JSONObject payload = new JSONObject();
         payload.put("project_id", projectId);
         payload.put("requester", userInfo.getId());
         payload.put("target_name", targetName);
         payload.put("target_tag", targetTag);
-        sendRequest(payload, ProtocolConstants.UF_DELETE_SHARE_REQUEST);
+        return call(payload, ProtocolConstants.UF_DELETE_SHARE_REQUEST, ProtocolConstants.UF_DELETE_SHARE_RESPONSE,
+            projectId, 0);
     }
 
     public void addFileRequest(String projectId, String path, String owner) {
@@ -304,8 +541,79 @@ public class ProjectController {
         sendRequest(payload, ProtocolConstants.UF_DELETE_FOLDER_REQUEST);
     }
 
-    private void sendRequest(JSONObject payload, int userField) {
-        requestQueue.add(new RequestRecord(payload, userField));
+    /** @return 전송 대기열이 가득 차 보내지 못했으면 false */
+    private boolean sendRequest(JSONObject payload, int userField) {
+        // CRDT 변경 묶음은 키 입력이므로 편집 레인으로 보낸다.
+        // 이름 변경/이동도 편집 레인으로 보내, 그 뒤에 새 경로로 보낸 편집이 먼저 도착하지 않게 한다.
+        // 나머지는 모두 메타데이터/대용량 레인으로 보낸다.
+        RequestScheduler.Lane lane = (userField == ProtocolConstants.UF_CRDT_UPDATE
+                || userField == ProtocolConstants.UF_CHANG_FILE_NAME_REQUEST
+                || userField == ProtocolConstants.UF_CHANG_FILE_LOC_REQUEST)
+            ? RequestScheduler.Lane.EDIT : RequestScheduler.Lane.BULK;
+        boolean streamable = lane == RequestScheduler.Lane.BULK && STREAMABLE_REQUESTS.contains(userField);
+        return enqueue(lane, new RequestRecord(payload, userField, streamable));
+    }
+
+    /**
+     * 응답을 기다리는 요청을 보냅니다. 페이로드에 "request_id" 를 넣고, 같은 ID 의 응답(또는 ID 를 돌려주지 않는 서버라면
+     * 같은 key 로 가장 먼저 보낸 요청의 응답)이 오면 완료됩니다. 재시도는 같은 ID 로 다시 보냅니다.
+     */
+    private <T> CompletableFuture<T> call(JSONObject payload, int userField, int responseField, String key, int retries) {
+        return pendingRequests.submit(responseField, key, retries, requestId -> {
+            payload.put("request_id", requestId);
+            if (!sendRequest(payload, userField)) {
+                // 대기열이 가득 찼으면 기다리지 않고 요청을 실패시켜, 호출한 쪽의 실패 처리로 넘긴다.
+                throw new RejectedExecutionException("Request queue is full (userField 0x" + Integer.toHexString(userField) + ").");
+            }
+        });
+    }
+
+    private static <T> CompletableFuture<T> notLoggedIn() {
+        return CompletableFuture.failedFuture(new IllegalStateException("Not logged in."));
+    }
+
+    /** 연결이 끊겨 응답을 받을 수 없게 된 요청들을 실패시킵니다. */
+    public void failPendingRequests(Throwable cause) {
+        pendingRequests.failAll(cause);
+    }
+
+    // FX 스레드, 패킷 배달 스레드, 요청 시간 초과 타이머에서 호출되므로 기다리지 않는다.
+    private boolean enqueue(RequestScheduler.Lane lane, RequestRecord request) {
+        if (requestQueue.offer(lane, request)) {
+            return true;
+        }
+        System.err.println("Request dropped for userField " + request.userField + ": " + lane + " lane is full.");
+        return false;
+    }
+
+    /** 전송 대기열의 레인별 깊이/최대 깊이/전송 수와 합쳐진 커서 갱신 수 */
+    public RequestScheduler<?> getRequestScheduler() {
+        return requestQueue;
+    }
+
+    /** 현재 연결에서 편집을 동시에 여러 개 보낼 수 있는지 여부. 서버가 협상에 응하지 않았으면 false */
+    public boolean isEditPipelineEnabled() {
+        return socketManager != null && socketManager.isPipelineEnabled();
+    }
+
+    /** 현재 연결에서 COMPOUND 편집을 보낼 수 있는지 여부. 서버가 협상에 응하지 않았으면 false */
+    public boolean isCompoundEditEnabled() {
+        return socketManager != null && socketManager.isCompoundEnabled();
+    }
+
+    /** 현재 연결에서 문서 체크섬 검증을 요청할 수 있는지 여부. 서버가 협상에 응하지 않았으면 false */
+    public boolean isDocumentChecksumEnabled() {
+        return socketManager != null && socketManager.isChecksumEnabled();
+    }
+
+    /** 현재 연결에서 CRDT 엔진을 쓸 수 있는지 여부. 서버가 협상에 응하지 않았으면 false */
+    public boolean isCrdtEnabled() {
+        return socketManager != null && socketManager.isCrdtEnabled();
+    }
+
+    /** 서버까지의 RTT / 지터 추정값. 연결 관리자가 없으면 empty */
+    public Optional<LinkHealth> getLinkHealth() {
+        return Optional.ofNullable(socketManager).map(ClientSocketManager::getLinkHealth);
     }
 
     public void getProjecFilesRequest(JSONObject payload){
@@ -322,16 +630,48 @@ public class ProjectController {
         });
     }
 
-    public void handleFileListResponse(JSONObject fileList) {
-        Platform.runLater(() -> {
-            if (fileListCallback != null) {
-                fileListCallback.accept(fileList);
-                fileListCallback = null; // 콜백은 한 번만 사용
-            } else {
-                mainScreen.updateFileTree(fileList);
+    public void handleFileListResponse(String projectId, long requestId, JSONObject fileList) {
+        if (!pendingRequests.complete(ProtocolConstants.UF_FILETREE_LIST_RESPONSE, projectId, requestId, fileList)) {
+            // 요청하지 않았거나 이미 시간 초과된 목록도 최신 상태이므로 트리에 반영한다.
+            showFileTree(projectId, fileList);
+        }
+    }
+
+    /**
+     * 받은 변경을 열린 파일 트리에 그 자리에서 반영합니다. 버전이 이어지지 않으면(놓친 델타) 전체 목록을 다시 받습니다.
+     * 검색 색인도 같은 변경을 반영한 새 색인으로 바꿉니다.
+     */
+    public void handleFileTreeDelta(FileTreeDelta delta) {
+        fileTreeIndexer.execute(() -> {
+            FileTreeIndex updated = null;
+            if (fileTreeIndex != null && delta.getProjectId().equals(fileTreeIndexProjectId)
+                    && fileTreeIndexVersion >= 0 && delta.getFromVersion() == fileTreeIndexVersion) {
+                updated = fileTreeIndex.withChanges(delta.getChanges());
+                fileTreeIndex = updated;
+                fileTreeIndexVersion = delta.getVersion();
             }
+            FileTreeIndex index = updated;
+            Platform.runLater(() -> {
+                if (!mainScreen.applyFileTreeDelta(delta)) {
+                    mainScreen.refreshCurrentFileTree(this);
+                } else if (index != null) {
+                    mainScreen.setFileTreeIndex(index);
+                }
+            });
         });
     }
+
+    public void handleSharedListResponse(String projectId, long requestId, JSONArray sharedList) {
+        pendingRequests.complete(ProtocolConstants.UF_SHARED_LIST_RESPONSE, projectId, requestId, sharedList);
+    }
+
+    public void handleSessionResumeResponse(long requestId, JSONObject response) {
+        pendingRequests.complete(ProtocolConstants.UF_SESSION_RESUME_RESPONSE, null, requestId, response);
+    }
+
+    public void handleAddShareResponse(String projectId, long requestId, boolean result) {
+        pendingRequests.complete(ProtocolConstants.UF_ADD_SHARE_RESPONSE, projectId, requestId, result);
+    }
     
     public void handleDeleteProjectResponse(boolean result) {
         if (result) {
@@ -339,22 +679,19 @@ public class ProjectController {
         }
     }
 
-    public void handleDeleteShareResponse(boolean result) {
+    public void handleDeleteShareResponse(String projectId, long requestId, boolean result) {
+        pendingRequests.complete(ProtocolConstants.UF_DELETE_SHARE_RESPONSE, projectId, requestId, result);
         if (result) {
             projectListRequest();
         }
     }
 
     public void handleAddFileResponse(boolean result) {
-        if (result) {
-            mainScreen.refreshCurrentFileTree(this);
-        }
+        Platform.runLater(() -> mainScreen.refreshFileTreeAfterChange(this, result));
     }
 
     public void handleAddFolderResponse(boolean result) {
-        if (result) {
-            mainScreen.refreshCurrentFileTree(this);
-        }
+        Platform.runLater(() -> mainScreen.refreshFileTreeAfterChange(this, result));
     }
 
     public void handleCreateProjectResponse(boolean result) {
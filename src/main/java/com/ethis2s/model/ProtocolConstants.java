@@ -15,6 +15,8 @@ public final class ProtocolConstants {
     public static final byte PTYPE_FLOAT = 0x06;     // float
     public static final byte PTYPE_DOUBLE = 0x07;    // double
     public static final byte PTYPE_JSONARR = 0x08;   // JSON 배열
+    public static final byte PTYPE_COMPRESSED = 0x09; // [원래 payloadType 1바이트] + zlib(deflate) 스트림. 조각으로 나뉘면 이어 붙인 스트림
+    public static final byte PTYPE_STREAM = 0x0A;    // [varint 스트림 ID] + (첫 조각만) [원래 payloadType 1바이트] + 조각. 다중화를 협상한 연결에서만
 
     // 유저 필드(명령 코드)
     public static final int UF_SERVER_ERROR = 0x000;              // 서버 에러
@@ -26,8 +28,8 @@ public final class ProtocolConstants {
     public static final int UF_USER_INFO = 0x006;                 // 사용자 정보
     public static final int UF_PROJECT_LIST_REQUEST = 0x007;      // 프로젝트 목록 요청
     public static final int UF_PROJECT_LIST_RESPONSE = 0x008;     // 프로젝트 목록 응답
-    public static final int UF_FILETREE_LIST_REQUEST = 0x009;     // 파일 트리 요청
-    public static final int UF_FILETREE_LIST_RESPONSE = 0x00A;    // 파일 트리 응답
+    public static final int UF_FILETREE_LIST_REQUEST = 0x009;     // 파일 트리 요청 ("tree_delta": true 이면 이후 변경을 UF_FILETREE_DELTA 로 받음)
+    public static final int UF_FILETREE_LIST_RESPONSE = 0x00A;    // 파일 트리 응답 (헤더의 "tree_version" 은 델타를 지원하는 서버만 보냄)
     public static final int UF_CREATE_PROJECT_REQUEST = 0x00B;    // 프로젝트 생성 요청
     public static final int UF_CREATE_PROJECT_RSPONSE = 0x00C;    // 프로젝트 생성 응답
     public static final int UF_DELETE_PROJECT_REQUEST = 0x00D;    // 프로젝트 삭제 요청
@@ -46,8 +48,8 @@ public final class ProtocolConstants {
     public static final int UF_ADD_FILE_RESPONSE = 0x01A;         // 파일 생성 응답
     public static final int UF_DELETE_FILE_REQUEST = 0x01B;       // 파일 삭제 요청
     public static final int UF_DELETE_FILE_RESPONSE = 0x01C;      // 파일 삭제 응답
-    public static final int UF_FILE_CONTENT_REQUEST = 0x01D;      // 파일 내용 요청
-    public static final int UF_FILE_CONTENT_RESPONSE = 0x01E;     // 파일 내용 응답
+    public static final int UF_FILE_CONTENT_REQUEST = 0x01D;      // 파일 내용 요청 (캐시가 있으면 "known_hash", "known_version" 포함)
+    public static final int UF_FILE_CONTENT_RESPONSE = 0x01E;     // 파일 내용 응답 ("content" 대신 "not_modified": true 또는 known_version 이후의 "ops" 일 수 있음)
 
     // 실시간 편집 / 락 관련
     public static final int UF_LINE_LOCK_REQUEST = 0x01F;         // 라인 락 요청
@@ -69,6 +71,27 @@ public final class ProtocolConstants {
     public static final int UF_CHANG_FILE_LOC_REQUEST = 0x030;    // 파일/폴더 위치 변경 요청
     public static final int UF_CHANG_FILE_NAME_RESPONSE = 0x031;  // 파일/폴더 이름 변경 응답
     public static final int UF_CHANG_FILE_NAME_REQUEST = 0x032;   // 파일/폴더 이름 변경 요청
+    public static final int UF_DOCUMENT_CHECKSUM_REQUEST = 0x033; // 문서 체크섬 검증 요청 (버전 + 줄 해시 다이제스트)
+    public static final int UF_DOCUMENT_CHECKSUM_RESPONSE = 0x034; // 문서 체크섬 검증 응답 (일치 여부 + 불일치 구간 내용)
+    public static final int UF_HISTORY_REQUEST = 0x035;           // 지정 버전 이후 편집 히스토리 요청 (응답은 UF_HISTORY)
+    public static final int UF_CRDT_UPDATE = 0x036;               // CRDT 변경 묶음 전송 (서버는 기록 후 중계)
+    public static final int UF_CRDT_BROADCAST = 0x037;            // 다른 사용자의 CRDT 변경 묶음 전달
+    public static final int UF_CRDT_STATE_REQUEST = 0x038;        // CRDT 문서 상태(스냅샷 + 이후 변경 묶음) 요청
+    public static final int UF_CRDT_STATE_RESPONSE = 0x039;       // CRDT 문서 상태 응답
+    // "pipeline": true 로 응답한 연결에서는 편집(UF_FILE_EDIT_OPERATION)의 "version" 이
+    // [확정된 버전 + 같은 클라이언트가 앞서 보내고 아직 확정받지 못한 연산 수] 입니다.
+    // 서버는 이 버전 이후의 연산 중 같은 클라이언트가 보낸 연산과는 변환하지 않아야 합니다. (클라이언트가 이미 그 위에서 편집함)
+    // 응하지 않은 연결에서는 한 번에 하나씩 보내므로 "version" 은 그대로 기준 버전입니다.
+    // "compound": true 로 응한 연결에서만 type "COMPOUND" 편집({"ops": [...]})을 보내고, 아니면 INSERT/DELETE 만 보냅니다.
+    // "checksum": true 로 응한 연결에서만 UF_DOCUMENT_CHECKSUM_REQUEST 를 보내고, 아니면 불일치를 전체 재동기화로 복구합니다.
+    // "crdt": true 로 응한 연결에서만 CRDT 엔진(UF_CRDT_*)을 쓰고, 아니면 OT 로 편집합니다.
+    public static final int UF_WIRE_CODEC_REQUEST = 0x03A;        // 전송 형식 협상 요청 ({"codecs": [...], "compression": [...], "compressionThreshold": n, "multiplex": bool, "heartbeat": bool, "pipeline": bool, "compound": bool, "checksum": bool, "crdt": bool})
+    public static final int UF_WIRE_CODEC_RESPONSE = 0x03B;       // 전송 형식 협상 응답 ({"codec": 이름 또는 "json", "compression": 이름 또는 "none", "multiplex": bool, "heartbeat": bool, "pipeline": bool, "compound": bool, "checksum": bool, "crdt": bool})
+    public static final int UF_HEARTBEAT_REQUEST = 0x03C;         // 하트비트 (PTYPE_LONG 송신 시각). 받은 쪽은 페이로드를 그대로 UF_HEARTBEAT_RESPONSE 로 돌려준다
+    public static final int UF_HEARTBEAT_RESPONSE = 0x03D;        // 하트비트 응답 (요청 페이로드 그대로)
+    public static final int UF_SESSION_RESUME_REQUEST = 0x03E;    // 재연결 후 세션 재개 요청 (session_token + 열린 파일별 확정 버전)
+    public static final int UF_SESSION_RESUME_RESPONSE = 0x03F;   // 세션 재개 응답 ({"result": bool, "session_token"?, "files": [{"path", "ops"} 또는 {"path", "resync": true}]})
+    public static final int UF_FILETREE_DELTA = 0x040;            // 파일 트리 변경 브로드캐스트 ({"project_id", "from_version", "version", "changes": [{"op", "path", ...}]})
 
     // --- 클라이언트에 노출되는 에러 코드 ---
 
@@ -4,10 +4,15 @@ public class UserInfo {
     private String id;
     private String nickname;
     private String tag;
+    private String sessionToken; // 로그인 응답에 있으면 재연결 시 로그인 없이 세션을 이어 갈 때 쓴다. (없으면 null)
     public UserInfo(String id, String nickname, String tag) {
+        this(id, nickname, tag, null);
+    }
+    public UserInfo(String id, String nickname, String tag, String sessionToken) {
         this.id = id;
         this.nickname = nickname;
         this.tag = tag;
+        this.sessionToken = sessionToken;
     }
     public String getId() {
         return id;
@@ -18,5 +23,8 @@ public class UserInfo {
     public String getTag() {
         return tag;
     }
+    public String getSessionToken() {
+        return sessionToken;
+    }
     
 }
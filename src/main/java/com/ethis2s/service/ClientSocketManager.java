@@ -1,24 +1,25 @@
 package com.ethis2s.service;
 
 import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
 
 import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSocket;
-import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
 
@@ -26,9 +27,15 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import com.ethis2s.model.FileTreeDelta;
+import com.ethis2s.model.Operation;
 import com.ethis2s.model.ProtocolConstants;
 import com.ethis2s.model.UserInfo;
 import com.ethis2s.model.UserProjectsInfo;
+import com.ethis2s.util.ConfigManager;
+import com.ethis2s.wire.CursorMessage;
+import com.ethis2s.wire.EditMessage;
+import com.ethis2s.wire.WireCodec;
 
 import socketprotocol.PacketException;
 import socketprotocol.ParsedPacket;
@@ -37,76 +44,157 @@ import socketprotocol.SocketProtocol;
 public class ClientSocketManager {
     private static final String SERVER_IP = "sjc07250.iptime.org";
     private static final int SERVER_PORT = 8080;
-    private static final int RECONNECT_INTERVAL = 2000; // 2 seconds
-
-    private SSLSocket sslSocket;
-    private DataOutputStream out;
-    private DataInputStream in;
+    private static final int DEFAULT_RECONNECT_BASE_MILLIS = 2000; // 첫 재연결 대기 (이후 두 배씩)
+    private static final int DEFAULT_RECONNECT_MAX_MILLIS = 60000;
+    private static final int DEFAULT_HEARTBEAT_INTERVAL_MILLIS = 5000;
+    private static final int DEFAULT_HEARTBEAT_TIMEOUT_MILLIS = 15000;
+    private static final int CONNECT_TIMEOUT = 5000; // 연결 + TLS 핸드셰이크 타임아웃
+    private static final int DEFAULT_SEND_COALESCE_MILLIS = 2;
+    private static final int DEFAULT_SEND_COALESCE_BYTES = 16384;
+    private static final int DEFAULT_COMPRESSION_THRESHOLD = 4096;
+    private static final int DEFAULT_BULK_CHUNK_BYTES = 16384;
+    // 동시에 조립 중일 수 있는 수신 스트림 수 상한
+    private static final int MAX_INBOUND_STREAMS = 256;
+    private static final String COMPRESSION_DEFLATE = "deflate";
+
+    private volatile TlsChannelTransport transport;
+    private SSLContext sslContext; // this 로 보호
     private final SocketProtocol protocol;
     private final ClientSocketCallback callback;
+    // 재연결해도 이어서 센다.
+    private final SendStatistics sendStatistics = new SendStatistics();
+    // 편집/커서 바이너리 코덱. intern 표가 연결마다 다르므로 transport 와 함께 wireLock 으로 바꾼다.
+    // 인코더는 서버가 협상에 응한 뒤에만 생기며, 그 전에는 JSON 으로 보낸다.
+    private final Object wireLock = new Object();
+    private WireCodec.Encoder wireEncoder;
+    // 서버가 압축을 받겠다고 응답한 연결에서만 0 보다 크다. 이 크기 이상의 페이로드를 deflate 로 보낸다.
+    private volatile int outboundCompressionThreshold = 0;
+    private final CompressionStatistics compressionStatistics = new CompressionStatistics();
+    // 연결마다 새로 만든다. 서버가 다중화에 응한 연결에서만 대용량 메시지를 스트림으로 나눠 보낸다.
+    private volatile StreamMultiplexer multiplexer;
+    private volatile boolean multiplexEnabled = false;
+    // 서버가 파이프라인 편집(앞선 전송 중 연산을 기준 버전에 포함)을 받겠다고 응답한 연결에서만 true.
+    private volatile boolean pipelineEnabled = false;
+    // 서버가 COMPOUND 편집(여러 편집을 담은 하나의 연산)을 받아 중계하겠다고 응답한 연결에서만 true.
+    private volatile boolean compoundEnabled = false;
+    // 서버가 문서 체크섬 검증(UF_DOCUMENT_CHECKSUM_REQUEST)에 응했는지 여부
+    private volatile boolean checksumEnabled = false;
+    // 서버가 CRDT 변경 묶음 중계와 상태 요청(UF_CRDT_*)에 응했는지 여부
+    private volatile boolean crdtEnabled = false;
     private volatile boolean isReconnecting = false;
+    private final Object reconnectLock = new Object();
+    // 하트비트 RTT / 마지막 수신 시각. 연결마다 reset 한다.
+    private final LinkHealth linkHealth = new LinkHealth();
+    private final ScheduledExecutorService heartbeatTimer;
+    private ScheduledFuture<?> heartbeatTask; // this 로 보호
     private volatile boolean isRunning = true;
-    private Thread receivingThread;
-    private final Map<Integer, ByteArrayOutputStream> fragmentBuffers = new HashMap<>();
+    // 조건부 파일 내용 응답을 디코딩 워커에서 캐시 내용으로 풀어내는 데 쓴다. 없으면 항상 캐시 미스로 본다.
+    private volatile FileContentCache fileContentCache;
+    // 받은 패킷의 조립/디코딩/배달. 재연결해도 같은 것을 쓴다.
+    private final ReceivePipeline receivePipeline;
     private static final int MAX_PAYLOAD_SIZE = 8100; // Use a safer margin below the theoretical max of 8188
 
     public ClientSocketManager(ClientSocketCallback callback) {
         this.callback = callback;
         this.protocol = new SocketProtocol();
+        int decodeThreads = ConfigManager.getInstance().get("collaboration", "decodeThreads", Integer.class, 0);
+        if (decodeThreads <= 0) decodeThreads = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+        this.receivePipeline = new ReceivePipeline(decodeThreads, e -> {
+            System.err.println("Error parsing packet: " + e);
+            if (callback != null) callback.onError("Error parsing packet: " + e.getMessage());
+        });
+        this.heartbeatTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "heartbeat");
+            t.setDaemon(true);
+            return t;
+        });
     }
 
-    public void connect() throws Exception {
+    public void setFileContentCache(FileContentCache fileContentCache) {
+        this.fileContentCache = fileContentCache;
+    }
+
+    /**
+     * 재연결해도 같은 SSLContext 를 쓴다. 클라이언트 세션 캐시가 컨텍스트에 있으므로, 서버가 허용하면
+     * 재연결 핸드셰이크가 세션 재개(TLS 1.3 PSK / 1.2 세션 ID)로 끝나 인증서 전송과 검증을 건너뛴다.
+     */
+    private synchronized SSLContext sslContext() throws Exception {
+        if (sslContext != null) return sslContext;
         TrustManager[] trustAllCerts = { new X509TrustManager() {
             public X509Certificate[] getAcceptedIssuers() { return null; }
             public void checkClientTrusted(X509Certificate[] certs, String authType) {}
             public void checkServerTrusted(X509Certificate[] certs, String authType) {}
         }};
 
-        SSLContext sslContext = SSLContext.getInstance("TLS");
-        sslContext.init(null, trustAllCerts, new SecureRandom());
-
-        SSLSocketFactory factory = sslContext.getSocketFactory();
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, trustAllCerts, new SecureRandom());
+        sslContext = context;
+        return context;
+    }
 
-        // 타임아웃 5초로 지정
-        SSLSocket tempSocket = (SSLSocket) factory.createSocket();
-        tempSocket.connect(new InetSocketAddress(SERVER_IP, SERVER_PORT), 5000);
-        tempSocket.startHandshake();
+    public void connect() throws Exception {
+        SSLContext sslContext = sslContext();
+
+        int coalesceMillis = ConfigManager.getInstance().get("collaboration", "sendCoalesceMillis", Integer.class, DEFAULT_SEND_COALESCE_MILLIS);
+        int coalesceBytes = ConfigManager.getInstance().get("collaboration", "sendCoalesceBytes", Integer.class, DEFAULT_SEND_COALESCE_BYTES);
+        int bulkChunkBytes = ConfigManager.getInstance().get("collaboration", "bulkChunkBytes", Integer.class, DEFAULT_BULK_CHUNK_BYTES);
+
+        // 읽기/쓰기/핸드셰이크는 모두 전송 계층의 이벤트 루프 스레드 하나가 처리한다.
+        // 이벤트 루프는 패킷 경계만 잘라 넘기고, 조립/파싱/콜백은 수신 파이프라인에서 한다.
+        InboundAssembler assembler = new InboundAssembler();
+        TlsChannelTransport tempTransport = new TlsChannelTransport(sslContext,
+            new InetSocketAddress(SERVER_IP, SERVER_PORT), new TlsChannelTransport.Listener() {
+                @Override
+                public void onPacket(byte[] packet) {
+                    linkHealth.received();
+                    receivePipeline.submit(() -> assembler.assemble(packet));
+                }
 
-        sslSocket = tempSocket;
-        out = new DataOutputStream(sslSocket.getOutputStream());
-        in = new DataInputStream(sslSocket.getInputStream());
+                @Override
+                public void onClosed(IOException cause) {
+                    receivePipeline.execute(assembler::dispose);
+                    if (isRunning) {
+                        handleDisconnection();
+                    }
+                }
+            }, coalesceMillis, coalesceBytes, sendStatistics);
+        StreamMultiplexer tempMultiplexer = null;
+        if (bulkChunkBytes > 0) {
+            tempMultiplexer = new StreamMultiplexer(MAX_PAYLOAD_SIZE);
+            tempTransport.setBulkSource(tempMultiplexer, bulkChunkBytes);
+        }
+        tempTransport.connect(CONNECT_TIMEOUT);
+        stopHeartbeat();
+        linkHealth.reset();
+        synchronized (wireLock) {
+            wireEncoder = null;
+            outboundCompressionThreshold = 0;
+            multiplexEnabled = false;
+            pipelineEnabled = false;
+            compoundEnabled = false;
+            checksumEnabled = false;
+            crdtEnabled = false;
+            multiplexer = tempMultiplexer;
+            transport = tempTransport;
+        }
+        negotiateWireFormat();
 
         if (callback != null) callback.onConnected();
-
-        receivingThread = new Thread(this::startReceiving);
-        receivingThread.start();
     }
 
     public void disconnect(boolean reconnect) {
         System.out.println("DEBUG: ClientSocketManager.disconnect() called.");
         isRunning = false; // Signal the loop to stop
-        try {
-            if (sslSocket != null && !sslSocket.isClosed()) {
-                System.out.println("DEBUG: Closing socket.");
-                sslSocket.close(); // This will interrupt the blocking read() call
-            }
-            if (receivingThread != null && receivingThread.isAlive()) {
-                receivingThread.join(1000); // Wait for the thread to die
-                if (receivingThread.isAlive()) {
-                    receivingThread.interrupt(); // Forcefully interrupt if it's stuck
-                }
-            }
-        } catch (IOException e) {
-            // Ignore errors on close
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt(); // Preserve interrupt status
+        stopHeartbeat();
+        TlsChannelTransport current = transport;
+        if (current != null) {
+            System.out.println("DEBUG: Closing socket.");
+            current.close(1000); // 이벤트 루프가 끝날 때까지 잠시 기다린다.
         }
         System.out.println("DEBUG: ClientSocketManager.disconnect() finished.");
 
         if (reconnect) {
-            boolean socketDead = (sslSocket == null || sslSocket.isClosed());
-            boolean threadDead = (receivingThread == null || !receivingThread.isAlive());
-            if (socketDead && threadDead) {
+            if (current == null || (!current.isOpen() && current.isTerminated())) {
                 try {
                     isRunning = true;
                     connect();
@@ -118,82 +206,195 @@ public class ClientSocketManager {
         }
     }
 
+    /**
+     * 서버가 바이너리 코덱과 페이로드 압축을 지원하는지 묻습니다.
+     * 응답(UF_WIRE_CODEC_RESPONSE)이 없으면 계속 압축하지 않은 JSON 을 씁니다.
+     * 압축을 제안하면 서버도 compressionThreshold 이상의 응답(파일 내용, 히스토리, 프로젝트 파일 등)을 PTYPE_COMPRESSED 로 보낼 수 있습니다.
+     * 다중화(multiplex)를 제안하면 서버는 대용량 응답을 PTYPE_STREAM 조각으로 나눠 편집 브로드캐스트 사이사이에 보낼 수 있습니다.
+     * 서버가 하트비트(heartbeat)에 응하면 그때부터 주기적으로 하트비트를 보내 RTT 를 재고 끊어진 연결을 감지합니다.
+     * 파이프라인(pipeline)은 서버가 응한 연결에서만 쓰며, 그 전에는 편집을 하나씩(stop-and-wait) 보냅니다.
+     * COMPOUND 편집(compound)도 서버가 응한 연결에서만 보내고, 그 전에는 INSERT/DELETE 로 나눠 보냅니다.
+     * 문서 체크섬 검증(checksum)도 서버가 응한 연결에서만 요청하고, 그 전에는 불일치를 전체 재동기화로 복구합니다.
+     * CRDT 엔진(crdt)도 서버가 응한 연결에서만 쓰고, 그 전에는 설정과 상관없이 OT 로 탭을 엽니다.
+     */
+    private void negotiateWireFormat() {
+        boolean binary = "binary".equalsIgnoreCase(
+            ConfigManager.getInstance().get("collaboration", "wireCodec", String.class, "binary"));
+        int threshold = ConfigManager.getInstance().get("collaboration", "compressionThreshold", Integer.class, DEFAULT_COMPRESSION_THRESHOLD);
+        boolean multiplex = multiplexer != null;
+        boolean heartbeat = heartbeatIntervalMillis() > 0;
+        // 파이프라인, COMPOUND 편집, 체크섬 검증, CRDT 중계는 항상 제안한다. 실제 동시 전송 수는 pipelineWindow 설정을 따른다.
+        try {
+            JSONObject request = new JSONObject();
+            request.put("codecs", binary ? new JSONArray().put(WireCodec.NAME) : new JSONArray());
+            request.put("compression", threshold > 0 ? new JSONArray().put(COMPRESSION_DEFLATE) : new JSONArray());
+            request.put("compressionThreshold", Math.max(0, threshold));
+            request.put("multiplex", multiplex);
+            request.put("heartbeat", heartbeat);
+            request.put("pipeline", true);
+            request.put("compound", true);
+            request.put("checksum", true);
+            request.put("crdt", true);
+            sendJsonPacket(request, ProtocolConstants.UF_WIRE_CODEC_REQUEST, ProtocolConstants.PTYPE_JSON);
+        } catch (IOException e) {
+            System.err.println("Wire codec negotiation failed: " + e.getMessage());
+        }
+    }
 
+    /** 편집 연산을 보냅니다. 바이너리 코덱이 협상됐으면 PTYPE_RAW_BYTES, 아니면 기존 JSON 형식입니다. */
+    public void sendEditMessage(EditMessage message) throws IOException {
+        synchronized (wireLock) {
+            // 인코딩(intern 표 갱신)과 전송 큐 삽입의 순서가 같아야 하므로 함께 잠근다.
+            if (wireEncoder != null) {
+                sendFragmented(wireEncoder.encodeEdit(message), ProtocolConstants.UF_FILE_EDIT_OPERATION, ProtocolConstants.PTYPE_RAW_BYTES);
+                return;
+            }
+        }
+        sendJsonPacket(message.toJson(), ProtocolConstants.UF_FILE_EDIT_OPERATION, ProtocolConstants.PTYPE_JSON);
+    }
+
+    /** 커서 이동을 보냅니다. 바이너리 코덱이 협상됐으면 PTYPE_RAW_BYTES, 아니면 기존 JSON 형식입니다. */
+    public void sendCursorMessage(CursorMessage message) throws IOException {
+        synchronized (wireLock) {
+            if (wireEncoder != null) {
+                sendFragmented(wireEncoder.encodeCursor(message), ProtocolConstants.UF_CURSOR_MOVE, ProtocolConstants.PTYPE_RAW_BYTES);
+                return;
+            }
+        }
+        sendJsonPacket(message.toJson(), ProtocolConstants.UF_CURSOR_MOVE, ProtocolConstants.PTYPE_JSON);
+    }
 
     public void sendJsonPacket(JSONObject json, int userValue, byte payloadType) throws IOException {
+        sendFragmented(json.toString().getBytes(StandardCharsets.UTF_8), userValue, payloadType);
+    }
+
+    /**
+     * 순서가 상관없는 대용량 요청을 보냅니다. 다중화가 협상된 연결에서 조각이 여러 개 필요한 크기면 스트림으로 나눠,
+     * 편집/커서 패킷이 그 뒤에서 기다리지 않게 합니다. 그래서 이후에 보낸 메시지가 먼저 도착할 수 있으므로,
+     * 다른 요청과 순서가 얽히는 요청은 {@link #sendJsonPacket} 으로 보내야 합니다.
+     */
+    public void sendBulkJsonPacket(JSONObject json, int userValue) throws IOException {
         byte[] payload = json.toString().getBytes(StandardCharsets.UTF_8);
+        byte payloadType = ProtocolConstants.PTYPE_JSON;
+        StreamMultiplexer currentMultiplexer = multiplexer;
+        TlsChannelTransport current = transport;
+        if (!multiplexEnabled || currentMultiplexer == null || current == null || payload.length <= MAX_PAYLOAD_SIZE) {
+            sendFragmented(payload, userValue, payloadType);
+            return;
+        }
+        int threshold = outboundCompressionThreshold;
+        if (threshold > 0 && payload.length >= threshold) {
+            byte[] compressed = compress(payload, payloadType);
+            if (compressed != null) {
+                compressionStatistics.recordOutbound(payload.length, compressed.length);
+                payload = compressed;
+                payloadType = ProtocolConstants.PTYPE_COMPRESSED;
+            }
+        }
+        if (!current.isOpen()) throw new IOException("Connection is not open.");
+        currentMultiplexer.add(payload, payloadType, userValue);
+        current.bulkAvailable();
+    }
+
+    private void sendFragmented(byte[] payload, int userValue, byte payloadType) throws IOException {
+        int threshold = outboundCompressionThreshold;
+        if (threshold > 0 && payload.length >= threshold) {
+            byte[] compressed = compress(payload, payloadType);
+            if (compressed != null) {
+                compressionStatistics.recordOutbound(payload.length, compressed.length);
+                payload = compressed;
+                payloadType = ProtocolConstants.PTYPE_COMPRESSED;
+            }
+        }
         int totalSize = payload.length;
 
         if (totalSize == 0) {
             sendPacket(new byte[0], ProtocolConstants.UNFRAGED, userValue, payloadType);
-            out.flush();
             return;
         }
 
         // The raw JSON bytes are split here, which is the correct, intended behavior.
+        // 조각은 payload 를 복사하지 않고 슬라이스로 보내며, 한 번에 전송 큐에 넣어 다른 스레드의 패킷과 섞이지 않게 한다.
+        List<ByteBuffer> segments = new ArrayList<>();
+        int packetCount = 0;
         int offset = 0;
-        int chunksSent = 0;
-        final int FLUSH_INTERVAL = 16; // Flush every 16 chunks
-
         while (offset < totalSize) {
             int chunkSize = Math.min(MAX_PAYLOAD_SIZE, totalSize - offset);
-            byte[] chunk = new byte[chunkSize];
-            System.arraycopy(payload, offset, chunk, 0, chunkSize);
-
+            byte fragFlag = (offset + chunkSize >= totalSize) ? ProtocolConstants.UNFRAGED : ProtocolConstants.FRAGED;
+            PacketFraming.frame(payload, offset, chunkSize, fragFlag, payloadType, userValue, segments);
             offset += chunkSize;
+            packetCount++;
+        }
+        send(segments, packetCount);
+    }
 
-            byte fragFlag = (offset >= totalSize) ? ProtocolConstants.UNFRAGED : ProtocolConstants.FRAGED;
-            
-            sendPacket(chunk, fragFlag, userValue, payloadType);
-            chunksSent++;
-
-            if (chunksSent >= FLUSH_INTERVAL) {
-                out.flush();
-                chunksSent = 0;
+    /**
+     * [원래 payloadType] + zlib 스트림으로 압축합니다. 줄어들지 않으면 null 입니다.
+     */
+    private static byte[] compress(byte[] payload, byte payloadType) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(payload);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length / 4 + 64);
+            out.write(payloadType);
+            byte[] chunk = new byte[16 * 1024];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(chunk);
+                out.write(chunk, 0, n);
+                if (out.size() >= payload.length) return null;
             }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
         }
-        // Flush any remaining data in the buffer
-        out.flush();
     }
 
     public void sendPacket(byte[] payload, byte fragFlag, int userValue, byte payloadType) throws IOException {
-        if (out == null) throw new IOException("Output stream is not initialized.");
-        byte[] packetBytes = protocol.toBytes(payload, fragFlag, payloadType, userValue, 8196);
-        out.write(packetBytes);
-        out.flush();
-    }
-    
-    private void startReceiving() {
-        System.out.println("DEBUG: startReceiving() thread started.");
-        try {
-            while (isRunning) {
-                if (sslSocket == null || sslSocket.isClosed()) {
-                    break; 
-                }
-                
-                byte[] headerBytes = new byte[4];
-                int bytesRead = in.read(headerBytes);
-                if (bytesRead < 4) {
-                    throw new IOException("Connection closed or stream ended abruptly.");
-                }
+        List<ByteBuffer> segments = new ArrayList<>(3);
+        PacketFraming.frame(payload, 0, payload.length, fragFlag, payloadType, userValue, segments);
+        send(segments, 1);
+    }
 
-                ByteBuffer headerBuffer = ByteBuffer.wrap(headerBytes).order(ByteOrder.LITTLE_ENDIAN);
-                long packetLength = (headerBuffer.getInt(0) >> 4) & 0x1FFF;
-                if (packetLength < 8) continue;
+    private void send(List<ByteBuffer> segments, int packetCount) throws IOException {
+        TlsChannelTransport current = transport;
+        if (current == null) throw new IOException("Connection is not initialized.");
+        current.send(segments, packetCount);
+    }
 
-                byte[] fullPacketBytes = new byte[(int) packetLength];
-                System.arraycopy(headerBytes, 0, fullPacketBytes, 0, 4);
-                in.readFully(fullPacketBytes, 4, (int) packetLength - 4);
+    /** 현재 연결에서 서버가 파이프라인 편집에 응했는지 여부. 응하지 않았으면 편집을 하나씩 보내야 합니다. */
+    public boolean isPipelineEnabled() {
+        return pipelineEnabled;
+    }
 
-                handlePacket(fullPacketBytes);
-            }
-        } catch (IOException e) {
-            System.out.println("DEBUG: IOException in startReceiving(): " + e.getMessage());
-            if (isRunning) {
-                handleDisconnection();
-            }
-        }
-        System.out.println("DEBUG: startReceiving() thread finished.");
+    /** 현재 연결에서 서버가 COMPOUND 편집에 응했는지 여부. 응하지 않았으면 INSERT/DELETE 로 나눠 보내야 합니다. */
+    public boolean isCompoundEnabled() {
+        return compoundEnabled;
+    }
+
+    /** 현재 연결에서 서버가 문서 체크섬 검증에 응했는지 여부. 응하지 않았으면 불일치는 전체 재동기화로 복구해야 합니다. */
+    public boolean isChecksumEnabled() {
+        return checksumEnabled;
+    }
+
+    /** 현재 연결에서 서버가 CRDT 중계와 상태 요청에 응했는지 여부. 응하지 않았으면 CRDT 엔진을 쓸 수 없습니다. */
+    public boolean isCrdtEnabled() {
+        return crdtEnabled;
+    }
+
+    /** 현재 연결의 RTT / 지터 추정값. 재연결해도 같은 객체이며 값은 새로 잽니다. */
+    public LinkHealth getLinkHealth() {
+        return linkHealth;
+    }
+
+    /** 압축해서 주고받은 메시지의 누적 크기와 비율 */
+    public CompressionStatistics getCompressionStatistics() {
+        return compressionStatistics;
+    }
+
+    /** 송신 패킷/바이트/flush 누적 카운터. 초당 값은 스냅샷 두 개로 계산합니다. */
+    public SendStatistics getSendStatistics() {
+        return sendStatistics;
     }
 
     public void initiateReconnection() {
@@ -203,20 +404,27 @@ public class ClientSocketManager {
     }
 
     private void handleDisconnection() {
-        if (!isRunning || isReconnecting) {
-            return;
+        // 이벤트 루프(읽기 실패)와 하트비트 타이머(응답 없음)가 동시에 부를 수 있다.
+        synchronized (reconnectLock) {
+            if (!isRunning || isReconnecting) {
+                return;
+            }
+            isReconnecting = true;
         }
-        isReconnecting = true;
-        
-        try {
-            if (sslSocket != null && !sslSocket.isClosed()) sslSocket.close();
-        } catch (IOException e) {}
+        stopHeartbeat();
+
+        TlsChannelTransport current = transport;
+        if (current != null) current.close();
         if (callback != null) callback.onDisconnected();
+        int baseMillis = Math.max(1, ConfigManager.getInstance().get("collaboration", "reconnectBaseMillis", Integer.class, DEFAULT_RECONNECT_BASE_MILLIS));
+        int maxMillis = Math.max(baseMillis, ConfigManager.getInstance().get("collaboration", "reconnectMaxMillis", Integer.class, DEFAULT_RECONNECT_MAX_MILLIS));
         Thread reconnectThread = new Thread(() -> {
+            int attempt = 0;
             while (isRunning) {
                 try {
-                    Thread.sleep(RECONNECT_INTERVAL);
-                    System.out.println("Attempting to reconnect...");
+                    long delay = reconnectDelayMillis(attempt++, baseMillis, maxMillis);
+                    System.out.println("Attempting to reconnect in " + delay + " ms (attempt " + attempt + ")...");
+                    Thread.sleep(delay);
                     connect();
                     isReconnecting = false;
                     if (callback != null) callback.onReconnected();
@@ -230,25 +438,142 @@ public class ClientSocketManager {
         reconnectThread.start();
     }
 
-    private void handlePacket(byte[] packetBytes) {
+    /**
+     * 지수 백오프 + 지터. 대기 상한은 base * 2^attempt (최대 maxMillis) 이고, 그 절반에서 전체 사이의 임의 값을 씁니다.
+     * 서버가 재시작될 때 여러 클라이언트가 한꺼번에 몰리지 않게 합니다.
+     */
+    static long reconnectDelayMillis(int attempt, long baseMillis, long maxMillis) {
+        long ceiling = Math.min(maxMillis, baseMillis << Math.min(attempt, 20));
+        return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+    }
+
+    private static int heartbeatIntervalMillis() {
+        return ConfigManager.getInstance().get("collaboration", "heartbeatIntervalMillis", Integer.class, DEFAULT_HEARTBEAT_INTERVAL_MILLIS);
+    }
+
+    /** 서버가 하트비트에 응한 연결에서 호출됩니다. 이미 돌고 있으면 다시 시작합니다. */
+    private synchronized void startHeartbeat() {
+        int intervalMillis = heartbeatIntervalMillis();
+        if (intervalMillis <= 0) return;
+        int timeoutMillis = Math.max(2 * intervalMillis,
+            ConfigManager.getInstance().get("collaboration", "heartbeatTimeoutMillis", Integer.class, DEFAULT_HEARTBEAT_TIMEOUT_MILLIS));
+        if (heartbeatTask != null) heartbeatTask.cancel(false);
+        heartbeatTask = heartbeatTimer.scheduleWithFixedDelay(() -> heartbeat(timeoutMillis),
+            0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void stopHeartbeat() {
+        if (heartbeatTask != null) {
+            heartbeatTask.cancel(false);
+            heartbeatTask = null;
+        }
+    }
+
+    /**
+     * 하트비트 타이머 스레드. timeoutMillis 동안 아무것도(하트비트 응답 포함) 받지 못했으면 끊긴 것으로 보고 재연결합니다.
+     * 그래서 조용히 멈춘 연결도 timeoutMillis + 간격 안에 감지됩니다.
+     */
+    private void heartbeat(int timeoutMillis) {
+        TlsChannelTransport current = transport;
+        if (!isRunning || current == null || !current.isOpen()) return;
+        long idleMillis = linkHealth.getMillisSinceLastReceive();
+        if (idleMillis >= timeoutMillis) {
+            System.err.println("No data from server for " + idleMillis + " ms; treating the connection as dead. " + linkHealth);
+            handleDisconnection();
+            return;
+        }
         try {
+            byte[] payload = ByteBuffer.allocate(Long.BYTES).putLong(System.nanoTime()).array();
+            sendPacket(payload, ProtocolConstants.UNFRAGED, ProtocolConstants.UF_HEARTBEAT_REQUEST, ProtocolConstants.PTYPE_LONG);
+            linkHealth.pingSent();
+        } catch (IOException e) {
+            System.err.println("Heartbeat failed: " + e.getMessage());
+        }
+    }
+
+    /** 연결 하나의 수신 조립 상태(조각, 스트림, 바이너리 코덱 intern 표). 조립 스레드에서만 사용합니다. */
+    private final class InboundAssembler {
+        private final Map<Integer, FragmentAssembly> fragmentBuffers = new HashMap<>();
+        private final Map<Integer, FragmentAssembly> streamBuffers = new HashMap<>(); // 스트림 ID 별 (PTYPE_STREAM)
+        // intern 표는 받은 순서대로 갱신되어야 하므로 바이너리 편집/커서는 조립 단계에서 바로 디코딩한다. (작고 빠름)
+        private final WireCodec.Decoder wireDecoder = new WireCodec.Decoder();
+
+        /** 메시지가 완성되면 디코딩 작업을, 조각이 더 남았거나 배달할 것이 없으면(하트비트) null 을 돌려줍니다. */
+        ReceivePipeline.Task assemble(byte[] packetBytes) throws PacketException, IOException {
             ParsedPacket parsed = protocol.parsePacket(packetBytes);
             int userField = parsed.getUserField();
             byte[] payload = parsed.getPayload();
+            if (userField == ProtocolConstants.UF_HEARTBEAT_RESPONSE && payload.length == Long.BYTES) {
+                // 콜백으로 넘기지 않는다. 디코딩/배달 대기열을 거치지 않아야 RTT 가 네트워크 지연에 가깝다.
+                long rttNanos = System.nanoTime() - ByteBuffer.wrap(payload).getLong();
+                if (rttNanos >= 0) linkHealth.sample(rttNanos);
+                return null;
+            }
+            if (userField == ProtocolConstants.UF_HEARTBEAT_REQUEST) {
+                sendPacket(payload, ProtocolConstants.UNFRAGED, ProtocolConstants.UF_HEARTBEAT_RESPONSE, ProtocolConstants.PTYPE_LONG);
+                return null;
+            }
+            int packetPayloadType = parsed.getPayloadType();
+            int payloadType = packetPayloadType; // 압축된 메시지면 풀고 난 뒤의 원래 타입
             byte[] finalPayload;
 
-            if (parsed.getFragmentFlag() == ProtocolConstants.FRAGED) {
-                fragmentBuffers.computeIfAbsent(userField, k -> new ByteArrayOutputStream()).write(payload);
-                return; 
-            } 
-            
-            ByteArrayOutputStream buffer = fragmentBuffers.get(userField);
-            if (buffer != null) {
-                buffer.write(payload);
-                finalPayload = buffer.toByteArray();
-                fragmentBuffers.remove(userField);
+            if (packetPayloadType == ProtocolConstants.PTYPE_STREAM) {
+                // 다중화된 조각: userField 가 아니라 스트림 ID 로 모은다. 마지막 조각 전까지는 여기서 끝.
+                int streamId = StreamMultiplexer.streamId(payload);
+                int offset = StreamMultiplexer.streamIdLength(payload);
+                FragmentAssembly assembly = streamBuffers.get(streamId);
+                if (assembly == null) {
+                    if (offset >= payload.length) throw new IOException("Stream " + streamId + " has no payload type.");
+                    if (streamBuffers.size() >= MAX_INBOUND_STREAMS) throw new IOException("Too many concurrent streams.");
+                    assembly = new FragmentAssembly(payload[offset++] & 0xFF);
+                    streamBuffers.put(streamId, assembly);
+                }
+                boolean last = parsed.getFragmentFlag() != ProtocolConstants.FRAGED;
+                try {
+                    assembly.append(payload, offset, payload.length - offset);
+                } catch (IOException e) {
+                    streamBuffers.remove(streamId);
+                    assembly.dispose();
+                    throw e;
+                }
+                if (!last) return null;
+                streamBuffers.remove(streamId);
+                finalPayload = assembly.finish();
+                payloadType = assembly.getPayloadType();
+                if (assembly.isCompressed()) {
+                    compressionStatistics.recordInbound(assembly.getCompressedBytes(), finalPayload.length);
+                }
+            } else if (parsed.getFragmentFlag() == ProtocolConstants.FRAGED) {
+                // 압축된 메시지는 조각이 올 때마다 바로 풀어서 쌓는다.
+                FragmentAssembly assembly = fragmentBuffers.computeIfAbsent(userField, k -> new FragmentAssembly(packetPayloadType));
+                try {
+                    assembly.append(payload);
+                } catch (IOException e) {
+                    fragmentBuffers.remove(userField);
+                    assembly.dispose();
+                    throw e;
+                }
+                return null;
             } else {
-                finalPayload = payload;
+                FragmentAssembly assembly = fragmentBuffers.remove(userField);
+                if (assembly == null && packetPayloadType == ProtocolConstants.PTYPE_COMPRESSED) {
+                    assembly = new FragmentAssembly(packetPayloadType);
+                }
+                if (assembly != null) {
+                    try {
+                        assembly.append(payload);
+                    } catch (IOException e) {
+                        assembly.dispose();
+                        throw e;
+                    }
+                    finalPayload = assembly.finish();
+                    payloadType = assembly.getPayloadType();
+                    if (assembly.isCompressed()) {
+                        compressionStatistics.recordInbound(assembly.getCompressedBytes(), finalPayload.length);
+                    }
+                } else {
+                    finalPayload = payload;
+                }
             }
 
             // Create a new, definitive ParsedPacket object from the (potentially reassembled) payload.
@@ -256,132 +581,369 @@ public class ClientSocketManager {
                 parsed.getProtocolVersion(),
                 finalPayload.length + 8, // +8 for header and CRC
                 ProtocolConstants.UNFRAGED,
-                parsed.getPayloadType(),
+                payloadType,
                 userField,
                 finalPayload
             );
-            // All subsequent logic will now operate on the consistent finalPacket.
-            switch (finalPacket.getUserField()) {
-                case ProtocolConstants.UF_REGISTER_RESPONSE:
-                    callback.onRegisterResponse(ByteBuffer.wrap(finalPacket.getPayload()).getInt());
-                    break;
-                case ProtocolConstants.UF_LOGIN_RESPONSE:
-                    callback.onLoginResponse(ByteBuffer.wrap(finalPacket.getPayload()).getInt());
-                    break;
-                case ProtocolConstants.UF_USER_INFO:
-                    JSONObject userJson = new JSONObject(new String(finalPacket.getPayload(), StandardCharsets.UTF_8));
-                    callback.onUserInfoReceived(new UserInfo(userJson.getString("id"), userJson.getString("nickname"), userJson.getString("tag")));
-                    break;
-                case ProtocolConstants.UF_PROJECT_LIST_RESPONSE:
-                    JSONArray projectsJson = new JSONArray(new String(finalPacket.getPayload(), StandardCharsets.UTF_8));
+            if (finalPacket.getPayloadType() == ProtocolConstants.PTYPE_RAW_BYTES) {
+                if (userField == ProtocolConstants.UF_FILE_EDIT_BROADCAST) {
+                    EditMessage edit = wireDecoder.decodeEdit(finalPayload);
+                    return new ReceivePipeline.Task(ReceivePipeline.Lane.SESSION, edit.getPath(), () -> () -> callback.onFileEditBroadcast(edit));
+                }
+                if (userField == ProtocolConstants.UF_CURSOR_MOVE_BROADCAST) {
+                    CursorMessage cursor = wireDecoder.decodeCursor(finalPayload);
+                    return new ReceivePipeline.Task(ReceivePipeline.Lane.SESSION, cursor.getPath(),
+                        () -> () -> callback.onCursorMoveBroadcast(cursor.getPath(), cursor.getRequester(), cursor.getCursorPosition()));
+                }
+            }
+            return new ReceivePipeline.Task(laneOf(userField), orderKeyOf(userField, finalPayload), () -> decode(finalPacket));
+        }
+
+        void dispose() {
+            fragmentBuffers.values().forEach(FragmentAssembly::dispose);
+            fragmentBuffers.clear();
+            streamBuffers.values().forEach(FragmentAssembly::dispose);
+            streamBuffers.clear();
+        }
+    }
+
+    /** 목록 조회와 프로젝트 파일처럼 문서 상태와 순서가 얽히지 않는 응답은 편집 브로드캐스트를 막지 않도록 따로 배달한다. */
+    private static ReceivePipeline.Lane laneOf(int userField) {
+        switch (userField) {
+            case ProtocolConstants.UF_PROJECT_LIST_RESPONSE:
+            case ProtocolConstants.UF_FILETREE_LIST_RESPONSE:
+            case ProtocolConstants.UF_FILETREE_DELTA: // 전체 목록 응답과 같은 레인이어야 목록 → 델타 순서가 지켜진다.
+            case ProtocolConstants.UF_SHARED_LIST_RESPONSE:
+            case ProtocolConstants.UF_GET_PROJECT_FILE_RESPONSE:
+                return ReceivePipeline.Lane.BULK;
+            default:
+                return ReceivePipeline.Lane.SESSION;
+        }
+    }
+
+    /**
+     * 한 파일에 대한 메시지는 그 파일 경로를 순서 키로 삼아, 다른 파일의 메시지와는 서로 기다리지 않게 합니다.
+     * 조립 스레드에서 JSON 전체를 파싱하지 않도록 최상위(히스토리는 배열의 첫 객체) "path" 값만 훑어서 찾고,
+     * 찾지 못하면 null (레인 전체의 경계) 입니다.
+     */
+    private static String orderKeyOf(int userField, byte[] payload) {
+        switch (userField) {
+            case ProtocolConstants.UF_FILE_EDIT_BROADCAST:
+            case ProtocolConstants.UF_CURSOR_MOVE_BROADCAST:
+            case ProtocolConstants.UF_FILE_CONTENT_RESPONSE:
+            case ProtocolConstants.UF_HISTORY:
+            case ProtocolConstants.UF_DOCUMENT_CHECKSUM_RESPONSE:
+            case ProtocolConstants.UF_CRDT_BROADCAST:
+            case ProtocolConstants.UF_CRDT_STATE_RESPONSE:
+                return topLevelPath(payload);
+            default:
+                return null;
+        }
+    }
+
+    // 최상위 객체(최상위가 배열이면 그 안의 객체)의 "path" 문자열 값. 문자열 안의 내용은 건너뛴다.
+    private static String topLevelPath(byte[] json) {
+        int depth = 0;
+        int keyDepth = -1;
+        for (int i = 0; i < json.length; i++) {
+            byte b = json[i];
+            if (b == '{' || b == '[') {
+                if (keyDepth < 0) keyDepth = (b == '[') ? 2 : 1;
+                depth++;
+            } else if (b == '}' || b == ']') {
+                depth--;
+            } else if (b == '"') {
+                int end = endOfString(json, i);
+                if (end < 0) return null;
+                if (depth == keyDepth && end - i == 5 && json[i + 1] == 'p' && json[i + 2] == 'a'
+                        && json[i + 3] == 't' && json[i + 4] == 'h') {
+                    int colon = skipWhitespace(json, end + 1);
+                    if (colon < json.length && json[colon] == ':') {
+                        int valueStart = skipWhitespace(json, colon + 1);
+                        if (valueStart >= json.length || json[valueStart] != '"') return null;
+                        int valueEnd = endOfString(json, valueStart);
+                        if (valueEnd < 0) return null;
+                        String literal = new String(json, valueStart, valueEnd - valueStart + 1, StandardCharsets.UTF_8);
+                        try {
+                            return literal.indexOf('\\') < 0
+                                ? literal.substring(1, literal.length() - 1)
+                                : new JSONArray("[" + literal + "]").getString(0);
+                        } catch (JSONException e) {
+                            return null;
+                        }
+                    }
+                }
+                i = end;
+            }
+        }
+        return null;
+    }
+
+    // start 의 여는 따옴표에 짝이 되는 닫는 따옴표 위치. 없으면 -1
+    private static int endOfString(byte[] json, int start) {
+        for (int i = start + 1; i < json.length; i++) {
+            if (json[i] == '\\') {
+                i++;
+            } else if (json[i] == '"') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(byte[] json, int index) {
+        while (index < json.length && (json[index] == ' ' || json[index] == '\t' || json[index] == '\n' || json[index] == '\r')) {
+            index++;
+        }
+        return index;
+    }
+
+    private static final Runnable IGNORE = () -> { };
+
+    /**
+     * 캐시에 있는 base_hash 내용에 응답의 연산을 차례로 적용해 서버의 현재 내용을 만듭니다. (디코딩 워커)
+     * 캐시의 read 가 base_hash 를 이미 확인하므로, 연산을 적용한 경우에만 결과를 hash 와 한 번 더 비교한다.
+     * @return 캐시 내용이 없어졌거나 결과가 서버 해시와 다르면 null
+     */
+    private String resolveCachedContent(String path, JSONObject response) {
+        FileContentCache cache = fileContentCache;
+        if (cache == null) return null;
+        String hash = response.getString("hash");
+        String content = cache.read(response.optString("base_hash", hash)).orElse(null);
+        JSONArray ops = response.optJSONArray("ops");
+        if (content == null || ops == null || ops.isEmpty()) {
+            return content;
+        }
+        try {
+            for (int i = 0; i < ops.length(); i++) {
+                content = Operation.fromJson(ops.getJSONObject(i)).getTextOperation().apply(content);
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Cached content for " + path + " could not be brought up to v"
+                + response.optLong("version") + ": " + e.getMessage());
+            return null;
+        }
+        return ContentHash.matches(content, hash) ? content : null;
+    }
+
+    /**
+     * 디코딩 워커에서 페이로드를 파싱하고, 배달 스레드에서 실행할 콜백 호출을 돌려줍니다.
+     * 연결 상태를 바꾸는 처리(코덱 협상 결과 등)도 배달 시점에 하도록 Runnable 안에 둡니다.
+     */
+    private Runnable decode(ParsedPacket finalPacket) {
+        byte[] payload = finalPacket.getPayload();
+        switch (finalPacket.getUserField()) {
+            case ProtocolConstants.UF_REGISTER_RESPONSE:
+                {
+                    int responseCode = ByteBuffer.wrap(payload).getInt();
+                    return () -> callback.onRegisterResponse(responseCode);
+                }
+            case ProtocolConstants.UF_LOGIN_RESPONSE:
+                {
+                    int responseCode = ByteBuffer.wrap(payload).getInt();
+                    return () -> callback.onLoginResponse(responseCode);
+                }
+            case ProtocolConstants.UF_USER_INFO:
+                {
+                    JSONObject userJson = new JSONObject(new String(payload, StandardCharsets.UTF_8));
+                    UserInfo userInfo = new UserInfo(userJson.getString("id"), userJson.getString("nickname"), userJson.getString("tag"),
+                        userJson.optString("session_token", null));
+                    return () -> callback.onUserInfoReceived(userInfo);
+                }
+            case ProtocolConstants.UF_PROJECT_LIST_RESPONSE:
+                {
+                    JSONArray projectsJson = new JSONArray(new String(payload, StandardCharsets.UTF_8));
                     List<UserProjectsInfo> projects = new ArrayList<>();
                     for (int i = 0; i < projectsJson.length(); i++) {
                         projects.add(new UserProjectsInfo(projectsJson.getJSONObject(i)));
                     }
-                    callback.onProjectListResponse(projects);
-                    break;
-                case ProtocolConstants.UF_FILETREE_LIST_RESPONSE:
-                    JSONArray fileListJson = new JSONArray(new String(finalPacket.getPayload(), StandardCharsets.UTF_8));
-                    String pId = fileListJson.getJSONObject(0).getString("project_id");
-                    callback.onFileListResponse(pId, fileListJson.getJSONObject(1));
-                    break;
-                case ProtocolConstants.UF_FILE_CONTENT_RESPONSE:
-                    JSONObject fileContentJson = new JSONObject(new String(finalPacket.getPayload(), StandardCharsets.UTF_8));
-                    callback.onFileContentResponse(
-                        fileContentJson.getString("path"), 
-                        fileContentJson.getString("content"), 
-                        fileContentJson.getString("hash"),
-                        fileContentJson.getLong("version")
-                    );
-                    break;
-                case ProtocolConstants.UF_CREATE_PROJECT_RSPONSE:
-                    callback.onCreateProjectResponse(finalPacket.getPayload()[0] != 0);
-                    break;
-                case ProtocolConstants.UF_DELETE_PROJECT_RSPONSE:
-                    callback.onDeleteProjectResponse(finalPacket.getPayload()[0] != 0);
-                    break;
-                case ProtocolConstants.UF_DELETE_SHARE_RESPONSE:
-                    JSONObject delShareJson = new JSONObject(new String(finalPacket.getPayload(), StandardCharsets.UTF_8));
-                    callback.onDeleteShareResponse(delShareJson.getString("project_id"), delShareJson.getBoolean("result"));
-                    break;
-                case ProtocolConstants.UF_SHARED_LIST_RESPONSE:
-                    JSONObject sharedListJson = new JSONObject(new String(finalPacket.getPayload(), StandardCharsets.UTF_8));
-                    callback.onSharedListResponse(sharedListJson.getString("project_id"), sharedListJson.getJSONArray("shared_with"));
-                    break;
-                case ProtocolConstants.UF_ADD_SHARE_RESPONSE:
-                    JSONObject addShareJson = new JSONObject(new String(finalPacket.getPayload(), StandardCharsets.UTF_8));
-                    callback.onAddShareResponse(addShareJson.getString("project_id"), addShareJson.getBoolean("result"));
-                    break;
-                case ProtocolConstants.UF_ADD_FILE_RESPONSE:
-                    callback.onAddFileResponse(finalPacket.getPayload()[0] != 0);
-                    break;
-                case ProtocolConstants.UF_ADD_FOLDER_RESPONSE:
-                    callback.onAddFolderResponse(finalPacket.getPayload()[0] != 0);
-                    break;
-                case ProtocolConstants.UF_LINE_LOCK_BROADCAST:
-                    // Line lock feature removed on client side; ignore broadcast.
-                    break;
-                case ProtocolConstants.UF_LINE_UNLOCK_BROADCAST:
-                    // Line unlock feature removed on client side; ignore broadcast.
-                    break;
-                case ProtocolConstants.UF_LINE_LOCK_RESPONSE:
-                    // Line lock responses are ignored.
-                    break;
-                case ProtocolConstants.UF_CLIENT_ERROR:
-                    JSONObject errorJson = new JSONObject(new String(finalPacket.getPayload(), StandardCharsets.UTF_8));
-                    callback.onClientErrorResponse(errorJson);
-                    break;
-                case ProtocolConstants.UF_FILE_EDIT_BROADCAST:
-                    {
-                        String jsonString = new String(finalPacket.getPayload(), StandardCharsets.UTF_8);
-                        JSONObject editJson = new JSONObject(jsonString);
-                        String editPath = editJson.getString("path");
-                        String editType = editJson.getString("type");
-                        String requesterId = editJson.getString("user");
-                        int editPosition = editJson.getInt("position");
-                        String text = editJson.optString("text", "");
-                        int length = editJson.optInt("length", 0);
-                        long newVersion = editJson.getLong("version");
-                        String uniqId = editJson.getString("uniqId");
-                        int cursorPosition = editJson.optInt("cursorPosition", -1);
-                        callback.onFileEditBroadcast(editPath, editType, editPosition, text, length, newVersion, uniqId, requesterId, cursorPosition);
-                    }
-                    break;
-                case ProtocolConstants.UF_HISTORY:
-                    {
-                        String jsonString = new String(finalPacket.getPayload(), StandardCharsets.UTF_8);
-                        JSONArray opsArray = new JSONArray(jsonString);
-                        if (!opsArray.isEmpty()) {
-                            // 파일 경로는 모든 연산에서 동일하므로 첫 번째 연산에서 추출
-                            String filePath = opsArray.getJSONObject(0).getString("path");
-                            callback.onCatchUpResponse(filePath, opsArray);
-                        }
+                    return () -> callback.onProjectListResponse(projects);
+                }
+            case ProtocolConstants.UF_FILETREE_LIST_RESPONSE:
+                {
+                    JSONArray fileListJson = new JSONArray(new String(payload, StandardCharsets.UTF_8));
+                    JSONObject fileListHeader = fileListJson.getJSONObject(0);
+                    JSONObject fileList = fileListJson.getJSONObject(1);
+                    if (fileListHeader.has("tree_version")) {
+                        // 파일 트리에서 델타를 이어 붙일 기준 버전. 목록과 함께 다니도록 루트 객체에 옮겨 둔다.
+                        fileList.put("tree_version", fileListHeader.getLong("tree_version"));
                     }
-                    break;
-                case ProtocolConstants.UF_CURSOR_MOVE_BROADCAST:
-                    {
-                        String jsonString = new String(finalPacket.getPayload(), StandardCharsets.UTF_8);
-                        JSONObject cursorJson = new JSONObject(jsonString);
-                        String cursorPath = cursorJson.getString("path");
-                        String nicknameAndTag = cursorJson.getString("user"); // 'user' is actually nickname#tag
-                        int cursorPosition = cursorJson.getInt("cursorPosition");
-                        callback.onCursorMoveBroadcast(cursorPath, nicknameAndTag, cursorPosition);
+                    return () -> callback.onFileListResponse(fileListHeader.getString("project_id"), requestIdOf(fileListHeader), fileList);
+                }
+            case ProtocolConstants.UF_FILETREE_DELTA:
+                {
+                    FileTreeDelta delta = FileTreeDelta.fromJson(new JSONObject(new String(payload, StandardCharsets.UTF_8)));
+                    return () -> callback.onFileTreeDelta(delta);
+                }
+            case ProtocolConstants.UF_FILE_CONTENT_RESPONSE:
+                {
+                    JSONObject fileContentJson = new JSONObject(new String(payload, StandardCharsets.UTF_8));
+                    String path = fileContentJson.getString("path");
+                    if (!fileContentJson.has("content")) {
+                        // 조건부 요청의 응답: "not_modified" 또는 캐시 버전 이후의 "ops"
+                        // 캐시 파일 읽기와 연산 적용, 해시 확인도 배달 스레드가 아니라 디코딩 워커에서 끝낸다.
+                        String cachedContent = resolveCachedContent(path, fileContentJson);
+                        return () -> callback.onCachedFileContentResponse(path, fileContentJson, cachedContent);
                     }
-                    break;
-                case ProtocolConstants.UF_GET_PROJECT_FILE_RESPONSE:
-                    {
-                        JSONArray filecontent=new JSONArray(new String(finalPacket.getPayload(),StandardCharsets.UTF_8));
+                    String content = fileContentJson.getString("content");
+                    String hash = fileContentJson.getString("hash");
+                    long version = fileContentJson.getLong("version");
+                    // 큰 파일의 해시 계산도 배달 스레드가 아니라 디코딩 워커에서 끝낸다.
+                    boolean verified = ContentHash.matches(content, hash);
+                    return () -> callback.onFileContentResponse(path, content, hash, version, verified);
+                }
+            case ProtocolConstants.UF_CREATE_PROJECT_RSPONSE:
+                {
+                    boolean result = payload[0] != 0;
+                    return () -> callback.onCreateProjectResponse(result);
+                }
+            case ProtocolConstants.UF_DELETE_PROJECT_RSPONSE:
+                {
+                    boolean result = payload[0] != 0;
+                    return () -> callback.onDeleteProjectResponse(result);
+                }
+            case ProtocolConstants.UF_DELETE_SHARE_RESPONSE:
+                {
+                    JSONObject delShareJson = new JSONObject(new String(payload, StandardCharsets.UTF_8));
+                    String projectId = delShareJson.getString("project_id");
+                    boolean result = delShareJson.getBoolean("result");
+                    return () -> callback.onDeleteShareResponse(projectId, requestIdOf(delShareJson), result);
+                }
+            case ProtocolConstants.UF_SHARED_LIST_RESPONSE:
+                {
+                    JSONObject sharedListJson = new JSONObject(new String(payload, StandardCharsets.UTF_8));
+                    String projectId = sharedListJson.getString("project_id");
+                    JSONArray sharedWith = sharedListJson.getJSONArray("shared_with");
+                    return () -> callback.onSharedListResponse(projectId, requestIdOf(sharedListJson), sharedWith);
+                }
+            case ProtocolConstants.UF_ADD_SHARE_RESPONSE:
+                {
+                    JSONObject addShareJson = new JSONObject(new String(payload, StandardCharsets.UTF_8));
+                    String projectId = addShareJson.getString("project_id");
+                    boolean result = addShareJson.getBoolean("result");
+                    return () -> callback.onAddShareResponse(projectId, requestIdOf(addShareJson), result);
+                }
+            case ProtocolConstants.UF_ADD_FILE_RESPONSE:
+                {
+                    boolean result = payload[0] != 0;
+                    return () -> callback.onAddFileResponse(result);
+                }
+            case ProtocolConstants.UF_ADD_FOLDER_RESPONSE:
+                {
+                    boolean result = payload[0] != 0;
+                    return () -> callback.onAddFolderResponse(result);
+                }
+            case ProtocolConstants.UF_LINE_LOCK_BROADCAST:
+                // Line lock feature removed on client side; ignore broadcast.
+                return IGNORE;
+            case ProtocolConstants.UF_LINE_UNLOCK_BROADCAST:
+                // Line unlock feature removed on client side; ignore broadcast.
+                return IGNORE;
+            case ProtocolConstants.UF_LINE_LOCK_RESPONSE:
+                // Line lock responses are ignored.
+                return IGNORE;
+            case ProtocolConstants.UF_CLIENT_ERROR:
+                {
+                    JSONObject errorJson = new JSONObject(new String(payload, StandardCharsets.UTF_8));
+                    return () -> callback.onClientErrorResponse(errorJson);
+                }
+            case ProtocolConstants.UF_FILE_EDIT_BROADCAST:
+                {
+                    // 바이너리 형식은 조립 단계에서 이미 디코딩했다.
+                    EditMessage edit = EditMessage.fromJson(new JSONObject(new String(payload, StandardCharsets.UTF_8)));
+                    return () -> callback.onFileEditBroadcast(edit);
+                }
+            case ProtocolConstants.UF_WIRE_CODEC_RESPONSE:
+                {
+                    JSONObject codecJson = new JSONObject(new String(payload, StandardCharsets.UTF_8));
+                    return () -> applyWireFormat(codecJson);
+                }
+            case ProtocolConstants.UF_HISTORY:
+                {
+                    JSONArray opsArray = new JSONArray(new String(payload, StandardCharsets.UTF_8));
+                    if (opsArray.isEmpty()) return IGNORE;
+                    // 파일 경로는 모든 연산에서 동일하므로 첫 번째 연산에서 추출
+                    String filePath = opsArray.getJSONObject(0).getString("path");
+                    return () -> callback.onCatchUpResponse(filePath, opsArray);
+                }
+            case ProtocolConstants.UF_DOCUMENT_CHECKSUM_RESPONSE:
+                {
+                    JSONObject checksumJson = new JSONObject(new String(payload, StandardCharsets.UTF_8));
+                    String path = checksumJson.getString("path");
+                    return () -> callback.onDocumentChecksumResponse(path, checksumJson);
+                }
+            case ProtocolConstants.UF_CRDT_BROADCAST:
+                {
+                    JSONObject crdtJson = new JSONObject(new String(payload, StandardCharsets.UTF_8));
+                    String path = crdtJson.getString("path");
+                    String user = crdtJson.optString("user", null);
+                    byte[] update = Base64.getDecoder().decode(crdtJson.getString("update"));
+                    return () -> callback.onCrdtUpdateBroadcast(path, user, update);
+                }
+            case ProtocolConstants.UF_CRDT_STATE_RESPONSE:
+                {
+                    JSONObject stateJson = new JSONObject(new String(payload, StandardCharsets.UTF_8));
+                    String path = stateJson.getString("path");
+                    return () -> callback.onCrdtStateResponse(path, stateJson);
+                }
+            case ProtocolConstants.UF_CURSOR_MOVE_BROADCAST:
+                {
+                    CursorMessage cursor = CursorMessage.fromJson(new JSONObject(new String(payload, StandardCharsets.UTF_8)));
+                    // 'user'(requester) is actually nickname#tag
+                    return () -> callback.onCursorMoveBroadcast(cursor.getPath(), cursor.getRequester(), cursor.getCursorPosition());
+                }
+            case ProtocolConstants.UF_SESSION_RESUME_RESPONSE:
+                {
+                    JSONObject resumeJson = new JSONObject(new String(payload, StandardCharsets.UTF_8));
+                    return () -> callback.onSessionResumeResponse(requestIdOf(resumeJson), resumeJson);
+                }
+            case ProtocolConstants.UF_GET_PROJECT_FILE_RESPONSE:
+                {
+                    JSONArray filecontent = new JSONArray(new String(payload, StandardCharsets.UTF_8));
+                    return () -> {
                         callback.onGetProjectFileContent(filecontent);
-                    }
-                default:
-                    callback.onPacketReceived(finalPacket);
-            }
-        } catch (PacketException | JSONException | IOException e) {
-            if (callback != null) {
-                callback.onError("Error parsing packet: " + e.getMessage());
-                e.printStackTrace();
+                        callback.onPacketReceived(finalPacket);
+                    };
+                }
+            default:
+                return () -> callback.onPacketReceived(finalPacket);
+        }
+    }
+
+    // 배달 스레드에서 호출된다.
+    private void applyWireFormat(JSONObject codecJson) {
+        if (WireCodec.NAME.equals(codecJson.optString("codec"))) {
+            synchronized (wireLock) {
+                wireEncoder = new WireCodec.Encoder();
             }
         }
+        if (codecJson.optBoolean("heartbeat")) {
+            startHeartbeat();
+        }
+        if (codecJson.optBoolean("multiplex") && multiplexer != null) {
+            multiplexEnabled = true;
+        }
+        if (codecJson.optBoolean("pipeline")) {
+            pipelineEnabled = true;
+        }
+        if (codecJson.optBoolean("compound")) {
+            compoundEnabled = true;
+        }
+        if (codecJson.optBoolean("checksum")) {
+            checksumEnabled = true;
+        }
+        if (codecJson.optBoolean("crdt")) {
+            crdtEnabled = true;
+        }
+        if (COMPRESSION_DEFLATE.equals(codecJson.optString("compression"))) {
+            int threshold = ConfigManager.getInstance().get("collaboration", "compressionThreshold", Integer.class, DEFAULT_COMPRESSION_THRESHOLD);
+            outboundCompressionThreshold = Math.max(1, threshold);
+        }
+    }
+
+    /** 응답에 요청의 "request_id" 가 없으면(이를 돌려주지 않는 서버) PendingRequests.NO_REQUEST_ID */
+    private static long requestIdOf(JSONObject response) {
+        return response.optLong("request_id", PendingRequests.NO_REQUEST_ID);
     }
 
     public interface ClientSocketCallback {
@@ -393,22 +955,30 @@ public class ClientSocketManager {
         void onRegisterResponse(int responseCode);
         void onLoginResponse(int responseCode);
         void onUserInfoReceived(UserInfo userInfo);
+        void onSessionResumeResponse(long requestId, JSONObject response);
         void onProjectListResponse(List<UserProjectsInfo> projectList);
-        void onFileListResponse(String projectID, JSONObject fileList);
-        void onFileContentResponse(String path, String content, String hash, long version);
+        void onFileListResponse(String projectID, long requestId, JSONObject fileList);
+        void onFileTreeDelta(FileTreeDelta delta);
+        /** verified: content 의 SHA-256 이 hash 와 같은지 (디코딩 워커에서 미리 계산) */
+        void onFileContentResponse(String path, String content, String hash, long version, boolean verified);
+        /** cachedContent: 캐시 내용을 응답 버전까지 맞추고 검증한 결과 (디코딩 워커에서 미리 계산). 캐시 미스면 null */
+        void onCachedFileContentResponse(String path, JSONObject response, String cachedContent);
         void onCreateProjectResponse(boolean result);
         void onDeleteProjectResponse(boolean result);
-        void onSharedListResponse(String projectId, JSONArray sharedList);
-        void onAddShareResponse(String projectId, boolean success);
-        void onDeleteShareResponse(String projectID, boolean result);
+        void onSharedListResponse(String projectId, long requestId, JSONArray sharedList);
+        void onAddShareResponse(String projectId, long requestId, boolean success);
+        void onDeleteShareResponse(String projectID, long requestId, boolean result);
         void onAddFileResponse(boolean result);
         void onAddFolderResponse(boolean result);
         void onLineLockUpdate(String filePath, int line, String userId, String userNickname);
         void onLineLockResponse(boolean success, int line);
-        void onFileEditBroadcast(String filePath, String type, int position, String text, int length, long newVersion, String uniqId, String requesterId, int cursorPosition);
+        void onFileEditBroadcast(EditMessage edit);
         void onClientErrorResponse(JSONObject error);
         void onCursorMoveBroadcast(String filePath, String nicknameAndTag, int position);
         void onCatchUpResponse(String filePath, JSONArray operations);
+        void onDocumentChecksumResponse(String filePath, JSONObject response);
+        void onCrdtUpdateBroadcast(String filePath, String requesterId, byte[] update);
+        void onCrdtStateResponse(String filePath, JSONObject state);
         void onGetProjectFileContent(JSONArray filecontent);
     }
 }
@@ -0,0 +1,62 @@
+package com.ethis2s.service;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 압축해서 주고받은 페이로드의 누적 크기입니다. 비율은 압축 후 / 압축 전 (작을수록 좋음) 입니다.
+ * 임계값보다 작아서 압축하지 않은 메시지는 포함하지 않습니다.
+ */
+public class CompressionStatistics {
+
+    private final LongAdder inboundMessages = new LongAdder();
+    private final LongAdder inboundCompressed = new LongAdder();
+    private final LongAdder inboundInflated = new LongAdder();
+    private final LongAdder outboundMessages = new LongAdder();
+    private final LongAdder outboundOriginal = new LongAdder();
+    private final LongAdder outboundCompressed = new LongAdder();
+
+    void recordInbound(long compressedBytes, long inflatedBytes) {
+        inboundMessages.increment();
+        inboundCompressed.add(compressedBytes);
+        inboundInflated.add(inflatedBytes);
+    }
+
+    void recordOutbound(long originalBytes, long compressedBytes) {
+        outboundMessages.increment();
+        outboundOriginal.add(originalBytes);
+        outboundCompressed.add(compressedBytes);
+    }
+
+    public long getInboundMessages() {
+        return inboundMessages.sum();
+    }
+
+    public long getOutboundMessages() {
+        return outboundMessages.sum();
+    }
+
+    /** 받은 압축 메시지들의 압축 후 / 압축 전 크기. 없으면 1.0 */
+    public double getInboundRatio() {
+        return ratio(inboundCompressed.sum(), inboundInflated.sum());
+    }
+
+    /** 보낸 압축 메시지들의 압축 후 / 압축 전 크기. 없으면 1.0 */
+    public double getOutboundRatio() {
+        return ratio(outboundCompressed.sum(), outboundOriginal.sum());
+    }
+
+    /** 압축 덕분에 주고받지 않은 바이트 수 */
+    public long getSavedBytes() {
+        return (inboundInflated.sum() - inboundCompressed.sum()) + (outboundOriginal.sum() - outboundCompressed.sum());
+    }
+
+    private static double ratio(long compressed, long original) {
+        return original == 0 ? 1.0 : (double) compressed / original;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("in %d msgs ratio %.3f, out %d msgs ratio %.3f, saved %d bytes",
+            getInboundMessages(), getInboundRatio(), getOutboundMessages(), getOutboundRatio(), getSavedBytes());
+    }
+}
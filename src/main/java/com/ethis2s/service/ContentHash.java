@@ -0,0 +1,72 @@
+package com.ethis2s.service;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 서버가 파일 내용에 붙여 보내는 해시(내용 UTF-8 바이트의 SHA-256, 소문자 16진수)를 계산합니다.
+ *
+ * <p>문자열은 전체를 byte[] 로 복사하지 않고 고정 크기 버퍼로 조금씩 인코딩하면서 다이제스트에 넣습니다.
+ * 큰 파일도 추가 메모리는 버퍼 하나뿐입니다. 잘못된 서로게이트는 String.getBytes 와 같게 '?' 로 바꿉니다.
+ */
+public final class ContentHash {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private ContentHash() {
+    }
+
+    public static String sha256Hex(CharSequence text) {
+        MessageDigest digest = newDigest();
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer in = CharBuffer.wrap(text);
+        ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+        while (encoder.encode(in, out, true).isOverflow()) {
+            drain(out, digest);
+        }
+        while (encoder.flush(out).isOverflow()) {
+            drain(out, digest);
+        }
+        drain(out, digest);
+        return toHex(digest.digest());
+    }
+
+    public static String sha256Hex(byte[] bytes) {
+        return toHex(newDigest().digest(bytes));
+    }
+
+    public static boolean matches(CharSequence text, String expectedHash) {
+        return expectedHash != null && expectedHash.equalsIgnoreCase(sha256Hex(text));
+    }
+
+    private static void drain(ByteBuffer out, MessageDigest digest) {
+        out.flip();
+        digest.update(out);
+        out.clear();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = HEX[(bytes[i] >> 4) & 0xF];
+            hex[2 * i + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(hex);
+    }
+}
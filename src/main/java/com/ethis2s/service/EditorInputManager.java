@@ -1,6 +1,7 @@
 package com.ethis2s.service;
 
 import com.ethis2s.model.Operation;
+import com.ethis2s.model.TextOperation;
 import javafx.animation.PauseTransition;
 import javafx.application.Platform;
 import javafx.scene.control.IndexRange;
@@ -110,6 +111,43 @@ public class EditorInputManager {
         }
     }
 
+    /**
+     * 서버에서 온 여러 편집을 하나의 MultiChangeBuilder 트랜잭션으로 적용합니다.
+     * edits 는 모두 적용 전 문서 기준 좌표이며, 위치 순으로 정렬되어 서로 겹치지 않아야 합니다.
+     */
+    public void controlledReplaceAll(List<TextOperation.Edit> edits) {
+        controlledReplaceAll(edits, ChangeInitiator.SERVER);
+    }
+
+    /**
+     * 여러 편집을 하나의 트랜잭션으로 적용합니다. SERVER 이면 내 캐럿 위치를 유지하고,
+     * 그 밖의 경우(실행 취소/다시 실행 등 로컬 편집)에는 캐럿을 첫 편집의 끝으로 옮깁니다.
+     */
+    public void controlledReplaceAll(List<TextOperation.Edit> edits, ChangeInitiator initiator) {
+        if (edits.isEmpty()) return;
+        boolean fromServer = initiator == ChangeInitiator.SERVER;
+        if (fromServer) isProcessingServerChange = true;
+
+        int originalCaretPosition = codeArea.getCaretPosition();
+        int finalCaretPosition = originalCaretPosition;
+        var multiChange = codeArea.createMultiChange(edits.size());
+        // 뒤쪽 편집부터 넣으면 앞쪽 편집의 좌표가 밀리지 않는다.
+        for (int i = edits.size() - 1; i >= 0; i--) {
+            TextOperation.Edit edit = edits.get(i);
+            if (edit.end <= originalCaretPosition) {
+                finalCaretPosition += edit.text.length() - (edit.end - edit.start);
+            }
+            multiChange.replaceText(edit.start, edit.end, edit.text);
+        }
+        if (!fromServer) {
+            finalCaretPosition = edits.get(0).start + edits.get(0).text.length();
+        }
+
+        this.lastInitiator = initiator;
+        multiChange.commit();
+        codeArea.moveTo(Math.max(0, Math.min(finalCaretPosition, codeArea.getLength())));
+    }
+
     public void registerEventHandlers() {
         codeArea.addEventFilter(KeyEvent.KEY_TYPED, this::handleKeyTyped);
         codeArea.addEventFilter(KeyEvent.KEY_PRESSED, this::handleKeyPressed);
@@ -142,8 +180,8 @@ public class EditorInputManager {
                         List<Operation> ops = interpreter.interpret(change);
                         for (Operation op : ops) {
                             if (op != null) {
-                                stateManager.getOTManager(tabId).ifPresent(otManager -> {
-                                    otManager.sendOperation(op);
+                                stateManager.getEngine(tabId).ifPresent(engine -> {
+                                    engine.sendOperation(op);
                                 });
                             }
                         }
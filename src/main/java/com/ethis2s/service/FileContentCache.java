@@ -0,0 +1,287 @@
+package com.ethis2s.service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * 서버에서 받은 파일 내용을 SHA-256 해시를 이름으로 디스크에 보관하는 캐시입니다.
+ *
+ * <p>내용은 objects/앞 두 글자/해시 파일에 한 번만 저장하고, 키(사용자/프로젝트/경로)마다 그 해시와 서버 버전을 index.json 에 둡니다.
+ * 같은 내용의 파일이 여러 개여도 내용은 하나만 저장됩니다. 읽을 때 해시를 다시 계산해 손상된 내용은 버립니다.
+ * 전체 크기가 maxBytes 를 넘으면 가장 오래 쓰지 않은 키부터 지우고, 어느 키도 가리키지 않는 내용 파일을 삭제합니다.
+ * 색인 조회는 메모리에서 하고, 쓰기는 공용 쓰기 스레드가 순서대로 합니다. 여러 스레드에서 호출해도 됩니다.
+ */
+public final class FileContentCache {
+
+    private static final String INDEX_FILE = "index.json";
+    private static final String OBJECTS_DIRECTORY = "objects";
+
+    // 모든 캐시가 공유하는 쓰기 스레드. 디스크 I/O 가 FX 스레드나 수신 스레드를 막지 않도록 한다.
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "file-cache-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** 키 하나가 가리키는 캐시된 내용 */
+    public static final class Entry {
+        private final String hash;
+        private final long version;
+        private final long size;
+
+        Entry(String hash, long version, long size) {
+            this.hash = hash;
+            this.version = version;
+            this.size = size;
+        }
+
+        public String getHash() { return hash; }
+        public long getVersion() { return version; }
+    }
+
+    private final Path directory;
+    private final long maxBytes;
+    // 접근 순서 (가장 오래 쓰지 않은 것이 앞). this 로 보호
+    private final LinkedHashMap<String, Entry> index = new LinkedHashMap<>(16, 0.75f, true);
+    // 해시별 참조 수. 0 이 되면 내용 파일을 지운다. this 로 보호
+    private final Map<String, Integer> references = new HashMap<>();
+    private long totalBytes;
+    private long hits;
+    private long misses;
+
+    /** @param maxBytes 보관할 내용의 최대 크기. 0 이하이면 아무것도 저장하지 않습니다. */
+    public FileContentCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        load();
+    }
+
+    public static String keyFor(String userId, String projectId, String path) {
+        return userId + "/" + projectId + "/" + path;
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /** 색인만 봅니다. 내용 파일이 실제로 있는지는 {@link #read} 에서 확인합니다. */
+    public synchronized Optional<Entry> lookup(String key) {
+        return Optional.ofNullable(index.get(key));
+    }
+
+    /**
+     * 해시가 hash 인 내용을 읽습니다. 없거나 해시가 맞지 않으면(손상) empty 이며, 손상된 파일은 지웁니다.
+     * 디스크를 읽으므로 FX 스레드에서 부르지 않습니다.
+     */
+    public Optional<String> read(String hash) {
+        if (!isValidHash(hash)) return Optional.empty();
+        Path file = objectPath(hash);
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            if (hash.equals(ContentHash.sha256Hex(bytes))) {
+                synchronized (this) { hits++; }
+                return Optional.of(new String(bytes, StandardCharsets.UTF_8));
+            }
+            System.err.println("[FileContentCache] Corrupt cache object " + hash + ". Discarding.");
+            dropHash(hash);
+        } catch (NoSuchFileException e) {
+            dropHash(hash);
+        } catch (IOException e) {
+            System.err.println("[FileContentCache] Failed to read " + file + ": " + e.getMessage());
+        }
+        synchronized (this) { misses++; }
+        return Optional.empty();
+    }
+
+    /** key 의 내용을 version 으로 기록합니다. hash 는 서버가 준 (그리고 검증한) content 의 SHA-256 입니다. */
+    public void put(String key, String content, String hash, long version) {
+        if (!isEnabled() || !isValidHash(hash)) return;
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > maxBytes) return;
+        Map<String, Entry> snapshot;
+        boolean newObject;
+        synchronized (this) {
+            Entry previous = index.put(key, new Entry(hash, version, bytes.length));
+            newObject = references.merge(hash, 1, Integer::sum) == 1;
+            if (newObject) totalBytes += bytes.length;
+            if (previous != null) release(previous);
+            evict();
+            snapshot = new LinkedHashMap<>(index);
+        }
+        WRITER.execute(() -> {
+            if (newObject) writeObject(hash, bytes);
+            writeIndex(snapshot);
+        });
+    }
+
+    public void invalidate(String key) {
+        Map<String, Entry> snapshot;
+        synchronized (this) {
+            Entry removed = index.remove(key);
+            if (removed == null) return;
+            release(removed);
+            snapshot = new LinkedHashMap<>(index);
+        }
+        WRITER.execute(() -> writeIndex(snapshot));
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    // --- 내부 (this 로 보호) ---
+
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> it = index.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Entry oldest = it.next().getValue();
+            it.remove();
+            release(oldest);
+        }
+    }
+
+    private void release(Entry entry) {
+        Integer count = references.get(entry.hash);
+        if (count == null) return;
+        if (count > 1) {
+            references.put(entry.hash, count - 1);
+            return;
+        }
+        references.remove(entry.hash);
+        totalBytes -= entry.size;
+        String hash = entry.hash;
+        WRITER.execute(() -> deleteObject(hash));
+    }
+
+    /** 내용 파일이 없어졌거나 손상되었으면 그 해시를 가리키는 키를 모두 지운다. */
+    private void dropHash(String hash) {
+        Map<String, Entry> snapshot;
+        synchronized (this) {
+            Entry dropped = null;
+            for (Iterator<Entry> it = index.values().iterator(); it.hasNext(); ) {
+                Entry entry = it.next();
+                if (entry.hash.equals(hash)) {
+                    dropped = entry;
+                    it.remove();
+                }
+            }
+            if (dropped == null) return;
+            references.remove(hash);
+            totalBytes -= dropped.size;
+            snapshot = new LinkedHashMap<>(index);
+        }
+        WRITER.execute(() -> {
+            deleteObject(hash);
+            writeIndex(snapshot);
+        });
+    }
+
+    // --- 디스크 ---
+
+    // 해시는 서버에서 오므로 경로로 쓰기 전에 형식을 확인한다.
+    // ContentHash 와 같은 소문자 16진수만 받아야 대소문자만 다른 키가 같은 객체 파일을 가리키지 않는다.
+    private static boolean isValidHash(String hash) {
+        if (hash == null || hash.length() != 64) return false;
+        for (int i = 0; i < hash.length(); i++) {
+            char c = hash.charAt(i);
+            if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) return false;
+        }
+        return true;
+    }
+
+    private Path objectPath(String hash) {
+        return directory.resolve(OBJECTS_DIRECTORY).resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private void load() {
+        if (!isEnabled()) return;
+        Path file = directory.resolve(INDEX_FILE);
+        if (!Files.exists(file)) return;
+        try {
+            JSONObject json = new JSONObject(Files.readString(file, StandardCharsets.UTF_8));
+            // 파일에는 오래된 것부터 저장되어 있다.
+            JSONArray order = json.getJSONArray("order");
+            for (int i = 0; i < order.length(); i++) {
+                String key = order.getString(i);
+                JSONObject entry = json.getJSONObject("entries").optJSONObject(key);
+                if (entry == null) continue;
+                String hash = entry.getString("hash");
+                long size = entry.getLong("size");
+                index.put(key, new Entry(hash, entry.getLong("version"), size));
+                if (references.merge(hash, 1, Integer::sum) == 1) totalBytes += size;
+            }
+            evict();
+        } catch (IOException | JSONException e) {
+            System.err.println("[FileContentCache] Ignoring unreadable index " + file + ": " + e.getMessage());
+            index.clear();
+            references.clear();
+            totalBytes = 0;
+        }
+    }
+
+    private void writeObject(String hash, byte[] bytes) {
+        Path target = objectPath(hash);
+        if (Files.exists(target)) return;
+        try {
+            Files.createDirectories(target.getParent());
+            Path temp = target.resolveSibling(hash + ".tmp");
+            Files.write(temp, bytes);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("[FileContentCache] Failed to write " + target + ": " + e.getMessage());
+        }
+    }
+
+    private void deleteObject(String hash) {
+        synchronized (this) {
+            if (references.containsKey(hash)) return; // 그 사이 같은 내용이 다시 들어왔다.
+        }
+        try {
+            Files.deleteIfExists(objectPath(hash));
+        } catch (IOException e) {
+            System.err.println("[FileContentCache] Failed to delete " + hash + ": " + e.getMessage());
+        }
+    }
+
+    private void writeIndex(Map<String, Entry> snapshot) {
+        JSONObject entries = new JSONObject();
+        for (Map.Entry<String, Entry> e : snapshot.entrySet()) {
+            entries.put(e.getKey(), new JSONObject()
+                .put("hash", e.getValue().hash)
+                .put("version", e.getValue().version)
+                .put("size", e.getValue().size));
+        }
+        JSONObject json = new JSONObject().put("order", snapshot.keySet()).put("entries", entries);
+        try {
+            Files.createDirectories(directory);
+            Path temp = directory.resolve(INDEX_FILE + ".tmp");
+            Files.writeString(temp, json.toString(), StandardCharsets.UTF_8);
+            Files.move(temp, directory.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("[FileContentCache] Failed to write index: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.ethis2s.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.ethis2s.model.ProtocolConstants;
+
+/**
+ * 한 userField 로 들어오는 조각(FRAGED ... UNFRAGED)들을 하나의 페이로드로 모읍니다.
+ *
+ * <p>첫 조각의 payloadType 이 PTYPE_COMPRESSED 이면 페이로드는 [원래 payloadType 1바이트] + zlib(deflate) 스트림이며,
+ * 조각이 도착할 때마다 바로 풀어서 쌓습니다. (압축된 전체를 모았다가 한 번에 풀지 않음)
+ * 수신 파이프라인의 조립 스레드에서만 사용합니다. 중간에 버릴 때는 {@link #dispose()} 로 Inflater 를 해제해야 합니다.
+ */
+final class FragmentAssembly {
+
+    // 압축 폭탄 방지: 풀어낸 크기 상한
+    private static final int MAX_INFLATED_SIZE = 256 * 1024 * 1024;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final Inflater inflater;
+    private final byte[] chunk;
+    private int payloadType;
+    private boolean typeRead;
+    private long compressedBytes;
+
+    FragmentAssembly(int packetPayloadType) {
+        if (packetPayloadType == ProtocolConstants.PTYPE_COMPRESSED) {
+            this.inflater = new Inflater();
+            this.chunk = new byte[16 * 1024];
+        } else {
+            this.inflater = null;
+            this.chunk = null;
+            this.payloadType = packetPayloadType;
+            this.typeRead = true;
+        }
+    }
+
+    boolean isCompressed() {
+        return inflater != null;
+    }
+
+    void append(byte[] fragment) throws IOException {
+        append(fragment, 0, fragment.length);
+    }
+
+    void append(byte[] fragment, int offset, int length) throws IOException {
+        if (inflater == null) {
+            out.write(fragment, offset, length);
+            return;
+        }
+        if (!typeRead && length > 0) {
+            payloadType = fragment[offset] & 0xFF;
+            typeRead = true;
+            offset++;
+            length--;
+        }
+        compressedBytes += length;
+        inflater.setInput(fragment, offset, length);
+        try {
+            while (!inflater.finished() && !inflater.needsInput()) {
+                int n = inflater.inflate(chunk);
+                if (n == 0 && inflater.needsDictionary()) {
+                    throw new IOException("Compressed payload requires a preset dictionary.");
+                }
+                out.write(chunk, 0, n);
+                if (out.size() > MAX_INFLATED_SIZE) {
+                    throw new IOException("Inflated payload exceeds " + MAX_INFLATED_SIZE + " bytes.");
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Malformed compressed payload: " + e.getMessage(), e);
+        }
+    }
+
+    /** 마지막 조각을 넣은 뒤 호출합니다. 압축 스트림이 끝나지 않았으면 IOException 입니다. */
+    byte[] finish() throws IOException {
+        try {
+            if (inflater != null && (!typeRead || !inflater.finished())) {
+                throw new IOException("Truncated compressed payload.");
+            }
+            return out.toByteArray();
+        } finally {
+            dispose();
+        }
+    }
+
+    /** 원래(압축 전) payloadType */
+    int getPayloadType() {
+        return payloadType;
+    }
+
+    long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    void dispose() {
+        if (inflater != null) inflater.end();
+    }
+}
@@ -1,10 +1,10 @@
 package com.ethis2s.service;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 import com.ethis2s.model.Operation;
+import com.ethis2s.model.TextOperation;
 import com.ethis2s.util.HybridManager;
 import org.fxmisc.richtext.CodeArea;
 import org.fxmisc.richtext.model.PlainTextChange;
@@ -39,11 +39,9 @@ public class InputInterpreter {
             Operation op = new Operation(Operation.Type.DELETE, position, removed, removed.length(), cursorPosition, -1, null);
             return Collections.singletonList(op);
         } else if (!inserted.isEmpty() && !removed.isEmpty()) {
-            // REPLACE operation, modeled as DELETE then INSERT
-            List<Operation> ops = new ArrayList<>();
-            ops.add(new Operation(Operation.Type.DELETE, position, removed, removed.length(), -1, -1, null)); // Cursor pos is irrelevant for the intermediate delete
-            ops.add(new Operation(Operation.Type.INSERT, position, inserted, cursorPosition, -1, null));
-            return ops;
+            // REPLACE operation, modeled as a single compound operation (retain, insert, delete)
+            TextOperation replace = new TextOperation().retain(position).insert(inserted).delete(removed);
+            return Collections.singletonList(new Operation(replace, cursorPosition, -1, null));
         }
         return Collections.emptyList(); // No actual change
     }
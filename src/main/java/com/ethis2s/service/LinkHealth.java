@@ -0,0 +1,93 @@
+package com.ethis2s.service;
+
+/**
+ * 하트비트 왕복 시간으로 연결 상태를 추정합니다. (RFC 6298 의 SRTT / RTTVAR 방식)
+ *
+ * <p>SRTT 는 왕복 시간의 지수 이동 평균(가중치 1/8), RTTVAR 는 평균에서 벗어난 정도의 이동 평균(가중치 1/4)으로
+ * 지터로 씁니다. 재연결하면 {@link #reset()} 으로 새로 잽니다. 아직 표본이 없으면 RTT 관련 값은 -1 입니다.
+ * 여러 스레드에서 호출해도 됩니다.
+ */
+public class LinkHealth {
+
+    private static final double RTT_GAIN = 1.0 / 8;
+    private static final double VAR_GAIN = 1.0 / 4;
+
+    private double smoothedRttMillis = -1;
+    private double rttVarianceMillis = -1;
+    private double lastRttMillis = -1;
+    private long samples;
+    private long pingsSent;
+    private long lastReceivedNanos = System.nanoTime();
+
+    /** 새 연결. 추정값을 버리고 마지막 수신 시각을 지금으로 둡니다. */
+    public synchronized void reset() {
+        smoothedRttMillis = -1;
+        rttVarianceMillis = -1;
+        lastRttMillis = -1;
+        samples = 0;
+        pingsSent = 0;
+        lastReceivedNanos = System.nanoTime();
+    }
+
+    synchronized void pingSent() {
+        pingsSent++;
+    }
+
+    /** 무엇이든 받았을 때 (연결이 살아 있다는 증거) */
+    synchronized void received() {
+        lastReceivedNanos = System.nanoTime();
+    }
+
+    synchronized void sample(long rttNanos) {
+        double rtt = rttNanos / 1_000_000.0;
+        lastRttMillis = rtt;
+        if (samples++ == 0) {
+            smoothedRttMillis = rtt;
+            rttVarianceMillis = rtt / 2;
+        } else {
+            rttVarianceMillis += VAR_GAIN * (Math.abs(smoothedRttMillis - rtt) - rttVarianceMillis);
+            smoothedRttMillis += RTT_GAIN * (rtt - smoothedRttMillis);
+        }
+    }
+
+    /** 평활 RTT (ms). 표본이 없으면 -1 */
+    public synchronized double getSmoothedRttMillis() {
+        return smoothedRttMillis;
+    }
+
+    /** RTT 지터(평균 편차, ms). 표본이 없으면 -1 */
+    public synchronized double getJitterMillis() {
+        return rttVarianceMillis;
+    }
+
+    public synchronized double getLastRttMillis() {
+        return lastRttMillis;
+    }
+
+    /** 응답이 이 시간 안에 오지 않으면 늦은 것으로 볼 만한 시간 (SRTT + 4 * RTTVAR, ms). 표본이 없으면 -1 */
+    public synchronized double getRetransmitTimeoutMillis() {
+        if (samples == 0) return -1;
+        return smoothedRttMillis + 4 * rttVarianceMillis;
+    }
+
+    public synchronized boolean hasSamples() {
+        return samples > 0;
+    }
+
+    /** 이 연결에서 보낸 하트비트 중 응답이 온 비율 (0~1). 보낸 것이 없으면 1 */
+    public synchronized double getResponseRatio() {
+        return (pingsSent == 0) ? 1.0 : Math.min(1.0, (double) samples / pingsSent);
+    }
+
+    /** 마지막으로 무엇이든 받은 뒤 지난 시간 (ms) */
+    public synchronized long getMillisSinceLastReceive() {
+        return (System.nanoTime() - lastReceivedNanos) / 1_000_000;
+    }
+
+    @Override
+    public synchronized String toString() {
+        if (samples == 0) return "LinkHealth[no samples, idle " + getMillisSinceLastReceive() + " ms]";
+        return String.format("LinkHealth[srtt=%.1f ms, jitter=%.1f ms, last=%.1f ms, answered %d/%d, idle %d ms]",
+            smoothedRttMillis, rttVarianceMillis, lastRttMillis, samples, pingsSent, getMillisSinceLastReceive());
+    }
+}
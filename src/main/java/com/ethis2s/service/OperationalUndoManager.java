@@ -0,0 +1,192 @@
+package com.ethis2s.service;
+
+import com.ethis2s.model.TextOperation;
+import com.ethis2s.ot.UndoHistory;
+import com.ethis2s.util.HybridManager;
+
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.value.ObservableBooleanValue;
+import org.fxmisc.richtext.CodeArea;
+import org.fxmisc.richtext.model.PlainTextChange;
+import org.fxmisc.undo.UndoManager;
+import org.reactfx.Subscription;
+import org.reactfx.value.Val;
+import org.reactfx.value.Var;
+
+import java.util.List;
+
+/**
+ * 로컬 편집을 {@link TextOperation} 으로 기록하고, 다른 곳에서 온 편집(서버 연산, catch-up, 체크섬 복구 등)이
+ * 적용될 때마다 기록 전체를 변환하는 RichTextFX UndoManager 입니다.
+ *
+ * <p>USER 가 아닌 initiator 로 CodeArea 에 적용된 모든 변경이 곧 "원격 편집" 이므로 엔진(OT/CRDT)과 상관없이 동작하며,
+ * 실행 취소는 현재 문서 기준의 연산 하나로 계산되어 USER 편집처럼 전송됩니다. (오래된 오프셋으로 인한 텍스트 손상/SYNC_ERROR 없음)
+ */
+public class OperationalUndoManager implements UndoManager<TextOperation> {
+
+    private final EditorInputManager inputManager;
+    private final HybridManager hybridManager;
+    private final UndoHistory history;
+    private final Subscription subscription;
+
+    private final Var<TextOperation> nextUndo = Var.newSimpleVar(null);
+    private final Var<TextOperation> nextRedo = Var.newSimpleVar(null);
+    private final BooleanProperty performingAction = new SimpleBooleanProperty(false);
+    private final BooleanProperty atMarkedPosition = new SimpleBooleanProperty(true);
+
+    // 기록이 바뀔 때마다 증가한다. (mark / getCurrentPosition 용)
+    private long revision = 0;
+    private long markedRevision = 0;
+    // forgetHistory 이전에 만든 위치는 더 이상 유효하지 않다.
+    private long historyEpoch = 0;
+
+    public OperationalUndoManager(CodeArea codeArea, EditorInputManager inputManager, HybridManager hybridManager,
+                                  int capacity, long mergeWindowMillis) {
+        this.inputManager = inputManager;
+        this.hybridManager = hybridManager;
+        this.history = new UndoHistory(capacity, mergeWindowMillis);
+        this.subscription = codeArea.multiPlainChanges().subscribe(this::changesObserved);
+    }
+
+    private void changesObserved(List<PlainTextChange> changes) {
+        if (performingAction.get()) return; // 실행 취소/다시 실행이 만든 변경은 history 가 이미 반영했다.
+
+        TextOperation op = null;
+        boolean identity = true;
+        for (PlainTextChange change : changes) {
+            // 한 트랜잭션의 변경들은 앞의 변경이 적용된 문서 기준이므로 차례로 합성한다.
+            TextOperation step = new TextOperation()
+                .retain(change.getPosition())
+                .delete(change.getRemoved())
+                .insert(change.getInserted());
+            op = (op == null) ? step : op.compose(step);
+            identity &= change.getInserted().equals(change.getRemoved());
+        }
+        if (op == null || identity) return;
+
+        if (inputManager.getLastInitiator() == ChangeInitiator.USER) {
+            history.record(op, System.currentTimeMillis());
+        } else {
+            history.transform(op);
+        }
+        revision++;
+        invalidateProperties();
+    }
+
+    @Override
+    public boolean undo() {
+        return apply(history.undo());
+    }
+
+    @Override
+    public boolean redo() {
+        return apply(history.redo());
+    }
+
+    private boolean apply(TextOperation op) {
+        if (op == null) return false;
+        performingAction.set(true);
+        try {
+            // USER 로 적용해야 일반 입력과 같이 동시 편집 엔진으로 전송된다.
+            hybridManager.controlledReplaceAll(op.toEdits(), ChangeInitiator.USER);
+        } finally {
+            performingAction.set(false);
+        }
+        revision++;
+        invalidateProperties();
+        return true;
+    }
+
+    private void invalidateProperties() {
+        nextUndo.setValue(history.peekUndo());
+        nextRedo.setValue(history.peekRedo());
+        atMarkedPosition.set(revision == markedRevision);
+    }
+
+    @Override
+    public Val<TextOperation> nextUndoProperty() {
+        return nextUndo;
+    }
+
+    @Override
+    public Val<TextOperation> nextRedoProperty() {
+        return nextRedo;
+    }
+
+    @Override
+    public boolean isUndoAvailable() {
+        return nextUndo.getValue() != null;
+    }
+
+    @Override
+    public Val<Boolean> undoAvailableProperty() {
+        return nextUndo.map(op -> true).orElseConst(false);
+    }
+
+    @Override
+    public boolean isRedoAvailable() {
+        return nextRedo.getValue() != null;
+    }
+
+    @Override
+    public Val<Boolean> redoAvailableProperty() {
+        return nextRedo.map(op -> true).orElseConst(false);
+    }
+
+    @Override
+    public boolean isPerformingAction() {
+        return performingAction.get();
+    }
+
+    @Override
+    public ObservableBooleanValue performingActionProperty() {
+        return performingAction;
+    }
+
+    @Override
+    public void preventMerge() {
+        history.preventMerge();
+    }
+
+    @Override
+    public void forgetHistory() {
+        history.clear();
+        historyEpoch++;
+        revision++;
+        invalidateProperties();
+    }
+
+    @Override
+    public UndoPosition getCurrentPosition() {
+        long positionRevision = revision;
+        long positionEpoch = historyEpoch;
+        return new UndoPosition() {
+            @Override
+            public void mark() {
+                markedRevision = positionRevision;
+                atMarkedPosition.set(revision == markedRevision);
+            }
+
+            @Override
+            public boolean isValid() {
+                return positionEpoch == historyEpoch;
+            }
+        };
+    }
+
+    @Override
+    public boolean isAtMarkedPosition() {
+        return atMarkedPosition.get();
+    }
+
+    @Override
+    public ObservableBooleanValue atMarkedPositionProperty() {
+        return atMarkedPosition;
+    }
+
+    @Override
+    public void close() {
+        subscription.unsubscribe();
+    }
+}
@@ -0,0 +1,63 @@
+package com.ethis2s.service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * SocketProtocol.toBytes 와 같은 형식의 패킷을 페이로드 복사 없이 만듭니다.
+ *
+ * <p>패킷 = 헤더(4, little-endian) + 페이로드 + CRC32(4, 헤더와 페이로드 대상, little-endian).
+ * 헤더 비트: version(4) | length(13, 헤더/CRC 포함) | fragment(1) | payloadType(4) | userField(10).
+ * 페이로드는 원본 배열을 감싼 ByteBuffer 조각으로 그대로 두고, 헤더와 CRC 만 새로 만들어 gathering write 에 넘깁니다.
+ */
+final class PacketFraming {
+
+    static final int PROTOCOL_VERSION = 1;
+    static final int OVERHEAD = 8;
+    static final int MAX_PACKET_LENGTH = 0x1FFF;
+
+    private PacketFraming() {
+    }
+
+    /**
+     * payload[offset, offset + length) 를 담은 패킷을 헤더, 페이로드, CRC 세 조각으로 out 에 추가합니다.
+     * @return 패킷 전체 길이
+     */
+    static int frame(byte[] payload, int offset, int length, byte fragFlag, byte payloadType, int userField, List<ByteBuffer> out) {
+        return frame(null, 0, payload, offset, length, fragFlag, payloadType, userField, out);
+    }
+
+    /**
+     * prefix[0, prefixLength) 와 payload[offset, offset + length) 를 이어 붙인 페이로드의 패킷을 만듭니다.
+     * prefix(스트림 헤더 등 몇 바이트)는 헤더와 같은 버퍼에 복사하고, payload 는 그대로 슬라이스로 둡니다.
+     */
+    static int frame(byte[] prefix, int prefixLength, byte[] payload, int offset, int length,
+                     byte fragFlag, byte payloadType, int userField, List<ByteBuffer> out) {
+        int packetLength = prefixLength + length + OVERHEAD;
+        if (packetLength > MAX_PACKET_LENGTH) {
+            throw new IllegalArgumentException("Packet too large: " + packetLength);
+        }
+        if ((userField & ~0x3FF) != 0) {
+            throw new IllegalArgumentException("userField must be 10-bit (0~1023)");
+        }
+        int header = (PROTOCOL_VERSION & 0xF)
+            | (packetLength & MAX_PACKET_LENGTH) << 4
+            | (fragFlag & 0x1) << 17
+            | (payloadType & 0xF) << 18
+            | (userField & 0x3FF) << 22;
+        ByteBuffer headerBuffer = ByteBuffer.allocate(4 + prefixLength).order(ByteOrder.LITTLE_ENDIAN).putInt(0, header);
+        if (prefixLength > 0) headerBuffer.put(4, prefix, 0, prefixLength);
+
+        CRC32 crc = new CRC32();
+        crc.update(headerBuffer.array(), 0, 4 + prefixLength);
+        crc.update(payload, offset, length);
+        ByteBuffer crcBuffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0, (int) crc.getValue());
+
+        out.add(headerBuffer);
+        if (length > 0) out.add(ByteBuffer.wrap(payload, offset, length));
+        out.add(crcBuffer);
+        return packetLength;
+    }
+}
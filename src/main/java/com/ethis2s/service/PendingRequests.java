@@ -0,0 +1,157 @@
+package com.ethis2s.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongConsumer;
+
+/**
+ * 응답을 기다리는 요청들을 request_id 로 짝지어 CompletableFuture 로 돌려줍니다.
+ *
+ * <p>요청마다 새 ID 를 붙여 보내고, 서버가 응답에 같은 "request_id" 를 넣어 주면 그 요청만 완료합니다.
+ * ID 를 돌려주지 않는 서버라면 같은 응답 userField 와 key(보통 project_id) 로 기다리는 것 중 가장 오래된 요청을 완료합니다.
+ * 제한 시간 안에 응답이 없으면 같은 ID 로 다시 보내고(retries 만큼), 그래도 없으면 TimeoutException 으로 끝냅니다.
+ * 여러 스레드에서 동시에 호출해도 됩니다. future 는 락 밖에서, 응답을 받은 스레드(또는 타이머 스레드)에서 완료됩니다.
+ */
+public class PendingRequests {
+
+    /** 응답에 request_id 가 없을 때 {@link #complete} 에 넘기는 값 */
+    public static final long NO_REQUEST_ID = -1;
+
+    private final ScheduledExecutorService timer;
+    private final long timeoutMillis;
+    private long nextId = 1;
+    // 넣은 순서를 유지해야 ID 없는 응답을 가장 오래된 요청에 짝지을 수 있다. (this 로 보호)
+    private final LinkedHashMap<Long, Pending<?>> pending = new LinkedHashMap<>();
+
+    private static final class Pending<T> {
+        final long id;
+        final int responseField;
+        final String key;
+        final LongConsumer transmit;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        int retriesLeft;
+        ScheduledFuture<?> timeout;
+
+        Pending(long id, int responseField, String key, LongConsumer transmit, int retries) {
+            this.id = id;
+            this.responseField = responseField;
+            this.key = key;
+            this.transmit = transmit;
+            this.retriesLeft = retries;
+        }
+    }
+
+    public PendingRequests(long timeoutMillis) {
+        this.timeoutMillis = Math.max(1, timeoutMillis);
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "request-timeout");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 새 ID 로 요청을 등록하고 transmit 으로 보냅니다. transmit 은 재시도할 때 같은 ID 로 다시 호출됩니다.
+     * 다시 보내도 안전한(조회) 요청만 retries 를 0 보다 크게 주어야 합니다.
+     */
+    public <T> CompletableFuture<T> submit(int responseField, String key, int retries, LongConsumer transmit) {
+        Pending<T> request;
+        synchronized (this) {
+            request = new Pending<>(nextId++, responseField, key, transmit, Math.max(0, retries));
+            pending.put(request.id, request);
+            request.timeout = timer.schedule(() -> onTimeout(request), timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        try {
+            transmit.accept(request.id);
+        } catch (RuntimeException e) {
+            fail(request, e);
+        }
+        return request.future;
+    }
+
+    private void onTimeout(Pending<?> request) {
+        boolean retry;
+        synchronized (this) {
+            if (pending.get(request.id) != request) return; // 그 사이에 응답이 왔다.
+            retry = request.retriesLeft > 0;
+            if (retry) {
+                request.retriesLeft--;
+                request.timeout = timer.schedule(() -> onTimeout(request), timeoutMillis, TimeUnit.MILLISECONDS);
+            } else {
+                pending.remove(request.id);
+            }
+        }
+        if (!retry) {
+            request.future.completeExceptionally(new TimeoutException("No response for request " + request.id
+                + " (userField 0x" + Integer.toHexString(request.responseField) + ", key " + request.key
+                + ") within " + timeoutMillis + " ms"));
+            return;
+        }
+        try {
+            request.transmit.accept(request.id);
+        } catch (RuntimeException e) {
+            fail(request, e);
+        }
+    }
+
+    private void fail(Pending<?> request, Throwable cause) {
+        synchronized (this) {
+            if (pending.get(request.id) == request) pending.remove(request.id);
+            if (request.timeout != null) request.timeout.cancel(false);
+        }
+        request.future.completeExceptionally(cause);
+    }
+
+    /**
+     * 응답으로 요청을 완료합니다. requestId 가 {@link #NO_REQUEST_ID} 이면 responseField 와 key 가 같은 가장 오래된 요청을 완료합니다.
+     * 짝지을 요청이 없으면(이미 시간 초과되었거나 다른 곳에서 보낸 요청) false 입니다.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> boolean complete(int responseField, String key, long requestId, T value) {
+        Pending<T> request = null;
+        synchronized (this) {
+            if (requestId != NO_REQUEST_ID) {
+                Pending<?> candidate = pending.get(requestId);
+                if (candidate != null && candidate.responseField == responseField) {
+                    request = (Pending<T>) candidate;
+                }
+            } else {
+                for (Pending<?> candidate : pending.values()) {
+                    if (candidate.responseField == responseField && (key == null || key.equals(candidate.key))) {
+                        request = (Pending<T>) candidate;
+                        break;
+                    }
+                }
+            }
+            if (request == null) return false;
+            pending.remove(request.id);
+            request.timeout.cancel(false);
+        }
+        request.future.complete(value);
+        return true;
+    }
+
+    /** 연결이 끊기는 등 더 이상 응답을 받을 수 없을 때 기다리는 요청을 모두 실패시킵니다. */
+    public void failAll(Throwable cause) {
+        List<Pending<?>> failed;
+        synchronized (this) {
+            failed = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+        for (Pending<?> request : failed) {
+            request.timeout.cancel(false);
+            request.future.completeExceptionally(cause);
+        }
+    }
+
+    public synchronized int size() {
+        return pending.size();
+    }
+}
@@ -0,0 +1,181 @@
+package com.ethis2s.service;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 받은 패킷을 소켓 스레드 밖에서 단계별로 처리합니다. 소켓 스레드는 패킷 경계만 잘라 {@link #submit} 으로 넘깁니다.
+ *
+ * <ol>
+ * <li>조립 ("packet-assembler", 스레드 하나): CRC 검사, 조각 모으기, 압축 풀기, 받은 순서대로 해야 하는 바이너리 디코딩.
+ *     완성된 메시지마다 {@link Task} 를 만든다.</li>
+ * <li>디코딩 ("packet-decoder-N", 여러 개): 문자열/JSON 파싱을 병렬로 하고, 콜백 호출을 담은 Runnable 을 돌려준다.</li>
+ * <li>배달 ("packet-dispatch", 스레드 하나): 레인과 순서 키마다 조립된 순서대로 Runnable 을 실행한다.</li>
+ * </ol>
+ * 레인 안에서는 순서 키(파일 경로)가 같은 메시지끼리 도착 순서가 지켜지므로 한 파일의 편집/히스토리/체크섬 순서가 바뀌지 않고,
+ * 한 파일의 큰 히스토리나 파일 내용을 디코딩하는 동안에도 다른 파일의 편집 브로드캐스트는 먼저 배달됩니다.
+ * 순서 키가 없는 메시지(로그인, 세션 재개, 오류 등)는 경계가 되어, 앞서 도착한 같은 레인의 메시지가 모두 배달된 뒤에 배달되고
+ * 뒤에 도착한 메시지보다 먼저 배달됩니다.
+ * 레인 사이에는 순서를 지키지 않으므로, 큰 프로젝트 파일 응답을 파싱하는 동안에도 편집 브로드캐스트는 먼저 배달됩니다.
+ * 콜백은 모두 배달 스레드 하나에서 호출됩니다.
+ */
+final class ReceivePipeline {
+
+    enum Lane {
+        /** 문서/세션 상태를 바꾸는 메시지. 모두 도착 순서대로 배달한다. */
+        SESSION,
+        /** 순서가 문서 상태와 무관한 큰 응답 (목록 조회, 프로젝트 파일 등) */
+        BULK
+    }
+
+    /**
+     * 조립이 끝난 메시지. 디코딩 단계에서 decoder 를 호출해 배달할 동작을 얻습니다.
+     * orderKey 가 같은 메시지끼리만 순서를 지키며, null 이면 레인 전체의 경계가 됩니다.
+     */
+    static final class Task {
+        final Lane lane;
+        final String orderKey;
+        final Callable<Runnable> decoder;
+
+        Task(Lane lane, Callable<Runnable> decoder) {
+            this(lane, null, decoder);
+        }
+
+        Task(Lane lane, String orderKey, Callable<Runnable> decoder) {
+            this.lane = lane;
+            this.orderKey = orderKey;
+            this.decoder = decoder;
+        }
+    }
+
+    /** 조립 단계. 메시지가 아직 완성되지 않았거나(조각이 더 남음) 배달할 것이 없으면 null 을 돌려줍니다. */
+    interface Assembly {
+        Task assemble() throws Exception;
+    }
+
+    private final ExecutorService assembler;
+    private final ExecutorService decoders;
+    private final ExecutorService dispatcher;
+    private final Sequencer[] lanes = new Sequencer[Lane.values().length];
+    private final Consumer<Exception> errorHandler;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /** @param errorHandler 조립/디코딩/배달 중 예외. 배달 스레드에서, 해당 메시지가 배달될 자리에서 호출됩니다. */
+    ReceivePipeline(int decoderThreads, Consumer<Exception> errorHandler) {
+        this.errorHandler = errorHandler;
+        this.assembler = Executors.newSingleThreadExecutor(daemon("packet-assembler"));
+        this.dispatcher = Executors.newSingleThreadExecutor(daemon("packet-dispatch"));
+        AtomicInteger index = new AtomicInteger();
+        this.decoders = Executors.newFixedThreadPool(Math.max(1, decoderThreads),
+            r -> daemon("packet-decoder-" + index.incrementAndGet()).newThread(r));
+        for (Lane lane : Lane.values()) {
+            lanes[lane.ordinal()] = new Sequencer();
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /** 소켓 스레드에서 호출합니다. 조립 단계에 넣기만 하고 바로 돌아옵니다. */
+    void submit(Assembly assembly) {
+        inFlight.incrementAndGet();
+        assembler.execute(() -> {
+            Task task;
+            try {
+                task = assembly.assemble();
+            } catch (Exception e) {
+                task = new Task(Lane.SESSION, () -> () -> errorHandler.accept(e));
+            }
+            if (task == null) {
+                inFlight.decrementAndGet();
+                return;
+            }
+            Task assembled = task;
+            Sequencer lane = lanes[assembled.lane.ordinal()];
+            Sequencer.Slot slot = lane.assign(assembled.orderKey);
+            decoders.execute(() -> {
+                Runnable action;
+                try {
+                    action = assembled.decoder.call();
+                } catch (Exception e) {
+                    action = () -> errorHandler.accept(e);
+                }
+                lane.complete(slot, action);
+            });
+        });
+    }
+
+    /** 조립 스레드에서, 앞서 넣은 패킷들의 조립이 끝난 뒤 실행합니다. (연결별 조립 상태 정리 등) */
+    void execute(Runnable action) {
+        assembler.execute(action);
+    }
+
+    /** 조립/디코딩/배달을 기다리는 패킷 수 */
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * 레인 하나의 재정렬 버퍼. 디코딩이 끝난 순서와 상관없이, 순서 키가 같은 메시지끼리는 조립된 순서대로 배달 스레드에 넘긴다.
+     * 대기 중인 메시지는 보통 몇 개뿐이므로 완료될 때마다 앞에서부터 훑는다.
+     */
+    private final class Sequencer {
+        private final class Slot {
+            final String key;
+            Runnable action; // Sequencer 로 보호. null 이면 아직 디코딩 중
+
+            Slot(String key) {
+                this.key = key;
+            }
+        }
+
+        private final LinkedList<Slot> pending = new LinkedList<>(); // 조립된 순서. this 로 보호
+
+        synchronized Slot assign(String key) {
+            Slot slot = new Slot(key);
+            pending.add(slot);
+            return slot;
+        }
+
+        synchronized void complete(Slot slot, Runnable action) {
+            slot.action = action;
+            Set<String> blockedKeys = new HashSet<>();
+            boolean earlierPending = false;
+            for (Iterator<Slot> it = pending.iterator(); it.hasNext(); ) {
+                Slot next = it.next();
+                if (next.key == null) {
+                    // 경계: 앞선 메시지가 모두 배달되어야 하고, 배달되기 전에는 뒤의 메시지도 기다린다.
+                    if (earlierPending || next.action == null) break;
+                } else if (next.action == null || blockedKeys.contains(next.key)) {
+                    blockedKeys.add(next.key);
+                    earlierPending = true;
+                    continue;
+                }
+                it.remove();
+                Runnable toRun = next.action;
+                dispatcher.execute(() -> {
+                    try {
+                        toRun.run();
+                    } catch (RuntimeException e) {
+                        errorHandler.accept(e);
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                });
+            }
+        }
+    }
+}
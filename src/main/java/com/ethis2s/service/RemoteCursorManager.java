@@ -1,6 +1,7 @@
 package com.ethis2s.service;
 
-import javafx.application.Platform;
+import javafx.animation.AnimationTimer;
+import javafx.animation.Interpolator;
 import javafx.geometry.Bounds;
 import javafx.geometry.Point2D;
 import javafx.scene.Node;
@@ -11,17 +12,32 @@ import javafx.scene.paint.Color;
 import javafx.scene.shape.Line;
 import org.fxmisc.richtext.CodeArea;
 
+import com.ethis2s.util.ConfigManager;
 import com.ethis2s.util.EditorStateManager;
 
-import java.util.HashMap;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.IntUnaryOperator;
 
+/**
+ * 다른 사용자의 커서를 오버레이에 그립니다.
+ *
+ * <p>모든 커서의 이동 애니메이션은 하나의 AnimationTimer 가 프레임마다 한 번에 보간하고,
+ * 화면 좌표 계산(offsetToPosition / getCharacterBoundsOnScreen)은 위치가 바뀐 커서 중
+ * 뷰포트 안에 있는 것만, 프레임당 최대 maxLayoutsPerFrame 개까지 수행합니다.
+ * 처리하지 못한 커서는 다음 프레임으로 넘어가므로 사용자 수와 무관하게 프레임당 작업량이 제한됩니다.
+ */
 public class RemoteCursorManager {
 
+    private static final int DEFAULT_MAX_LAYOUTS_PER_FRAME = 16;
+
     private final CodeArea codeArea;
     private final Pane overlayPane;
     private final EditorStateManager stateManager;
+    private final int maxLayoutsPerFrame;
 
     private static class UserCursorInfo {
         int position;
@@ -29,6 +45,13 @@ public class RemoteCursorManager {
         Color color;
         Node node;
 
+        // --- 애니메이션 상태 (프레임 엔진이 사용) ---
+        double startPosition;
+        int targetPosition;
+        long startNanos;
+        long durationNanos; // 0 이면 애니메이션 중이 아님
+        boolean layoutDirty; // 화면 좌표를 다시 계산해야 함
+
         UserCursorInfo(String nickname, Color color, Node node) {
             this.nickname = nickname;
             this.color = color;
@@ -36,35 +59,171 @@ public class RemoteCursorManager {
         }
     }
 
-    private final Map<String, UserCursorInfo> activeCursors = new HashMap<>();
+    private final Map<String, UserCursorInfo> activeCursors = new LinkedHashMap<>();
+    // 화면 좌표를 다시 계산해야 하는 커서들 (중복 없이, 들어온 순서대로 처리)
+    private final Deque<UserCursorInfo> dirtyCursors = new ArrayDeque<>();
+    private int animatingCount = 0;
+    private boolean timerRunning = false;
+
+    private final AnimationTimer frameTimer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            onFrame(now);
+        }
+    };
 
     public RemoteCursorManager(CodeArea codeArea, Pane overlayPane, EditorStateManager stateManager) {
         this.codeArea = codeArea;
         this.overlayPane = overlayPane;
         this.stateManager = stateManager;
+        this.maxLayoutsPerFrame = Math.max(1, ConfigManager.getInstance().get("collaboration", "cursorLayoutsPerFrame", Integer.class, DEFAULT_MAX_LAYOUTS_PER_FRAME));
         
-        codeArea.estimatedScrollXProperty().addListener((obs, old, n) -> 
-            Platform.runLater(this::updateAllCursorPositions));
-            
-        codeArea.estimatedScrollYProperty().addListener((obs, old, n) -> 
-            Platform.runLater(this::updateAllCursorPositions));
+        // 스크롤/리사이즈 이벤트가 여러 번 와도 다음 프레임에 한 번만 위치를 다시 계산합니다.
+        codeArea.estimatedScrollXProperty().addListener((obs, old, n) -> updateAllCursorPositions());
+        codeArea.estimatedScrollYProperty().addListener((obs, old, n) -> updateAllCursorPositions());
 
         // [추가 권장] 창 크기가 바뀌거나(Resize) 레이아웃이 변할 때도 위치를 다시 잡아야 함
-        codeArea.widthProperty().addListener((obs, old, n) -> 
-            Platform.runLater(this::updateAllCursorPositions));
-        codeArea.heightProperty().addListener((obs, old, n) -> 
-            Platform.runLater(this::updateAllCursorPositions));
+        codeArea.widthProperty().addListener((obs, old, n) -> updateAllCursorPositions());
+        codeArea.heightProperty().addListener((obs, old, n) -> updateAllCursorPositions());
         // TODO: Add more listeners if needed (e.g., for zoom)
     }
 
+    /** 커서를 애니메이션 없이 바로 position 으로 옮깁니다. 화면 반영은 다음 프레임에 이루어집니다. */
     public void updateCursor(String userId, String nickname, int position) {
+        UserCursorInfo cursorInfo = getOrCreateCursor(userId, nickname);
+        stopAnimation(cursorInfo);
+        cursorInfo.targetPosition = position;
+        setPosition(cursorInfo, position);
+    }
+
+    /**
+     * 커서를 현재 위치에서 targetPosition 까지 durationMillis 동안 부드럽게 이동시킵니다.
+     * 진행 중인 애니메이션이 있으면 현재 위치에서 새 목표로 다시 시작합니다.
+     */
+    public void animateCursor(String userId, String nickname, int targetPosition, double durationMillis) {
+        boolean isNew = !activeCursors.containsKey(userId);
+        UserCursorInfo cursorInfo = getOrCreateCursor(userId, nickname);
+        if (isNew || durationMillis <= 0) {
+            updateCursor(userId, nickname, targetPosition);
+            return;
+        }
+        if (cursorInfo.durationNanos == 0) {
+            animatingCount++;
+        }
+        cursorInfo.startPosition = cursorInfo.position;
+        cursorInfo.targetPosition = targetPosition;
+        cursorInfo.startNanos = -1; // 첫 프레임의 시각을 시작 시각으로 사용
+        cursorInfo.durationNanos = (long) (durationMillis * 1_000_000L);
+        startTimer();
+    }
+
+    /**
+     * 문서 편집에 맞춰 모든 커서(진행 중인 애니메이션의 시작점/목표점 포함)의 위치를 즉시 보정합니다.
+     * @param exceptUserId 보정하지 않을 사용자 (곧 새 목표로 애니메이션이 다시 시작될 사용자). 없으면 null
+     */
+    public void transformCursors(IntUnaryOperator transform, String exceptUserId) {
+        for (Map.Entry<String, UserCursorInfo> entry : activeCursors.entrySet()) {
+            if (entry.getKey().equals(exceptUserId)) {
+                continue;
+            }
+            UserCursorInfo cursorInfo = entry.getValue();
+            if (cursorInfo.durationNanos != 0) {
+                cursorInfo.startPosition = transform.applyAsInt((int) Math.round(cursorInfo.startPosition));
+                cursorInfo.targetPosition = transform.applyAsInt(cursorInfo.targetPosition);
+            }
+            int newPosition = transform.applyAsInt(cursorInfo.position);
+            if (newPosition != cursorInfo.position) {
+                setPosition(cursorInfo, newPosition);
+            }
+        }
+    }
+
+    /** 프레임 엔진과 커서 노드를 정리합니다. 에디터 탭이 닫힐 때 호출합니다. */
+    public void dispose() {
+        frameTimer.stop();
+        timerRunning = false;
+        dirtyCursors.clear();
+        animatingCount = 0;
+        for (UserCursorInfo cursorInfo : activeCursors.values()) {
+            overlayPane.getChildren().remove(cursorInfo.node);
+        }
+        activeCursors.clear();
+    }
+
+    private UserCursorInfo getOrCreateCursor(String userId, String nickname) {
         if (!activeCursors.containsKey(userId)) {
             createCursorForUser(userId, nickname);
         }
-        UserCursorInfo cursorInfo = activeCursors.get(userId);
+        return activeCursors.get(userId);
+    }
+
+    private void setPosition(UserCursorInfo cursorInfo, int position) {
         cursorInfo.position = position;
+        markDirty(cursorInfo);
+    }
+
+    private void markDirty(UserCursorInfo cursorInfo) {
+        if (!cursorInfo.layoutDirty) {
+            cursorInfo.layoutDirty = true;
+            dirtyCursors.add(cursorInfo);
+        }
+        startTimer();
+    }
+
+    private void stopAnimation(UserCursorInfo cursorInfo) {
+        if (cursorInfo.durationNanos != 0) {
+            cursorInfo.durationNanos = 0;
+            animatingCount--;
+        }
+    }
+
+    private void startTimer() {
+        if (!timerRunning) {
+            timerRunning = true;
+            frameTimer.start();
+        }
+    }
+
+    private void onFrame(long now) {
+        // 1. 모든 애니메이션을 이번 프레임 시각으로 보간합니다. (숫자 계산만, 레이아웃 조회 없음)
+        if (animatingCount > 0) {
+            for (UserCursorInfo cursorInfo : activeCursors.values()) {
+                if (cursorInfo.durationNanos == 0) continue;
+                if (cursorInfo.startNanos < 0) cursorInfo.startNanos = now;
+                double t = Math.min(1.0, (now - cursorInfo.startNanos) / (double) cursorInfo.durationNanos);
+                int position = (int) Math.round(Interpolator.EASE_OUT.interpolate(cursorInfo.startPosition, cursorInfo.targetPosition, t));
+                if (t >= 1.0) {
+                    position = cursorInfo.targetPosition;
+                    stopAnimation(cursorInfo);
+                }
+                if (position != cursorInfo.position) {
+                    setPosition(cursorInfo, position);
+                }
+            }
+        }
 
-        updateCursorPosition(cursorInfo);
+        // 2. 위치가 바뀐 커서만 화면 좌표를 다시 계산합니다. 프레임당 최대 maxLayoutsPerFrame 개.
+        if (!dirtyCursors.isEmpty()) {
+            int firstVisibleLine;
+            int lastVisibleLine;
+            try {
+                firstVisibleLine = codeArea.firstVisibleParToAllParIndex();
+                lastVisibleLine = codeArea.lastVisibleParToAllParIndex();
+            } catch (Exception e) {
+                firstVisibleLine = -1;
+                lastVisibleLine = -1;
+            }
+            for (int i = 0; i < maxLayoutsPerFrame && !dirtyCursors.isEmpty(); i++) {
+                UserCursorInfo cursorInfo = dirtyCursors.poll();
+                cursorInfo.layoutDirty = false;
+                updateCursorPosition(cursorInfo, firstVisibleLine, lastVisibleLine);
+            }
+        }
+
+        if (animatingCount == 0 && dirtyCursors.isEmpty()) {
+            frameTimer.stop();
+            timerRunning = false;
+        }
     }
 
     private void createCursorForUser(String userId, String nickname) {
@@ -99,7 +258,10 @@ public class RemoteCursorManager {
         activeCursors.put(userId, new UserCursorInfo(nickname, userColor, cursorNode));
     }
 
-    private void updateCursorPosition(UserCursorInfo cursorInfo) {
+    /**
+     * 커서 노드를 화면 좌표에 맞게 배치합니다. 뷰포트 밖의 커서는 좌표 조회 없이 숨깁니다.
+     */
+    private void updateCursorPosition(UserCursorInfo cursorInfo, int firstVisibleLine, int lastVisibleLine) {
         // 1. 문서 전체 범위 체크
         if (cursorInfo.position < 0 || cursorInfo.position > codeArea.getLength()) {
             cursorInfo.node.setVisible(false);
@@ -110,16 +272,12 @@ public class RemoteCursorManager {
         // 아까는 (first - 1)이었지만, 이제는 여유 없이 정확히 (first)부터 검사합니다.
         // RichTextFX의 firstVisiblePar...는 "조금이라도 보이는 줄"을 반환하므로,
         // 여기에 포함되지 않으면 아예 안 보이는 게 맞습니다.
-        int cursorLine = codeArea.offsetToPosition(cursorInfo.position, org.fxmisc.richtext.model.TwoDimensional.Bias.Forward).getMajor();
-        int firstVisibleLine = -1;
-        int lastVisibleLine = -1;
-        try {
-            firstVisibleLine = codeArea.firstVisibleParToAllParIndex();
-            lastVisibleLine = codeArea.lastVisibleParToAllParIndex();
-        } catch (Exception e) {
+        // 보이는 줄 범위는 프레임마다 한 번만 조회해서 넘겨받습니다.
+        if (firstVisibleLine < 0) {
             cursorInfo.node.setVisible(false);
             return;
         }
+        int cursorLine = codeArea.offsetToPosition(cursorInfo.position, org.fxmisc.richtext.model.TwoDimensional.Bias.Forward).getMajor();
 
         // ★ [수정] 여유분(-1, +1) 삭제! 보이는 줄이 아니면 칼같이 숨김
         if (cursorLine < firstVisibleLine || cursorLine > lastVisibleLine) {
@@ -166,7 +324,7 @@ public class RemoteCursorManager {
 
     public void updateAllCursorPositions() {
         for (UserCursorInfo cursorInfo : activeCursors.values()) {
-            updateCursorPosition(cursorInfo);
+            markDirty(cursorInfo);
         }
     }
 
@@ -0,0 +1,145 @@
+package com.ethis2s.service;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 우선순위 레인이 있는 전송 대기열입니다. 워커 스레드 하나가 {@link #take()} 로 꺼내 보냅니다.
+ *
+ * <p>EDIT 레인이 비어야 CURSOR 를, 둘 다 비어야 BULK 를 꺼냅니다. (큰 파일 요청 뒤에서 키 입력이 기다리지 않음)
+ * 같은 레인 안에서는 넣은 순서를 지키지만, 레인 사이의 순서는 바뀔 수 있습니다.
+ * CURSOR 레인은 키(파일 경로)마다 마지막 값만 남기며, 처음 들어온 자리에서 기다립니다.
+ * 넣는 쪽(FX 스레드, 패킷 배달 스레드, 타이머)은 절대 기다리지 않습니다.
+ * EDIT 레인은 버리면 문서가 어긋나므로 항상 받고(편집 연산은 OT 파이프라인 윈도우가 수를 제한함),
+ * BULK 레인은 capacity 만큼 차면 거절하여 호출한 쪽이 실패로 처리하게 하며,
+ * CURSOR 레인은 키가 capacity 개를 넘으면 가장 오래된 것을 버립니다.
+ */
+public class RequestScheduler<T> {
+
+    public enum Lane {
+        EDIT,
+        CURSOR,
+        BULK
+    }
+
+    private final int capacity;
+    private final ArrayDeque<T> edits = new ArrayDeque<>();
+    private final LinkedHashMap<String, T> cursors = new LinkedHashMap<>();
+    private final ArrayDeque<T> bulk = new ArrayDeque<>();
+
+    // --- 지표 (this 로 보호) ---
+    private final long[] enqueued = new long[Lane.values().length];
+    private final long[] dispatched = new long[Lane.values().length];
+    private final int[] maxDepth = new int[Lane.values().length];
+    private long coalesced;
+    private long rejected;
+
+    public RequestScheduler(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * EDIT 또는 BULK 레인에 넣습니다. 기다리지 않습니다.
+     * @return BULK 레인이 가득 차 넣지 못했으면 false (EDIT 레인은 항상 true)
+     */
+    public synchronized boolean offer(Lane lane, T item) {
+        if (lane == Lane.CURSOR) throw new IllegalArgumentException("Use putLatest for the cursor lane.");
+        ArrayDeque<T> queue = (lane == Lane.EDIT) ? edits : bulk;
+        if (lane == Lane.BULK && queue.size() >= capacity) {
+            rejected++;
+            return false;
+        }
+        queue.addLast(item);
+        enqueued(lane, queue.size());
+        return true;
+    }
+
+    /** CURSOR 레인에 넣습니다. 같은 key 의 아직 보내지 않은 값은 새 값으로 바뀝니다. */
+    public synchronized void putLatest(String key, T item) {
+        if (cursors.replace(key, item) != null) {
+            coalesced++;
+        } else {
+            if (cursors.size() >= capacity) {
+                Iterator<Map.Entry<String, T>> oldest = cursors.entrySet().iterator();
+                oldest.next();
+                oldest.remove();
+                coalesced++;
+            }
+            cursors.put(key, item);
+        }
+        enqueued(Lane.CURSOR, cursors.size());
+    }
+
+    private void enqueued(Lane lane, int depth) {
+        enqueued[lane.ordinal()]++;
+        maxDepth[lane.ordinal()] = Math.max(maxDepth[lane.ordinal()], depth);
+        notifyAll();
+    }
+
+    /** 우선순위가 가장 높은 요청을 꺼냅니다. 없으면 기다립니다. */
+    public synchronized T take() throws InterruptedException {
+        while (true) {
+            if (!edits.isEmpty()) {
+                return dispatch(Lane.EDIT, edits.pollFirst());
+            }
+            if (!cursors.isEmpty()) {
+                Iterator<T> it = cursors.values().iterator();
+                T item = it.next();
+                it.remove();
+                return dispatch(Lane.CURSOR, item);
+            }
+            if (!bulk.isEmpty()) {
+                return dispatch(Lane.BULK, bulk.pollFirst());
+            }
+            wait();
+        }
+    }
+
+    private T dispatch(Lane lane, T item) {
+        dispatched[lane.ordinal()]++;
+        return item;
+    }
+
+    public synchronized int getDepth(Lane lane) {
+        switch (lane) {
+            case EDIT: return edits.size();
+            case CURSOR: return cursors.size();
+            default: return bulk.size();
+        }
+    }
+
+    public synchronized int getMaxDepth(Lane lane) {
+        return maxDepth[lane.ordinal()];
+    }
+
+    public synchronized long getEnqueuedCount(Lane lane) {
+        return enqueued[lane.ordinal()];
+    }
+
+    public synchronized long getDispatchedCount(Lane lane) {
+        return dispatched[lane.ordinal()];
+    }
+
+    /** 보내기 전에 새 값으로 대체되어(또는 밀려나) 보내지 않은 커서 갱신 수 */
+    public synchronized long getCoalescedCount() {
+        return coalesced;
+    }
+
+    /** BULK 레인이 가득 차 거절한 요청 수 */
+    public synchronized long getRejectedCount() {
+        return rejected;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder("RequestScheduler[");
+        for (Lane lane : Lane.values()) {
+            sb.append(lane).append(" depth=").append(getDepth(lane))
+              .append(" max=").append(maxDepth[lane.ordinal()])
+              .append(" sent=").append(dispatched[lane.ordinal()]).append(", ");
+        }
+        return sb.append("coalesced=").append(coalesced).append(", rejected=").append(rejected).append(']').toString();
+    }
+}
@@ -0,0 +1,81 @@
+package com.ethis2s.service;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 송신 경로의 누적 카운터입니다. (패킷 수, 평문 바이트 수, flush 횟수)
+ *
+ * <p>flush 는 이벤트 루프가 묶어 둔 패킷들을 TLS 로 내보낸 한 번의 배치를 뜻합니다.
+ * 초당 값은 {@link #snapshot()} 두 개를 {@link Snapshot#describeSince} 로 비교해 구합니다.
+ * 재연결해도 같은 인스턴스를 계속 사용하므로 값은 연결이 바뀌어도 이어집니다.
+ */
+public class SendStatistics {
+
+    private final LongAdder packets = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+
+    void recordQueued(int packetCount, long byteCount) {
+        packets.add(packetCount);
+        bytes.add(byteCount);
+    }
+
+    void recordFlush() {
+        flushes.increment();
+    }
+
+    public long getPackets() {
+        return packets.sum();
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    public long getFlushes() {
+        return flushes.sum();
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(packets.sum(), bytes.sum(), flushes.sum(), System.nanoTime());
+    }
+
+    public static final class Snapshot {
+        public final long packets;
+        public final long bytes;
+        public final long flushes;
+        public final long nanoTime;
+
+        private Snapshot(long packets, long bytes, long flushes, long nanoTime) {
+            this.packets = packets;
+            this.bytes = bytes;
+            this.flushes = flushes;
+            this.nanoTime = nanoTime;
+        }
+
+        public double packetsPerSecond(Snapshot earlier) {
+            return perSecond(packets - earlier.packets, earlier);
+        }
+
+        public double bytesPerSecond(Snapshot earlier) {
+            return perSecond(bytes - earlier.bytes, earlier);
+        }
+
+        public double flushesPerSecond(Snapshot earlier) {
+            return perSecond(flushes - earlier.flushes, earlier);
+        }
+
+        private double perSecond(long delta, Snapshot earlier) {
+            long elapsed = nanoTime - earlier.nanoTime;
+            return elapsed <= 0 ? 0.0 : delta * 1_000_000_000.0 / elapsed;
+        }
+
+        /** 예: "42.0 packets/s, 3120.5 bytes/s, 6.0 flushes/s (7.0 packets/flush)" */
+        public String describeSince(Snapshot earlier) {
+            long flushDelta = flushes - earlier.flushes;
+            double perFlush = flushDelta == 0 ? 0.0 : (double) (packets - earlier.packets) / flushDelta;
+            return String.format("%.1f packets/s, %.1f bytes/s, %.1f flushes/s (%.1f packets/flush)",
+                packetsPerSecond(earlier), bytesPerSecond(earlier), flushesPerSecond(earlier), perFlush);
+        }
+    }
+}
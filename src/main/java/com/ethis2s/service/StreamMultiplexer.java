@@ -0,0 +1,113 @@
+package com.ethis2s.service;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.List;
+
+import com.ethis2s.model.ProtocolConstants;
+
+/**
+ * 대용량 메시지를 논리 스트림으로 나눠, 전송 큐가 빌 때마다 조각 몇 개씩만 내보냅니다.
+ *
+ * <p>조각은 PTYPE_STREAM 패킷이며 페이로드는 [varint 스트림 ID] + (첫 조각만) [원래 payloadType 1바이트] + 데이터입니다.
+ * 마지막 조각만 UNFRAGED 입니다. 받는 쪽은 userField 가 아니라 스트림 ID 로 조각을 모으므로,
+ * 여러 스트림의 조각과 일반 패킷(편집, 커서)이 사이사이에 섞여도 됩니다.
+ * 스트림끼리는 조각 하나씩 돌아가며 보내고(라운드 로빈), 한 스트림 안의 조각 순서만 지킵니다.
+ * 그래서 스트림으로 보낸 메시지는 뒤에 보낸 메시지에 추월될 수 있습니다. 순서가 상관없는 요청만 넣어야 합니다.
+ * 연결마다 새로 만듭니다. (스트림 ID 는 연결의 한 방향 안에서만 유일)
+ */
+final class StreamMultiplexer implements TlsChannelTransport.BulkSource {
+
+    // varint 스트림 ID(최대 5바이트) + 원래 payloadType 1바이트
+    static final int MAX_STREAM_HEADER = 6;
+    private static final int MAX_STREAM_ID = 0x0FFFFFFF;
+
+    private final int chunkSize;
+    private final ArrayDeque<Stream> streams = new ArrayDeque<>();
+    private int nextStreamId = 1;
+
+    private static final class Stream {
+        final int id;
+        final byte[] payload;
+        final byte payloadType;
+        final int userField;
+        int offset;
+
+        Stream(int id, byte[] payload, byte payloadType, int userField) {
+            this.id = id;
+            this.payload = payload;
+            this.payloadType = payloadType;
+            this.userField = userField;
+        }
+    }
+
+    /** @param maxPacketPayload 패킷 하나에 담을 최대 페이로드 크기 (스트림 헤더 포함) */
+    StreamMultiplexer(int maxPacketPayload) {
+        this.chunkSize = maxPacketPayload - MAX_STREAM_HEADER;
+    }
+
+    /** 메시지를 새 스트림으로 등록합니다. 실제 전송은 이벤트 루프가 {@link #poll} 로 가져갈 때 일어납니다. */
+    synchronized void add(byte[] payload, byte payloadType, int userField) {
+        streams.addLast(new Stream(nextStreamId, payload, payloadType, userField));
+        nextStreamId = (nextStreamId == MAX_STREAM_ID) ? 1 : nextStreamId + 1;
+    }
+
+    @Override
+    public synchronized boolean hasPending() {
+        return !streams.isEmpty();
+    }
+
+    /** 아직 다 보내지 못한 스트림 수 */
+    synchronized int getActiveStreams() {
+        return streams.size();
+    }
+
+    @Override
+    public synchronized int poll(int budget, List<ByteBuffer> out) {
+        int packets = 0;
+        int bytes = 0;
+        byte[] header = new byte[MAX_STREAM_HEADER];
+        while (bytes < budget && !streams.isEmpty()) {
+            Stream stream = streams.pollFirst();
+            int headerLength = writeVarInt(header, stream.id);
+            if (stream.offset == 0) header[headerLength++] = stream.payloadType;
+            int length = Math.min(chunkSize, stream.payload.length - stream.offset);
+            boolean last = stream.offset + length >= stream.payload.length;
+            bytes += PacketFraming.frame(header, headerLength, stream.payload, stream.offset, length,
+                last ? ProtocolConstants.UNFRAGED : ProtocolConstants.FRAGED,
+                ProtocolConstants.PTYPE_STREAM, stream.userField, out);
+            packets++;
+            stream.offset += length;
+            if (!last) streams.addLast(stream);
+        }
+        return packets;
+    }
+
+    private static int writeVarInt(byte[] out, int value) {
+        int i = 0;
+        while ((value & ~0x7F) != 0) {
+            out[i++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[i++] = (byte) value;
+        return i;
+    }
+
+    /** PTYPE_STREAM 페이로드 앞의 varint 스트림 ID 길이. 잘못된 형식이면 IllegalArgumentException */
+    static int streamIdLength(byte[] payload) {
+        for (int i = 0; i < 5 && i < payload.length; i++) {
+            if ((payload[i] & 0x80) == 0) return i + 1;
+        }
+        throw new IllegalArgumentException("Malformed stream header.");
+    }
+
+    /** PTYPE_STREAM 페이로드 앞의 스트림 ID */
+    static int streamId(byte[] payload) {
+        int length = streamIdLength(payload);
+        int value = 0;
+        for (int i = 0; i < length; i++) {
+            value |= (payload[i] & 0x7F) << (7 * i);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,534 @@
+package com.ethis2s.service;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+
+/**
+ * SocketChannel + SSLEngine 기반의 논블로킹 TLS 전송 계층입니다.
+ *
+ * <p>스레드 하나("socket-event-loop")가 Selector 로 연결, TLS 핸드셰이크, 읽기, 쓰기를 모두 처리합니다.
+ * 송신 측은 {@link #send} 로 패킷 조각(헤더, 원본 페이로드 슬라이스, CRC)을 큐에 넣기만 하며,
+ * 이벤트 루프는 coalesceMillis 동안(또는 coalesceBytes 만큼 쌓일 때까지) 모인 패킷들을 한 번의 gathering wrap 으로
+ * TLS 레코드에 담아 보냅니다. (패킷마다 flush 하지 않음) 전송량은 {@link SendStatistics} 에 기록됩니다.
+ * {@link BulkSource} 를 붙이면 큐에 보낼 패킷이 없을 때마다 대용량 데이터를 bulkQuantum 바이트씩만 가져와 보내므로,
+ * 그 사이에 들어온 일반 패킷은 대용량 전송이 끝나기를 기다리지 않습니다.
+ * 수신 측은 복호화된 바이트에서 SocketProtocol 헤더의 길이 필드로 패킷 경계를 잘라 {@link Listener#onPacket} 으로 넘깁니다.
+ * 암호문 입출력 버퍼는 direct ByteBuffer 를 사용합니다.
+ */
+public class TlsChannelTransport {
+
+    private static final int HEADER_SIZE = 4;
+    private static final int MIN_PACKET_SIZE = 8;
+    private static final int MAX_PACKET_SIZE = 0x1FFF; // 헤더의 13비트 길이 필드
+    // 한 번의 wrap 에 넘길 최대 패킷 수 (TLS 레코드 하나는 최대 16KB 평문)
+    private static final int MAX_GATHER = 256;
+
+    public interface Listener {
+        /** 이벤트 루프 스레드에서 완성된 패킷(헤더 포함) 하나마다 호출됩니다. */
+        void onPacket(byte[] packet);
+
+        /** 서버가 연결을 끊었거나 입출력 오류가 났을 때 호출됩니다. {@link #close()} 로 닫은 경우에는 호출되지 않습니다. */
+        void onClosed(IOException cause);
+    }
+
+    /** 일반 패킷보다 뒤로 미뤄 조금씩 보낼 대용량 데이터. 여러 스레드에서 채우고 이벤트 루프가 꺼냅니다. */
+    public interface BulkSource {
+        boolean hasPending();
+
+        /** 대략 budget 바이트만큼의 완성된 패킷 조각들을 out 에 추가하고, 추가한 패킷 수를 돌려줍니다. */
+        int poll(int budget, List<ByteBuffer> out);
+    }
+
+    private final SSLContext sslContext;
+    private final InetSocketAddress address;
+    private final Listener listener;
+    private final long coalesceNanos;
+    private final long coalesceBytes;
+    private final SendStatistics statistics;
+    private volatile BulkSource bulkSource;
+    private volatile int bulkQuantum;
+    private final List<ByteBuffer> bulkBatch = new ArrayList<>(); // 이벤트 루프 스레드에서만 사용
+
+    private Selector selector;
+    private SocketChannel channel;
+    private SelectionKey selectionKey;
+    private SSLEngine engine;
+    private ByteBuffer netIn;   // 받은 암호문 (쓰기 모드)
+    private ByteBuffer netOut;  // 보낼 암호문 (쓰기 모드, position 까지가 아직 못 보낸 데이터)
+    private ByteBuffer appIn;   // 복호화된 평문, 패킷 경계 전까지 누적 (쓰기 모드)
+
+    // 다른 스레드가 넣고 이벤트 루프가 꺼낸다. sendLock 으로 한 번의 send 에 속한 패킷(조각)들이 섞이지 않게 한다.
+    private final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+    private final Object sendLock = new Object();
+    // sendLock 으로 보호하며 쓰고, 이벤트 루프는 대기 시간 계산을 위해 잠금 없이 읽는다.
+    private volatile long pendingBytes = 0;     // outbound 에 있는 평문 바이트 수
+    private volatile long batchStartNanos = 0;  // outbound 가 비어 있다가 처음 채워진 시각
+    // 이벤트 루프 전용: wrap 중이어서 일부만 소비된 패킷들
+    private final ArrayDeque<ByteBuffer> writing = new ArrayDeque<>();
+
+    private final CompletableFuture<Void> handshake = new CompletableFuture<>();
+    private volatile boolean open = false;
+    private volatile boolean closedByUser = false;
+    private volatile boolean handshakeSucceeded = false;
+    private Thread eventLoop;
+
+    public TlsChannelTransport(SSLContext sslContext, InetSocketAddress address, Listener listener) {
+        this(sslContext, address, listener, 0, 0, new SendStatistics());
+    }
+
+    /**
+     * @param coalesceMillis 첫 패킷이 큐에 들어온 뒤 다른 패킷을 더 기다리는 시간. 0 이면 바로 보낸다.
+     * @param coalesceBytes 이만큼 쌓이면 기다리지 않고 보낸다.
+     */
+    public TlsChannelTransport(SSLContext sslContext, InetSocketAddress address, Listener listener,
+                               int coalesceMillis, int coalesceBytes, SendStatistics statistics) {
+        this.sslContext = sslContext;
+        this.address = address;
+        this.listener = listener;
+        this.coalesceNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, coalesceMillis));
+        this.coalesceBytes = Math.max(1, coalesceBytes);
+        this.statistics = statistics;
+    }
+
+    /**
+     * 연결과 TLS 핸드셰이크가 끝날 때까지 기다립니다.
+     * @throws IOException 연결 실패, 핸드셰이크 실패 또는 timeoutMillis 초과
+     */
+    public void connect(int timeoutMillis) throws IOException {
+        selector = Selector.open();
+        channel = SocketChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+            engine = sslContext.createSSLEngine(address.getHostString(), address.getPort());
+            engine.setUseClientMode(true);
+            netIn = ByteBuffer.allocateDirect(engine.getSession().getPacketBufferSize());
+            netOut = ByteBuffer.allocateDirect(engine.getSession().getPacketBufferSize());
+            appIn = ByteBuffer.allocateDirect(engine.getSession().getApplicationBufferSize() + MAX_PACKET_SIZE);
+
+            boolean connected = channel.connect(address);
+            selectionKey = channel.register(selector, connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT);
+        } catch (IOException e) {
+            closeResources();
+            throw e;
+        }
+
+        open = true;
+        eventLoop = new Thread(this::runEventLoop, "socket-event-loop");
+        eventLoop.setDaemon(true);
+        eventLoop.start();
+
+        try {
+            handshake.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            close();
+            throw new IOException("Connection to " + address + " timed out.");
+        } catch (ExecutionException e) {
+            close();
+            Throwable cause = e.getCause();
+            throw (cause instanceof IOException) ? (IOException) cause : new IOException(cause);
+        } catch (InterruptedException e) {
+            close();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while connecting.");
+        }
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    public SendStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * 패킷 packetCount 개를 이루는 버퍼 조각들을 순서대로 보내도록 예약합니다.
+     * 여러 스레드에서 호출해도 한 호출의 조각들은 연속해서 전송됩니다. 버퍼는 전송이 끝날 때까지 수정하면 안 됩니다.
+     */
+    public void send(List<ByteBuffer> segments, int packetCount) throws IOException {
+        if (!open) throw new IOException("Connection is not open.");
+        long size = 0;
+        for (ByteBuffer segment : segments) {
+            size += segment.remaining();
+        }
+        boolean wakeup;
+        synchronized (sendLock) {
+            outbound.addAll(segments);
+            long before = pendingBytes;
+            if (before == 0) batchStartNanos = System.nanoTime();
+            pendingBytes = before + size;
+            // 이벤트 루프는 배치가 시작될 때(대기 시간 설정)와 크기 기준을 넘을 때만 깨운다.
+            wakeup = before == 0 || (before < coalesceBytes && before + size >= coalesceBytes);
+        }
+        statistics.recordQueued(packetCount, size);
+        if (wakeup) selector.wakeup();
+    }
+
+    /**
+     * 대용량 데이터 공급원을 붙입니다. 이벤트 루프는 보낼 일반 패킷이 없을 때마다 quantum 바이트씩 가져가 보냅니다.
+     * 공급원에 새 데이터를 넣은 뒤에는 {@link #bulkAvailable()} 를 호출해야 합니다.
+     */
+    public void setBulkSource(BulkSource source, int quantum) {
+        this.bulkQuantum = Math.max(1, quantum);
+        this.bulkSource = source;
+    }
+
+    /** 쉬고 있는 이벤트 루프를 깨워 대용량 데이터를 보내게 합니다. */
+    public void bulkAvailable() {
+        Selector s = selector;
+        if (s != null) s.wakeup();
+    }
+
+    /** 연결을 닫고 이벤트 루프가 끝나기를 최대 waitMillis 동안 기다립니다. */
+    public void close(long waitMillis) {
+        close();
+        Thread loop = eventLoop;
+        if (loop != null && loop != Thread.currentThread()) {
+            try {
+                loop.join(waitMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public void close() {
+        closedByUser = true;
+        open = false;
+        Selector s = selector;
+        if (s != null) s.wakeup();
+        if (eventLoop == null) closeResources(); // 이벤트 루프가 시작되기 전
+    }
+
+    public boolean isTerminated() {
+        return eventLoop == null || !eventLoop.isAlive();
+    }
+
+    // --- Event loop ---
+
+    private void runEventLoop() {
+        IOException failure = null;
+        try {
+            if (channel.isConnected()) {
+                beginHandshake();
+            }
+            while (open) {
+                long waitMillis = flushWaitMillis();
+                if (waitMillis == 0) {
+                    selector.selectNow();
+                } else if (waitMillis < 0) {
+                    selector.select();
+                } else {
+                    selector.select(waitMillis);
+                }
+                if (!open) break;
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isConnectable() && channel.finishConnect()) {
+                        key.interestOps(SelectionKey.OP_READ);
+                        beginHandshake();
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        read();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        flushNetOut();
+                    }
+                }
+                if (handshake.isDone()) {
+                    writePending();
+                }
+                updateInterest();
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (RuntimeException e) {
+            failure = new IOException(e);
+        } finally {
+            open = false;
+            IOException cause = (failure != null) ? failure : new EOFException("Connection closed.");
+            handshake.completeExceptionally(cause); // 이미 연결됐으면 아무 일도 없다.
+            sendCloseNotify();
+            closeResources();
+            // 연결 도중 실패는 connect() 가 예외로 알리고, close() 로 닫은 경우는 알리지 않는다.
+            if (handshakeSucceeded && !closedByUser) {
+                listener.onClosed(cause);
+            }
+        }
+    }
+
+    private void beginHandshake() throws IOException {
+        engine.beginHandshake();
+        processHandshake(engine.getHandshakeStatus());
+    }
+
+    /** NEED_WRAP / NEED_TASK 를 처리하고, 데이터가 더 필요하면(NEED_UNWRAP) 돌아갑니다. */
+    private void processHandshake(HandshakeStatus status) throws IOException {
+        while (true) {
+            switch (status) {
+                case NEED_TASK:
+                    Runnable task;
+                    while ((task = engine.getDelegatedTask()) != null) {
+                        task.run();
+                    }
+                    status = engine.getHandshakeStatus();
+                    break;
+                case NEED_WRAP:
+                    status = wrap(new ByteBuffer[] { ByteBuffer.allocate(0) }).getHandshakeStatus();
+                    break;
+                case FINISHED:
+                    handshakeFinished();
+                    return;
+                case NOT_HANDSHAKING:
+                    // FINISHED 가 이미 지나간 결과(예: TLS 1.3 세션 티켓 처리 후)에서도 완료를 놓치지 않는다.
+                    handshakeFinished();
+                    return;
+                default: // NEED_UNWRAP, NEED_UNWRAP_AGAIN
+                    return;
+            }
+        }
+    }
+
+    private void handshakeFinished() {
+        if (!handshake.isDone()) {
+            handshakeSucceeded = true;
+            handshake.complete(null);
+        }
+    }
+
+    private SSLEngineResult wrap(ByteBuffer[] sources) throws IOException {
+        while (true) {
+            SSLEngineResult result = engine.wrap(sources, netOut);
+            switch (result.getStatus()) {
+                case OK:
+                    if (result.getHandshakeStatus() == HandshakeStatus.FINISHED) handshakeFinished();
+                    flushNetOut();
+                    return result;
+                case BUFFER_OVERFLOW:
+                    // 아직 못 보낸 암호문 때문에 자리가 없다. 한 번 비워보고, 그래도 모자라면 버퍼를 키운다.
+                    int before = netOut.position();
+                    flushNetOut();
+                    if (netOut.position() == before) {
+                        netOut = grow(netOut, engine.getSession().getPacketBufferSize());
+                    }
+                    break;
+                case CLOSED:
+                    throw new SSLException("TLS session closed.");
+                default:
+                    throw new SSLException("Unexpected wrap status: " + result.getStatus());
+            }
+        }
+    }
+
+    private void read() throws IOException {
+        int n = channel.read(netIn);
+        if (n < 0) {
+            throw new EOFException("Connection closed by server.");
+        }
+        unwrap();
+        deliverPackets();
+    }
+
+    private void unwrap() throws IOException {
+        netIn.flip();
+        try {
+            while (netIn.hasRemaining() || engine.getHandshakeStatus() == HandshakeStatus.NEED_UNWRAP_AGAIN) {
+                SSLEngineResult result = engine.unwrap(netIn, appIn);
+                switch (result.getStatus()) {
+                    case OK:
+                        break;
+                    case BUFFER_UNDERFLOW:
+                        // 레코드가 아직 다 도착하지 않았다. 버퍼가 레코드보다 작으면 키운다.
+                        if (netIn.limit() == netIn.capacity()) {
+                            netIn.compact();
+                            netIn = grow(netIn, engine.getSession().getPacketBufferSize());
+                            netIn.flip();
+                        }
+                        return;
+                    case BUFFER_OVERFLOW:
+                        // 완성된 패킷을 먼저 넘겨 자리를 만들고, 그래도 모자라면 키운다.
+                        int before = appIn.position();
+                        deliverPackets();
+                        if (appIn.position() == before) {
+                            appIn = grow(appIn, engine.getSession().getApplicationBufferSize());
+                        }
+                        continue;
+                    case CLOSED:
+                        throw new EOFException("TLS session closed by server.");
+                }
+                processHandshake(result.getHandshakeStatus());
+                if (result.bytesConsumed() == 0 && result.bytesProduced() == 0
+                        && engine.getHandshakeStatus() != HandshakeStatus.NEED_UNWRAP_AGAIN) {
+                    return;
+                }
+            }
+        } finally {
+            netIn.compact();
+        }
+    }
+
+    /** appIn 에 모인 평문에서 완성된 패킷을 잘라 넘깁니다. */
+    private void deliverPackets() {
+        appIn.flip();
+        try {
+            while (appIn.remaining() >= HEADER_SIZE) {
+                int header = appIn.duplicate().order(ByteOrder.LITTLE_ENDIAN).getInt();
+                int packetLength = (header >> 4) & MAX_PACKET_SIZE;
+                if (packetLength < MIN_PACKET_SIZE) {
+                    appIn.position(appIn.position() + HEADER_SIZE); // 잘못된 헤더는 건너뛴다. (기존 수신 루프와 동일)
+                    continue;
+                }
+                if (appIn.remaining() < packetLength) break;
+                byte[] packet = new byte[packetLength];
+                appIn.get(packet);
+                listener.onPacket(packet);
+            }
+        } finally {
+            appIn.compact();
+        }
+    }
+
+    /**
+     * 묶어 둔 패킷을 지금 보내야 하면 0, 더 기다려야 하면 남은 밀리초, 보낼 것이 없으면 -1 을 돌려줍니다.
+     */
+    private long flushWaitMillis() {
+        // 이전 배치가 소켓 버퍼에 막혀 있으면 OP_WRITE 를 기다린다. (그 사이 쌓인 패킷은 다음 배치가 된다)
+        if (!handshake.isDone() || !writing.isEmpty()) return -1;
+        if (bulkReady()) return 0;
+        if (pendingBytes == 0) return -1;
+        if (pendingBytes >= coalesceBytes) return 0;
+        long remaining = batchStartNanos + coalesceNanos - System.nanoTime();
+        return remaining <= 0 ? 0 : Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining + 999_999));
+    }
+
+    // 소켓 버퍼가 막혀 있지 않고 보낼 대용량 데이터가 있다.
+    private boolean bulkReady() {
+        BulkSource source = bulkSource;
+        return source != null && netOut.position() == 0 && source.hasPending();
+    }
+
+    /**
+     * 묶음이 찼거나 대기 시간이 지났으면 큐의 패킷들을 gathering wrap 으로 암호화해 보냅니다. 소켓 버퍼가 차면 OP_WRITE 를 기다립니다.
+     * 큐가 비어 있으면 대용량 데이터를 bulkQuantum 만큼만 보내고 루프로 돌아가, 그 사이 들어온 패킷이 다음 차례가 되게 합니다.
+     */
+    private void writePending() throws IOException {
+        if (flushWaitMillis() == 0) {
+            // 대용량 전송 중에는 어차피 계속 쓰고 있으므로 묶음 대기 시간을 기다리지 않고 먼저 보낸다.
+            if (pendingBytes > 0) {
+                synchronized (sendLock) {
+                    ByteBuffer next;
+                    while ((next = outbound.poll()) != null) {
+                        writing.add(next);
+                    }
+                    pendingBytes = 0;
+                }
+                statistics.recordFlush();
+            } else {
+                pollBulk();
+            }
+        }
+        while (!writing.isEmpty() && netOut.position() == 0) {
+            int count = Math.min(writing.size(), MAX_GATHER);
+            ByteBuffer[] sources = new ByteBuffer[count];
+            Iterator<ByteBuffer> it = writing.iterator();
+            for (int i = 0; i < count; i++) {
+                sources[i] = it.next();
+            }
+            wrap(sources);
+            while (!writing.isEmpty() && !writing.peekFirst().hasRemaining()) {
+                writing.pollFirst();
+            }
+        }
+    }
+
+    private void pollBulk() {
+        BulkSource source = bulkSource;
+        if (source == null) return;
+        int packets = source.poll(bulkQuantum, bulkBatch);
+        if (packets == 0) return;
+        long size = 0;
+        for (ByteBuffer segment : bulkBatch) {
+            size += segment.remaining();
+        }
+        writing.addAll(bulkBatch);
+        bulkBatch.clear();
+        statistics.recordQueued(packets, size);
+        statistics.recordFlush();
+    }
+
+    private void flushNetOut() throws IOException {
+        netOut.flip();
+        try {
+            channel.write(netOut);
+        } finally {
+            netOut.compact();
+        }
+    }
+
+    private void updateInterest() {
+        if (!selectionKey.isValid() || (selectionKey.interestOps() & SelectionKey.OP_CONNECT) != 0) return;
+        boolean needWrite = netOut.position() > 0;
+        selectionKey.interestOps(SelectionKey.OP_READ | (needWrite ? SelectionKey.OP_WRITE : 0));
+    }
+
+    private void sendCloseNotify() {
+        if (engine == null || channel == null || !channel.isConnected() || !handshakeSucceeded) return;
+        try {
+            engine.closeOutbound();
+            netOut.clear();
+            engine.wrap(ByteBuffer.allocate(0), netOut);
+            flushNetOut(); // 논블로킹이므로 보낼 수 있는 만큼만 (best effort)
+        } catch (IOException | RuntimeException e) {
+            // 닫는 중 오류는 무시
+        }
+    }
+
+    private void closeResources() {
+        try {
+            if (channel != null) channel.close();
+        } catch (IOException e) {
+            // ignore
+        }
+        try {
+            if (selector != null) selector.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int atLeast) {
+        ByteBuffer bigger = ByteBuffer.allocateDirect(Math.max(buffer.capacity() * 2, buffer.position() + atLeast));
+        buffer.flip();
+        bigger.put(buffer);
+        return bigger;
+    }
+}
@@ -0,0 +1,18 @@
+package com.ethis2s.util;
+
+import com.ethis2s.model.Operation;
+
+/**
+ * 에디터 탭의 동시 편집을 담당하는 엔진의 공통 인터페이스입니다.
+ * EditorInputManager 는 사용자 편집을 이 인터페이스로만 넘기므로, 서버 순서 기반 OT({@link OTManager})와
+ * 순서가 필요 없는 CRDT({@link CrdtManager}) 중 어느 것이 붙어 있는지 알 필요가 없습니다.
+ * 사용할 엔진은 설정의 collaboration.engine ("ot" / "crdt") 으로 고릅니다.
+ */
+public interface CollaborationEngine {
+
+    /** CodeArea 에 이미 반영된 로컬 편집을 다른 참여자에게 전파합니다. */
+    void sendOperation(Operation op);
+
+    /** 탭이 닫히거나 동시 편집이 일시정지될 때 엔진의 리소스를 정리합니다. */
+    void dispose();
+}
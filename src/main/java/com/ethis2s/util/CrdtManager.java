@@ -0,0 +1,228 @@
+package com.ethis2s.util;
+
+import com.ethis2s.controller.ProjectController;
+import com.ethis2s.crdt.CrdtUpdate;
+import com.ethis2s.crdt.RgaDocument;
+import com.ethis2s.model.Operation;
+import com.ethis2s.model.TextOperation;
+import com.ethis2s.ot.OperationTransformer;
+import com.ethis2s.service.ChangeInitiator;
+import com.ethis2s.service.RemoteCursorManager;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import javafx.application.Platform;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 서버 순서 없이 동작하는 CRDT({@link RgaDocument}) 기반 동시 편집 엔진입니다.
+ *
+ * <p>로컬 편집은 문서에 바로 확정되고 변경 묶음으로 인코딩되어 전송되며, ACK 나 rebase 가 없습니다.
+ * 서버는 변경 묶음을 변환하지 않고 기록/중계만 하면 되고, 원격 변경 묶음은 도착 순서와 중복에 상관없이 적용됩니다.
+ *
+ * <p>탭을 열면 서버에 CRDT 상태를 요청하고, 응답이 올 때까지는 에디터를 읽기 전용으로 둡니다.
+ * crdtStateTimeoutMillis 안에 응답이 없으면 탭을 연 쪽이 OT 엔진으로 바꿉니다.
+ * 응답 형식: {@code {path, state: base64 | "", base?: string, updates: [base64, ...]}}.
+ * state 가 비어 있으면 base(없으면 탭에 불러온 파일 내용)를 초기 문서로 보고 updates 를 적용합니다.
+ * 모든 상태는 FX 스레드에서만 다룹니다.
+ */
+public class CrdtManager implements CollaborationEngine {
+
+    private static final int DEFAULT_SNAPSHOT_INTERVAL = 200;
+    private static final int DEFAULT_STATE_TIMEOUT_MILLIS = 5000;
+    // 로컬 입력이 문서에 반영되기를 기다리며 원격 변경 묶음을 미룰 수 있는 최대 펄스 수
+    private static final int MAX_REMOTE_DEFERRALS = 10;
+
+    // --- 커서 애니메이션 시간 (OTManager 와 동일) ---
+    private static final double DELETE_CURSOR_MILLIS = 30;
+    private static final double INSERT_CURSOR_MILLIS = 120;
+
+    private final ProjectController projectController;
+    private final HybridManager hybridManager;
+    private final String filePath;
+    private final long siteId;
+    private final int snapshotInterval;
+
+    private RgaDocument document; // 상태 응답을 받기 전에는 null
+    // 상태 응답 전에 도착한 원격 변경 묶음
+    private final List<BufferedUpdate> bufferedUpdates = new ArrayList<>();
+    private int updatesSinceSnapshot = 0;
+    private boolean disposed = false;
+
+    /** 상태 응답 전에 도착한 원격 변경 묶음 하나 (요청자, 인코딩된 묶음) */
+    private record BufferedUpdate(String requesterId, byte[] update) {}
+
+    public CrdtManager(EditorContext context, HybridManager hybridManager) {
+        this.projectController = context.getProjectController();
+        this.filePath = context.getFilePath();
+        this.hybridManager = hybridManager;
+        this.snapshotInterval = ConfigManager.getInstance().get("collaboration", "crdtSnapshotInterval", Integer.class, DEFAULT_SNAPSHOT_INTERVAL);
+        // 사이트 ID 는 세션마다 새로 뽑는다. (0 은 초기 내용을 뜻하는 GENESIS_SITE 이므로 제외)
+        long id;
+        do {
+            id = new SecureRandom().nextLong() & Long.MAX_VALUE;
+        } while (id == RgaDocument.GENESIS_SITE);
+        this.siteId = id;
+    }
+
+    /**
+     * 탭에 서버 내용이 채워진 직후 호출합니다. 상태 응답이 올 때까지 로컬 편집을 막고 CRDT 상태를 요청합니다.
+     * 제한 시간 안에 응답이 없으면(CRDT 상태를 주지 않는 서버) onUnavailable 을 FX 스레드에서 호출합니다.
+     * 그 뒤에는 이 엔진을 쓰지 않으므로, 늦게 온 응답은 탭에서 엔진을 찾지 못해 버려집니다.
+     */
+    public void requestInitialState(Runnable onUnavailable) {
+        requestState();
+        int timeoutMillis = ConfigManager.getInstance().get("collaboration", "crdtStateTimeoutMillis", Integer.class, DEFAULT_STATE_TIMEOUT_MILLIS);
+        CompletableFuture.delayedExecutor(timeoutMillis, TimeUnit.MILLISECONDS).execute(() -> Platform.runLater(() -> {
+            if (disposed || document != null) return;
+            System.err.println("[CrdtManager] No CRDT state for " + filePath + " within " + timeoutMillis + " ms. Falling back to OT.");
+            onUnavailable.run();
+        }));
+    }
+
+    private void requestState() {
+        hybridManager.getCodeArea().setEditable(false);
+        projectController.crdtStateRequest(filePath);
+    }
+
+    /**
+     * 서버가 보낸 CRDT 상태로 문서를 만들고, CodeArea 내용이 다르면 맞춘 뒤 편집을 허용합니다.
+     */
+    public void handleStateResponse(JSONObject response) {
+        if (disposed) return;
+        try {
+            String state = response.optString("state", "");
+            if (!state.isEmpty()) {
+                document = RgaDocument.fromState(siteId, Base64.getDecoder().decode(state));
+            } else {
+                String base = response.has("base") ? response.getString("base") : hybridManager.getCodeArea().getText();
+                document = new RgaDocument(siteId, base);
+            }
+            JSONArray updates = response.optJSONArray("updates");
+            if (updates != null) {
+                for (int i = 0; i < updates.length(); i++) {
+                    document.applyRemote(CrdtUpdate.decode(Base64.getDecoder().decode(updates.getString(i))));
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("[CrdtManager] Invalid CRDT state for " + filePath + ": " + e.getMessage());
+            document = null;
+            return; // 읽기 전용으로 남겨 둔다. 사용자는 일시정지/재동기화로 다시 열 수 있다.
+        }
+
+        String text = document.getText();
+        if (!text.equals(hybridManager.getCodeArea().getText())) {
+            hybridManager.prepareForLargeUpdate();
+            try {
+                hybridManager.controlledReplaceText(0, hybridManager.getCodeArea().getLength(), text, ChangeInitiator.SYSTEM);
+            } finally {
+                hybridManager.finishLargeUpdate();
+            }
+            hybridManager.resetInitiatorToUser();
+        }
+
+        List<BufferedUpdate> buffered = new ArrayList<>(bufferedUpdates);
+        bufferedUpdates.clear();
+        for (BufferedUpdate entry : buffered) {
+            handleRemoteUpdate(entry.requesterId(), entry.update());
+        }
+        hybridManager.getCodeArea().setEditable(true);
+    }
+
+    @Override
+    public void sendOperation(Operation op) {
+        if (disposed || document == null) return;
+        updateRemoteCursorsLocally(op);
+        CrdtUpdate update = document.applyLocal(op.getTextOperation());
+        if (update.isEmpty()) return;
+
+        if (++updatesSinceSnapshot >= snapshotInterval && snapshotInterval > 0) {
+            // 서버가 변경 묶음 기록을 스냅샷 하나로 줄일 수 있도록 주기적으로 전체 상태를 보낸다.
+            updatesSinceSnapshot = 0;
+            projectController.crdtUpdateRequest(filePath, update.encode(), false);
+            projectController.crdtUpdateRequest(filePath, document.encodeState(), true);
+        } else {
+            projectController.crdtUpdateRequest(filePath, update.encode(), false);
+        }
+    }
+
+    /**
+     * 다른 사용자의 변경 묶음을 문서와 CodeArea 에 반영합니다.
+     * CodeArea 에 아직 sendOperation 으로 넘어오지 않은 로컬 입력이 있으면(길이가 다르면) 다음 펄스로 미룹니다.
+     */
+    public void handleRemoteUpdate(String requesterId, byte[] encoded) {
+        handleRemoteUpdate(requesterId, encoded, 0);
+    }
+
+    private void handleRemoteUpdate(String requesterId, byte[] encoded, int deferrals) {
+        if (disposed) return;
+        if (document == null) {
+            bufferedUpdates.add(new BufferedUpdate(requesterId, encoded));
+            return;
+        }
+        if (document.length() != hybridManager.getCodeArea().getLength()) {
+            if (deferrals < MAX_REMOTE_DEFERRALS) {
+                Platform.runLater(() -> handleRemoteUpdate(requesterId, encoded, deferrals + 1));
+            } else {
+                // 문서와 CodeArea 가 어긋난 채로 굳었다. 서버 상태를 다시 받아 맞춘다. (이 묶음도 상태에 포함되어 온다)
+                System.err.println("[CrdtManager] Document and editor diverged for " + filePath + ". Requesting CRDT state.");
+                document = null;
+                requestState();
+            }
+            return;
+        }
+
+        List<TextOperation.Edit> edits;
+        try {
+            edits = document.applyRemote(CrdtUpdate.decode(encoded));
+        } catch (RuntimeException e) {
+            System.err.println("[CrdtManager] Dropping malformed CRDT update for " + filePath + ": " + e.getMessage());
+            return;
+        }
+
+        // applyRemote 의 편집은 차례로 적용하는 좌표이므로 앞에서부터 그대로 반영한다.
+        int lastPosition = -1;
+        boolean lastWasDelete = false;
+        for (TextOperation.Edit edit : edits) {
+            hybridManager.controlledReplaceText(edit.start, edit.end, edit.text, ChangeInitiator.SERVER);
+            int delta = edit.text.length() - (edit.end - edit.start);
+            getCursorManager().ifPresent(cursorManager -> cursorManager.transformCursors(
+                position -> position < edit.end ? Math.min(position, edit.start) : position + delta, requesterId));
+            lastPosition = edit.start + edit.text.length();
+            lastWasDelete = edit.text.isEmpty();
+        }
+        if (requesterId != null && lastPosition >= 0) {
+            int target = Math.max(0, Math.min(lastPosition, hybridManager.getCodeArea().getLength()));
+            double durationMillis = lastWasDelete ? DELETE_CURSOR_MILLIS : INSERT_CURSOR_MILLIS;
+            getCursorManager().ifPresent(cursorManager ->
+                cursorManager.animateCursor(requesterId, requesterId, target, durationMillis));
+        }
+    }
+
+    private void updateRemoteCursorsLocally(Operation localOp) {
+        getCursorManager().ifPresent(cursorManager -> cursorManager.transformCursors(
+            position -> OperationTransformer.transformPosition(position, localOp), null));
+    }
+
+    private Optional<RemoteCursorManager> getCursorManager() {
+        return hybridManager.getStateManager().getCursorManager("file-" + filePath);
+    }
+
+    /**
+     * CRDT 엔진은 확정 대기 중인 연산이 없으므로 정리할 것은 버퍼뿐입니다.
+     * 일시정지 중에는 편집이 전파되지 않으며, 재개 시 탭을 다시 열어 상태를 새로 받습니다.
+     */
+    @Override
+    public void dispose() {
+        disposed = true;
+        Platform.runLater(bufferedUpdates::clear);
+    }
+}
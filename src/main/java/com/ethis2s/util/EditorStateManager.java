@@ -41,7 +41,7 @@ public class EditorStateManager {
     private final List<HybridManager> activeManagers = new ArrayList<>();
     private final Map<String, Boolean> initializingTabs = new HashMap<>();
     private final Map<String, Queue<Runnable>> pendingUpdatesMap = new HashMap<>();
-    private final Map<String, OTManager> otManagers = new ConcurrentHashMap<>();
+    private final Map<String, CollaborationEngine> engines = new ConcurrentHashMap<>();
 
     // --- Search Properties ---
     private final IntegerProperty totalMatches = new SimpleIntegerProperty(0);
@@ -78,10 +78,13 @@ public class EditorStateManager {
         searchResultsMap.remove(tabId);
         currentMatchIndexMap.remove(tabId);
         lineLocks.remove(tabId);
-        remoteCursorManagerMap.remove(tabId);
+        RemoteCursorManager cursorManager = remoteCursorManagerMap.remove(tabId);
+        if (cursorManager != null) {
+            cursorManager.dispose();
+        }
         initializingTabs.remove(tabId);
         pendingUpdatesMap.remove(tabId);
-        otManagers.remove(tabId);
+        engines.remove(tabId);
     }
 
     public void shutdownAllManagers() {
@@ -118,23 +121,29 @@ public class EditorStateManager {
             }
         }
     }
-    public void registerOTManager(String tabId, OTManager otManager) {
-        this.otManagers.put(tabId, otManager);
+    public void registerEngine(String tabId, CollaborationEngine engine) {
+        this.engines.put(tabId, engine);
+    }
+    public Optional<CollaborationEngine> getEngine(String tabId) {
+        return Optional.ofNullable(this.engines.get(tabId));
     }
     public Optional<OTManager> getOTManager(String tabId) {
-        return Optional.ofNullable(this.otManagers.get(tabId));
+        return getEngine(tabId).filter(OTManager.class::isInstance).map(OTManager.class::cast);
+    }
+    public Optional<CrdtManager> getCrdtManager(String tabId) {
+        return getEngine(tabId).filter(CrdtManager.class::isInstance).map(CrdtManager.class::cast);
     }
 
 
     public boolean isOTPaused(String tabId) {
-        // [핵심 수정] OTManager가 존재하지 않는 것을 '일시정지' 상태로 간주합니다.
-        return !otManagers.containsKey(tabId);
+        // [핵심 수정] 동시 편집 엔진이 존재하지 않는 것을 '일시정지' 상태로 간주합니다.
+        return !engines.containsKey(tabId);
     }
 
     public void disposeOT(String tabId) {
-        getOTManager(tabId).ifPresent(OTManager::dispose);
-        otManagers.remove(tabId);
-        System.out.println("[StateManager] Disposed and removed OTManager for " + tabId);
+        getEngine(tabId).ifPresent(CollaborationEngine::dispose);
+        engines.remove(tabId);
+        System.out.println("[StateManager] Disposed and removed collaboration engine for " + tabId);
     }
 
     // --- Getters and Helpers ---
@@ -2,6 +2,8 @@ package com.ethis2s.util;
 
 import com.ethis2s.controller.ProjectController;
 import com.ethis2s.model.Operation;
+import com.ethis2s.model.TextOperation;
+import com.ethis2s.ot.LineHashIndex;
 import com.ethis2s.service.AntlrCompletionService;
 import com.ethis2s.service.AntlrLanguageService;
 import com.ethis2s.service.EditorInputManager;
@@ -10,14 +12,17 @@ import com.ethis2s.service.AntlrLanguageService.BracketPair;
 import com.ethis2s.service.AntlrLanguageService.SyntaxError;
 import com.ethis2s.service.ChangeInitiator;
 import com.ethis2s.service.CollaborativeUndoHelper;
+import com.ethis2s.service.LinkHealth;
 import com.ethis2s.util.Tm4eSyntaxHighlighter.StyleToken;
 import com.ethis2s.view.editor.EditorTabView;
 
 import javafx.animation.PauseTransition;
 import javafx.application.Platform;
 import javafx.util.Duration;
+import org.fxmisc.richtext.model.TwoDimensional.Bias;
 import org.antlr.v4.runtime.Token;
 import org.fxmisc.richtext.CodeArea;
+import org.fxmisc.richtext.model.PlainTextChange;
 import org.fxmisc.richtext.model.StyleSpans;
 import org.fxmisc.richtext.model.StyleSpansBuilder;
 import org.json.JSONArray;
@@ -46,6 +51,10 @@ import java.util.stream.Stream;
 public class HybridManager {
     
     private static final int LARGE_UPDATE_THRESHOLD = 1000;
+    // 원격 변경 뒤 분석 대기 시간. RTT 를 모르면 기본값, 알면 SERVER_DELAY_BASE_MILLIS + 3 * (SRTT + 4 * 지터) 를 범위 안으로 자른다.
+    private static final long SERVER_DELAY_DEFAULT_MILLIS = 1500;
+    private static final long SERVER_DELAY_BASE_MILLIS = 500;
+    private static final long SERVER_DELAY_MAX_MILLIS = 3000;
     private final CodeArea codeArea;
     private final Tm4eSyntaxHighlighter highlighter;
     private final AntlrLanguageService analyzer;
@@ -72,6 +81,8 @@ public class HybridManager {
     private final EditorStateManager stateManager;
     private final String tabId;
     private EditorInputManager inputManager;
+    // 서버 문서와의 불일치 감지용 줄 해시. 대량 업데이트 중에도 모든 변경을 반영해야 한다.
+    private final LineHashIndex lineHashIndex = new LineHashIndex();
     
 
     
@@ -111,6 +122,8 @@ public class HybridManager {
             runAntlrAnalysis();
         });
 
+        codeArea.multiPlainChanges().subscribe(this::updateLineHashes);
+
         // "적응형 통합 디바운서" 로직이 적용된 최종 리스너 코드
         codeArea.multiPlainChanges().subscribe(changes -> {
             if (isLargeUpdate) { return; }
@@ -154,8 +167,8 @@ public class HybridManager {
                     break;
                 
                 case SERVER:
-                    // 1. 대기 시간을 '길게(1500ms)' 설정합니다.
-                    analysisDebouncer.setDuration(Duration.millis(1500));
+                    // 1. 대기 시간을 '길게' 설정합니다. (원격 변경 묶음이 다 도착할 만큼, 연결 RTT 에 맞춤)
+                    analysisDebouncer.setDuration(Duration.millis(serverAnalysisDelayMillis()));
                     // 2. 타이머를 재시작합니다.
                     analysisDebouncer.playFromStart();
                     break;
@@ -191,6 +204,41 @@ public class HybridManager {
         return codeArea;
     }
 
+    public LineHashIndex getLineHashIndex() {
+        return lineHashIndex;
+    }
+
+    private void updateLineHashes(List<PlainTextChange> changes) {
+        if (changes.size() != 1) {
+            // 한 트랜잭션의 여러 변경은 중간 상태의 줄 번호를 알 수 없으므로 전체를 다시 계산한다. (catch-up 등 드문 경우)
+            lineHashIndex.reset(codeArea.getText());
+            return;
+        }
+        PlainTextChange change = changes.get(0);
+        int firstLine = codeArea.offsetToPosition(change.getPosition(), Bias.Forward).getMajor();
+        lineHashIndex.applyChange(firstLine, countLineBreaks(change.getRemoved()), countLineBreaks(change.getInserted()),
+            line -> codeArea.getParagraph(line).getText());
+    }
+
+    private static int countLineBreaks(String text) {
+        int count = 0;
+        for (int i = text.indexOf('\n'); i >= 0; i = text.indexOf('\n', i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * [startLine, endLine) 줄 범위를 서버가 보내준 내용으로 바꿉니다. (체크섬 불일치 복구용)
+     * endLine 이 줄 수 이상이면 문서 끝까지를 바꿉니다.
+     */
+    public void replaceLines(int startLine, int endLine, String text) {
+        int paragraphs = codeArea.getParagraphs().size();
+        int start = startLine >= paragraphs ? codeArea.getLength() : codeArea.getAbsolutePosition(startLine, 0);
+        int end = endLine >= paragraphs ? codeArea.getLength() : codeArea.getAbsolutePosition(endLine, 0);
+        controlledReplaceText(start, Math.max(start, end), text, ChangeInitiator.SERVER);
+    }
+
     public void handleBroadcast(long newVersion, String uniqId, String requesterId, Operation serverOp) {
         // This is where the text is actually applied to the CodeArea for remote changes.
         // We must label this change with SERVER initiator to prevent local auto-completion.
@@ -198,6 +246,13 @@ public class HybridManager {
             controlledReplaceText(serverOp.getPosition(), serverOp.getPosition(), serverOp.getText(), ChangeInitiator.SERVER);
         } else if (serverOp.getType() == Operation.Type.DELETE) {
             controlledReplaceText(serverOp.getPosition(), serverOp.getPosition() + serverOp.getLength(), "", ChangeInitiator.SERVER);
+        } else if (serverOp.getType() == Operation.Type.COMPOUND) {
+            // 편집 좌표는 모두 원본 기준이므로 뒤에서부터 적용한다.
+            List<TextOperation.Edit> edits = serverOp.getTextOperation().toEdits();
+            for (int i = edits.size() - 1; i >= 0; i--) {
+                TextOperation.Edit edit = edits.get(i);
+                controlledReplaceText(edit.start, edit.end, edit.text, ChangeInitiator.SERVER);
+            }
         }
     }
 
@@ -223,6 +278,18 @@ public class HybridManager {
         }
     }
 
+    public void controlledReplaceAll(List<TextOperation.Edit> edits) {
+        if (inputManager != null) {
+            inputManager.controlledReplaceAll(edits);
+        }
+    }
+
+    public void controlledReplaceAll(List<TextOperation.Edit> edits, ChangeInitiator initiator) {
+        if (inputManager != null) {
+            inputManager.controlledReplaceAll(edits, initiator);
+        }
+    }
+
     public void resetInitiatorToUser() {
         if (inputManager != null) {
             inputManager.resetInitiatorToUser();
@@ -253,6 +320,14 @@ public class HybridManager {
         requestImmediateAnalysis(); // 로드 끝났으니 분석 시작!
     }
 
+    /** 다른 사용자의 편집은 RTT 간격으로 몰려 오므로, 빠른 연결에서는 일찍, 느리거나 흔들리는 연결에서는 늦게 분석한다. */
+    private long serverAnalysisDelayMillis() {
+        Optional<LinkHealth> health = projectController.getLinkHealth().filter(LinkHealth::hasSamples);
+        if (health.isEmpty()) return SERVER_DELAY_DEFAULT_MILLIS;
+        long delay = SERVER_DELAY_BASE_MILLIS + Math.round(3 * health.get().getRetransmitTimeoutMillis());
+        return Math.min(SERVER_DELAY_MAX_MILLIS, delay);
+    }
+
     public void requestImmediateAnalysis() {
         analysisDebouncer.stop();
         if (currentAntlrFuture != null && !currentAntlrFuture.isDone()) {
@@ -2,34 +2,61 @@ package com.ethis2s.util;
 
 import com.ethis2s.controller.ProjectController;
 import com.ethis2s.model.Operation;
+import com.ethis2s.model.TextOperation;
+import com.ethis2s.ot.LineHashIndex;
+import com.ethis2s.ot.OperationJournal;
+import com.ethis2s.ot.OperationTransformer;
+import com.ethis2s.ot.UnconfirmedOperationQueue;
 import com.ethis2s.service.ChangeInitiator;
+import com.ethis2s.service.RemoteCursorManager;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
-import javafx.animation.Interpolator;
-import javafx.animation.KeyFrame;
-import javafx.animation.KeyValue;
-import javafx.animation.Timeline;
 import javafx.application.Platform;
-import javafx.beans.property.IntegerProperty;
-import javafx.beans.property.SimpleIntegerProperty;
-import javafx.util.Duration;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.Queue;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
-public class OTManager {
+public class OTManager implements CollaborationEngine {
+
+    private static final int DEFAULT_PIPELINE_WINDOW = 8;
+    private static final int DEFAULT_CHECKSUM_INTERVAL = 50;
+    private static final int CHECKSUM_LINES_PER_BLOCK = 64;
+    private static final int DEFAULT_CHECKSUM_TIMEOUT_MILLIS = 5000;
+    private static final String JOURNAL_DIRECTORY = ".journal";
 
     private long localVersion = 0;
-    private final Queue<Operation> unconfirmedOps = new LinkedList<>();
-    private long uniqIdCounter = 0;
+    // ACK 를 기다리는 로컬 연산들. 파이프라인 윈도우(동시에 보낼 수 있는 연산 수)도 큐가 관리한다.
+    // 서버가 파이프라인을 협상하기 전까지는 윈도우 1(stop-and-wait)로 보낸다.
+    private final UnconfirmedOperationQueue unconfirmedOps = new UnconfirmedOperationQueue(1);
+    private final int pipelineWindow;
+    // 세션마다 uniqId 가 겹치지 않도록 시작 값을 시각으로 둔다. (저널에 남은 이전 세션 연산의 ACK 와 구분)
+    private long uniqIdCounter = System.currentTimeMillis();
+
+    // --- 오프라인 편집 저널: 확정되지 않은 연산을 디스크에 남겨 종료/재접속 후에도 다시 보낸다 ---
+    private final OperationJournal journal;
+    // 이전 세션 저널에서 복구했지만 아직 현재 버전까지 rebase 되지 않은 연산 (히스토리 응답 대기 중)
+    private OperationJournal.Recovered recoveredJournal;
+    private volatile boolean disposed = false;
+    // 저널을 읽는 중이면 새 저널을 시작하지 않는다. (이전 세션 저널 파일을 덮어쓰지 않도록) FX 스레드
+    private boolean journalRecoveryPending = false;
+
+    // --- 문서 체크섬 검증: checksumInterval 개의 버전마다 확정된 문서의 줄 해시 다이제스트를 서버와 비교한다 ---
+    private final int checksumInterval;
+    private long lastChecksumVersion;
+    private boolean checksumScheduled = false;
+    private final int checksumTimeoutMillis;
+    // SYNC_ERROR 복구 중 체크섬 응답이 오지 않으면 실행할 전체 재동기화. 응답이 오면 null (FX 스레드)
+    private Runnable syncRecoveryFallback;
 
     // --- Concurrency Control ---
     private boolean isRebasing = false;
@@ -39,32 +66,108 @@ public class OTManager {
     private final HybridManager hybridManager; // To apply changes
     private final String filePath;
 
-    // --- 애니메이션 ---
-    private final Map<String, Timeline> userTimelines = new ConcurrentHashMap<>();
-    private final Map<String, KeyValue> userKeyValues = new ConcurrentHashMap<>();
-    private final Map<String, IntegerProperty> userVisualCursors = new ConcurrentHashMap<>();
-
+    // --- 커서 애니메이션 시간 (실제 보간은 RemoteCursorManager 의 프레임 엔진이 담당) ---
+    private static final double DELETE_CURSOR_MILLIS = 30;  // 삭제는 짧고 빠르게 반응하여 안정성을 높입니다.
+    private static final double INSERT_CURSOR_MILLIS = 120; // 삽입은 부드러움을 위해 조금 더 길게 설정합니다.
 
     public OTManager(long initialVersion, EditorContext context, HybridManager hybridManager) {
         this.localVersion = initialVersion;
+        this.lastChecksumVersion = initialVersion;
         this.hybridManager = hybridManager;
+        this.checksumInterval = ConfigManager.getInstance().get("collaboration", "checksumInterval", Integer.class, DEFAULT_CHECKSUM_INTERVAL);
+        this.checksumTimeoutMillis = ConfigManager.getInstance().get("collaboration", "checksumTimeoutMillis", Integer.class, DEFAULT_CHECKSUM_TIMEOUT_MILLIS);
+        this.pipelineWindow = ConfigManager.getInstance().get("collaboration", "pipelineWindow", Integer.class, DEFAULT_PIPELINE_WINDOW);
         
         // 컨텍스트 객체에서 필요한 정보를 꺼내 멤버 변수에 저장합니다.
         this.projectController = context.getProjectController();
         this.filePath = context.getFilePath();
+
+        String journalKey = projectController.getCurrentUserId().orElse("") + "/"
+            + projectController.getCurrentProjectId().orElse("") + "/" + filePath;
+        this.journal = new OperationJournal(ConfigManager.getBaseDir().resolve(JOURNAL_DIRECTORY), journalKey);
+    }
+
+    /** 서버가 확정한 마지막 버전. 세션을 재개할 때 이 버전 이후의 히스토리만 받는다. (FX 스레드) */
+    public long getLocalVersion() {
+        return localVersion;
     }
 
     /**
-     * 이 OTManager 인스턴스와 관련된 리소스(AnimationTimer)를 정리합니다.
-     * 에디터 탭이 닫히는 등의 시점에 반드시 호출해야 메모리 누수를 방지할 수 있습니다.
+     * 이 OTManager 인스턴스와 관련된 리소스를 정리합니다.
+     * 원격 커서 애니메이션은 탭의 RemoteCursorManager 가 소유하므로 탭이 닫힐 때 함께 정리됩니다.
      */
+    @Override
     public void dispose() {
-        Platform.runLater(() -> {
-            userTimelines.values().forEach(Timeline::stop);
-            userTimelines.clear();
-            userKeyValues.clear();
-            userVisualCursors.clear();
-        });
+        disposed = true;
+        Platform.runLater(pendingInputQueue::clear);
+        journal.close(); // 확정되지 않은 연산이 남아 있으면 저널 파일은 그대로 두어 다음에 다시 보낸다.
+    }
+
+    /**
+     * 이전 세션(비정상 종료, 오프라인 중 종료 등)에서 확정받지 못한 연산이 저널에 남아 있으면 다시 적용합니다.
+     * 탭에 서버 내용이 채워진 직후 호출해야 합니다. 저널은 저널 쓰기 스레드에서 읽고, 적용은 FX 스레드에서 이어서 합니다.
+     * 저널의 기준 버전이 현재 버전보다 오래되었으면 그 사이의 히스토리를 요청하고, 응답(handleCatchUp)에서 rebase 한 뒤 적용합니다.
+     */
+    public void replayJournal() {
+        journalRecoveryPending = true;
+        journal.recover().thenAccept(recovered -> Platform.runLater(() -> replayRecoveredJournal(recovered)));
+    }
+
+    // FX 스레드. 저널을 읽는 동안 입력한 로컬 연산은 installRecoveredOperations 가 저널 연산 앞으로 둔다.
+    private void replayRecoveredJournal(OperationJournal.Recovered recovered) {
+        journalRecoveryPending = false;
+        if (disposed) return; // 읽는 사이 탭이 닫혔으면 저널 파일은 다음에 열 때 다시 읽는다.
+        if (recovered == null) {
+            if (!unconfirmedOps.isEmpty()) journal.rewrite(localVersion, unconfirmedOps); // 읽는 동안 입력한 연산
+            return;
+        }
+        if (recovered.getBaseVersion() > localVersion) {
+            System.err.println("[OTManager] Journal for " + filePath + " is ahead of the server (v" + recovered.getBaseVersion()
+                + " > v" + localVersion + "). Discarding " + recovered.getOperations().size() + " journaled ops.");
+            journal.rewrite(localVersion, unconfirmedOps);
+            return;
+        }
+        System.out.println("[OTManager] Replaying " + recovered.getOperations().size() + " journaled ops for " + filePath
+            + " from v" + recovered.getBaseVersion());
+        recoveredJournal = recovered;
+        if (recovered.getBaseVersion() == localVersion) {
+            installRecoveredOperations();
+        } else {
+            projectController.fileHistoryRequest(filePath, recovered.getBaseVersion());
+        }
+    }
+
+    /**
+     * 현재 확정 버전까지 rebase 된 저널 연산을 CodeArea 에 적용하고 일반 로컬 연산처럼 전송합니다.
+     * 그 사이 새로 입력한 로컬 연산이 있으면 저널 연산을 그 이후 시점으로 옮긴다.
+     */
+    private void installRecoveredOperations() {
+        TextOperation recovered = recoveredJournal.composed();
+        recoveredJournal = null;
+
+        if (!unconfirmedOps.isEmpty() && !recovered.isNoop()) {
+            TextOperation localOps = null;
+            for (Operation op : unconfirmedOps) {
+                localOps = (localOps == null) ? op.getTextOperation() : localOps.compose(op.getTextOperation());
+            }
+            recovered = TextOperation.transform(recovered, localOps, true).first;
+        }
+        if (!recovered.isNoop()) {
+            applyCatchUpScript(recovered);
+            Operation recoveredOp = new Operation(recovered, -1, localVersion, null);
+            updateRemoteCursorsLocally(recoveredOp);
+            if (!unconfirmedOps.composeIntoTail(recoveredOp, projectController.isCompoundEditEnabled())) {
+                recoveredOp.setUniqId(projectController.getCurrentUserNicknameAndTag().orElse("") + "-" + (uniqIdCounter++));
+                unconfirmedOps.add(recoveredOp, localVersion);
+            }
+        }
+        // 이전 저널을 지우기 전에 현재 큐 전체로 바꿔 써서, 도중에 종료되어도 연산이 사라지지 않게 한다.
+        journal.rewrite(localVersion, unconfirmedOps);
+        sendNextPendingOperation();
+    }
+
+    private Optional<RemoteCursorManager> getCursorManager() {
+        return hybridManager.getStateManager().getCursorManager("file-" + filePath);
     }
 
     // --- 기존 메서드들은 그대로 유지 ---
@@ -82,11 +185,12 @@ public class OTManager {
         if (pendingOp != null && pendingOp.isSentToServer() && myId.equals(requesterId)) {
             // This is a confirmation for an operation we sent.
             // 예측 버전(expectedVersion)은 참고용으로만 두고,
-            // uniqId 가 일치하면 성공으로 처리한다.
-            if (pendingOp.getUniqId() != null && pendingOp.getUniqId().equals(uniqId)) {
-                unconfirmedOps.poll(); // Remove the confirmed operation
+            // uniqId 가 전송 중인(in-flight) 연산 중 하나와 일치하면 성공으로 처리한다.
+            if (unconfirmedOps.acknowledge(uniqId)) {
                 this.localVersion = newVersion;
-                sendNextPendingOperation(); // Send the next operation if any
+                journalQueueChange(() -> journal.appendAck(uniqId, newVersion));
+                sendNextPendingOperation(); // 윈도우에 여유가 생겼으므로 대기 중인 연산을 보낸다.
+                scheduleChecksumIfDue();
             } else {
                 // uniqId 가 다르면, 우리가 이미 큐에서 제거한 오래된 op 에 대한 브로드캐스트일 수 있으므로
                 // 별도 재전송/abort 는 하지 않고 무시한다.
@@ -94,214 +198,227 @@ public class OTManager {
         } else {
             // This is an operation from another user.
             isRebasing = true;
-            
-            // Rebase our pending operations against the server's operation.
-            Queue<Operation> rebasedOps = new LinkedList<>();
-            for (Operation myOp : unconfirmedOps) {
-                Operation rebasedOp = transform(myOp, serverOp);
-                if (rebasedOp != null) {
-                    rebasedOps.add(rebasedOp);
-                }
-            }
-            
-            // Apply the transformed server operation.
-            Operation transformedServerOp = serverOp;
-            for (Operation myOp : unconfirmedOps) {
-                transformedServerOp = transform(transformedServerOp, myOp);
-                if (transformedServerOp == null) break;
+
+            // Rebase our pending operations against the server's operation and recalculate expected versions.
+            // 반환값은 우리 로컬 연산들 이후 시점으로 변환된 서버 연산으로, 그대로 CodeArea 에 적용하면 된다.
+            boolean hadUnconfirmedOps = !unconfirmedOps.isEmpty();
+            Operation transformedServerOp = unconfirmedOps.rebase(serverOp, newVersion);
+            if (hadUnconfirmedOps) {
+                journalQueueChange(() -> journal.appendRemote(serverOp, newVersion));
             }
 
             final Operation finalOpForCorrection = transformedServerOp;
             Platform.runLater(() -> {
-                // 현재 애니메이션이 진행 중인 모든 시각적 커서들에 대해...
-                for (Map.Entry<String, IntegerProperty> entry : userVisualCursors.entrySet()) {
-                    String userId = entry.getKey();
-                    IntegerProperty visualCursor = entry.getValue();
-
-                    // 이 커서가 방금 연산을 보낸 사용자(requesterId)의 것이라면 보정할 필요가 없습니다.
-                    // 왜냐하면 이 사용자의 커서는 어차피 곧 새로운 목표점으로 애니메이션이 '재시작'될 것이기 때문입니다.
-                    if (userId.equals(requesterId)) {
-                        continue;
-                    }
-
-                    int currentVisualPosition = visualCursor.get();
-
-                    // 'transform_position' 헬퍼 함수를 사용하여 현재 시각적 위치를 보정합니다.
-                    int newVisualPosition = transform_position(currentVisualPosition, finalOpForCorrection);
-                    
-                    // 위치가 실제로 변경되었다면, IntegerProperty의 값을 즉시 업데이트합니다.
-                    // 이렇게 하면 현재 진행 중인 Timeline 애니메이션이 이 새로운 위치를 기준으로 자연스럽게 경로를 이어갑니다.
-                    if (currentVisualPosition != newVisualPosition) {
-                        visualCursor.set(newVisualPosition);
-                    }
-                }
+                if (finalOpForCorrection == null) return;
+                // 다른 사용자들의 시각적 커서(진행 중인 애니메이션 포함)를 서버 연산에 맞춰 즉시 보정합니다.
+                // 방금 연산을 보낸 사용자(requesterId)의 커서는 어차피 곧 새로운 목표점으로 애니메이션이 '재시작'되므로 제외합니다.
+                getCursorManager().ifPresent(cursorManager -> cursorManager.transformCursors(
+                    position -> OperationTransformer.transformPosition(position, finalOpForCorrection), requesterId));
             });
             applyOperationToCodeArea(transformedServerOp, requesterId);
 
-            // Update the queue with rebased operations and recalculate expected versions.
-            this.unconfirmedOps.clear();
-            long lastExpectedVersion = newVersion;
-            for(Operation op : rebasedOps) {
-                op.setExpectedVersion(++lastExpectedVersion);
-                op.setSentToServer(false); 
-                this.unconfirmedOps.add(op);
-            }
-
             this.localVersion = newVersion;
             
             isRebasing = false;
             
             processPendingInputs();
             sendNextPendingOperation(); // After rebase, try sending the first pending op.
+            scheduleChecksumIfDue();
         }
     }
 
-    private int transform_position(int position, Operation otherOp) {
-        int myPos = position;
-        int otherPos = otherOp.getPosition();
-        
-        // --- [수정] "앞의 애니메이션은 영향이 없다"는 규칙을 명시적으로 적용 ---
-        // 연산이 발생한 위치보다 앞에 있는 커서는 보정할 필요가 없습니다.
-        if (myPos < otherPos) {
-            return myPos;
+    // 큐가 바뀐 내용을 저널에 기록한다. 큐가 비었으면 더 보낼 연산이 없으므로 저널을 지운다.
+    private void journalQueueChange(Runnable record) {
+        if (journalRecoveryPending) {
+            return; // 저널을 다 읽은 뒤 replayRecoveredJournal 이 현재 큐까지 합쳐 다시 쓴다.
+        }
+        if (unconfirmedOps.isEmpty()) {
+            journal.clear();
+        } else {
+            record.run();
+            journal.compactIfNeeded(localVersion, unconfirmedOps);
         }
+    }
+
+    private void scheduleChecksumIfDue() {
+        if (checksumInterval > 0 && projectController.isDocumentChecksumEnabled() && localVersion - lastChecksumVersion >= checksumInterval) {
+            scheduleChecksumVerification();
+        }
+    }
 
-        int otherLen = otherOp.getLength();
+    /**
+     * 확정된 문서의 체크섬을 서버로 보내 검증을 요청합니다.
+     * 원격 연산은 runLater 로 CodeArea 에 반영되므로 그 뒤에 실행되도록 예약하고,
+     * 확정되지 않은 로컬 연산이 남아 있으면 CodeArea 가 확정 문서와 다르므로 이번 검증은 건너뛴다. (다음 버전에서 다시 시도)
+     */
+    private void scheduleChecksumVerification() {
+        if (checksumScheduled) return;
+        checksumScheduled = true;
+        Platform.runLater(() -> {
+            checksumScheduled = false;
+            if (!unconfirmedOps.isEmpty() || isRebasing) return;
+            LineHashIndex index = hybridManager.getLineHashIndex();
+            lastChecksumVersion = localVersion;
+            projectController.documentChecksumRequest(filePath, localVersion, index.getLineCount(), index.digest(),
+                CHECKSUM_LINES_PER_BLOCK, index.blockDigests(CHECKSUM_LINES_PER_BLOCK));
+        });
+    }
 
-        if (otherOp.getType() == Operation.Type.INSERT) {
-            // myPos >= otherPos 인 경우에만
-            myPos += otherLen;
-        } else { // DELETE
-            // myPos >= otherPos 인 경우에만
-            myPos -= Math.min(myPos - otherPos, otherLen);
+    /**
+     * 체크섬 검증 응답을 처리합니다. 불일치하면 서버가 보내준 구간(startLine ~ endLine)만 교체하고,
+     * 교체 후에도 서버 다이제스트와 다르거나 서버가 구간 복구를 할 수 없다고 응답하면 onUnrecoverable 을 호출합니다.
+     * 응답 이후 문서가 바뀌었으면(버전 변경, 새 로컬 입력) 응답을 버리고 다음 검증에 맡긴다.
+     */
+    public void handleChecksumResponse(JSONObject response, Runnable onUnrecoverable) {
+        syncRecoveryFallback = null;
+        if (response.optBoolean("match", false)) return;
+        if (response.optBoolean("resync", false)) {
+            onUnrecoverable.run();
+            return;
         }
-        return myPos;
+        long version = response.getLong("version");
+        // 검증 요청 이후 도착한 원격 연산이 먼저 반영되도록 한 번 미룬다.
+        Platform.runLater(() -> {
+            if (version != localVersion || !unconfirmedOps.isEmpty()) return;
+            System.err.println("[OTManager] Checksum mismatch at v" + version + " for " + filePath
+                + ". Repairing lines " + response.getInt("startLine") + "-" + response.getInt("endLine") + ".");
+            hybridManager.replaceLines(response.getInt("startLine"), response.getInt("endLine"), response.getString("text"));
+            long expectedDigest = Long.parseUnsignedLong(response.getString("digest"), 16);
+            if (hybridManager.getLineHashIndex().digest() != expectedDigest) {
+                onUnrecoverable.run();
+            }
+        });
     }
 
+    /**
+     * 서버가 편집 연산을 거부한 경우(SYNC_ERROR) 확정되지 않은 로컬 연산을 되돌려 마지막 확정 문서로 돌아간 뒤,
+     * 체크섬 검증으로 서버와 달라진 구간만 복구합니다. 이미 전송된 연산이 서버에 반영되었다면
+     * 그 브로드캐스트는 다른 사용자의 연산처럼 적용되므로 내용이 사라지지 않는다.
+     * 서버가 체크섬 검증에 응하지 않았거나 checksumTimeoutMillis 안에 응답이 없으면 fullResync 로 전체 재동기화합니다. (FX 스레드)
+     */
+    public void recoverFromSyncError(Runnable fullResync) {
+        if (!projectController.isDocumentChecksumEnabled()) {
+            fullResync.run();
+            return;
+        }
+        applyCatchUpScript(undoScriptForUnconfirmedOps());
+        unconfirmedOps.clear();
+        pendingInputQueue.clear();
+        journal.clear();
+        scheduleChecksumVerification();
+
+        Runnable fallback = fullResync;
+        syncRecoveryFallback = fallback;
+        CompletableFuture.delayedExecutor(checksumTimeoutMillis, TimeUnit.MILLISECONDS).execute(() -> Platform.runLater(() -> {
+            if (syncRecoveryFallback != fallback || disposed) return;
+            syncRecoveryFallback = null;
+            System.err.println("[OTManager] No checksum response for " + filePath + " within " + checksumTimeoutMillis + " ms. Re-syncing.");
+            fallback.run();
+        }));
+    }
 
     private void applyOperationToCodeArea(Operation op, String requesterId) {
         if (op == null) return;
         Platform.runLater(() -> {
             // [안전장치 1] 현재 문서의 실제 길이를 가져옵니다.
             int currentLength = hybridManager.getCodeArea().getLength();
-            int startPos = op.getPosition();
-
-            // [안전장치 2] 시작 위치가 문서 범위를 벗어나면 강제로 맞추거나 무시합니다.
-            if (startPos > currentLength) {
-                System.err.println("[OTManager] Warning: Operation position " + startPos + 
-                                   " exceeds document length " + currentLength + ". Clamping to end.");
-                startPos = currentLength;
-            } else if (startPos < 0) {
-                startPos = 0;
-            }
 
-            if (op.getType() == Operation.Type.INSERT) {
-                // 삽입은 startPos 위치에 넣으면 됨
-                hybridManager.controlledReplaceText(startPos, startPos, op.getText(), ChangeInitiator.SERVER);
-            } else { // DELETE
+            // 원본 좌표 기준의 편집들을 뒤에서부터 적용하면 앞쪽 편집의 좌표가 밀리지 않는다.
+            List<TextOperation.Edit> edits = op.getTextOperation().toEdits();
+            for (int i = edits.size() - 1; i >= 0; i--) {
+                TextOperation.Edit edit = edits.get(i);
+                int startPos = edit.start;
+
+                // [안전장치 2] 시작 위치가 문서 범위를 벗어나면 강제로 맞추거나 무시합니다.
+                if (startPos > currentLength) {
+                    System.err.println("[OTManager] Warning: Operation position " + startPos + 
+                                       " exceeds document length " + currentLength + ". Clamping to end.");
+                    startPos = currentLength;
+                } else if (startPos < 0) {
+                    startPos = 0;
+                }
                 // [안전장치 3] 삭제 끝 위치가 문서 범위를 벗어나지 않도록 Math.min 사용
-                int endPos = startPos + op.getLength();
-                int safeEndPos = Math.min(endPos, currentLength);
-                
-                // 유효한 삭제 범위일 때만 실행
-                if (safeEndPos > startPos) {
-                    hybridManager.controlledReplaceText(startPos, safeEndPos, "", ChangeInitiator.SERVER);
+                int safeEndPos = Math.max(startPos, Math.min(edit.end, currentLength));
+
+                // 유효한 편집일 때만 실행
+                if (safeEndPos > startPos || !edit.text.isEmpty()) {
+                    hybridManager.controlledReplaceText(startPos, safeEndPos, edit.text, ChangeInitiator.SERVER);
+                    currentLength += edit.text.length() - (safeEndPos - startPos);
                 }
             }
 
-            // 커서 애니메이션 처리
+            // 커서 애니메이션 처리 (좌표 계산은 다음 프레임에 커서 엔진이 수행)
             if (requesterId != null) {
-                hybridManager.getCodeArea().layout(); // 레이아웃 갱신 (필수)
-                Platform.runLater(() -> animateCursorTo(requesterId, op));
+                double durationMillis = (op.getType() == Operation.Type.DELETE) ? DELETE_CURSOR_MILLIS : INSERT_CURSOR_MILLIS;
+                animateCursorTo(requesterId, op.getCursorPosition(), durationMillis);
             }
         });
     }
 
     public void requestCursorUpdate(String requesterId, int cursorPosition) {
-        if (requesterId != null) animateCursorTo(requesterId, new Operation(Operation.Type.INSERT, 0, null, cursorPosition, 0, null));
+        if (requesterId != null) Platform.runLater(() -> animateCursorTo(requesterId, cursorPosition, INSERT_CURSOR_MILLIS));
     }
 
-    private void animateCursorTo(String requesterId, Operation op) {
-        Platform.runLater(() -> {
-            Platform.runLater(() -> {
-                // 1. [데이터 안전장치] 목표 위치를 보정합니다. (필수)
-                int currentDocLength = hybridManager.getCodeArea().getLength();
-                
-                // 기존 코드: Math.min(op.getCursorPosition(), currentDocLength);
-                // 수정 코드: Math.max(0, ...) 추가하여 음수 방지
-                int rawPos = op.getCursorPosition();
-                // 커서 정보가 없거나(-1) 이상하면 0 또는 현재 길이로 보정
-                if (rawPos < 0) rawPos = 0; 
-                int safeTargetPosition = Math.max(0, Math.min(rawPos, currentDocLength));
-
-                // 2. IntegerProperty를 가져오거나 생성합니다.
-                IntegerProperty visualCursor = userVisualCursors.computeIfAbsent(requesterId, id -> {
-                    SimpleIntegerProperty property = new SimpleIntegerProperty(safeTargetPosition);
-                    String tabId = "file-" + filePath;
-                    property.addListener((obs, oldVal, newVal) -> {
-                        hybridManager.getStateManager().getCursorManager(tabId).ifPresent(cursorManager -> {
-                            cursorManager.updateCursor(requesterId, requesterId, newVal.intValue());
-                        });
-                    });
-                    return property;
-                });
-
-                // 3. [핵심] 연산 종류에 따라 애니메이션 시간을 동적으로 결정합니다.
-                Duration animationDuration;
-                if (op.getType() == Operation.Type.DELETE) {
-                    // 삭제는 짧고 빠르게 반응하여 안정성을 높입니다.
-                    animationDuration = Duration.millis(30);
-                } else { // INSERT 또는 순수 커서 이동
-                    // 삽입은 부드러움을 위해 조금 더 길게 설정합니다.
-                    animationDuration = Duration.millis(120); 
-                }
-
-                // 4. Timeline을 가져오거나 생성합니다.
-                Timeline timeline = userTimelines.computeIfAbsent(requesterId, id -> new Timeline());
-                
-                // 5. 결정된 시간과 안전한 목표로 애니메이션 KeyFrame을 생성합니다.
-                KeyValue newKeyValue = new KeyValue(visualCursor, safeTargetPosition, Interpolator.EASE_OUT);
-                KeyFrame newKeyFrame = new KeyFrame(animationDuration, newKeyValue);
-
-                // 6. 애니메이션을 실행합니다. (취소 후 재시작 방식)
-                timeline.stop();
-                timeline.getKeyFrames().setAll(newKeyFrame);
-                timeline.playFromStart();
-            });
-        });
+    private void animateCursorTo(String requesterId, int cursorPosition, double durationMillis) {
+        // [데이터 안전장치] 커서 정보가 없거나(-1) 문서 범위를 벗어나면 보정합니다.
+        int currentDocLength = hybridManager.getCodeArea().getLength();
+        int safeTargetPosition = Math.max(0, Math.min(cursorPosition, currentDocLength));
+        getCursorManager().ifPresent(cursorManager ->
+            cursorManager.animateCursor(requesterId, requesterId, safeTargetPosition, durationMillis));
     }
 
 
 
 
+    /**
+     * 재접속 등으로 놓친 서버 연산(UF_HISTORY)을 반영합니다.
+     * 히스토리에 전송 중이던 내 연산(uniqId 일치)이 있으면 rebase / 재전송하지 않고 확정 처리합니다.
+     * 로컬 연산 되돌리기 → 서버 연산 적용 → 변환된 로컬 연산 재적용을 하나의 편집 스크립트로 합성한 뒤
+     * CodeArea 에는 한 번의 트랜잭션으로 적용하고, 하이라이팅/분석도 끝에서 한 번만 실행합니다.
+     */
     public void handleCatchUp(JSONArray operations) {
 
-        undoUnconfirmedOps();
+        TextOperation script = undoScriptForUnconfirmedOps();
+
+        // 히스토리를 적용하기 전에 전송 중이던 연산을 기억해 둔다.
+        // stop-and-wait 모드의 rebase 는 전송 중 표시를 지우고, 빈 연산이 된 연산은 큐에서 빼 버리므로
+        // 루프 도중에 큐를 보고 내 연산인지 판단하면 확정된 연산을 다시 보내게 된다.
+        Set<String> sentUniqIds = new HashSet<>();
+        for (Operation queued : unconfirmedOps) {
+            if (queued.isSentToServer() && queued.getUniqId() != null) {
+                sentUniqIds.add(queued.getUniqId());
+            }
+        }
 
-        List<Operation> serverOps = new ArrayList<>();
         long lastVersion = -1;
         for (int i = 0; i < operations.length(); i++) {
             JSONObject opJson = operations.getJSONObject(i);
             Operation op = Operation.fromJson(opJson);
-            serverOps.add(op);
-            applyOperationToCodeArea(op, null); // Catch-up doesn't need a requester ID for cursor
+            if (recoveredJournal != null && op.getVersion() > recoveredJournal.getBaseVersion()) {
+                // 저널 연산은 기준 버전 이후의 모든 서버 연산과 동시에 일어난 것으로 보고 rebase 한다.
+                recoveredJournal.applyServerOperation(op, op.getVersion());
+            }
+            if (op.getVersion() <= this.localVersion) {
+                continue; // 이미 문서에 반영된 연산 (저널 복구용으로 요청한 히스토리 등)
+            }
+            // 스크립트는 먼저 로컬 연산을 모두 되돌렸으므로, 내 연산이든 아니든 서버가 확정한 모양 그대로 다시 적용한다.
+            script = script.compose(op.getTextOperation());
+            if (op.getUniqId() != null && sentUniqIds.contains(op.getUniqId())) {
+                // 서버가 확정했지만 연결이 끊겨 ACK 를 못 받은 내 연산. 다시 보내면 편집이 중복되므로 확정 처리만 한다.
+                // 앞선 rebase 로 빈 연산이 되어 이미 큐에서 빠졌다면 확정할 것이 없고, rebase 도 하지 않는다.
+                unconfirmedOps.acknowledgeQueued(op.getUniqId());
+                lastVersion = op.getVersion();
+                continue;
+            }
+            // 로컬 연산들을 서버 연산 이후 시점으로 한 단계씩 옮긴다.
+            unconfirmedOps.rebase(op, op.getVersion());
             lastVersion = op.getVersion();
         }
 
-        Queue<Operation> transformedOps = new LinkedList<>();
-        for (Operation myOp : unconfirmedOps) {
-            Operation transformedOp = myOp;
-            for (Operation serverOp : serverOps) {
-                if (transformedOp == null) break;
-                transformedOp = transform(transformedOp, serverOp);
-            }
-            if (transformedOp != null) {
-                applyOperationToCodeArea(transformedOp, null); // Local ops don't need cursor update
-                transformedOps.add(transformedOp);
-            }
+        for (Operation transformedOp : unconfirmedOps) {
+            script = script.compose(transformedOp.getTextOperation());
         }
-        this.unconfirmedOps.clear();
-        this.unconfirmedOps.addAll(transformedOps);
+        applyCatchUpScript(script);
 
         if (lastVersion != -1) {
             this.localVersion = lastVersion;
@@ -309,9 +426,38 @@ public class OTManager {
 
         reapplyAndResendUnconfirmedOps();
 
+        if (recoveredJournal == null) {
+            journal.rewrite(this.localVersion, unconfirmedOps);
+        } else if (recoveredJournal.getBaseVersion() == this.localVersion) {
+            installRecoveredOperations(); // 저널도 여기서 현재 큐 전체로 다시 쓴다.
+        }
+        // 아직 히스토리가 모자라면 저널 파일은 이전 세션 그대로 둔다.
     }
-    
+
+    private void applyCatchUpScript(TextOperation script) {
+        List<TextOperation.Edit> edits = script.toEdits();
+        if (edits.isEmpty()) return;
+        Platform.runLater(() -> {
+            // [안전장치] 문서 범위를 벗어나는 편집은 문서 끝에 맞춘다.
+            int currentLength = hybridManager.getCodeArea().getLength();
+            List<TextOperation.Edit> safeEdits = new ArrayList<>(edits.size());
+            for (TextOperation.Edit edit : edits) {
+                int start = Math.max(0, Math.min(edit.start, currentLength));
+                int end = Math.max(start, Math.min(edit.end, currentLength));
+                safeEdits.add(new TextOperation.Edit(start, end, edit.text));
+            }
+
+            hybridManager.prepareForLargeUpdate();
+            try {
+                hybridManager.controlledReplaceAll(safeEdits);
+            } finally {
+                hybridManager.finishLargeUpdate(); // 하이라이팅/분석은 여기서 한 번만
+            }
+        });
+    }
+
     // ... 나머지 기존 메서드들은 변경 없음 ...
+    @Override
     public void sendOperation(Operation op) {
         if (isRebasing) {
             pendingInputQueue.add(op);
@@ -319,77 +465,44 @@ public class OTManager {
         }
         updateRemoteCursorsLocally(op);
         projectController.getCurrentUserNicknameAndTag().ifPresent(userId -> {
-            long lastVersion = unconfirmedOps.isEmpty() 
-                ? this.localVersion 
-                : unconfirmedOps.stream().mapToLong(Operation::getExpectedVersion).max().orElse(this.localVersion);
-            
-            op.setUniqId(userId + "-" + (uniqIdCounter++));
-            op.setVersion(this.localVersion);
-            op.setExpectedVersion(lastVersion + 1);
-            op.setSentToServer(false);
-
-            unconfirmedOps.add(op);
+            // 아직 전송되지 않은 마지막 연산과 이어지는 편집이면 하나의 연산으로 합쳐서 보낸다.
+            // COMPOUND 를 받지 않는 서버라면 합친 결과가 단순 INSERT/DELETE 일 때만 합친다.
+            Operation tail = unconfirmedOps.peekLast();
+            if (unconfirmedOps.composeIntoTail(op, projectController.isCompoundEditEnabled())) {
+                op.setUniqId(tail.getUniqId());
+                journalQueueChange(() -> journal.appendLocal(op));
+                return;
+            }
 
-            if (unconfirmedOps.stream().noneMatch(Operation::isSentToServer)) {
-                sendNextPendingOperation();
+            if (unconfirmedOps.isEmpty() && recoveredJournal == null && !journalRecoveryPending) {
+                journal.begin(this.localVersion);
             }
+            op.setUniqId(userId + "-" + (uniqIdCounter++));
+            unconfirmedOps.add(op, this.localVersion);
+            journalQueueChange(() -> journal.appendLocal(op));
+
+            sendNextPendingOperation();
         });
     }
 
     private void updateRemoteCursorsLocally(Operation localOp) {
-        Platform.runLater(() -> {
-            for (Map.Entry<String, IntegerProperty> entry : userVisualCursors.entrySet()) {
-                // 내 커서는 조정할 필요 없음 (어차피 CodeArea가 알아서 처리함)
-                // 하지만 userVisualCursors에는 보통 상대방 것만 들어있으므로 바로 처리
-                
-                IntegerProperty visualCursor = entry.getValue();
-                int currentPos = visualCursor.get();
-                
-                // 기존에 만들어둔 transform_position 메서드를 재활용합니다!
-                // (수학적으로 Op vs Op 변환이나, Pos vs Op 변환이나 원리는 같습니다)
-                int newPos = transform_position(currentPos, localOp);
-                
-                if (currentPos != newPos) {
-                    // 애니메이션 없이 즉시 값을 바꿉니다. (내가 타이핑하는 속도에 맞춰야 하므로)
-                    visualCursor.set(newPos);
-                    
-                    // 만약 애니메이션(Timeline)이 돌고 있었다면 멈춰야 덜덜거리지 않음
-                    String userId = entry.getKey();
-                    if (userTimelines.containsKey(userId)) {
-                        userTimelines.get(userId).stop();
-                    }
-                }
-            }
-        });
+        // 내 편집에 맞춰 다른 사용자의 커서를 애니메이션 없이 즉시 옮깁니다. (내가 타이핑하는 속도에 맞춰야 하므로)
+        // 진행 중인 애니메이션의 시작점/목표점도 함께 옮겨지므로 멈출 필요가 없습니다.
+        getCursorManager().ifPresent(cursorManager -> cursorManager.transformCursors(
+            position -> OperationTransformer.transformPosition(position, localOp), null));
     }
 
 
     private void abortUnconfirmedOperations(Operation serverOp, String requesterId) {
         isRebasing = true;
-        
-        Queue<Operation> rebasedOps = new LinkedList<>();
-        for (Operation myOp : unconfirmedOps) {
-            Operation rebasedOp = transform(myOp, serverOp);
-            if (rebasedOp != null) {
-                rebasedOps.add(rebasedOp);
-            }
-        }
 
-        Operation transformedServerOp = serverOp;
-        for (Operation myOp : unconfirmedOps) {
-            transformedServerOp = transform(transformedServerOp, myOp);
-            if (transformedServerOp == null) break;
+        boolean hadUnconfirmedOps = !unconfirmedOps.isEmpty();
+        Operation transformedServerOp = unconfirmedOps.rebase(serverOp, serverOp.getVersion());
+        if (hadUnconfirmedOps) {
+            journalQueueChange(() -> journal.appendRemote(serverOp, serverOp.getVersion()));
         }
         applyOperationToCodeArea(transformedServerOp, requesterId);
 
-        this.unconfirmedOps.clear();
-        long lastExpectedVersion = serverOp.getVersion();
-        for(Operation op : rebasedOps) {
-            op.setExpectedVersion(++lastExpectedVersion);
-            op.setSentToServer(false);
-            this.unconfirmedOps.add(op);
-        }
-
         this.localVersion = serverOp.getVersion();
         
 
@@ -410,119 +523,59 @@ public class OTManager {
     }
 
     private void sendNextPendingOperation() {
-        if (unconfirmedOps.stream().anyMatch(Operation::isSentToServer)) {
-            return;
-        }
-
-        unconfirmedOps.stream()
-            .filter(o -> !o.isSentToServer())
-            .findFirst()
-            .ifPresent(opToSend -> {
-                opToSend.setSentToServer(true);
-                opToSend.setVersion(this.localVersion); 
+        // 전송 중인 연산이 없을 때만 윈도우를 현재 연결의 협상 결과에 맞춘다. (재연결로 서버가 바뀌었을 수 있음)
+        unconfirmedOps.setPipelineWindow(projectController.isEditPipelineEnabled() ? pipelineWindow : 1);
+        boolean compoundEnabled = projectController.isCompoundEditEnabled();
+        // 전송된 연산은 큐 앞쪽에 모여 있으므로, 앞에서부터 윈도우가 찰 때까지 미전송 연산을 보낸다.
+        Operation opToSend;
+        while (true) {
+            // rebase 나 저널 복구로 생긴 COMPOUND 는 받지 않는 서버에 보내기 전에 나눈다. uniqId 가 바뀌므로 저널도 다시 쓴다.
+            if (!compoundEnabled && unconfirmedOps.splitNextSendable()) {
+                journalQueueChange(() -> journal.rewrite(localVersion, unconfirmedOps));
+            }
+            if ((opToSend = unconfirmedOps.pollSendable(this.localVersion)) == null) break;
+            if (opToSend.getType() == Operation.Type.COMPOUND) {
                 projectController.fileEditOperationRequest(
                     this.filePath,
-                    opToSend.getType().toString(),
-                    opToSend.getPosition(),
-                    opToSend.getText(),
-                    opToSend.getLength(),
+                    opToSend.getTextOperation(),
                     opToSend.getCursorPosition(),
                     opToSend.getVersion(),
                     opToSend.getUniqId()
                 );
-            });
-    }
-
-    private Operation transform(Operation myOp, Operation otherOp) {
-        int myPos = myOp.getPosition();
-        int otherPos = otherOp.getPosition();
-        int myLen = myOp.getLength();
-        int otherLen = otherOp.getLength();
-        int myCursorPos = myOp.getCursorPosition();
-
-        if (myOp.getType() == Operation.Type.INSERT && otherOp.getType() == Operation.Type.INSERT) {
-            if (myPos < otherPos || (myPos == otherPos && myOp.getUniqId().compareTo(otherOp.getUniqId()) < 0)) {
-                // No change to myPos
-            } else {
-                myPos += otherLen;
-            }
-            if (myCursorPos > otherPos) {
-                myCursorPos += otherLen;
-            }
-        } else if (myOp.getType() == Operation.Type.INSERT && otherOp.getType() == Operation.Type.DELETE) {
-            if (myPos > otherPos) {
-                myPos -= Math.min(myPos - otherPos, otherLen);
-            }
-            if (myCursorPos > otherPos) {
-                myCursorPos -= Math.min(myCursorPos - otherPos, otherLen);
-            }
-        } else if (myOp.getType() == Operation.Type.DELETE && otherOp.getType() == Operation.Type.INSERT) {
-            if (myPos >= otherPos) {
-                myPos += otherLen;
-            }
-            if (myCursorPos >= otherPos) {
-                myCursorPos += otherLen;
-            }
-        } else if (myOp.getType() == Operation.Type.DELETE && otherOp.getType() == Operation.Type.DELETE) {
-            int myEnd = myPos + myLen;
-            int otherEnd = otherPos + otherLen;
-
-            if (myEnd <= otherPos) {
-                // No change
-            } else if (myPos >= otherEnd) {
-                myPos -= otherLen;
-            } else { // Overlap
-                int intersectionStart = Math.max(myPos, otherPos);
-                int intersectionEnd = Math.min(myEnd, otherEnd);
-                int intersectionLength = intersectionEnd - intersectionStart;
-
-                if (intersectionLength > 0) {
-                    myLen -= intersectionLength;
-                }
-                
-                if (myPos > otherPos) {
-                    myPos -= (Math.min(myPos, otherEnd) - otherPos);
-                }
-            }
-            if (myCursorPos > otherPos) {
-                myCursorPos -= Math.min(myCursorPos - otherPos, otherLen);
+                continue;
             }
-            if (myLen <= 0) {
-                return null;
-            }
-        }
-
-        if (myOp.getType() == Operation.Type.INSERT) {
-            return new Operation(myOp.getType(), myPos, myOp.getText(), myCursorPos, myOp.getVersion(), myOp.getUniqId());
-        } else { // DELETE
-            return new Operation(myOp.getType(), myPos, myOp.getText(), myLen, myCursorPos, myOp.getVersion(), myOp.getUniqId());
+            projectController.fileEditOperationRequest(
+                this.filePath,
+                opToSend.getType().toString(),
+                opToSend.getPosition(),
+                opToSend.getText(),
+                opToSend.getLength(),
+                opToSend.getCursorPosition(),
+                opToSend.getVersion(),
+                opToSend.getUniqId()
+            );
         }
     }
 
-    private void undoUnconfirmedOps() {
-        List<Operation> reversedOps = new ArrayList<>(unconfirmedOps);
+    // 확정되지 않은 로컬 연산들을 뒤에서부터 되돌리는 연산 (로컬 문서 → 마지막 확정 문서)
+    private TextOperation undoScriptForUnconfirmedOps() {
+        List<Operation> reversedOps = new ArrayList<>();
+        unconfirmedOps.forEach(reversedOps::add);
         Collections.reverse(reversedOps);
+        TextOperation script = new TextOperation();
         for (Operation op : reversedOps) {
-            applyOperationToCodeArea(op.getInverse(), null); // No need to update cursor for undo
+            script = script.compose(op.getInverse().getTextOperation());
         }
+        return script;
     }
 
     private void reapplyAndResendUnconfirmedOps() {
-        // 1. 버전 재정렬을 위한 기준점 설정
-        // CatchUp 이후 업데이트된 최신 로컬 버전부터 시작합니다.
-        long currentBaseVersion = this.localVersion;
-
-        for (Operation op : unconfirmedOps) {
-            // 2. 상태 초기화: 다시 보내야 하므로 false
-            op.setSentToServer(false);
-            
-            // 3. [핵심 수정] 기대 버전 재설정
-            // 예: 현재 버전이 15라면, 첫 번째 연산은 16이 되길 기대, 두 번째는 17...
-            // 이렇게 해줘야 handleBroadcast에서 ACK를 검사할 때 통과할 수 있습니다.
-            op.setExpectedVersion(++currentBaseVersion);
-        }
+        // CatchUp 이후 업데이트된 최신 로컬 버전부터 예상 버전을 다시 매기고 전부 다시 보낸다.
+        // 예: 현재 버전이 15라면, 첫 번째 연산은 16이 되길 기대, 두 번째는 17...
+        // 이렇게 해줘야 handleBroadcast에서 ACK를 검사할 때 통과할 수 있습니다.
+        unconfirmedOps.resetForResend(this.localVersion);
 
-        // 4. 도미노 첫 조각 밀기
+        // 도미노 첫 조각 밀기
         sendNextPendingOperation(); 
     }
 }
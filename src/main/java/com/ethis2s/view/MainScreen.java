@@ -3,17 +3,20 @@ package com.ethis2s.view;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.Consumer;
 
-import org.json.JSONArray;
 import org.json.JSONObject;
 
 import com.ethis2s.controller.MainController;
 import com.ethis2s.controller.ProjectController;
+import com.ethis2s.model.FileTreeDelta;
+import com.ethis2s.model.FileTreeIndex;
 import com.ethis2s.model.UserInfo;
 import com.ethis2s.model.UserProjectsInfo;
 import com.ethis2s.util.ConfigManager;
@@ -24,6 +27,7 @@ import javafx.animation.FadeTransition;
 import javafx.animation.PauseTransition;
 import javafx.application.Platform;
 import javafx.beans.property.ReadOnlyDoubleProperty;
+import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
 import javafx.geometry.Orientation;
 import javafx.geometry.Pos;
@@ -57,6 +61,7 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.Region;
 import javafx.scene.layout.StackPane;
+import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 import javafx.scene.SnapshotParameters;
 import javafx.stage.Stage;
@@ -66,6 +71,8 @@ public class MainScreen {
 
     private static final DataFormat FILE_TREE_DRAG_FORMAT =
             new DataFormat("com.ethis2s.view.MainScreen.FileTreeItem");
+    // 파일 찾기 결과 최대 개수. 색인 검색은 빠르지만 결과 트리 항목은 FX 스레드에서 만든다.
+    private static final int FILE_FILTER_LIMIT = 500;
 
     private TreeView<Object> fileExplorer;
     private TreeItem<Object> projectRoot;
@@ -76,6 +83,17 @@ public class MainScreen {
     private Label connectionStatusLabel;
     private MFXProgressSpinner antlrIndicator; // ANTLR 분석 상태 인디케이터
     private UserProjectsInfo currentProjectForFileTree;
+    // 현재 파일 트리가 반영한 서버 트리 버전. -1 이면 델타를 이어 붙일 수 없다(첫 목록 전, 델타 미지원 서버, 연결 끊김).
+    private long fileTreeVersion = -1;
+    // 서버가 결과를 알려 주지 않는 변경(삭제, 이름 변경, 이동)의 경로. 제한 시간 안에 그 경로의 델타가 오지 않으면
+    // 서버가 거부한 것으로 보고 목록을 다시 받는다.
+    private static final Duration FILE_TREE_DELTA_TIMEOUT = Duration.seconds(5);
+    private final Set<String> pendingFileTreeChanges = new HashSet<>();
+    // 파일 트리의 실제 루트와 검색 색인. 검색 중에는 fileExplorer 에 검색 결과 트리가 대신 들어간다.
+    private TreeItem<Object> fileTreeRoot;
+    private FileTreeIndex fileTreeIndex;
+    private String fileFilterQuery = "";
+    private TextField fileFilterField;
     private UserInfo currentUserInfo;
     private boolean isTransitioning = false;
     private final double SEARCH_FIELD_NARROW_WIDTH = 200;
@@ -519,6 +537,11 @@ public class MainScreen {
         fileExplorer.setRoot(null);
         fileExplorerContainer.setTop(null);
         currentProjectForFileTree = null;
+        fileTreeVersion = -1;
+        pendingFileTreeChanges.clear();
+        fileTreeRoot = null;
+        fileTreeIndex = null;
+        fileFilterQuery = "";
         currentUserInfo = null;
     }
 
@@ -606,6 +629,10 @@ public class MainScreen {
         performTransition(() -> {
             if (projectRoot != null) {
                 currentProjectForFileTree = null;
+                fileTreeVersion = -1;
+                fileTreeRoot = null;
+                fileTreeIndex = null;
+                fileFilterQuery = "";
                 setProjectListCellFactory(projectController, mainController);
                 fileExplorer.setRoot(projectRoot);
                 fileExplorer.setShowRoot(false);
@@ -615,22 +642,230 @@ public class MainScreen {
         });
     }
 
-    public void updateFileTree(JSONObject fileListJson) {
-        if (fileListJson != null && fileListJson.has("name") && fileListJson.has("children")) {
-            saveExpandedState();
-            String rootName = fileListJson.getString("name");
-            TreeItem<Object> root = new FileTreeItem(new NodeType(rootName, "folder")); // <-- 여기를 수정!
-            root.setExpanded(true);
+    /** 새 목록의 색인으로 파일 트리를 바꿉니다. 루트의 자식만 만들고, 나머지는 폴더를 펼칠 때 만듭니다. */
+    public void updateFileTree(FileTreeIndex index, long treeVersion) {
+        saveExpandedState();
+        TreeItem<Object> root = new FileTreeItem(index, 0, true);
+        root.setExpanded(true);
+        fileTreeRoot = root;
+        fileTreeIndex = index;
+        restoreExpandedState(root);
+        fileTreeVersion = treeVersion;
+        pendingFileTreeChanges.clear(); // 새 목록에 서버의 결과가 들어 있다.
+        if (fileFilterQuery.isEmpty()) {
+            fileExplorer.setRoot(root);
+            fileExplorer.setShowRoot(false);
+        } else {
+            applyFileFilter(fileFilterQuery);
+        }
+    }
 
-            JSONArray children = fileListJson.getJSONArray("children");
-            for (int i = 0; i < children.length(); i++) {
-                root.getChildren().add(buildTreeFromJson(children.getJSONObject(i)));
+    /** 델타를 반영한 검색 색인. 파일 트리 항목은 {@link #applyFileTreeDelta} 가 이미 바꿨습니다. */
+    public void setFileTreeIndex(FileTreeIndex index) {
+        fileTreeIndex = index;
+        if (!fileFilterQuery.isEmpty()) {
+            applyFileFilter(fileFilterQuery);
+        }
+    }
+
+    /**
+     * 파일 트리 델타를 기존 TreeItem 에 그 자리에서 반영합니다. 펼침/선택 상태는 항목과 함께 그대로 남습니다.
+     * 다른 프로젝트의 것이거나 이미 반영된 버전이면 무시합니다.
+     * @return 버전이 이어지지 않거나 트리와 맞지 않아 전체 목록을 다시 받아야 하면 false
+     */
+    public boolean applyFileTreeDelta(FileTreeDelta delta) {
+        if (currentProjectForFileTree == null || !delta.getProjectId().equals(currentProjectForFileTree.getProjectID())) {
+            return true;
+        }
+        // 첫 목록을 기다리는 중이면 그 목록에 이 변경이 들어 있다. (목록과 델타는 같은 순서로 배달됨)
+        if (fileTreeVersion < 0 || delta.getVersion() <= fileTreeVersion) {
+            return true;
+        }
+        if (delta.getFromVersion() != fileTreeVersion) {
+            fileTreeVersion = -1;
+            return false;
+        }
+        for (FileTreeDelta.Change change : delta.getChanges()) {
+            pendingFileTreeChanges.remove(change.getPath());
+            if (!applyFileTreeChange(change)) {
+                System.err.println("[FileTree] Cannot apply " + change.getOp() + " " + change.getPath()
+                    + " at version " + delta.getVersion() + ". Reloading file tree.");
+                fileTreeVersion = -1;
+                return false;
             }
+        }
+        fileTreeVersion = delta.getVersion();
+        return true;
+    }
 
-            fileExplorer.setRoot(root);
+    /** 서버가 결과를 알려 주는 변경(파일/폴더 추가) 뒤. 델타를 받는 트리는 그 델타로 갱신되므로 실패했을 때만 목록을 다시 받습니다. */
+    public void refreshFileTreeAfterChange(ProjectController projectController, boolean succeeded) {
+        if (!succeeded || fileTreeVersion < 0) {
+            refreshCurrentFileTree(projectController);
+        }
+    }
+
+    /**
+     * 서버가 응답을 주지 않는 변경(삭제/이름 변경/이동)을 보낸 뒤. 델타를 받는 트리는 path 의 델타가
+     * FILE_TREE_DELTA_TIMEOUT 안에 오기를 기다리고, 오지 않으면(서버가 거부) 목록을 다시 받아 화면의 변경을 되돌립니다.
+     */
+    public void awaitFileTreeDelta(ProjectController projectController, String path) {
+        if (fileTreeVersion < 0) {
+            refreshCurrentFileTree(projectController);
+            return;
+        }
+        pendingFileTreeChanges.add(path);
+        UserProjectsInfo project = currentProjectForFileTree;
+        PauseTransition timeout = new PauseTransition(FILE_TREE_DELTA_TIMEOUT);
+        timeout.setOnFinished(e -> {
+            if (pendingFileTreeChanges.remove(path) && project == currentProjectForFileTree) {
+                System.err.println("[FileTree] No delta for " + path + ". Reloading file tree.");
+                refreshCurrentFileTree(projectController);
+            }
+        });
+        timeout.play();
+    }
+
+    public void invalidateFileTreeVersion() {
+        fileTreeVersion = -1;
+    }
+
+    // 이미 반영된 변경(직접 한 추가/이름 변경이 먼저 화면에 들어가 있는 경우 등)은 성공으로 본다.
+    private boolean applyFileTreeChange(FileTreeDelta.Change change) {
+        String path = change.getPath();
+        String name = fileNameOf(path);
+        TreeItem<Object> item = findTreeItem(path);
+        switch (change.getOp()) {
+            case ADD -> {
+                if (item != null) return true;
+                TreeItem<Object> parent = findTreeItem(parentPathOf(path));
+                if (!isFolder(parent)) return false;
+                insertSorted(parent, new FileTreeItem(new NodeType(name, change.getType())));
+                return true;
+            }
+            case REMOVE -> {
+                if (item == null) return true;
+                dragExpandedItems.remove(item);
+                item.getParent().getChildren().remove(item);
+                return true;
+            }
+            case RENAME -> {
+                String parentPath = parentPathOf(path);
+                String target = parentPath.isEmpty() ? change.getNewName() : parentPath + "/" + change.getNewName();
+                if (item == null) return findTreeItem(target) != null;
+                if (!(item.getValue() instanceof NodeType node)) return false;
+                item.setValue(new NodeType(change.getNewName(), node.getType()));
+                return true;
+            }
+            case MOVE -> {
+                String target = change.getNewParent().isEmpty() ? name : change.getNewParent() + "/" + name;
+                if (item == null) return findTreeItem(target) != null;
+                TreeItem<Object> newParent = findTreeItem(change.getNewParent());
+                if (!isFolder(newParent)) return false;
+                for (TreeItem<Object> p = newParent; p != null; p = p.getParent()) {
+                    if (p == item) return false; // 자기 하위 폴더로는 옮길 수 없다.
+                }
+                if (newParent == item.getParent()) return true;
+                item.getParent().getChildren().remove(item);
+                insertSorted(newParent, item);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 검색어에 맞는 파일/폴더만 조상 폴더와 함께 보여 줍니다. 빈 검색어는 원래 트리로 돌아갑니다.
+     * 맞는 폴더는 펼치면 전체 내용을 보여 줍니다. 결과는 {@link #FILE_FILTER_LIMIT} 개까지입니다.
+     */
+    private void applyFileFilter(String query) {
+        fileFilterQuery = query.trim();
+        if (fileTreeRoot == null) return;
+        if (fileFilterQuery.isEmpty() || fileTreeIndex == null) {
+            fileExplorer.setRoot(fileTreeRoot);
             fileExplorer.setShowRoot(false);
-            restoreExpandedState(root);
+            return;
+        }
+        FileTreeIndex index = fileTreeIndex;
+        Map<Integer, TreeItem<Object>> items = new HashMap<>();
+        TreeItem<Object> root = new FileTreeItem(index, 0, false);
+        root.setExpanded(true);
+        items.put(0, root);
+        for (int node : index.search(fileFilterQuery, FILE_FILTER_LIMIT)) {
+            filterItem(index, node, true, items);
         }
+        fileExplorer.setRoot(root);
+        fileExplorer.setShowRoot(false);
+    }
+
+    // 검색 결과(match)는 펼치면 전체 내용을 보이고, 결과가 아닌 조상 폴더는 맞는 자식만 담은 채 펼쳐 둔다.
+    private TreeItem<Object> filterItem(FileTreeIndex index, int node, boolean match, Map<Integer, TreeItem<Object>> items) {
+        TreeItem<Object> item = items.get(node);
+        if (item == null) {
+            TreeItem<Object> parent = filterItem(index, index.parentOf(node), false, items);
+            // 앞서 나온 결과 폴더의 하위라면 그 폴더를 펼칠 때 이미 만들어졌다.
+            for (TreeItem<Object> child : parent.getChildren()) {
+                if (child instanceof FileTreeItem fileItem && fileItem.node == node) {
+                    item = child;
+                    break;
+                }
+            }
+            if (item == null) {
+                item = new FileTreeItem(index, node, match);
+                insertSorted(parent, item);
+            }
+            items.put(node, item);
+        }
+        if (!match) item.setExpanded(true);
+        return item;
+    }
+
+    /** 경로("" 는 루트)의 TreeItem. 없으면 null */
+    private TreeItem<Object> findTreeItem(String path) {
+        TreeItem<Object> current = fileTreeRoot;
+        if (current == null || path.isEmpty()) return current;
+        for (String part : path.split("/")) {
+            TreeItem<Object> next = null;
+            for (TreeItem<Object> child : current.getChildren()) {
+                if (part.equals(child.getValue().toString())) {
+                    next = child;
+                    break;
+                }
+            }
+            if (next == null) return null;
+            current = next;
+        }
+        return current;
+    }
+
+    // 폴더가 파일보다 앞, 같은 종류끼리는 이름순
+    private void insertSorted(TreeItem<Object> parent, TreeItem<Object> item) {
+        List<TreeItem<Object>> children = parent.getChildren();
+        int index = 0;
+        while (index < children.size() && compareTreeItems(children.get(index), item) <= 0) {
+            index++;
+        }
+        children.add(index, item);
+    }
+
+    private int compareTreeItems(TreeItem<Object> a, TreeItem<Object> b) {
+        boolean aFolder = isFolder(a);
+        if (aFolder != isFolder(b)) return aFolder ? -1 : 1;
+        return a.getValue().toString().compareToIgnoreCase(b.getValue().toString());
+    }
+
+    private static boolean isFolder(TreeItem<Object> item) {
+        return item != null && (item.getParent() == null
+            || (item.getValue() instanceof NodeType node && "folder".equals(node.getType())));
+    }
+
+    private static String parentPathOf(String path) {
+        int slash = path.lastIndexOf('/');
+        return slash < 0 ? "" : path.substring(0, slash);
+    }
+
+    private static String fileNameOf(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
     }
 
     private void changeToProjectDirView(UserProjectsInfo userProjectsInfo, ProjectController projectController, MainController mainController) {
@@ -647,6 +882,10 @@ public class MainScreen {
     public void switchToProjectDirView(UserProjectsInfo userProjectsInfo, ProjectController projectController, MainController mainController) {
         performTransition(() -> {
             this.currentProjectForFileTree = userProjectsInfo;
+            this.fileTreeVersion = -1;
+            this.fileTreeRoot = null;
+            this.fileTreeIndex = null;
+            this.fileFilterQuery = "";
             setFileTreeCellFactory(projectController, userProjectsInfo.getProjectID(), userProjectsInfo, mainController);
             updateFileExplorerHeader(ViewType.FILE_TREE, userProjectsInfo, projectController, mainController);
             projectController.fileListRequest(userProjectsInfo);
@@ -684,7 +923,7 @@ public class MainScreen {
                             payload.put("isDirectory", isDirectory);
 
                             projectController.fileLocationChangeRequest(payload, currentProjectForFileTree.getProjectID());
-                            projectController.fileListRequest(currentProjectForFileTree);
+                            awaitFileTreeDelta(projectController, sourcePath);
                         }
 
                         lastDragTargetParentPath = targetDirPath;
@@ -704,10 +943,10 @@ public class MainScreen {
                             String path = pathString.replace('\\', '/');
                             if(nodeType.getType().equals("file")){
                                 projectController.delFileRequest(userProjectsInfo.getProjectID(), path, userProjectsInfo.getOwner());
-                                projectController.fileListRequest(userProjectsInfo);
+                                awaitFileTreeDelta(projectController, path);
                             }else if(nodeType.getType().equals("folder")){
                                 projectController.delDirRequest(userProjectsInfo.getProjectID(), path, userProjectsInfo.getOwner());
-                                projectController.fileListRequest(userProjectsInfo);
+                                awaitFileTreeDelta(projectController, path);
                             }
                         }
                     }
@@ -769,7 +1008,20 @@ public class MainScreen {
             Region spacer = new Region();
             HBox.setHgrow(spacer, Priority.ALWAYS);
             headerBox.getChildren().addAll(backButton, label, spacer, addFileBtn, addFolderBtn, refreshBtn);
+
+            fileFilterField = new TextField(fileFilterQuery);
+            fileFilterField.setPromptText("파일 찾기...");
+            fileFilterField.getStyleClass().add("file-tree-filter");
+            fileFilterField.textProperty().addListener((obs, oldText, newText) -> applyFileFilter(newText));
+            fileFilterField.setOnKeyPressed(event -> {
+                if (event.getCode() == KeyCode.ESCAPE) fileFilterField.clear();
+            });
+            VBox header = new VBox(headerBox, fileFilterField);
+            header.getStyleClass().add("file-tree-filter-box");
+            fileExplorerContainer.setTop(header);
+            return;
         }
+        fileFilterField = null;
         fileExplorerContainer.setTop(headerBox);
     }
 
@@ -790,6 +1042,9 @@ public class MainScreen {
 
     private void handleAddItem(String itemType) {
         if (fileExplorer.getEditingItem() != null) return;
+        if (fileFilterField != null && !fileFilterQuery.isEmpty()) {
+            fileFilterField.clear(); // 새 항목은 원래 트리에 만든다.
+        }
         TreeItem<Object> selectedItem = fileExplorer.getSelectionModel().getSelectedItem();
         TreeItem<Object> parentItem;
 
@@ -822,20 +1077,6 @@ public class MainScreen {
         }
     }
 
-    private TreeItem<Object> buildTreeFromJson(JSONObject jsonObject) {
-        String name = jsonObject.getString("name");
-        String type = jsonObject.has("children") ? "folder" : "file";
-        TreeItem<Object> node = new FileTreeItem(new NodeType(name, type));
-
-        if ("folder".equals(type)) {
-            JSONArray children = jsonObject.getJSONArray("children");
-            for (int i = 0; i < children.length(); i++) {
-                node.getChildren().add(buildTreeFromJson(children.getJSONObject(i)));
-            }
-        }
-        return node;
-    }
-
     private String getItemPath(TreeItem<Object> item) {
         if (item == null || item.getParent() == null) return "";
         StringBuilder path = new StringBuilder();
@@ -852,8 +1093,8 @@ public class MainScreen {
 
     private void saveExpandedState() {
         expandedItemPaths.clear();
-        if (fileExplorer.getRoot() != null) {
-            findExpandedPathsRecursive(fileExplorer.getRoot());
+        if (fileTreeRoot != null) {
+            findExpandedPathsRecursive(fileTreeRoot);
         }
     }
 
@@ -866,11 +1107,13 @@ public class MainScreen {
         }
     }
 
+    // 펼친 폴더 안으로만 내려간다. 접힌 폴더의 자식은 만들지 않는다.
     private void restoreExpandedState(TreeItem<Object> item) {
         if (item != null) {
             if (expandedItemPaths.contains(getItemPath(item))) {
                 item.setExpanded(true);
             }
+            if (!item.isExpanded()) return;
             for (TreeItem<Object> child : item.getChildren()) {
                 restoreExpandedState(child);
             }
@@ -1241,7 +1484,7 @@ public class MainScreen {
                                 payload.put("isDirectory", isDirectory);
 
                                 projectController.fileLocationChangeRequest(payload, projectId);
-                                projectController.fileListRequest(userProjectsInfo);
+                                awaitFileTreeDelta(projectController, sourcePath);
                             }
                             lastDragTargetParentPath = targetDirPath;
                             success = true;
@@ -1276,7 +1519,7 @@ public class MainScreen {
                                 payload.put("isDirectory", "folder".equals(node.getType()));
 
                                 projectController.fileNameChangeRequest(payload, projectId);
-                                projectController.fileListRequest(userProjectsInfo);
+                                awaitFileTreeDelta(projectController, originalPath);
 
                                 NodeType newNode = new NodeType(newName, node.getType());
                                 commitEdit(newNode);
@@ -1329,10 +1572,10 @@ public class MainScreen {
                     String pathString = path.toString().replace('\\', '/');
                     if(itemType.equals("file")){
                         projectController.delFileRequest(projectId, pathString, owner);
-                        projectController.fileListRequest(userProjectsInfo);
+                        awaitFileTreeDelta(projectController, pathString);
                     }else if(itemType.equals("folder")){
                         projectController.delDirRequest(projectId, pathString, owner);
-                        projectController.fileListRequest(userProjectsInfo);
+                        awaitFileTreeDelta(projectController, pathString);
                     }
                 }
             });
@@ -1340,10 +1583,40 @@ public class MainScreen {
             return contextMenu;
         }
     }
-    private static class FileTreeItem extends TreeItem<Object> {
+    /**
+     * 파일 트리 항목. 색인에서 만든 폴더는 처음 자식을 찾을 때(펼칠 때) 색인에서 자식 항목을 만듭니다.
+     * 접힌 폴더 아래에는 TreeItem 이 없으므로 큰 프로젝트도 화면에 보이는 만큼만 항목을 만듭니다.
+     */
+    private class FileTreeItem extends TreeItem<Object> {
+        private FileTreeIndex lazyIndex; // 아직 자식을 만들지 않았으면 그 색인
+        private final int node;
+
         public FileTreeItem(Object value) {
             super(value);
+            this.node = -1;
+        }
+
+        /** @param lazyChildren false 면 자식 없이 만든다 (검색 결과의 조상 폴더) */
+        FileTreeItem(FileTreeIndex index, int node, boolean lazyChildren) {
+            super(new NodeType(index.nameOf(node), index.isFolder(node) ? "folder" : "file"));
+            this.node = node;
+            this.lazyIndex = (lazyChildren && index.childCount(node) > 0) ? index : null;
+        }
+
+        @Override
+        public ObservableList<TreeItem<Object>> getChildren() {
+            if (lazyIndex != null) {
+                FileTreeIndex index = lazyIndex;
+                lazyIndex = null; // setAll 이 다시 getChildren 을 불러도 한 번만 만든다.
+                List<TreeItem<Object>> children = new ArrayList<>(index.childCount(node));
+                for (int i = 0; i < index.childCount(node); i++) {
+                    children.add(new FileTreeItem(index, index.childAt(node, i), true));
+                }
+                super.getChildren().setAll(children);
+            }
+            return super.getChildren();
         }
+
         @Override
         public boolean isLeaf() {
             Object value = getValue();
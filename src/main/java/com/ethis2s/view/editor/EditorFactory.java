@@ -4,6 +4,7 @@ import com.ethis2s.controller.MainController;
 import com.ethis2s.controller.ProjectController;
 import com.ethis2s.service.ChangeInitiator;
 import com.ethis2s.util.ConfigManager;
+import com.ethis2s.util.CrdtManager;
 import com.ethis2s.util.EditorContext;
 import com.ethis2s.util.EditorListenerManager;
 import com.ethis2s.util.EditorStateManager;
@@ -65,8 +66,21 @@ public class EditorFactory {
             context, // projectController, filePath, stateManager, tabId를 대체
             initialVersion
         );
-        OTManager otManager = new OTManager(initialVersion, context, manager); // projectController, filePath를 대체
-        stateManager.registerOTManager(tabId, otManager);
+        // 동시 편집 엔진: 기본은 서버 순서 기반 OT, 설정으로 CRDT 를 선택할 수 있다. (서버가 CRDT 에 응한 연결에서만)
+        boolean useCrdt = "crdt".equalsIgnoreCase(ConfigManager.getInstance().get("collaboration", "engine", String.class, "ot"));
+        if (useCrdt && !projectController.isCrdtEnabled()) {
+            System.err.println("[EditorFactory] Server did not negotiate CRDT. Opening " + filePath + " with OT.");
+            useCrdt = false;
+        }
+        OTManager otManager = null;
+        CrdtManager crdtManager = null;
+        if (useCrdt) {
+            crdtManager = new CrdtManager(context, manager);
+            stateManager.registerEngine(tabId, crdtManager);
+        } else {
+            otManager = new OTManager(initialVersion, context, manager); // projectController, filePath를 대체
+            stateManager.registerEngine(tabId, otManager);
+        }
 
         stateManager.registerTab(tabId, fileName, codeArea, manager);
 
@@ -90,6 +104,15 @@ public class EditorFactory {
         } finally {
             manager.finishLargeUpdate();
         }manager.resetInitiatorToUser();
+
+        if (otManager != null) {
+            // 이전 세션에서 서버 확정을 받지 못한 편집이 저널에 남아 있으면 이어서 반영/전송합니다.
+            otManager.replayJournal();
+        } else {
+            // CRDT 는 파일 내용 이후의 변경 묶음까지 받아야 하므로 상태를 요청하고 그때까지 편집을 막습니다.
+            // 상태 응답이 오지 않으면 OT 로 바꿔 편집할 수 있게 합니다.
+            crdtManager.requestInitialState(() -> fallBackToOt(tabId, context, manager, initialVersion));
+        }
         
         // Platform.runLater(manager::requestImmediateAnalysis);
 
@@ -100,6 +123,19 @@ public class EditorFactory {
         return stackPane;
     }
     
+    /**
+     * CRDT 상태를 받지 못한 탭을 OT 엔진으로 바꿉니다. 기다리는 동안 CRDT 엔진은 OT 편집 브로드캐스트를 받지 않았으므로
+     * 탭을 연 버전 이후의 히스토리를 요청해 따라잡습니다.
+     */
+    private void fallBackToOt(String tabId, EditorContext context, HybridManager manager, long initialVersion) {
+        stateManager.disposeOT(tabId);
+        OTManager otManager = new OTManager(initialVersion, context, manager);
+        stateManager.registerEngine(tabId, otManager);
+        manager.getCodeArea().setEditable(true);
+        projectController.fileHistoryRequest(context.getFilePath(), initialVersion);
+        otManager.replayJournal();
+    }
+
     public void reapplyStylesToAllEditors() {
         for (CodeArea codeArea : stateManager.getAllCodeAreas()) {
             applyStylesToCodeArea(codeArea);
@@ -150,7 +150,8 @@ public class EditorTabView {
         ProjectController projectController = mainController.getProjectController();
         
         // 2. ProjectController를 통해 파일 목록 비동기 요청
-        projectController.fileListRequest(currentProject, fileListJson -> {
+        //    (응답은 수신 스레드에서 오므로 콜백은 JavaFX Application Thread 에서 실행)
+        projectController.fetchFileList(currentProject).thenAcceptAsync(fileListJson -> {
             // 3. 콜백에서 파일 목록 파싱 및 뷰 업데이트
             List<String> allFilePaths = new ArrayList<>();
             if (fileListJson.has("children")) {
@@ -183,7 +184,7 @@ public class EditorTabView {
                 fileExecutionSelectionView.updateFileList(fileExecutionInfos,currentProject);
                 fileExecutionSelectionView.setVisible(true);
             });
-        });
+        }, Platform::runLater);
         fileExecutionSelectionView.bindWidthTo((mainController.getMainScreen()).searchBoxWidthProperty());
     }
     